@@ -24,9 +24,11 @@
 package hudson;
 
 import hudson.model.Saveable;
+import jenkins.util.io.WriteBehindQueue;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 
 /**
  * Transaction-like object that can be used to make a bunch of changes to an object, and defer the
@@ -88,6 +90,7 @@ public class BulkChange implements Closeable {
 
     /**
      * Saves the accumulated changes.
+     * With {@link WriteBehindQueue} enabled, this waits until they are on disk.
      */
     public void commit() throws IOException {
         if(completed)   return;
@@ -96,6 +99,14 @@ public class BulkChange implements Closeable {
         // move this object out of the scope first before save, or otherwise the save() method will do nothing.
         pop();
         saveable.save();
+
+        if (WriteBehindQueue.isEnabled()) {
+            try {
+                WriteBehindQueue.flush();
+            } catch (InterruptedException e) {
+                throw (IOException) new InterruptedIOException("Interrupted while saving " + saveable).initCause(e);
+            }
+        }
     }
 
     /**
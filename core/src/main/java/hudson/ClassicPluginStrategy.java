@@ -254,8 +254,14 @@ public class ClassicPluginStrategy implements PluginStrategy {
         ClassLoader dependencyLoader = new DependencyClassLoader(coreClassLoader, archive, Util.join(dependencies,optionalDependencies));
         dependencyLoader = getBaseClassLoader(atts, dependencyLoader);
 
+        ClassLoader classLoader = createClassLoader(paths, dependencyLoader, atts);
+        if (!isLinked && INDEX_JAR_ENTRIES && classLoader instanceof AntClassLoader) {
+            // the jars of a linked plugin are those of a development workspace, which may be rebuilt
+            ((AntClassLoader) classLoader).indexEntries(new File(expandDir, JAR_ENTRIES_FILE));
+        }
+
         return new PluginWrapper(pluginManager, archive, manifest, baseResourceURL,
-                createClassLoader(paths, dependencyLoader, atts), disableFile, dependencies, optionalDependencies);
+                classLoader, disableFile, dependencies, optionalDependencies);
     }
 
     private static void fix(Attributes atts, List<PluginWrapper.Dependency> optionalDependencies) {
@@ -611,7 +617,8 @@ public class ClassicPluginStrategy implements PluginStrategy {
     }
 
     /**
-     * Explodes the plugin into a directory, if necessary.
+     * Explodes the plugin into a directory, if necessary:
+     * not if it was already exploded from an archive of the same timestamp or, failing that, of the same content.
      */
     private static void explode(File archive, File destDir) throws IOException {
         destDir.mkdirs();
@@ -621,15 +628,25 @@ public class ClassicPluginStrategy implements PluginStrategy {
         if(explodeTime.exists() && explodeTime.lastModified()==archive.lastModified())
             return; // no need to expand
 
-        // delete the contents so that old files won't interfere with new files
-        Util.deleteRecursive(destDir);
+        // content check, for an archive written again as it was, such as a bundled plugin copied out of the war
+        File explodeDigest = new File(destDir,".digest");
+        String digest = Util.getDigestOf(archive);
+        if (explodeTime.exists() && explodeDigest.exists()
+                && digest.equals(new String(Files.readAllBytes(explodeDigest.toPath()), StandardCharsets.US_ASCII).trim())) {
+            LOGGER.log(Level.FINE, "{0} is unchanged, not expanding it again", archive);
+        } else {
+            // delete the contents so that old files won't interfere with new files
+            Util.deleteRecursive(destDir);
 
-        try {
-            Project prj = new Project();
-            unzipExceptClasses(archive, destDir, prj);
-            createClassJarFromWebInfClasses(archive, destDir, prj);
-        } catch (BuildException x) {
-            throw new IOException("Failed to expand " + archive,x);
+            try {
+                Project prj = new Project();
+                unzipExceptClasses(archive, destDir, prj);
+                createClassJarFromWebInfClasses(archive, destDir, prj);
+            } catch (BuildException x) {
+                throw new IOException("Failed to expand " + archive,x);
+            }
+
+            Files.write(explodeDigest.toPath(), digest.getBytes(StandardCharsets.US_ASCII));
         }
 
         try {
@@ -862,4 +879,15 @@ public class ClassicPluginStrategy implements PluginStrategy {
     public static boolean useAntClassLoader = SystemProperties.getBoolean(ClassicPluginStrategy.class.getName()+".useAntClassLoader");
     private static final Logger LOGGER = Logger.getLogger(ClassicPluginStrategy.class.getName());
     public static boolean DISABLE_TRANSFORMER = SystemProperties.getBoolean(ClassicPluginStrategy.class.getName()+".noBytecodeTransformer");
+
+    /**
+     * Whether the classloaders of exploded plugins list the entries of their jars up front,
+     * to answer lookups of what they do not have without opening them.
+     */
+    public static boolean INDEX_JAR_ENTRIES = !SystemProperties.getBoolean(ClassicPluginStrategy.class.getName()+".noJarEntryIndex");
+
+    /**
+     * Where the listings of the jars of an exploded plugin are kept, relative to its directory.
+     */
+    private static final String JAR_ENTRIES_FILE = "WEB-INF/jarEntries.txt";
 }
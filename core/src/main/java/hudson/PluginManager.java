@@ -23,6 +23,8 @@
  */
 package hudson;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.security.ACLContext;
@@ -60,6 +62,7 @@ import jenkins.YesNoMaybe;
 import jenkins.install.InstallState;
 import jenkins.install.InstallUtil;
 import jenkins.model.Jenkins;
+import jenkins.util.AntClassLoader;
 import jenkins.util.io.OnMaster;
 import jenkins.util.xml.RestrictiveEntityResolver;
 
@@ -116,6 +119,7 @@ import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -130,6 +134,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.logging.Level;
@@ -265,7 +271,10 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
      */
     protected final List<PluginWrapper> activePlugins = new CopyOnWriteArrayList<PluginWrapper>();
 
-    protected final List<FailedPlugin> failedPlugins = new ArrayList<FailedPlugin>();
+    /**
+     * Plugins that failed to load, also added to by the inspection tasks running in parallel.
+     */
+    protected final List<FailedPlugin> failedPlugins = new CopyOnWriteArrayList<FailedPlugin>();
 
     /**
      * Plug-in root directory.
@@ -397,37 +406,63 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
 
                             final Map<String,File> inspectedShortNames = new HashMap<String,File>();
 
-                            for( final File arc : archives ) {
-                                g.followedBy().notFatal().attains(PLUGINS_LISTED).add("Inspecting plugin " + arc, new Executable() {
+                            // inspect the archives in parallel, exploding them as needed, but one at a time for each
+                            // directory they are exploded into
+                            final PluginWrapper[] inspected = new PluginWrapper[archives.size()];
+                            final List<Handle> inspections = new ArrayList<Handle>();
+                            final Map<String,Handle> inspectionsByBaseName = new HashMap<String,Handle>();
+                            for (int i = 0; i < inspected.length; i++) {
+                                final int index = i;
+                                final File arc = archives.get(i);
+                                String baseName = FilenameUtils.getBaseName(arc.getName());
+                                Handle previous = inspectionsByBaseName.get(baseName);
+                                if (previous != null) {
+                                    g.requires(previous);
+                                }
+                                Handle h = g.notFatal().attains(PLUGINS_LISTED).add("Inspecting plugin " + arc, new Executable() {
                                     public void run(Reactor session1) throws Exception {
+                                        long start = System.nanoTime();
                                         try {
-                                            PluginWrapper p = strategy.createPluginWrapper(arc);
-                                            if (isDuplicate(p)) return;
-
-                                            p.isBundled = containsHpiJpi(bundledPlugins, arc.getName());
-                                            plugins.add(p);
+                                            inspected[index] = strategy.createPluginWrapper(arc);
                                         } catch (IOException e) {
                                             failedPlugins.add(new FailedPlugin(arc.getName(),e));
                                             throw e;
                                         }
+                                        recordStartupTime(inspected[index].getShortName(), "inspected", start);
                                     }
+                                });
+                                inspections.add(h);
+                                inspectionsByBaseName.put(baseName, h);
+                            }
 
-                                    /**
-                                     * Inspects duplication. this happens when you run hpi:run on a bundled plugin,
-                                     * as well as putting numbered jpi files, like "cobertura-1.0.jpi" and "cobertura-1.1.jpi"
-                                     */
-                                    private boolean isDuplicate(PluginWrapper p) {
-                                        String shortName = p.getShortName();
-                                        if (inspectedShortNames.containsKey(shortName)) {
-                                            LOGGER.info("Ignoring "+arc+" because "+inspectedShortNames.get(shortName)+" is already loaded");
-                                            return true;
-                                        }
+                            g.requires(inspections.toArray(new Handle[inspections.size()])).attains(PLUGINS_LISTED).add("Registering plugins", new Executable() {
+                                public void run(Reactor session1) throws Exception {
+                                    // in the order of the archives, so that the same one wins among duplicates
+                                    for (int i = 0; i < inspected.length; i++) {
+                                        PluginWrapper p = inspected[i];
+                                        File arc = archives.get(i);
+                                        if (p == null || isDuplicate(p, arc)) continue;
 
-                                        inspectedShortNames.put(shortName,arc);
-                                        return false;
+                                        p.isBundled = containsHpiJpi(bundledPlugins, arc.getName());
+                                        plugins.add(p);
                                     }
-                                });
-                            }
+                                }
+
+                                /**
+                                 * Inspects duplication. this happens when you run hpi:run on a bundled plugin,
+                                 * as well as putting numbered jpi files, like "cobertura-1.0.jpi" and "cobertura-1.1.jpi"
+                                 */
+                                private boolean isDuplicate(PluginWrapper p, File arc) {
+                                    String shortName = p.getShortName();
+                                    if (inspectedShortNames.containsKey(shortName)) {
+                                        LOGGER.info("Ignoring "+arc+" because "+inspectedShortNames.get(shortName)+" is already loaded");
+                                        return true;
+                                    }
+
+                                    inspectedShortNames.put(shortName,arc);
+                                    return false;
+                                }
+                            });
 
                             g.followedBy().attains(PLUGINS_LISTED).add("Checking cyclic dependencies", new Executable() {
                                 /**
@@ -471,6 +506,7 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
                                             if(p.isActive())
                                                 activePlugins.add(p);
                                         }
+                                        ((UberClassLoader) uberClassLoader).invalidate();
                                     } catch (CycleDetectedException e) { // TODO this should be impossible, since we override reactOnCycle to not throw the exception
                                         stop(); // disable all plugins since classloading from them can lead to StackOverflow
                                         throw e;    // let Hudson fail
@@ -513,19 +549,23 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
                     for (final PluginWrapper p : activePlugins.toArray(new PluginWrapper[activePlugins.size()])) {
                         g.followedBy().notFatal().attains(PLUGINS_PREPARED).add(String.format("Loading plugin %s v%s (%s)", p.getLongName(), p.getVersion(), p.getShortName()), new Executable() {
                             public void run(Reactor session) throws Exception {
+                                long start = System.nanoTime();
                                 try {
                                     p.resolvePluginDependencies();
                                     strategy.load(p);
+                                    recordStartupTime(p.getShortName(), "loaded", start);
                                 } catch (MissingDependencyException e) {
                                     failedPlugins.add(new FailedPlugin(p.getShortName(), e));
                                     activePlugins.remove(p);
                                     plugins.remove(p);
+                                    ((UberClassLoader) uberClassLoader).invalidate();
                                     LOGGER.log(Level.SEVERE, "Failed to install {0}: {1}", new Object[] { p.getShortName(), e.getMessage() });
                                     return;
                                 } catch (IOException e) {
                                     failedPlugins.add(new FailedPlugin(p.getShortName(), e));
                                     activePlugins.remove(p);
                                     plugins.remove(p);
+                                    ((UberClassLoader) uberClassLoader).invalidate();
                                     throw e;
                                 }
                             }
@@ -539,12 +579,15 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
                                 if (!activePlugins.contains(p)) {
                                     return;
                                 }
+                                long start = System.nanoTime();
                                 try {
                                     p.getPlugin().postInitialize();
+                                    recordStartupTime(p.getShortName(), "initialized", start);
                                 } catch (Exception e) {
                                     failedPlugins.add(new FailedPlugin(p.getShortName(), e));
                                     activePlugins.remove(p);
                                     plugins.remove(p);
+                                    ((UberClassLoader) uberClassLoader).invalidate();
                                     throw e;
                                 }
                             }
@@ -553,6 +596,7 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
 
                     g.followedBy().attains(PLUGINS_STARTED).add("Discovering plugin initialization tasks", new Executable() {
                         public void run(Reactor reactor) throws Exception {
+                            logStartupTimes();
                             // rescan to find plugin-contributed @Initializer
                             reactor.addAll(initializerFinder.discoverTasks(reactor));
                         }
@@ -573,6 +617,53 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
         }});
     }
 
+    /**
+     * How long each plugin took to start so far, by short name, in nanoseconds.
+     */
+    private final ConcurrentMap<String,AtomicLong> startupTimes = new ConcurrentHashMap<String,AtomicLong>();
+
+    private void recordStartupTime(String shortName, String step, long start) {
+        long nanos = System.nanoTime() - start;
+        AtomicLong total = startupTimes.get(shortName);
+        if (total == null) {
+            AtomicLong existing = startupTimes.putIfAbsent(shortName, total = new AtomicLong());
+            if (existing != null) {
+                total = existing;
+            }
+        }
+        total.addAndGet(nanos);
+        LOGGER.log(Level.FINE, "Plugin {0} {1} in {2}ms", new Object[] {shortName, step, TimeUnit.NANOSECONDS.toMillis(nanos)});
+    }
+
+    /**
+     * Reports which plugins took longest to start.
+     */
+    private void logStartupTimes() {
+        List<Map.Entry<String,AtomicLong>> times = new ArrayList<Map.Entry<String,AtomicLong>>(startupTimes.entrySet());
+        if (times.isEmpty()) {
+            return;
+        }
+        long total = 0;
+        for (Map.Entry<String,AtomicLong> e : times) {
+            total += e.getValue().get();
+        }
+        Collections.sort(times, new Comparator<Map.Entry<String,AtomicLong>>() {
+            @Override
+            public int compare(Map.Entry<String,AtomicLong> e1, Map.Entry<String,AtomicLong> e2) {
+                return Long.compare(e2.getValue().get(), e1.getValue().get());
+            }
+        });
+        StringBuilder slowest = new StringBuilder();
+        for (Map.Entry<String,AtomicLong> e : times.subList(0, Math.min(5, times.size()))) {
+            if (slowest.length() > 0) {
+                slowest.append(", ");
+            }
+            slowest.append(e.getKey()).append(" (").append(TimeUnit.NANOSECONDS.toMillis(e.getValue().get())).append("ms)");
+        }
+        LOGGER.log(Level.INFO, "{0} plugins took {1}ms to start in total, the slowest being {2}",
+                new Object[] {times.size(), TimeUnit.NANOSECONDS.toMillis(total), slowest});
+    }
+
     protected @Nonnull Set<String> loadPluginsFromWar(@Nonnull String fromPath) {
         return loadPluginsFromWar(fromPath, null);
     }
@@ -868,9 +959,7 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
             plugins.add(p);
             if (p.isActive())
                 activePlugins.add(p);
-            synchronized (((UberClassLoader) uberClassLoader).loaded) {
-                ((UberClassLoader) uberClassLoader).loaded.clear();
-            }
+            ((UberClassLoader) uberClassLoader).invalidate();
 
             // TODO antimodular; perhaps should have a PluginListener to complement ExtensionListListener?
             CustomClassFilter.Contributed.load();
@@ -886,6 +975,7 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
                 failedPlugins.add(new FailedPlugin(sn, e));
                 activePlugins.remove(p);
                 plugins.remove(p);
+                ((UberClassLoader) uberClassLoader).invalidate();
                 throw new IOException("Failed to install "+ sn +" plugin",e);
             }
 
@@ -1846,8 +1936,12 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
          * Keyed by the generated class name.
          */
         private ConcurrentMap<String, WeakReference<Class>> generatedClasses = new ConcurrentHashMap<String, WeakReference<Class>>();
-        /** Cache of loaded, or known to be unloadable, classes. */
-        private final Map<String,Class<?>> loaded = new HashMap<String,Class<?>>();
+        /** Cache of loaded classes. */
+        private final ConcurrentMap<String,Class<?>> loaded = new ConcurrentHashMap<String,Class<?>>();
+        /** Names of classes known not to be in any plugin, bounded by {@link #MISSING_CLASS_CACHE_SIZE}. */
+        private final Cache<String,Boolean> missing = CacheBuilder.newBuilder().maximumSize(MISSING_CLASS_CACHE_SIZE).build();
+        /** Which active plugins have classes in which packages, built when first needed after they change. */
+        private volatile PackageIndex index;
 
         public UberClassLoader() {
             super(PluginManager.class.getClassLoader());
@@ -1857,6 +1951,31 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
             generatedClasses.put(className,new WeakReference<Class>(c));
         }
 
+        /**
+         * Forgets what was looked up so far, as the active plugins changed.
+         */
+        void invalidate() {
+            index = null;
+            loaded.clear();
+            missing.invalidateAll();
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            // This loader defines no class of its own, so there is nothing to guard with the lock
+            // ClassLoader would take on the whole loader, as an inner class cannot register as parallel capable.
+            Class<?> c;
+            try {
+                c = getParent().loadClass(name);
+            } catch (ClassNotFoundException e) {
+                c = findClass(name);
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+
         @Override
         protected Class<?> findClass(String name) throws ClassNotFoundException {
             WeakReference<Class> wc = generatedClasses.get(name);
@@ -1869,38 +1988,29 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
             if (name.startsWith("SimpleTemplateScript")) { // cf. groovy.text.SimpleTemplateEngine
                 throw new ClassNotFoundException("ignoring " + name);
             }
-            synchronized (loaded) {
-                if (loaded.containsKey(name)) {
-                    Class<?> c = loaded.get(name);
-                    if (c != null) {
-                        return c;
-                    } else {
-                        throw new ClassNotFoundException("cached miss for " + name);
-                    }
-                }
+            Class<?> c = loaded.get(name);
+            if (c != null) {
+                return c;
             }
-            if (FAST_LOOKUP) {
-                for (PluginWrapper p : activePlugins) {
+            if (missing.getIfPresent(name) != null) {
+                throw new ClassNotFoundException("cached miss for " + name);
+            }
+            PackageIndex index = this.index;
+            if (index == null || !index.isFor(activePlugins)) {
+                index = new PackageIndex(activePlugins);
+                this.index = index;
+            }
+            for (PluginWrapper p : index.candidatesFor(name)) {
+                if (FAST_LOOKUP) {
                     try {
-                        Class<?> c = ClassLoaderReflectionToolkit._findLoadedClass(p.classLoader, name);
-                        if (c != null) {
-                            synchronized (loaded) {
-                                loaded.put(name, c);
-                            }
-                            return c;
-                        }
                         // calling findClass twice appears to cause LinkageError: duplicate class def
-                        c = ClassLoaderReflectionToolkit._findClass(p.classLoader, name);
-                        synchronized (loaded) {
-                            loaded.put(name, c);
-                        }
+                        c = ClassLoaderReflectionToolkit._findLoadedOrFindClass(p.classLoader, name);
+                        loaded.put(name, c);
                         return c;
                     } catch (ClassNotFoundException e) {
                         //not found. try next
                     }
-                }
-            } else {
-                for (PluginWrapper p : activePlugins) {
+                } else {
                     try {
                         return p.classLoader.loadClass(name);
                     } catch (ClassNotFoundException e) {
@@ -1908,9 +2018,7 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
                     }
                 }
             }
-            synchronized (loaded) {
-                loaded.put(name, null);
-            }
+            missing.put(name, Boolean.TRUE);
             // not found in any of the classloader. delegate.
             throw new ClassNotFoundException(name);
         }
@@ -1955,10 +2063,71 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
         }
     }
 
+    /**
+     * Which of the active plugins have classes in which packages, so that {@link UberClassLoader}
+     * only asks the plugins that may have a class.
+     * Plugins whose packages cannot be listed are asked for every class.
+     */
+    private static final class PackageIndex {
+        private final List<PluginWrapper> plugins;
+        private final Map<String,List<PluginWrapper>> byPackage = new HashMap<String,List<PluginWrapper>>();
+        private final Set<PluginWrapper> unindexed = new HashSet<PluginWrapper>();
+
+        PackageIndex(List<PluginWrapper> activePlugins) {
+            plugins = new ArrayList<PluginWrapper>(activePlugins);
+            for (PluginWrapper p : plugins) {
+                Set<String> packages = p.classLoader instanceof AntClassLoader ? ((AntClassLoader) p.classLoader).getPackageNames() : null;
+                if (packages == null) {
+                    unindexed.add(p);
+                    continue;
+                }
+                for (String pkg : packages) {
+                    List<PluginWrapper> owners = byPackage.get(pkg);
+                    if (owners == null) {
+                        owners = new ArrayList<PluginWrapper>(1);
+                        byPackage.put(pkg, owners);
+                    }
+                    owners.add(p);
+                }
+            }
+        }
+
+        /**
+         * Whether this was built from the given plugins, as a safety net should they be changed without
+         * {@link UberClassLoader#invalidate}.
+         */
+        boolean isFor(List<PluginWrapper> activePlugins) {
+            return plugins.size() == activePlugins.size();
+        }
+
+        /**
+         * The plugins that may have the given class, in the order of the active plugins.
+         */
+        List<PluginWrapper> candidatesFor(String className) {
+            int dot = className.lastIndexOf('.');
+            List<PluginWrapper> owners = byPackage.get(dot < 0 ? "" : className.substring(0, dot));
+            if (unindexed.isEmpty()) {
+                return owners != null ? owners : Collections.<PluginWrapper>emptyList();
+            }
+            List<PluginWrapper> candidates = new ArrayList<PluginWrapper>();
+            for (PluginWrapper p : plugins) {
+                if (unindexed.contains(p) || owners != null && owners.contains(p)) {
+                    candidates.add(p);
+                }
+            }
+            return candidates;
+        }
+    }
+
     private static final Logger LOGGER = Logger.getLogger(PluginManager.class.getName());
 
     public static boolean FAST_LOOKUP = !SystemProperties.getBoolean(PluginManager.class.getName()+".noFastLookup");
 
+    /**
+     * How many names of classes not found in any plugin {@link UberClassLoader} remembers.
+     */
+    private static final int MISSING_CLASS_CACHE_SIZE = SystemProperties.getInteger(PluginManager.class.getName()+".missingClassCacheSize", 10000);
+
     public static final Permission UPLOAD_PLUGINS = new Permission(Jenkins.PERMISSIONS, "UploadPlugins", Messages._PluginManager_UploadPluginsPermission_Description(),Jenkins.ADMINISTER,PermissionScope.JENKINS);
     public static final Permission CONFIGURE_UPDATECENTER = new Permission(Jenkins.PERMISSIONS, "ConfigureUpdateCenter", Messages._PluginManager_ConfigureUpdateCenterPermission_Description(),Jenkins.ADMINISTER,PermissionScope.JENKINS);
 
@@ -27,25 +27,35 @@ import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.converters.Converter;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
 import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import hudson.diagnosis.OldDataMonitor;
 import hudson.model.Descriptor;
 import hudson.util.AtomicFileWriter;
 import hudson.util.XStream2;
+import jenkins.model.ItemConfigSnapshot;
+import jenkins.util.io.WriteBehindQueue;
+import jenkins.util.xstream.XmlReaders;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.ext.Locator2;
 import org.xml.sax.helpers.DefaultHandler;
+import javax.annotation.CheckForNull;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Serializable;
 import java.io.Writer;
@@ -143,8 +153,23 @@ public final class XmlFile {
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.fine("Reading "+file);
         }
-        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
-            return xs.fromXML(in);
+        HierarchicalStreamReader snapshot = pendingContent() == null ? ItemConfigSnapshot.lookup(file) : null;
+        if (snapshot != null) {
+            try {
+                return xs.unmarshal(snapshot);
+            } catch (RuntimeException | Error e) {
+                throw new IOException("Unable to read "+file,e);
+            }
+        }
+        try (InputStream in = new BufferedInputStream(open())) {
+            if (!(xs instanceof XStream2))
+                return xs.fromXML(in);
+            HierarchicalStreamReader reader = XmlReaders.createReader(((XStream2) xs).getDriver(), in);
+            try {
+                return xs.unmarshal(reader);
+            } finally {
+                reader.close();
+            }
         } catch (RuntimeException | Error e) {
             throw new IOException("Unable to read "+file,e);
         }
@@ -170,19 +195,57 @@ public final class XmlFile {
     }
 
     private Object unmarshal(Object o, boolean nullOut) throws IOException {
-        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+        HierarchicalStreamReader snapshot = pendingContent() == null ? ItemConfigSnapshot.lookup(file) : null;
+        if (snapshot != null) {
+            try {
+                return unmarshal(snapshot, o, nullOut);
+            } catch (RuntimeException | Error e) {
+                throw new IOException("Unable to read "+file,e);
+            }
+        }
+        try (InputStream in = new BufferedInputStream(open())) {
             // TODO: expose XStream the driver from XStream
-            if (nullOut) {
-                return ((XStream2) xs).unmarshal(DEFAULT_DRIVER.createReader(in), o, null, true);
-            } else {
-                return xs.unmarshal(DEFAULT_DRIVER.createReader(in), o);
+            HierarchicalStreamReader reader = XmlReaders.createReader(DEFAULT_DRIVER, in);
+            try {
+                return unmarshal(reader, o, nullOut);
+            } finally {
+                reader.close();
             }
         } catch (RuntimeException | Error e) {
             throw new IOException("Unable to read "+file,e);
         }
     }
 
+    private Object unmarshal(HierarchicalStreamReader reader, Object o, boolean nullOut) {
+        if (nullOut) {
+            return ((XStream2) xs).unmarshal(reader, o, null, true);
+        } else {
+            return xs.unmarshal(reader, o);
+        }
+    }
+
     public void write( Object o ) throws IOException {
+        if (WriteBehindQueue.isEnabled()) {
+            // serialize now, write later
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            Writer w = new OutputStreamWriter(baos, StandardCharsets.UTF_8);
+            w.write("<?xml version='1.1' encoding='UTF-8'?>\n");
+            beingWritten.put(o, null);
+            writing.set(file);
+            try {
+                xs.toXML(o, w);
+                w.flush();
+            } catch (RuntimeException e) {
+                throw new IOException(e);
+            } finally {
+                beingWritten.remove(o);
+                writing.set(null);
+            }
+            // the writer thread does not create directories, lest it bring back deleted ones
+            mkdirs();
+            WriteBehindQueue.write(toPath(), baos.toByteArray());
+            return;
+        }
         mkdirs();
         AtomicFileWriter w = new AtomicFileWriter(file);
         try {
@@ -225,12 +288,45 @@ public final class XmlFile {
     }
 
     public boolean exists() {
-        return file.exists();
+        return file.exists() || pendingContent() != null;
     }
 
     public void delete() {
+        if (WriteBehindQueue.isEnabled()) {
+            try {
+                WriteBehindQueue.cancel(toPath());
+            } catch (IOException | InterruptedException e) {
+                LOGGER.log(Level.WARNING, "Failed to cancel the pending write of " + file, e);
+            }
+        }
         file.delete();
     }
+
+    private Path toPath() throws IOException {
+        try {
+            return file.toPath();
+        } catch (InvalidPathException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Content of a write still queued by {@link WriteBehindQueue}, to be read instead of the file.
+     */
+    private @CheckForNull byte[] pendingContent() {
+        if (!WriteBehindQueue.isEnabled())
+            return null;
+        try {
+            return WriteBehindQueue.getPending(file.toPath());
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    private InputStream open() throws IOException {
+        byte[] pending = pendingContent();
+        return pending != null ? new ByteArrayInputStream(pending) : Files.newInputStream(file.toPath());
+    }
     
     public void mkdirs() {
         file.getParentFile().mkdirs();
@@ -250,9 +346,10 @@ public final class XmlFile {
      */
     public Reader readRaw() throws IOException {
         try {
-            InputStream fileInputStream = Files.newInputStream(file.toPath());
+            InputStream fileInputStream = new BufferedInputStream(open());
             try {
-                return new InputStreamReader(fileInputStream, sniffEncoding());
+                String encoding = XmlReaders.sniffEncoding(fileInputStream);
+                return new InputStreamReader(fileInputStream, encoding != null ? encoding : sniffEncoding());
             } catch (IOException ex) {
                 // Exception may happen if we fail to find encoding or if this encoding is unsupported.
                 // In such case we close the underlying stream and rethrow.
@@ -292,6 +389,15 @@ public final class XmlFile {
      *      always non-null.
      */
     public String sniffEncoding() throws IOException {
+        try (InputStream in = new BufferedInputStream(open())) {
+            // the XML declaration can usually be read without a parser
+            String encoding = XmlReaders.sniffEncoding(in);
+            if (encoding != null)
+                return encoding;
+        } catch (InvalidPathException e) {
+            throw new IOException(e);
+        }
+
         class Eureka extends SAXException {
             final String encoding;
             public Eureka(String encoding) {
@@ -299,7 +405,7 @@ public final class XmlFile {
             }
         }
 
-        try (InputStream in = Files.newInputStream(file.toPath())) {
+        try (InputStream in = open()) {
             InputSource input = new InputSource(file.toURI().toASCIIString());
             input.setByteStream(in);
             JAXP.newSAXParser().parse(input,new DefaultHandler() {
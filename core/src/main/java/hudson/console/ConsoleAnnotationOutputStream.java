@@ -62,6 +62,11 @@ public class ConsoleAnnotationOutputStream<T> extends LineTransformationOutputSt
      */
     private final WriterOutputStream lineOut;
 
+    /**
+     * Reused buffer to escape lines that no annotator is interested in.
+     */
+    private char[] chars = new char[256];
+
     /**
      *
      */
@@ -140,12 +145,44 @@ public class ConsoleAnnotationOutputStream<T> extends LineTransformationOutputSt
         }
 
         lineOut.flush();
+        if (ann==null) {
+            // nothing can add markup to this line, so escape it straight from the line buffer
+            writeEscaped(strBuf);
+            return;
+        }
         MarkupText mt = new MarkupText(strBuf.toString());
-        if (ann!=null)
-            ann = ann.annotate(context,mt);
+        ann = ann.annotate(context,mt);
         out.write(mt.toString(true)); // this perform escapes
     }
 
+    /**
+     * Writes the line to {@link #out} escaped like {@link MarkupText#toString(boolean)} does without tags,
+     * through a reused buffer instead of intermediate strings.
+     */
+    private void writeEscaped(StringBuffer strBuf) throws IOException {
+        int len = strBuf.length();
+        if (chars.length<len)
+            chars = new char[Math.max(len, chars.length*2)];
+        strBuf.getChars(0,len,chars,0);
+
+        int written = 0;
+        for (int i=0; i<len; i++) {
+            String escape;
+            switch (chars[i]) {
+            case '<':   escape = "&lt;";    break;
+            case '>':   escape = "&gt;";    break;
+            case '&':   escape = "&amp;";   break;
+            default:    continue;
+            }
+            out.write(chars,written,i-written);
+            out.write(escape);
+            written = i+1;
+        }
+        out.write(chars,written,len-written);
+        if (chars.length>4096)
+            chars = new char[256];
+    }
+
     @Override
     public void flush() throws IOException {
         out.flush();
@@ -0,0 +1,583 @@
+package hudson.console;
+
+import hudson.model.Run;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.annotation.Nonnull;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pushes the annotated console output of running builds to browsers as server-sent events.
+ *
+ * <p>
+ * Unlike {@link AnnotatedLargeText#doProgressiveHtml}, which every browser tab polls and which reopens the log
+ * and decrypts the {@link ConsoleAnnotator} state on every poll, there is a single {@link Tailer} per build.
+ * It keeps the log open, annotates each new line once with a {@link ConsoleAnnotator} that stays on the server,
+ * and fans out the resulting HTML to all the subscribers.
+ *
+ * <p>
+ * Each event carries the log offset it ends at as its {@code id}, so a browser that reconnects
+ * resumes where it left off through the {@code Last-Event-ID} header.
+ * Subscribers that cannot keep up are disconnected and will then reconnect.
+ *
+ * <p>
+ * The log is annotated in chunks of at most {@link #CHUNK} bytes, each sent as its own event, and no more than
+ * {@link #POLL_READ} bytes per poll, on threads of our own rather than those of {@link jenkins.util.Timer}.
+ * Completed logs, and subscribers further behind than {@link #MAX_READ}, are told to fetch the output from
+ * {@link AnnotatedLargeText#doProgressiveHtml} instead, which writes it to the response as it reads it.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class ConsoleLogBroadcaster {
+
+    /**
+     * How often a {@link Tailer} checks its log for new content, in milliseconds.
+     */
+    static /* non-final for script console */ long POLL_INTERVAL = SystemProperties.getLong(ConsoleLogBroadcaster.class.getName() + ".pollInterval", 500L);
+
+    /**
+     * How long a subscription lasts before the browser needs to reconnect, in milliseconds.
+     */
+    static /* non-final for script console */ long TIMEOUT = SystemProperties.getLong(ConsoleLogBroadcaster.class.getName() + ".timeout", TimeUnit.MINUTES.toMillis(5));
+
+    /**
+     * Maximum number of characters queued for a subscriber before it is disconnected.
+     */
+    static /* non-final for script console */ int MAX_BACKLOG = SystemProperties.getInteger(ConsoleLogBroadcaster.class.getName() + ".maxBacklog", 4 * 1024 * 1024);
+
+    /**
+     * Maximum number of bytes of the log annotated to catch up a subscriber that starts behind its {@link Tailer}.
+     */
+    static /* non-final for script console */ long MAX_READ = SystemProperties.getLong(ConsoleLogBroadcaster.class.getName() + ".maxRead", 1024 * 1024L);
+
+    /**
+     * Maximum number of bytes of the log a {@link Tailer} annotates per poll.
+     */
+    static /* non-final for script console */ long POLL_READ = SystemProperties.getLong(ConsoleLogBroadcaster.class.getName() + ".pollRead", 256 * 1024L);
+
+    /**
+     * Number of threads annotating the logs being tailed.
+     */
+    private static final int TAILER_THREADS = SystemProperties.getInteger(ConsoleLogBroadcaster.class.getName() + ".tailerThreads", 2);
+
+    /**
+     * Maximum number of bytes of the log annotated into a single event.
+     */
+    static final int CHUNK = 64 * 1024;
+
+    private static final ConcurrentMap<File,Tailer> TAILERS = new ConcurrentHashMap<>();
+
+    private static final ScheduledExecutorService TAILING = Executors.newScheduledThreadPool(TAILER_THREADS,
+            new NamingThreadFactory(new DaemonThreadFactory(), "ConsoleLogBroadcaster.tailer"));
+
+    private static final ExecutorService DELIVERY = Executors.newCachedThreadPool(
+            new NamingThreadFactory(new DaemonThreadFactory(), "ConsoleLogBroadcaster.delivery"));
+
+    private ConsoleLogBroadcaster() {}
+
+    /**
+     * Number of builds whose logs are currently being tailed.
+     */
+    public static int getTailerCount() {
+        return TAILERS.size();
+    }
+
+    /**
+     * Starts streaming the log of the given build from the offset given by the {@code Last-Event-ID} header
+     * or the {@code start} parameter.
+     */
+    public static void subscribe(@Nonnull Run<?,?> run, @Nonnull StaplerRequest req, @Nonnull StaplerResponse rsp) throws IOException {
+        long start = 0;
+        String resume = req.getHeader("Last-Event-ID");
+        if (resume == null)
+            resume = req.getParameter("start");
+        if (resume != null) {
+            try {
+                start = Math.max(0, Long.parseLong(resume.trim()));
+            } catch (NumberFormatException e) {
+                // start from the beginning
+            }
+        }
+
+        rsp.setContentType("text/event-stream;charset=UTF-8");
+        rsp.setHeader("Cache-Control", "no-cache");
+        rsp.setHeader("X-Accel-Buffering", "no"); // for nginx
+
+        File log = run.getLogFile();
+        if (!run.isLogUpdated() || !log.isFile() || log.getName().endsWith(".gz")) {
+            // nothing to tail: the browser fetches what is left from progressiveHtml
+            send(rsp, event("complete", -1, ""));
+            return;
+        }
+        if (log.length() - start > MAX_READ) {
+            // the browser catches up through progressiveHtml, rather than us annotating all that at once
+            send(rsp, event("behind", -1, ""));
+            return;
+        }
+
+        AsyncContext ctx = req.startAsync();
+        ctx.setTimeout(TIMEOUT);
+        Subscriber s = new Subscriber(ctx);
+        while (true) {
+            Tailer t = TAILERS.get(log);
+            if (t == null) {
+                Tailer fresh = new Tailer(run, log, start);
+                t = TAILERS.putIfAbsent(log, fresh);
+                if (t == null) {
+                    t = fresh;
+                    t.start();
+                }
+            }
+            if (t.add(s, start))
+                break;
+            // that tailer was just stopping, try again with a new one
+            TAILERS.remove(log, t);
+        }
+    }
+
+    private static void send(StaplerResponse rsp, byte[] event) throws IOException {
+        OutputStream out = rsp.getOutputStream();
+        out.write(event);
+        out.flush();
+    }
+
+    /**
+     * Receives the events rendered from a log.
+     */
+    interface EventSink {
+        /**
+         * @param from the offset of the log the event starts at
+         * @param to the offset of the log the event ends at, also its {@code id}
+         */
+        void send(long from, long to, byte[] event);
+    }
+
+    /**
+     * Annotates the given range of the log, stopping at the last line end unless {@code all} is set.
+     * The HTML of every chunk of up to {@link #CHUNK} bytes is sent as an event as soon as it is rendered.
+     *
+     * @param html
+     *      Carries the annotation state over from the previous range.
+     * @return the offset up to which the log was annotated
+     */
+    static long render(FileChannel ch, long start, long end, boolean all, Html html, EventSink sink) throws IOException {
+        if (start >= end)
+            return start;
+
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(end - start, CHUNK));
+        long pos = start;
+        long sent = start;
+        // the same output goes to everyone who can read the build, so do not annotate it with anyone's permissions
+        try (ACLContext ignored = ACL.as(Jenkins.ANONYMOUS)) {
+            while (pos < end) {
+                buf.clear();
+                buf.limit((int) Math.min(buf.capacity(), end - pos));
+                int n = ch.read(buf, pos);
+                if (n <= 0)
+                    break;
+                byte[] chunk = buf.array();
+                int len = n;
+                if (!all) {
+                    while (len > 0 && chunk[len - 1] != '\n')
+                        len--;
+                    if (len == 0) {
+                        if (n < buf.capacity())
+                            break; // wait for the rest of the line
+                        len = n; // a line longer than a chunk: the annotator keeps its beginning until it ends
+                    }
+                }
+                html.annotator.write(chunk, 0, len);
+                pos += len;
+                if (all && pos >= end)
+                    html.annotator.forceEol();
+                String h = html.take();
+                if (!h.isEmpty()) {
+                    sink.send(sent, pos, event(null, pos, h));
+                    sent = pos;
+                }
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * A {@link ConsoleAnnotationOutputStream} and the HTML it has produced so far.
+     */
+    static final class Html {
+        final StringWriter buffer = new StringWriter();
+        final ConsoleAnnotationOutputStream<?> annotator;
+
+        Html(Run<?,?> run) {
+            this(ConsoleAnnotator.initial(run), run, run.getCharset());
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Html(ConsoleAnnotator<?> initial, Object context, Charset charset) {
+            annotator = new ConsoleAnnotationOutputStream(buffer, initial, context, charset);
+        }
+
+        /**
+         * Returns and clears the HTML produced so far.
+         */
+        String take() {
+            StringBuffer sb = buffer.getBuffer();
+            String s = sb.toString();
+            sb.setLength(0);
+            return s;
+        }
+    }
+
+    /**
+     * Encodes a server-sent event.
+     */
+    static byte[] event(String name, long id, String data) {
+        StringBuilder sb = new StringBuilder(data.length() + 64);
+        if (name != null)
+            sb.append("event: ").append(name).append('\n');
+        if (id >= 0)
+            sb.append("id: ").append(id).append('\n');
+        int from = 0;
+        while (true) {
+            int eol = data.indexOf('\n', from);
+            sb.append("data: ").append(data, from, eol < 0 ? data.length() : eol).append('\n');
+            if (eol < 0)
+                break;
+            from = eol + 1;
+        }
+        sb.append('\n');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Follows the log of one build on behalf of all its subscribers.
+     */
+    private static final class Tailer implements Runnable {
+        private final Run<?,?> run;
+        private final File log;
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        private FileChannel channel;
+        /**
+         * Offset up to which the log has been annotated and sent.
+         */
+        private long pos;
+        private final Html html;
+        private ScheduledFuture<?> future;
+        private boolean stopped;
+
+        Tailer(Run<?,?> run, File log, long pos) {
+            this.run = run;
+            this.log = log;
+            this.pos = pos;
+            this.html = new Html(run);
+        }
+
+        synchronized void start() {
+            future = TAILING.scheduleWithFixedDelay(this, 0, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Adds a subscriber, first sending it what it missed between its start offset and what we are at.
+         * The catch up is rendered without holding the lock, so that it does not hold up the other subscribers.
+         *
+         * @return false if this tailer has stopped
+         */
+        boolean add(final Subscriber s, long start) throws IOException {
+            FileChannel ch = null;
+            try {
+                Html html = null;
+                while (true) {
+                    long target;
+                    synchronized (this) {
+                        if (stopped)
+                            return false;
+                        if (start >= pos || s.isClosed()) {
+                            // if it is ahead of us, it skips what it already has
+                            s.start = start;
+                            subscribers.add(s);
+                            s.tailer = this;
+                            return true;
+                        }
+                        target = pos;
+                    }
+                    if (ch == null) {
+                        ch = FileChannel.open(log.toPath(), StandardOpenOption.READ);
+                        html = new Html(run);
+                    }
+                    long next = render(ch, start, target, false, html, (from, to, event) -> s.send(event));
+                    if (next == start) {
+                        // we are in the middle of a line longer than a chunk, which the subscriber gets cut short
+                        next = render(ch, start, target, true, html, (from, to, event) -> s.send(event));
+                    }
+                    start = next;
+                }
+            } finally {
+                if (ch != null)
+                    ch.close();
+            }
+        }
+
+        synchronized void remove(Subscriber s) {
+            subscribers.remove(s);
+        }
+
+        @Override
+        public synchronized void run() {
+            if (stopped)
+                return;
+            try {
+                subscribers.removeIf(Subscriber::isClosed);
+                if (subscribers.isEmpty()) {
+                    stop();
+                    return;
+                }
+                if (channel == null)
+                    channel = FileChannel.open(log.toPath(), StandardOpenOption.READ);
+                boolean complete = !run.isLogUpdated();
+                long size = channel.size();
+                long end = Math.min(size, pos + POLL_READ);
+                complete &= end == size;
+                pos = render(channel, pos, end, complete, html, this::publish);
+                if (complete) {
+                    publish(event("complete", -1, ""));
+                    for (Subscriber s : subscribers)
+                        s.finish();
+                    subscribers.clear();
+                    stop();
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to follow the log of " + run, e);
+                for (Subscriber s : subscribers)
+                    s.finish();
+                subscribers.clear();
+                stop();
+            }
+        }
+
+        /**
+         * Sends an event to the subscribers, except for the part of the log they already have.
+         * Called with the lock held.
+         */
+        private void publish(long from, long to, byte[] event) {
+            for (Subscriber s : new ArrayList<>(subscribers)) {
+                boolean sent;
+                if (s.start >= to) {
+                    continue; // came in ahead of us and already has all of it
+                } else if (s.start > from) {
+                    sent = sendRest(s, to);
+                } else {
+                    sent = s.send(event);
+                }
+                if (!sent)
+                    subscribers.remove(s);
+            }
+        }
+
+        /**
+         * Sends an event to all the subscribers. Called with the lock held.
+         */
+        private void publish(byte[] event) {
+            for (Subscriber s : new ArrayList<>(subscribers)) {
+                if (!s.send(event))
+                    subscribers.remove(s);
+            }
+        }
+
+        /**
+         * Annotates the part of an event a subscriber lacks on its own, as it has the beginning of it already.
+         * The event ends at a line end, unless the line is longer than a chunk, so the subscriber is in step from then on.
+         */
+        private boolean sendRest(final Subscriber s, long to) {
+            final boolean[] sent = {true};
+            try {
+                render(channel, s.start, to, true, new Html(run), (from, end, event) -> sent[0] &= s.send(event));
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Failed to annotate the log of " + run + " for a subscriber", e);
+                s.finish();
+                return false;
+            }
+            s.start = to;
+            return sent[0];
+        }
+
+        private void stop() {
+            stopped = true;
+            TAILERS.remove(log, this);
+            if (future != null)
+                future.cancel(false);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to close " + log, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * One browser connection. Events are queued and written by {@link #DELIVERY},
+     * so that a slow client does not hold up the {@link Tailer}.
+     */
+    private static final class Subscriber implements AsyncListener, Runnable {
+        private final AsyncContext ctx;
+        private final Queue<byte[]> queue = new ArrayDeque<>();
+        private int backlog;
+        private boolean draining;
+        private boolean finishing;
+        private boolean closed;
+        volatile Tailer tailer;
+        /**
+         * Offset of the log the subscriber started at, guarded by the lock of its {@link Tailer}.
+         */
+        long start;
+
+        Subscriber(AsyncContext ctx) {
+            this.ctx = ctx;
+            ctx.addListener(this);
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * @return false if this subscriber has been disconnected
+         */
+        synchronized boolean send(byte[] event) {
+            if (closed)
+                return false;
+            if (backlog + event.length > MAX_BACKLOG) {
+                LOGGER.log(Level.FINE, "Disconnecting a console subscriber that cannot keep up");
+                finish();
+                return false;
+            }
+            queue.add(event);
+            backlog += event.length;
+            if (!draining) {
+                draining = true;
+                DELIVERY.execute(this);
+            }
+            return true;
+        }
+
+        /**
+         * Completes the response once everything queued has been written.
+         */
+        synchronized void finish() {
+            finishing = true;
+            if (!draining) {
+                draining = true;
+                DELIVERY.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                byte[] event;
+                synchronized (this) {
+                    event = queue.poll();
+                    if (event == null) {
+                        draining = false;
+                        if (finishing && !closed)
+                            close();
+                        return;
+                    }
+                    backlog -= event.length;
+                }
+                try {
+                    OutputStream out = ctx.getResponse().getOutputStream();
+                    out.write(event);
+                    out.flush();
+                } catch (IOException | IllegalStateException e) {
+                    // browser went away
+                    synchronized (this) {
+                        queue.clear();
+                        backlog = 0;
+                        draining = false;
+                        if (!closed)
+                            close();
+                    }
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Called with the lock held. The {@link Tailer} notices on its own, since calling it here could deadlock.
+         */
+        private void close() {
+            closed = true;
+            try {
+                ctx.complete();
+            } catch (IllegalStateException e) {
+                // already completed
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            finish();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            synchronized (this) {
+                queue.clear();
+                backlog = 0;
+                if (!closed)
+                    close();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            synchronized (this) {
+                closed = true;
+            }
+            Tailer t = tailer;
+            if (t != null)
+                t.remove(this);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ConsoleLogBroadcaster.class.getName());
+}
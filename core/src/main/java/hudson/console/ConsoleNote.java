@@ -326,6 +326,35 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
         return -1; // not found
     }
 
+    /**
+     * Locates the end of the encoded note that starts at the given position, without decoding it.
+     *
+     * <p>
+     * The payload of a note is Base64 encoded, so it never contains the escape character that starts
+     * {@link #POSTAMBLE}. This lets callers that only want to strip notes skip over them at the byte level.
+     *
+     * @param start
+     *      Must point to the beginning of a preamble.
+     * @return
+     *      the index right after the postamble, or -1 if the note isn't terminated before {@code end}.
+     * @since TODO
+     */
+    public static int findNoteEnd(byte[] buf, int start, int end) {
+        int e = end - POSTAMBLE.length + 1;
+
+        OUTER:
+        for (int i=start+PREAMBLE.length; i<e; i++) {
+            if (buf[i]==POSTAMBLE[0]) {
+                for (int j=1; j<POSTAMBLE.length; j++) {
+                    if (buf[i+j]!=POSTAMBLE[j])
+                        continue OUTER;
+                }
+                return i+POSTAMBLE.length;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Removes the embedded console notes in the given log lines.
      *
@@ -0,0 +1,241 @@
+package hudson.console;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Byte positions of the {@link ConsoleNote}s in a log file, recorded while the log is written.
+ *
+ * <p>
+ * This lets the plain text of a completed log be served straight from the file, only skipping the
+ * regions that hold notes, instead of running every line through {@link PlainTextConsoleOutputStream}.
+ *
+ * <p>
+ * The index file is a sequence of pairs of big-endian longs: the start (inclusive) and end (exclusive)
+ * offsets of each note in ascending order, followed by a trailer of {@code -1} and the length of the log.
+ * The trailer is only written when the log is closed, so an index without one (or with a length that does not
+ * match the log) is not trusted.
+ *
+ * @see #record(OutputStream, long, File)
+ * @since TODO
+ */
+public final class ConsoleNoteIndex {
+    private final long[] starts;
+    private final long[] ends;
+    private final long logLength;
+    private final long plainLength;
+
+    private ConsoleNoteIndex(long[] starts, long[] ends, long logLength) {
+        this.starts = starts;
+        this.ends = ends;
+        this.logLength = logLength;
+        long notes = 0;
+        for (int i = 0; i < starts.length; i++)
+            notes += ends[i] - starts[i];
+        this.plainLength = logLength - notes;
+    }
+
+    /**
+     * Number of notes in the log.
+     */
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * Length of the log with all the notes removed.
+     */
+    public long getPlainLength() {
+        return plainLength;
+    }
+
+    /**
+     * Copies the given range of the plain text of the log to the given channel.
+     *
+     * @param from
+     *      Offset in the plain text, inclusive.
+     * @param to
+     *      Offset in the plain text, exclusive.
+     */
+    public void writePlainText(@Nonnull FileChannel log, long from, long to, @Nonnull WritableByteChannel out) throws IOException {
+        long plain = 0;
+        long file = 0;
+        for (int i = 0; i <= starts.length && plain < to; i++) {
+            long end = i < starts.length ? starts[i] : logLength;
+            long len = end - file;
+            long a = Math.max(from, plain);
+            long b = Math.min(to, plain + len);
+            if (a < b)
+                transfer(log, file + (a - plain), b - a, out);
+            plain += len;
+            if (i < starts.length)
+                file = ends[i];
+        }
+    }
+
+    private static void transfer(FileChannel src, long pos, long count, WritableByteChannel out) throws IOException {
+        while (count > 0) {
+            long n = src.transferTo(pos, count, out);
+            if (n <= 0)
+                throw new EOFException("Log file was truncated while being sent");
+            pos += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Loads an index that has been completely written for a log of the given length.
+     *
+     * @return null if there is no such index.
+     */
+    public static @CheckForNull ConsoleNoteIndex load(@Nonnull File index, long logLength) {
+        if (!index.isFile())
+            return null;
+        long size = index.length();
+        if (size < 16 || size % 16 != 0 || size / 16 - 1 > Integer.MAX_VALUE)
+            return null;
+        int n = (int) (size / 16 - 1);
+        long[] starts = new long[n];
+        long[] ends = new long[n];
+        try (InputStream is = Files.newInputStream(index.toPath());
+             DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+            long last = 0;
+            for (int i = 0; i < n; i++) {
+                starts[i] = in.readLong();
+                ends[i] = in.readLong();
+                if (starts[i] < last || ends[i] <= starts[i] || ends[i] > logLength)
+                    return null; // corrupted
+                last = ends[i];
+            }
+            if (in.readLong() != -1 || in.readLong() != logLength)
+                return null; // incomplete, or the log was modified afterward
+        } catch (IOException | InvalidPathException e) {
+            LOGGER.log(Level.FINE, "Failed to read " + index, e);
+            return null;
+        }
+        return new ConsoleNoteIndex(starts, ends, logLength);
+    }
+
+    /**
+     * Wraps a stream that writes a log file, recording the positions of the notes that go through it.
+     *
+     * @param log
+     *      The stream that writes to the log file.
+     * @param offset
+     *      Length of the log file when the stream was opened.
+     * @param index
+     *      File to record the positions into. Any existing content is replaced.
+     */
+    public static @Nonnull OutputStream record(@Nonnull OutputStream log, long offset, @Nonnull File index) throws IOException {
+        OutputStream os;
+        try {
+            os = Files.newOutputStream(index.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        } catch (InvalidPathException e) {
+            throw new IOException(e);
+        }
+        return new Recorder(log, offset, new DataOutputStream(new BufferedOutputStream(os)));
+    }
+
+    /**
+     * Scans the bytes written for preambles and postambles.
+     * A note is abandoned at the end of a line, in the same way {@link PlainTextConsoleOutputStream} does.
+     */
+    private static final class Recorder extends FilterOutputStream {
+        private final DataOutputStream index;
+        /**
+         * Position in the log of the next byte.
+         */
+        private long pos;
+        /**
+         * Position of the note being read, or -1 if outside of a note.
+         */
+        private long noteStart = -1;
+        /**
+         * Number of bytes of {@link ConsoleNote#PREAMBLE} or {@link ConsoleNote#POSTAMBLE} matched so far.
+         */
+        private int matched;
+        private boolean closed;
+
+        Recorder(OutputStream out, long pos, DataOutputStream index) {
+            super(out);
+            this.pos = pos;
+            this.index = index;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            out.write(b);
+            scan((byte) b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            int end = off + len;
+            for (int i = off; i < end; i++)
+                scan(b[i]);
+        }
+
+        private void scan(byte c) throws IOException {
+            // neither pattern repeats its first byte, so a mismatch can only restart the match at the current byte
+            if (noteStart < 0) {
+                if (c == ConsoleNote.PREAMBLE[matched]) {
+                    if (++matched == ConsoleNote.PREAMBLE.length) {
+                        noteStart = pos + 1 - matched;
+                        matched = 0;
+                    }
+                } else {
+                    matched = c == ConsoleNote.PREAMBLE[0] ? 1 : 0;
+                }
+            } else {
+                if (c == ConsoleNote.POSTAMBLE[matched]) {
+                    if (++matched == ConsoleNote.POSTAMBLE.length) {
+                        index.writeLong(noteStart);
+                        index.writeLong(pos + 1);
+                        noteStart = -1;
+                        matched = 0;
+                    }
+                } else if (c == '\n') {
+                    noteStart = -1;
+                    matched = 0;
+                } else {
+                    matched = c == ConsoleNote.POSTAMBLE[0] ? 1 : 0;
+                }
+            }
+            pos++;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                out.close();
+                index.writeLong(-1);
+                index.writeLong(pos);
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ConsoleNoteIndex.class.getName());
+}
@@ -0,0 +1,280 @@
+package hudson.console;
+
+import jenkins.model.BuildLogLimitsConfiguration;
+import jenkins.model.Messages;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Enforces {@link BuildLogLimitsConfiguration} on the log of a single build.
+ *
+ * <ul>
+ * <li>With a rate limit, writers are put to sleep whenever the build has written more than it was allowed to.
+ *     The allowance accrues at {@code maxBytesPerSecond} and is capped at one second worth of it, so a build
+ *     that was quiet for a while cannot then write all it saved up at once.
+ *     Writers sleep after their write, without holding the lock
+ *     of this stream, so that other writers such as the remoting pipe writer are not held up by them.
+ *     Output that is dropped or only kept in the tail does not count against the rate.
+ * <li>With a size limit, everything past the limit is dropped and a marker is written once.
+ * <li>With a size limit and a tail size, the head of the log is written up to {@code maxSize - tailSize} bytes,
+ *     the last {@code tailSize} bytes are kept in memory, in a buffer which grows as the tail does,
+ *     and on {@link #close()} a marker followed by
+ *     that tail is written. The dropped middle is therefore not visible while the build runs.
+ * </ul>
+ *
+ * @since TODO
+ */
+public class LimitedLogOutputStream extends FilterOutputStream {
+    private final long maxBytesPerSecond;
+    private final long maxSize;
+    /**
+     * Number of bytes written through as the head of the log.
+     */
+    private final long headSize;
+    @CheckForNull
+    private final BuildLogLimitsConfiguration.JobCounters counters;
+
+    /**
+     * Bytes the build may still write before being throttled, negative once it is over the rate.
+     */
+    private double allowance;
+    private long allowanceAt = System.nanoTime();
+    private long written;
+    private long dropped;
+    private long throttledMillis;
+    private int lastByte = '\n';
+    private boolean truncationMarked;
+
+    /**
+     * Number of bytes to keep at the end, or 0 if not keeping the tail.
+     */
+    private final int tailSize;
+    /**
+     * Ring buffer of the tail, allocated once the head is full and grown up to {@link #tailSize} as needed.
+     */
+    @CheckForNull
+    private byte[] tail;
+    private int tailPos;
+    private long tailTotal;
+
+    /**
+     * Size the tail buffer starts at.
+     */
+    private static final int INITIAL_TAIL = 8 * 1024;
+
+    private boolean closed;
+
+    /**
+     * Reused by {@link #write(int)}, while holding the lock.
+     */
+    private final byte[] single = new byte[1];
+
+    /**
+     * @param maxBytesPerSecond
+     *      0 for no rate limit.
+     * @param maxSize
+     *      0 for no size limit.
+     * @param tailSize
+     *      0 to drop everything past the size limit, otherwise the number of bytes to keep at the end.
+     *      Clamped to half of {@code maxSize}, and to {@link BuildLogLimitsConfiguration#MAX_TAIL_SIZE}.
+     */
+    public LimitedLogOutputStream(@Nonnull OutputStream out, long maxBytesPerSecond, long maxSize, long tailSize,
+                                  @CheckForNull BuildLogLimitsConfiguration.JobCounters counters) {
+        super(out);
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.maxSize = maxSize;
+        this.counters = counters;
+        this.allowance = maxBytesPerSecond;
+        if (maxSize > 0 && tailSize > 0) {
+            this.tailSize = (int) Math.min(Math.min(tailSize, maxSize / 2), BuildLogLimitsConfiguration.MAX_TAIL_SIZE);
+            this.headSize = maxSize - this.tailSize;
+        } else {
+            this.tailSize = 0;
+            this.headSize = maxSize;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        long delay;
+        synchronized (this) {
+            single[0] = (byte) b;
+            delay = accept(single, 0, 1);
+        }
+        throttle(delay);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len <= 0)
+            return;
+        long delay;
+        synchronized (this) {
+            delay = accept(b, off, len);
+        }
+        throttle(delay);
+    }
+
+    /**
+     * Writes, keeps or drops the bytes. Must be called while holding the lock.
+     *
+     * @return
+     *      how many milliseconds the writer should sleep to get back under the rate limit.
+     */
+    private long accept(byte[] b, int off, int len) throws IOException {
+        long before = written;
+        if (maxSize <= 0) {
+            writeThrough(b, off, len);
+            return delay(written - before);
+        }
+
+        long room = headSize - written;
+        if (room > 0) {
+            int n = (int) Math.min(room, len);
+            writeThrough(b, off, n);
+            off += n;
+            len -= n;
+        }
+        if (len == 0)
+            return delay(written - before);
+
+        if (tailSize > 0) {
+            keep(b, off, len);
+        } else {
+            if (!truncationMarked) {
+                truncationMarked = true;
+                marker(Messages.BuildLogLimitsConfiguration_truncated(maxSize));
+            }
+            dropped += len;
+        }
+        return delay(written - before);
+    }
+
+    private void writeThrough(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return;
+        out.write(b, off, len);
+        written += len;
+        lastByte = b[off + len - 1];
+    }
+
+    private void marker(String text) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (lastByte != '\n')
+            sb.append('\n');
+        sb.append(text).append('\n');
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        lastByte = '\n';
+    }
+
+    /**
+     * Appends to the tail ring buffer.
+     */
+    private void keep(byte[] b, int off, int len) {
+        byte[] tail = this.tail;
+        long kept = tailTotal;
+        tailTotal += len;
+        if (len >= tailSize) {
+            if (tail == null || tail.length < tailSize)
+                this.tail = tail = new byte[tailSize];
+            System.arraycopy(b, off + len - tailSize, tail, 0, tailSize);
+            tailPos = 0;
+            return;
+        }
+        if (tail == null || (tail.length < tailSize && kept + len > tail.length)) {
+            // until it is full size, the buffer has not wrapped around and holds the first kept bytes
+            byte[] grown = new byte[(int) Math.min(tailSize, Math.max(kept + len, tail == null ? INITIAL_TAIL : 2L * tail.length))];
+            if (tail != null)
+                System.arraycopy(tail, 0, grown, 0, (int) kept);
+            this.tail = tail = grown;
+            tailPos = (int) kept;
+        }
+        int first = Math.min(len, tail.length - tailPos);
+        System.arraycopy(b, off, tail, tailPos, first);
+        System.arraycopy(b, off + first, tail, 0, len - first);
+        tailPos = (tailPos + len) % tail.length;
+    }
+
+    /**
+     * How long the build is ahead of the allowed rate, counting only what was written through.
+     * Must be called while holding the lock.
+     *
+     * @param len
+     *      the number of bytes just written through
+     */
+    private long delay(long len) {
+        if (maxBytesPerSecond <= 0)
+            return 0;
+        long now = System.nanoTime();
+        allowance = Math.min(maxBytesPerSecond, allowance + (now - allowanceAt) * maxBytesPerSecond / 1e9) - len;
+        allowanceAt = now;
+        if (allowance >= 0)
+            return 0;
+        long delay = (long) Math.ceil(-allowance * 1000 / maxBytesPerSecond);
+        throttledMillis += delay;
+        return delay;
+    }
+
+    /**
+     * Sleeps without holding the lock.
+     */
+    private void throttle(long delay) throws InterruptedIOException {
+        if (delay <= 0)
+            return;
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+        }
+    }
+
+    /**
+     * Writes the kept tail, then closes.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            byte[] tail = this.tail;
+            if (tail != null && tailTotal > 0) {
+                int size = (int) Math.min(tailTotal, tail.length);
+                byte[] t = new byte[size];
+                int begin = size < tail.length ? 0 : tailPos;
+                int first = Math.min(size, tail.length - begin);
+                System.arraycopy(tail, begin, t, 0, first);
+                System.arraycopy(tail, 0, t, first, size - first);
+
+                int from = 0;
+                long skipped = tailTotal - size;
+                if (skipped > 0) {
+                    // start the tail at a line boundary, so that we don't show half a line or half a console note
+                    for (int i = 0; i < size; i++) {
+                        if (t[i] == '\n') {
+                            from = i + 1;
+                            break;
+                        }
+                    }
+                    skipped += from;
+                    dropped += skipped;
+                    marker(Messages.BuildLogLimitsConfiguration_skipped(skipped));
+                }
+                writeThrough(t, from, size - from);
+            }
+            flush();
+        } finally {
+            if (counters != null)
+                counters.record(written, dropped, throttledMillis);
+            out.close();
+        }
+    }
+}
@@ -43,6 +43,12 @@ public abstract class LineTransformationOutputStream extends OutputStream {
     /**
      * Called for each end of the line.
      *
+     * <p>
+     * The array is the internal line buffer, which is reused for subsequent lines, so implementations
+     * must not hold on to it after returning. Implementations that only need to look for
+     * {@link ConsoleNote#PREAMBLE} should do so at the byte level through {@link ConsoleNote#findPreamble(byte[], int, int)}
+     * and only decode the line into a {@link String} when they actually need to transform it.
+     *
      * @param b
      *      Contents of the whole line, including the EOL code like CR/LF.
      * @param len
@@ -66,12 +72,24 @@ public abstract class LineTransformationOutputStream extends OutputStream {
             buf.reset();
     }
 
+    /**
+     * Scans the chunk for line ends and copies each run of bytes into the line buffer in bulk,
+     * rather than going through {@link #write(int)} one byte at a time.
+     */
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
         int end = off+len;
+        int start = off;
 
-        for( int i=off; i<end; i++ )
-            write(b[i]);
+        for( int i=off; i<end; i++ ) {
+            if (b[i]==LF) {
+                buf.write(b,start,i+1-start);
+                eol();
+                start = i+1;
+            }
+        }
+        if (start<end)
+            buf.write(b,start,end-start);
     }
 
     @Override
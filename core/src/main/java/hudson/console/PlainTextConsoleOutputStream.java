@@ -24,8 +24,6 @@
 
 package hudson.console;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.logging.Logger;
@@ -47,12 +45,15 @@ public class PlainTextConsoleOutputStream extends LineTransformationOutputStream
 
     /**
      * Called after we read the whole line of plain text.
+     *
+     * <p>
+     * Notes are located and skipped at the byte level, so lines without notes are passed through
+     * as-is and lines with notes don't need to be decoded.
      */
     protected void eol(byte[] in, int sz) throws IOException {
 
         int next = ConsoleNote.findPreamble(in,0,sz);
 
-        // perform byte[]->char[] while figuring out the char positions of the BLOBs
         int written = 0;
         while (next>=0) {
             if (next>written) {
@@ -62,18 +63,17 @@ public class PlainTextConsoleOutputStream extends LineTransformationOutputStream
                 assert next==written;
             }
 
-            int rest = sz - next;
-            ByteArrayInputStream b = new ByteArrayInputStream(in, next, rest);
-
-            ConsoleNote.skip(new DataInputStream(b));
-
-            int bytesUsed = rest - b.available(); // bytes consumed by annotations
-            written += bytesUsed;
-
+            int end = ConsoleNote.findNoteEnd(in,next,sz);
+            if (end<0) {
+                // unterminated note, which can only happen with a truncated log. leave it as is.
+                LOGGER.finest("Unterminated console note");
+                break;
+            }
+            written = end;
 
             next = ConsoleNote.findPreamble(in,written,sz-written);
         }
-        // finish the remaining bytes->chars conversion
+        // write the remaining bytes
         out.write(in,written,sz-written);
     }
 
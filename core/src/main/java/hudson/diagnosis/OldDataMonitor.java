@@ -37,9 +37,12 @@ import hudson.model.listeners.ItemListener;
 import hudson.model.listeners.RunListener;
 import hudson.model.listeners.SaveableListener;
 import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import hudson.util.RobustReflectionConverter;
 import hudson.util.VersionNumber;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -49,11 +52,15 @@ import java.util.Map;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.CheckForNull;
 
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import org.acegisecurity.context.SecurityContext;
 import org.acegisecurity.context.SecurityContextHolder;
 import org.jenkinsci.Symbol;
@@ -78,6 +85,13 @@ public class OldDataMonitor extends AdministrativeMonitor {
 
     private ConcurrentMap<SaveableReference,VersionRange> data = new ConcurrentHashMap<SaveableReference,VersionRange>();
 
+    private volatile Resave resave;
+
+    /**
+     * Whether anything was ever reported, so that saves need not look the monitor up otherwise.
+     */
+    private static volatile boolean reported;
+
     static OldDataMonitor get(Jenkins j) {
         return (OldDataMonitor) j.getAdministrativeMonitor("OldData");
     }
@@ -107,18 +121,25 @@ public class OldDataMonitor extends AdministrativeMonitor {
     }
 
     private static void remove(Saveable obj, boolean isDelete) {
-        Jenkins j = Jenkins.getInstance();
-        OldDataMonitor odm = get(j);
-        SecurityContext oldContext = ACL.impersonate(ACL.SYSTEM);
-        try {
-            odm.data.remove(referTo(obj));
-            if (isDelete && obj instanceof Job<?, ?>) {
-                for (Run r : ((Job<?, ?>) obj).getBuilds()) {
-                    odm.data.remove(referTo(r));
+        if (!reported) {
+            // the usual case, as this runs on every save
+            return;
+        }
+        Jenkins j = Jenkins.getInstanceOrNull();
+        OldDataMonitor odm = j == null ? null : get(j);
+        if (odm == null || odm.data.isEmpty()) {
+            return;
+        }
+        odm.data.remove(referTo(obj));
+        if (isDelete && obj instanceof Job<?, ?>) {
+            // rather than loading all the builds to refer to them
+            String prefix = ((Job<?, ?>) obj).getFullName() + '#';
+            for (Iterator<SaveableReference> it = odm.data.keySet().iterator(); it.hasNext(); ) {
+                SaveableReference ref = it.next();
+                if (ref instanceof RunSaveableReference && ((RunSaveableReference) ref).id.startsWith(prefix)) {
+                    it.remove();
                 }
             }
-        } finally {
-            SecurityContextHolder.setContext(oldContext);
         }
     }
 
@@ -159,6 +180,7 @@ public class OldDataMonitor extends AdministrativeMonitor {
         OldDataMonitor odm = get(Jenkins.getInstance());
         try {
             SaveableReference ref = referTo(obj);
+            reported = true;
             while (true) {
                 VersionRange vr = odm.data.get(ref);
                 if (vr != null && odm.data.replace(ref, vr, new VersionRange(vr, version, null))) {
@@ -216,6 +238,7 @@ public class OldDataMonitor extends AdministrativeMonitor {
         }
         OldDataMonitor odm = get(j);
         SaveableReference ref = referTo(obj);
+        reported = true;
         while (true) {
             VersionRange vr = odm.data.get(ref);
             if (vr != null && odm.data.replace(ref, vr, new VersionRange(vr, null, buf.toString()))) {
@@ -309,23 +332,115 @@ public class OldDataMonitor extends AdministrativeMonitor {
     /**
      * Save all or some of the files to persist data in the new forms.
      * Remove those items from the data map.
+     * The files are saved in the background by several threads, see {@link #getResave}.
      */
     @RequirePOST
     public HttpResponse doUpgrade(StaplerRequest req, StaplerResponse rsp) {
         final String thruVerParam = req.getParameter("thruVer");
         final VersionNumber thruVer = thruVerParam.equals("all") ? null : new VersionNumber(thruVerParam);
 
-        saveAndRemoveEntries(new Predicate<Map.Entry<SaveableReference, VersionRange>>() {
-            @Override
-            public boolean apply(Map.Entry<SaveableReference, VersionRange> entry) {
-                VersionNumber version = entry.getValue().max;
-                return version != null && (thruVer == null || !version.isNewerThan(thruVer));
+        synchronized (this) {
+            if (resave == null || resave.isFinished()) {
+                resave = new Resave(new Predicate<Map.Entry<SaveableReference, VersionRange>>() {
+                    @Override
+                    public boolean apply(Map.Entry<SaveableReference, VersionRange> entry) {
+                        VersionNumber version = entry.getValue().max;
+                        return version != null && (thruVer == null || !version.isNewerThan(thruVer));
+                    }
+                });
             }
-        });
+        }
 
         return HttpResponses.forwardToPreviousPage();
     }
 
+    /**
+     * The last background resave started by {@link #doUpgrade}, if any, to show its progress.
+     *
+     * @since TODO
+     */
+    public @CheckForNull Resave getResave() {
+        return resave;
+    }
+
+    /**
+     * Saves the matching files in the background, spread over several threads,
+     * and counts how many are done.
+     *
+     * @since TODO
+     */
+    public final class Resave {
+        private final int total;
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        private Resave(Predicate<Map.Entry<SaveableReference, VersionRange>> matchingPredicate) {
+            List<SaveableReference> matching = new ArrayList<SaveableReference>();
+            for (Map.Entry<SaveableReference,VersionRange> entry : data.entrySet()) {
+                if (matchingPredicate.apply(entry)) {
+                    matching.add(entry.getKey());
+                }
+            }
+            total = matching.size();
+            if (total == 0) {
+                return;
+            }
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(RESAVE_THREADS, total)),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "OldDataMonitor resave"));
+            for (final SaveableReference ref : matching) {
+                executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        // builds are looked up by name, which needs to see all the jobs
+                        SecurityContext oldContext = ACL.impersonate(ACL.SYSTEM);
+                        try {
+                            Saveable s = ref.get();
+                            if (s != null) {
+                                s.save();
+                            }
+                        } catch (Exception x) {
+                            failed.incrementAndGet();
+                            LOGGER.log(Level.WARNING, "failed to save " + ref, x);
+                        } finally {
+                            SecurityContextHolder.setContext(oldContext);
+                            // same race as in saveAndRemoveEntries
+                            data.remove(ref);
+                            if (done.incrementAndGet() == total) {
+                                executor.shutdown();
+                                LOGGER.log(Level.INFO, "Resaved {0} files with old data, {1} failed", new Object[] {total, failed.get()});
+                            }
+                        }
+                    }
+                });
+            }
+        }
+
+        /**
+         * Number of files to save.
+         */
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * Number of files handled so far, whether saved or not.
+         */
+        public int getDone() {
+            return done.get();
+        }
+
+        /**
+         * Number of files that could not be saved.
+         */
+        public int getFailed() {
+            return failed.get();
+        }
+
+        public boolean isFinished() {
+            return done.get() == total;
+        }
+    }
+
     /**
      * Save all files containing only unreadable data (no data upgrades), which discards this data.
      * Remove those items from the data map.
@@ -384,10 +499,8 @@ public class OldDataMonitor extends AdministrativeMonitor {
 
     private static SaveableReference referTo(Saveable s) {
         if (s instanceof Run) {
-            Job parent = ((Run) s).getParent();
-            if (Jenkins.getInstance().getItemByFullName(parent.getFullName()) == parent) {
-                return new RunSaveableReference((Run) s);
-            }
+            // whether the build can be looked up again is only checked when it is needed
+            return new RunSaveableReference((Run) s);
         }
         return new SimpleSaveableReference(s);
     }
@@ -406,16 +519,28 @@ public class OldDataMonitor extends AdministrativeMonitor {
         @Override public boolean equals(Object obj) {
             return obj instanceof SimpleSaveableReference && instance.equals(((SimpleSaveableReference) obj).instance);
         }
+        @Override public String toString() {
+            return instance.toString();
+        }
     }
 
     // could easily make an ItemSaveableReference, but Jenkins holds all these strongly, so why bother
 
     private static final class RunSaveableReference implements SaveableReference {
         private final String id;
+        /**
+         * The build as reported, for as long as it is in memory, even if its job cannot be found by name.
+         */
+        private final WeakReference<Run<?,?>> run;
         RunSaveableReference(Run<?,?> r) {
             id = r.getExternalizableId();
+            run = new WeakReference<Run<?,?>>(r);
         }
         @Override public Saveable get() {
+            Run<?,?> r = run.get();
+            if (r != null) {
+                return r;
+            }
             try {
                 return Run.fromExternalizableId(id);
             } catch (IllegalArgumentException x) {
@@ -424,6 +549,9 @@ public class OldDataMonitor extends AdministrativeMonitor {
                 return null;
             }
         }
+        @Override public String toString() {
+            return id;
+        }
         @Override public int hashCode() {
             return id.hashCode();
         }
@@ -432,6 +560,12 @@ public class OldDataMonitor extends AdministrativeMonitor {
         }
     }
 
+    /**
+     * Number of threads resaving files for {@link #doUpgrade}.
+     */
+    private static final int RESAVE_THREADS = SystemProperties.getInteger(OldDataMonitor.class.getName() + ".resaveThreads",
+            Runtime.getRuntime().availableProcessors());
+
     @Extension @Symbol("oldData")
     public static class ManagementLinkImpl extends ManagementLink {
         @Override
@@ -77,6 +77,10 @@ public abstract class AbstractCIBase extends Node implements ItemGroup<TopLevelI
         l.reset();
     }
 
+    protected boolean labelListsNode(Label l, Node n) {
+        return l.listsNode(n);
+    }
+
     protected void setViewOwner(View v) {
         v.owner = this;
     }
@@ -172,6 +176,18 @@ public abstract class AbstractCIBase extends Node implements ItemGroup<TopLevelI
         });
     }
 
+    /**
+     * Finds the {@link Computer} of the node of the given name, even if the node is gone.
+     */
+    private @CheckForNull Computer getComputerNamed(String name) {
+        for (Computer c : getComputerMap().values()) {
+            if (c.getName().equals(name)) {
+                return c;
+            }
+        }
+        return null;
+    }
+
     /*package*/ @CheckForNull Computer getComputer(Node n) {
         Map<Node,Computer> computers = getComputerMap();
         return computers.get(n);
@@ -227,6 +243,54 @@ public abstract class AbstractCIBase extends Node implements ItemGroup<TopLevelI
             killComputer(c);
         }
         getQueue().scheduleMaintenance();
+        fireConfigurationChange();
+    }
+
+    /**
+     * Updates the {@link Computer} of a single node that was added or changed, like {@link #updateComputerList(boolean)}
+     * does for all of them, so that adding a node does not go through all the others.
+     *
+     * @since TODO
+     */
+    protected void updateComputerFor(final Node n, final boolean automaticSlaveLaunch) {
+        Queue.withLock(new Runnable() {
+            @Override
+            public void run() {
+                Computer c = getComputerNamed(n.getNodeName());
+                Map<String,Computer> byName = c == null ? Collections.<String,Computer>emptyMap() : Collections.singletonMap(n.getNodeName(), c);
+                updateComputer(n, byName, new HashSet<Computer>(), automaticSlaveLaunch);
+            }
+        });
+        getQueue().scheduleMaintenance();
+        fireConfigurationChange();
+    }
+
+    /**
+     * Kills the {@link Computer} of a single node that was removed, like {@link #updateComputerList(boolean)}
+     * does for all of those gone, so that removing a node does not go through all the others.
+     *
+     * @since TODO
+     */
+    protected void removeComputerFor(final Node n) {
+        final List<Computer> old = new ArrayList<>(1);
+        Queue.withLock(new Runnable() {
+            @Override
+            public void run() {
+                Computer c = getComputerNamed(n.getNodeName());
+                if (c != null && c.getNode() == null) {
+                    old.add(c);
+                    c.inflictMortalWound();
+                }
+            }
+        });
+        for (Computer c : old) {
+            killComputer(c);
+        }
+        getQueue().scheduleMaintenance();
+        fireConfigurationChange();
+    }
+
+    private void fireConfigurationChange() {
         for (ComputerListener cl : ComputerListener.all()) {
             try {
                 cl.onConfigurationChange();
@@ -54,6 +54,7 @@ import jenkins.model.DirectlyModifiableTopLevelItemGroup;
 import jenkins.model.Jenkins;
 import jenkins.model.queue.ItemDeletion;
 import jenkins.security.NotReallyRoleSensitiveCallable;
+import jenkins.util.io.WriteBehindQueue;
 import jenkins.util.xml.XMLUtils;
 
 import org.apache.tools.ant.taskdefs.Copy;
@@ -372,6 +373,7 @@ public abstract class AbstractItem extends Actionable implements Item, HttpDelet
                 Items.verifyItemDoesNotAlreadyExist(parent, newName, this);
 
                 File oldRoot = this.getRootDir();
+                WriteBehindQueue.awaitUnder(oldRoot);
 
                 doSetName(newName);
                 File newRoot = this.getRootDir();
@@ -789,6 +791,7 @@ public abstract class AbstractItem extends Actionable implements Item, HttpDelet
      */
     protected void performDelete() throws IOException, InterruptedException {
         getConfigFile().delete();
+        WriteBehindQueue.cancelUnder(getRootDir());
         Util.deleteRecursive(getRootDir());
     }
 
@@ -0,0 +1,518 @@
+package hudson.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable set of integers backing {@link Fingerprint.RangeSet}.
+ *
+ * <p>
+ * Numbers are grouped by their upper 16 bits into containers, each of which holds its lower 16 bits
+ * either as runs (a start and a length, two {@code char}s per run) or, when there are too many runs to be smaller,
+ * as a 65536-bit bitmap. A fingerprint used by a handful of scattered builds thus costs a few bytes per build
+ * rather than a {@link Fingerprint.Range} object each, and lookups are binary searches.
+ *
+ * <p>
+ * Set operations work on the flat sorted list of runs, given as an {@code int[]} of
+ * {@code start, end} pairs with exclusive ends, and build a new instance.
+ */
+final class CompactRanges {
+
+    static final CompactRanges EMPTY = new CompactRanges(new int[0], new Container[0]);
+
+    /**
+     * Sorted upper 16 bits of the numbers in each container.
+     */
+    private final int[] keys;
+    private final Container[] containers;
+
+    private CompactRanges(int[] keys, Container[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+    }
+
+    boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    boolean includes(int n) {
+        int i = Arrays.binarySearch(keys, n >> 16);
+        return i >= 0 && containers[i].includes(n & 0xFFFF);
+    }
+
+    /**
+     * Returns a set that also includes the given number, sharing all the untouched containers.
+     */
+    CompactRanges add(int n) {
+        int key = n >> 16;
+        int low = n & 0xFFFF;
+        int i = Arrays.binarySearch(keys, key);
+        if (i >= 0) {
+            Container c = containers[i].add(low);
+            if (c == containers[i])
+                return this;
+            Container[] cs = containers.clone();
+            cs[i] = c;
+            return new CompactRanges(keys, cs);
+        }
+        int at = -i - 1;
+        int[] ks = new int[keys.length + 1];
+        Container[] cs = new Container[containers.length + 1];
+        System.arraycopy(keys, 0, ks, 0, at);
+        System.arraycopy(containers, 0, cs, 0, at);
+        ks[at] = key;
+        cs[at] = new RunContainer(new char[] {(char) low, 0});
+        System.arraycopy(keys, at, ks, at + 1, keys.length - at);
+        System.arraycopy(containers, at, cs, at + 1, containers.length - at);
+        return new CompactRanges(ks, cs);
+    }
+
+    /**
+     * Receives runs as {@code start, end} pairs with exclusive ends.
+     */
+    interface RunVisitor {
+        void visit(int start, int end);
+    }
+
+    /**
+     * Passes the sorted, coalesced runs to the visitor, without building an array of them.
+     */
+    void forEachRun(RunVisitor visitor) {
+        Coalescer c = new Coalescer(visitor);
+        for (int i = 0; i < keys.length; i++)
+            containers[i].runs(keys[i] << 16, c);
+        c.flush();
+    }
+
+    /**
+     * Gets the sorted, coalesced runs.
+     */
+    int[] runs() {
+        final IntList out = new IntList(containers.length * 2);
+        forEachRun(new RunVisitor() {
+            @Override
+            public void visit(int start, int end) {
+                out.add(start);
+                out.add(end);
+            }
+        });
+        return out.toArray();
+    }
+
+    /**
+     * The smallest number in this set, which must not be empty.
+     */
+    int min() {
+        return (keys[0] << 16) + containers[0].first();
+    }
+
+    /**
+     * The end of the last run, exclusive, which is one past the largest number in this set, which must not be empty.
+     */
+    int end() {
+        int last = keys.length - 1;
+        return (keys[last] << 16) + containers[last].last() + 1;
+    }
+
+    /**
+     * Builds a set from sorted runs that do not overlap.
+     */
+    static CompactRanges of(int[] runs) {
+        if (runs.length == 0)
+            return EMPTY;
+        IntList ks = new IntList(4);
+        List<Container> cs = new ArrayList<>();
+        CharList current = new CharList();
+        int currentKey = runs[0] >> 16;
+        for (int i = 0; i < runs.length; i += 2) {
+            int start = runs[i];
+            int end = runs[i + 1];
+            while (start < end) {
+                int key = start >> 16;
+                if (key != currentKey) {
+                    if (current.size > 0) {
+                        ks.add(currentKey);
+                        cs.add(Container.of(current));
+                        current = new CharList();
+                    }
+                    currentKey = key;
+                }
+                // split the run at the container boundary
+                long boundary = ((long) key + 1) << 16;
+                int stop = boundary < end ? (int) boundary : end;
+                current.add((char) (start & 0xFFFF));
+                current.add((char) (stop - start - 1));
+                start = stop;
+            }
+        }
+        if (current.size > 0) {
+            ks.add(currentKey);
+            cs.add(Container.of(current));
+        }
+        return new CompactRanges(ks.toArray(), cs.toArray(new Container[0]));
+    }
+
+    /**
+     * Sorts and coalesces arbitrary runs.
+     */
+    static int[] normalize(int[] runs) {
+        int n = runs.length / 2;
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++)
+            packed[i] = ((long) runs[i * 2] << 32) | (runs[i * 2 + 1] & 0xFFFFFFFFL);
+        Arrays.sort(packed);
+        IntList out = new IntList(runs.length);
+        for (long p : packed) {
+            int start = (int) (p >> 32);
+            int end = (int) p;
+            if (start < end)
+                out.addRun(start, end);
+        }
+        return out.toArray();
+    }
+
+    static int[] union(int[] a, int[] b) {
+        IntList out = new IntList(a.length + b.length);
+        int i = 0, j = 0;
+        while (i < a.length || j < b.length) {
+            if (j >= b.length || (i < a.length && a[i] <= b[j])) {
+                out.addRun(a[i], a[i + 1]);
+                i += 2;
+            } else {
+                out.addRun(b[j], b[j + 1]);
+                j += 2;
+            }
+        }
+        return out.toArray();
+    }
+
+    static int[] intersect(int[] a, int[] b) {
+        IntList out = new IntList(Math.min(a.length, b.length));
+        int i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            int start = Math.max(a[i], b[j]);
+            int end = Math.min(a[i + 1], b[j + 1]);
+            if (start < end)
+                out.addRun(start, end);
+            if (a[i + 1] < b[j + 1])
+                i += 2;
+            else
+                j += 2;
+        }
+        return out.toArray();
+    }
+
+    static int[] subtract(int[] a, int[] b) {
+        IntList out = new IntList(a.length);
+        int j = 0;
+        for (int i = 0; i < a.length; i += 2) {
+            int start = a[i];
+            int end = a[i + 1];
+            while (j < b.length && b[j + 1] <= start)
+                j += 2;
+            int k = j;
+            while (k < b.length && b[k] < end) {
+                if (start < b[k])
+                    out.addRun(start, b[k]);
+                start = Math.max(start, b[k + 1]);
+                if (b[k + 1] >= end)
+                    break;
+                k += 2;
+            }
+            if (start < end)
+                out.addRun(start, end);
+        }
+        return out.toArray();
+    }
+
+    /**
+     * Numbers sharing their upper 16 bits.
+     */
+    private static abstract class Container {
+        /**
+         * Past this many runs, a bitmap takes less memory.
+         */
+        static final int MAX_RUNS = 2048;
+
+        abstract boolean includes(int low);
+
+        abstract Container add(int low);
+
+        /**
+         * Appends the runs of this container, offset by the given base.
+         */
+        abstract void runs(int base, Coalescer out);
+
+        abstract int first();
+
+        abstract int last();
+
+        static Container of(CharList runs) {
+            if (runs.size / 2 <= MAX_RUNS)
+                return new RunContainer(Arrays.copyOf(runs.data, runs.size));
+            long[] bits = new long[1024];
+            for (int i = 0; i < runs.size; i += 2)
+                BitmapContainer.set(bits, runs.data[i], runs.data[i] + runs.data[i + 1] + 1);
+            return new BitmapContainer(bits);
+        }
+    }
+
+    /**
+     * Runs as pairs of start and length minus one.
+     */
+    private static final class RunContainer extends Container {
+        private final char[] runs;
+
+        RunContainer(char[] runs) {
+            this.runs = runs;
+        }
+
+        /**
+         * Index of the last run starting at or before {@code low}, or -1.
+         */
+        private int find(int low) {
+            int lo = 0, hi = runs.length / 2 - 1;
+            int found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (runs[mid * 2] <= low) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        @Override
+        boolean includes(int low) {
+            int r = find(low);
+            return r >= 0 && low <= runs[r * 2] + runs[r * 2 + 1];
+        }
+
+        @Override
+        Container add(int low) {
+            int r = find(low);
+            int n = runs.length / 2;
+            boolean extendsPrev = r >= 0 && low == runs[r * 2] + runs[r * 2 + 1] + 1;
+            boolean extendsNext = r + 1 < n && low + 1 == runs[(r + 1) * 2];
+            if (r >= 0 && low <= runs[r * 2] + runs[r * 2 + 1])
+                return this;
+            char[] rs;
+            if (extendsPrev && extendsNext) {
+                // join the two runs
+                rs = new char[runs.length - 2];
+                System.arraycopy(runs, 0, rs, 0, (r + 1) * 2);
+                rs[r * 2 + 1] = (char) (runs[(r + 1) * 2] + runs[(r + 1) * 2 + 1] - runs[r * 2]);
+                System.arraycopy(runs, (r + 2) * 2, rs, (r + 1) * 2, runs.length - (r + 2) * 2);
+            } else if (extendsPrev) {
+                rs = runs.clone();
+                rs[r * 2 + 1]++;
+            } else if (extendsNext) {
+                rs = runs.clone();
+                rs[(r + 1) * 2] = (char) low;
+                rs[(r + 1) * 2 + 1]++;
+            } else {
+                if (n >= MAX_RUNS)
+                    return toBitmap().add(low);
+                rs = new char[runs.length + 2];
+                int at = (r + 1) * 2;
+                System.arraycopy(runs, 0, rs, 0, at);
+                rs[at] = (char) low;
+                rs[at + 1] = 0;
+                System.arraycopy(runs, at, rs, at + 2, runs.length - at);
+            }
+            return new RunContainer(rs);
+        }
+
+        private BitmapContainer toBitmap() {
+            long[] bits = new long[1024];
+            for (int i = 0; i < runs.length; i += 2)
+                BitmapContainer.set(bits, runs[i], runs[i] + runs[i + 1] + 1);
+            return new BitmapContainer(bits);
+        }
+
+        @Override
+        void runs(int base, Coalescer out) {
+            for (int i = 0; i < runs.length; i += 2) {
+                int start = base + runs[i];
+                out.addRun(start, start + runs[i + 1] + 1);
+            }
+        }
+
+        @Override
+        int first() {
+            return runs[0];
+        }
+
+        @Override
+        int last() {
+            return runs[runs.length - 2] + runs[runs.length - 1];
+        }
+    }
+
+    /**
+     * One bit per number.
+     */
+    private static final class BitmapContainer extends Container {
+        private final long[] bits;
+
+        BitmapContainer(long[] bits) {
+            this.bits = bits;
+        }
+
+        /**
+         * Sets the bits in {@code [start,end)}.
+         */
+        static void set(long[] bits, int start, int end) {
+            for (int i = start; i < end; ) {
+                int word = i >>> 6;
+                int from = i & 63;
+                int to = Math.min(64, from + (end - i));
+                long mask = to == 64 ? -1L << from : ((1L << to) - 1) & (-1L << from);
+                bits[word] |= mask;
+                i += to - from;
+            }
+        }
+
+        @Override
+        boolean includes(int low) {
+            return (bits[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        Container add(int low) {
+            if (includes(low))
+                return this;
+            long[] b = bits.clone();
+            b[low >>> 6] |= 1L << low;
+            return new BitmapContainer(b);
+        }
+
+        @Override
+        void runs(int base, Coalescer out) {
+            int i = nextSet(0);
+            while (i >= 0) {
+                int end = nextClear(i);
+                out.addRun(base + i, base + end);
+                i = end < 65536 ? nextSet(end) : -1;
+            }
+        }
+
+        @Override
+        int first() {
+            return nextSet(0);
+        }
+
+        @Override
+        int last() {
+            for (int w = bits.length - 1; ; w--) {
+                if (bits[w] != 0)
+                    return w * 64 + 63 - Long.numberOfLeadingZeros(bits[w]);
+            }
+        }
+
+        private int nextSet(int from) {
+            int w = from >>> 6;
+            if (w >= bits.length)
+                return -1;
+            long word = bits[w] & (-1L << from);
+            while (true) {
+                if (word != 0)
+                    return w * 64 + Long.numberOfTrailingZeros(word);
+                if (++w == bits.length)
+                    return -1;
+                word = bits[w];
+            }
+        }
+
+        private int nextClear(int from) {
+            int w = from >>> 6;
+            long word = ~bits[w] & (-1L << from);
+            while (true) {
+                if (word != 0)
+                    return w * 64 + Long.numberOfTrailingZeros(word);
+                if (++w == bits.length)
+                    return 65536;
+                word = ~bits[w];
+            }
+        }
+    }
+
+    /**
+     * Growable list of run bounds that coalesces overlapping and adjacent runs as they are appended in order.
+     */
+    private static final class IntList {
+        int[] data;
+        int size;
+
+        IntList(int capacity) {
+            data = new int[Math.max(4, capacity)];
+        }
+
+        void add(int v) {
+            if (size == data.length)
+                data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        void addRun(int start, int end) {
+            if (size > 0 && start <= data[size - 1]) {
+                if (end > data[size - 1])
+                    data[size - 1] = end;
+                return;
+            }
+            add(start);
+            add(end);
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /**
+     * Joins the runs that meet at a container boundary before passing them on.
+     */
+    private static final class Coalescer {
+        private final RunVisitor visitor;
+        private int start, end;
+        private boolean pending;
+
+        Coalescer(RunVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+        void addRun(int start, int end) {
+            if (pending && start <= this.end) {
+                if (end > this.end)
+                    this.end = end;
+                return;
+            }
+            flush();
+            this.start = start;
+            this.end = end;
+            pending = true;
+        }
+
+        void flush() {
+            if (pending) {
+                pending = false;
+                visitor.visit(start, end);
+            }
+        }
+    }
+
+    private static final class CharList {
+        char[] data = new char[8];
+        int size;
+
+        void add(char c) {
+            if (size == data.length)
+                data = Arrays.copyOf(data, size * 2);
+            data[size++] = c;
+        }
+    }
+}
@@ -47,18 +47,27 @@ import hudson.util.PersistedList;
 import hudson.util.RunList;
 import hudson.util.XStream2;
 import java.io.EOFException;
+import jenkins.fingerprints.FileFingerprintStorage;
+import jenkins.fingerprints.FingerprintJobIndex;
+import jenkins.fingerprints.FingerprintSaveQueue;
+import jenkins.fingerprints.FingerprintStorage;
 import jenkins.model.FingerprintFacet;
 import jenkins.model.Jenkins;
 import jenkins.model.TransientFingerprintFacetFactory;
 import org.apache.commons.lang.StringUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -68,6 +77,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -342,23 +352,73 @@ public class Fingerprint implements ModelObject, Saveable {
 
     /**
      * Set of {@link Range}s. Mutable.
+     *
+     * <p>
+     * The numbers are kept in a {@link CompactRanges}, which is replaced as a whole on every change,
+     * so reads need no lock and modifications are serialized.
      */
     @ExportedBean(defaultVisibility=3)
     public static final class RangeSet {
-        // sorted
-        private final List<Range> ranges;
+        private volatile CompactRanges set;
+
+        /**
+         * Ranges in the order they were given to {@link #fromString(String, boolean)}, as {@code start, end} pairs,
+         * until this set is next modified. Null otherwise.
+         */
+        private volatile int[] parsed;
 
         public RangeSet() {
-            this(new ArrayList<Range>());
+            this.set = CompactRanges.EMPTY;
         }
 
         private RangeSet(List<Range> data) {
-            this.ranges = data;
+            int[] runs = new int[data.size()*2];
+            for (int i=0; i<data.size(); i++) {
+                runs[i*2] = data.get(i).start;
+                runs[i*2+1] = data.get(i).end;
+            }
+            this.set = CompactRanges.of(CompactRanges.normalize(runs));
         }
 
         private RangeSet(Range initial) {
-            this();
-            ranges.add(initial);
+            this.set = CompactRanges.of(new int[] {initial.start, initial.end});
+        }
+
+        private RangeSet(int[] runs) {
+            this.set = CompactRanges.of(runs);
+        }
+
+        /**
+         * Sorted runs, or the ranges as parsed.
+         */
+        private int[] view() {
+            int[] p = parsed;
+            return p != null ? p : set.runs();
+        }
+
+        /**
+         * Visits the sorted runs, or the ranges as parsed, without building an array of the former.
+         */
+        private void forEachRun(CompactRanges.RunVisitor visitor) {
+            int[] p = parsed;
+            if (p == null) {
+                set.forEachRun(visitor);
+                return;
+            }
+            for (int i=0; i<p.length; i+=2)
+                visitor.visit(p[i], p[i+1]);
+        }
+
+        /**
+         * Sorted runs.
+         */
+        private int[] runs() {
+            return set.runs();
+        }
+
+        private void replace(int[] runs) {
+            parsed = null;
+            set = CompactRanges.of(runs);
         }
 
         /**
@@ -377,25 +437,6 @@ public class Fingerprint implements ModelObject, Saveable {
             };
         }
 
-//        /**
-//         * List up builds.
-//         */
-//        public <J extends Job<J,R>,R extends Run<J,R>>  Iterable<R> listBuilds(final J job) {
-//            return new Iterable<R>() {
-//                public Iterator<R> iterator() {
-//                    return new Iterators.FilterIterator<R>(new AdaptedIterator<Integer,R>(listNumbers().iterator()) {
-//                        protected R adapt(Integer n) {
-//                            return job.getBuildByNumber(n);
-//                        }
-//                    }) {
-//                        protected boolean filter(R r) {
-//                            return r!=null;
-//                        }
-//                    };
-//                }
-//            };
-//        }
-
         /**
          * List all numbers in this range set in the descending order.
          */
@@ -416,8 +457,14 @@ public class Fingerprint implements ModelObject, Saveable {
          * Gets all the ranges.
          */
         @Exported
-        public synchronized List<Range> getRanges() {
-            return new ArrayList<Range>(ranges);
+        public List<Range> getRanges() {
+            final List<Range> r = new ArrayList<Range>();
+            forEachRun(new CompactRanges.RunVisitor() {
+                public void visit(int start, int end) {
+                    r.add(new Range(start,end));
+                }
+            });
+            return r;
         }
 
         /**
@@ -425,27 +472,9 @@ public class Fingerprint implements ModelObject, Saveable {
          * If the set already includes this number, this will be a no-op.
          */
         public synchronized void add(int n) {
-            for( int i=0; i<ranges.size(); i++ ) {
-                Range r = ranges.get(i);
-                if(r.includes(n))   return; // already included
-                if(r.end==n) {
-                    ranges.set(i,r.expandRight());
-                    checkCollapse(i);
-                    return;
-                }
-                if(r.start==n+1) {
-                    ranges.set(i,r.expandLeft());
-                    checkCollapse(i-1);
-                    return;
-                }
-                if(r.isBiggerThan(n)) {
-                    // needs to insert a single-value Range
-                    ranges.add(i,new Range(n,n+1));
-                    return;
-                }
-            }
-
-            ranges.add(new Range(n,n+1));
+            if (parsed != null)
+                replace(runs());
+            set = set.add(n);
         }
 
         public synchronized void addAll(int... n) {
@@ -453,60 +482,12 @@ public class Fingerprint implements ModelObject, Saveable {
                 add(i);
         }
 
-
-        private void checkCollapse(int i) {
-            if(i<0 || i==ranges.size()-1)     return;
-            Range lhs = ranges.get(i);
-            Range rhs = ranges.get(i+1);
-            if(lhs.isAdjacentTo(rhs)) {
-                // collapsed
-                Range r = new Range(lhs.start,rhs.end);
-                ranges.set(i,r);
-                ranges.remove(i+1);
-            }
-        }
-
-        public synchronized boolean includes(int i) {
-            for (Range r : ranges) {
-                if(r.includes(i))
-                    return true;
-            }
-            return false;
+        public boolean includes(int i) {
+            return set.includes(i);
         }
 
         public synchronized void add(RangeSet that) {
-            int lhs=0,rhs=0;
-            while(lhs<this.ranges.size() && rhs<that.ranges.size()) {
-                Range lr = this.ranges.get(lhs);
-                Range rr = that.ranges.get(rhs);
-
-                // no overlap
-                if(lr.end<rr.start) {
-                    lhs++;
-                    continue;
-                }
-                if(rr.end<lr.start) {
-                    ranges.add(lhs,rr);
-                    lhs++;
-                    rhs++;
-                    continue;
-                }
-
-                // overlap. merge two
-                Range m = lr.combine(rr);
-                rhs++;
-
-                // since ranges[lhs] is expanded, it might overlap with others in this.ranges
-                while(lhs+1<this.ranges.size() && !m.isIndependent(this.ranges.get(lhs+1))) {
-                    m = m.combine(this.ranges.get(lhs+1));
-                    this.ranges.remove(lhs+1);
-                }
-
-                this.ranges.set(lhs,m);
-            }
-
-            // if anything is left in that.ranges, add them all
-            this.ranges.addAll(that.ranges.subList(rhs,that.ranges.size()));
+            replace(CompactRanges.union(this.runs(), that.runs()));
         }
 
         /**
@@ -515,43 +496,12 @@ public class Fingerprint implements ModelObject, Saveable {
          * @return true if this range set was modified as a result.
          */
         public synchronized boolean retainAll(RangeSet that) {
-            List<Range> intersection = new ArrayList<Range>();
-
-            int lhs=0,rhs=0;
-            while(lhs<this.ranges.size() && rhs<that.ranges.size()) {
-                Range lr = this.ranges.get(lhs);
-                Range rr = that.ranges.get(rhs);
-
-                if(lr.end<=rr.start) {// lr has no overlap with that.ranges
-                    lhs++;
-                    continue;
-                }
-                if(rr.end<=lr.start) {// rr has no overlap with this.ranges
-                    rhs++;
-                    continue;
-                }
-
-                // overlap. figure out the intersection
-                Range v = lr.intersect(rr);
-                intersection.add(v);
-
-                // move on to the next pair
-                if (lr.end<rr.end) {
-                    lhs++;
-                } else {
-                    rhs++;
-                }
-            }
-
-            boolean same = this.ranges.equals(intersection);
-
-            if (!same) {
-                this.ranges.clear();
-                this.ranges.addAll(intersection);
-                return true;
-            } else {
-                return false;
-            }
+            int[] before = this.runs();
+            int[] intersection = CompactRanges.intersect(before, that.runs());
+            if (Arrays.equals(before, intersection))
+                return false;   // no changes
+            replace(intersection);
+            return true;
         }
 
         /**
@@ -560,77 +510,23 @@ public class Fingerprint implements ModelObject, Saveable {
          * @return true if this range set was modified as a result.
          */
         public synchronized boolean removeAll(RangeSet that) {
-            boolean modified = false;
-            List<Range> sub = new ArrayList<Range>();
-
-            int lhs=0,rhs=0;
-            while(lhs<this.ranges.size() && rhs<that.ranges.size()) {
-                Range lr = this.ranges.get(lhs);
-                Range rr = that.ranges.get(rhs);
-
-                if(lr.end<=rr.start) {// lr has no overlap with that.ranges. lr stays
-                    sub.add(lr);
-                    lhs++;
-                    continue;
-                }
-                if(rr.end<=lr.start) {// rr has no overlap with this.ranges
-                    rhs++;
-                    continue;
-                }
-
-                // some overlap between lr and rr
-                assert !lr.isDisjoint(rr);
-                modified = true;
-
-                if (rr.contains(lr)) {
-                    // lr completely removed by rr
-                    lhs++;
-                    continue;
-                }
-
-                // we want to look at A and B below, if they are non-null.
-                // |------------| lr
-                //     |-----|    rr
-                //   A         B
-                //
-                // note that lr and rr could be something like or the other way around
-                // |------------| lr
-                //         |------------| rr
-                //     A             (no B)
-
-                if (lr.start<rr.start) {// if A is non-empty, that will stay
-                    Range a = new Range(lr.start, rr.start);
-                    sub.add(a);
-                }
-
-                if (rr.end<lr.end) {// if B is non-empty
-                    // we still need to check that with that.ranges, so keep it in the place of lr.
-                    // how much of them will eventually stay is up to the remainder of that.ranges
-                    this.ranges.set(lhs,new Range(rr.end,lr.end));
-                    rhs++;
-                } else {
-                    // if B is empty, we are done considering lr
-                    lhs++;
-                }
-            }
-
-            if (!modified)  return false;   // no changes
-
-            // whatever that remains in lhs will survive
-            sub.addAll(this.ranges.subList(lhs,this.ranges.size()));
-
-            this.ranges.clear();
-            this.ranges.addAll(sub);
+            int[] before = this.runs();
+            int[] sub = CompactRanges.subtract(before, that.runs());
+            if (Arrays.equals(before, sub))
+                return false;   // no changes
+            replace(sub);
             return true;
         }
 
         @Override
-        public synchronized String toString() {
-            StringBuilder buf = new StringBuilder();
-            for (Range r : ranges) {
-                if(buf.length()>0)  buf.append(',');
-                buf.append(r);
-            }
+        public String toString() {
+            final StringBuilder buf = new StringBuilder();
+            forEachRun(new CompactRanges.RunVisitor() {
+                public void visit(int start, int end) {
+                    if(buf.length()>0)  buf.append(',');
+                    buf.append('[').append(start).append(',').append(end).append(')');
+                }
+            });
             return buf.toString();
         }
 
@@ -639,17 +535,24 @@ public class Fingerprint implements ModelObject, Saveable {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
 
-            return ranges.equals(((RangeSet) o).ranges);
+            return Arrays.equals(view(), ((RangeSet) o).view());
 
         }
 
         @Override
         public int hashCode() {
-            return ranges.hashCode();
+            // same as the List<Range> this class used to hold
+            final int[] h = {1};
+            forEachRun(new CompactRanges.RunVisitor() {
+                public void visit(int start, int end) {
+                    h[0] = 31*h[0] + (31*start + end);
+                }
+            });
+            return h[0];
         }
 
-        public synchronized boolean isEmpty() {
-            return ranges.isEmpty();
+        public boolean isEmpty() {
+            return set.isEmpty();
         }
 
         /**
@@ -657,8 +560,11 @@ public class Fingerprint implements ModelObject, Saveable {
          * <p>
          * If this range is empty, this method throws an exception.
          */
-        public synchronized int min() {
-            return ranges.get(0).start;
+        public int min() {
+            int[] p = parsed;
+            if (p != null ? p.length==0 : set.isEmpty())
+                throw new IndexOutOfBoundsException("empty");
+            return p != null ? p[0] : set.min();
         }
 
         /**
@@ -666,8 +572,11 @@ public class Fingerprint implements ModelObject, Saveable {
          * <p>
          * If this range is empty, this method throws an exception.
          */
-        public synchronized int max() {
-            return ranges.get(ranges.size()-1).end;
+        public int max() {
+            int[] p = parsed;
+            if (p != null ? p.length==0 : set.isEmpty())
+                throw new IndexOutOfBoundsException("empty");
+            return p != null ? p[p.length-1] : set.end();
         }
 
         /**
@@ -677,10 +586,11 @@ public class Fingerprint implements ModelObject, Saveable {
          *
          * Note that {} is smaller than any n.
          */
-        public synchronized boolean isSmallerThan(int n) {
-            if(ranges.isEmpty())    return true;
-
-            return ranges.get(ranges.size() - 1).isSmallerThan(n);
+        public boolean isSmallerThan(int n) {
+            int[] p = parsed;
+            if (p != null)
+                return p.length==0 || p[p.length-1]<=n;
+            return set.isEmpty() || set.end()<=n;
         }
 
         /**
@@ -688,6 +598,7 @@ public class Fingerprint implements ModelObject, Saveable {
          */
         public static RangeSet fromString(String list, boolean skipError) {
             RangeSet rs = new RangeSet();
+            List<Range> ranges = new ArrayList<Range>();
 
             // Reject malformed ranges like "1---10", "1,,,,3" etc.
             if (list.contains("--") || list.contains(",,")) {
@@ -751,7 +662,7 @@ public class Fingerprint implements ModelObject, Saveable {
                                 // ignore inverse range like "10-5"
                                 continue;
                             }
-                            rs.ranges.add(new Range(left, right+1));
+                            ranges.add(new Range(left, right+1));
                         } else {
                             if (!skipError) {
                                 throw new IllegalArgumentException(
@@ -762,7 +673,7 @@ public class Fingerprint implements ModelObject, Saveable {
                         }
                     } else {
                         int n = Integer.parseInt(s);
-                        rs.ranges.add(new Range(n,n+1));
+                        ranges.add(new Range(n,n+1));
                     }
                 } catch (NumberFormatException e) {
                     if (!skipError)
@@ -771,6 +682,23 @@ public class Fingerprint implements ModelObject, Saveable {
                     // ignore malformed text
                 }
             }
+            return fromRanges(ranges);
+        }
+
+        /**
+         * Keeps the ranges in the given order for display, as this class always did.
+         */
+        private static RangeSet fromRanges(List<Range> ranges) {
+            RangeSet rs = new RangeSet(ranges);
+            if (!ranges.isEmpty()) {
+                int[] parsed = new int[ranges.size()*2];
+                for (int i=0; i<ranges.size(); i++) {
+                    parsed[i*2] = ranges.get(i).start;
+                    parsed[i*2+1] = ranges.get(i).end;
+                }
+                if (!Arrays.equals(parsed, rs.runs()))
+                    rs.parsed = parsed;
+            }
             return rs;
         }
 
@@ -791,13 +719,14 @@ public class Fingerprint implements ModelObject, Saveable {
             }
 
             static String serialize(RangeSet src) {
-                StringBuilder buf = new StringBuilder(src.ranges.size()*10);
-                for (Range r : src.ranges) {
+                int[] runs = src.view();
+                StringBuilder buf = new StringBuilder(runs.length*5);
+                for (int i=0; i<runs.length; i+=2) {
                     if(buf.length()>0)  buf.append(',');
-                    if(r.isSingle())
-                        buf.append(r.start);
+                    if(runs[i+1]-1==runs[i])
+                        buf.append(runs[i]);
                     else
-                        buf.append(r.start).append('-').append(r.end-1);
+                        buf.append(runs[i]).append('-').append(runs[i+1]-1);
                 }
                 return buf.toString();
             }
@@ -812,7 +741,8 @@ public class Fingerprint implements ModelObject, Saveable {
                      */
                     return new RangeSet((List<Range>)(collectionConv.unmarshal(reader,context)));
                 } else {
-                    return RangeSet.fromString(reader.getValue(),true);
+                    // no need to remember the order of the ranges as written
+                    return new RangeSet(RangeSet.fromString(reader.getValue(),true).runs());
                 }
             }
         }
@@ -828,6 +758,23 @@ public class Fingerprint implements ModelObject, Saveable {
         }
         private void locationChanged(Item item, String oldName, String newName) {
             if (item instanceof Job) {
+                FingerprintJobIndex index = FingerprintJobIndex.get();
+                Set<String> ids = index != null ? index.getFingerprints(oldName) : null;
+                if (index != null)
+                    index.rename(oldName, newName);
+                if (ids != null) {
+                    // only the fingerprints referring to the job
+                    for (String id : ids) {
+                        try {
+                            Fingerprint f = Jenkins.getInstance()._getFingerprint(id);
+                            if (f != null)
+                                f.rename(oldName, newName);
+                        } catch (IOException e) {
+                            logger.log(Level.WARNING, "Failed to update fingerprint record " + id + " when " + oldName + " was renamed to " + newName, e);
+                        }
+                    }
+                    return;
+                }
                 Job p = Jenkins.getInstance().getItemByFullName(newName, Job.class);
                 if (p != null) {
                     RunList<? extends Run> builds = p.getBuilds();
@@ -875,9 +822,18 @@ public class Fingerprint implements ModelObject, Saveable {
      */
     private transient volatile List<FingerprintFacet> transientFacets = null;
 
+    /**
+     * Creates a fingerprint, saved shortly after by {@link FingerprintSaveQueue}.
+     *
+     * @throws IOException only if {@link FingerprintSaveQueue} is disabled and saving fails;
+     *      failures to save later are logged instead
+     */
     public Fingerprint(@CheckForNull Run build, @Nonnull String fileName, @Nonnull byte[] md5sum) throws IOException {
         this(build==null ? null : new BuildPtr(build), fileName, md5sum);
-        save();
+        FingerprintJobIndex index = FingerprintJobIndex.get();
+        if (index != null && original != null)
+            index.add(original.getName(), getHashString());
+        FingerprintSaveQueue.enqueue(this);
     }
 
     Fingerprint(@CheckForNull BuildPtr original, @Nonnull String fileName, @Nonnull byte[] md5sum) {
@@ -1023,10 +979,14 @@ public class Fingerprint implements ModelObject, Saveable {
 
     /**
      * Records that a build of a job has used this file.
+     * The fingerprint is saved shortly after, by {@link FingerprintSaveQueue}.
+     *
+     * @throws IOException only if {@link FingerprintSaveQueue} is disabled and saving fails;
+     *      failures to save later are logged instead
      */
     public synchronized void add(@Nonnull String jobFullName, int n) throws IOException {
         addWithoutSaving(jobFullName, n);
-        save();
+        FingerprintSaveQueue.enqueue(this);
     }
 
     void addWithoutSaving(@Nonnull String jobFullName, int n) {
@@ -1038,6 +998,9 @@ public class Fingerprint implements ModelObject, Saveable {
             }
             r.add(n);
         }
+        FingerprintJobIndex index = FingerprintJobIndex.get();
+        if (index != null)
+            index.add(jobFullName, getHashString());
     }
 
     /**
@@ -1078,12 +1041,15 @@ public class Fingerprint implements ModelObject, Saveable {
      */
     public synchronized boolean trim() throws IOException {
         boolean modified = false;
+        FingerprintJobIndex index = FingerprintJobIndex.get();
 
         for (Entry<String,RangeSet> e : new Hashtable<String,RangeSet>(usages).entrySet()) {// copy because we mutate
             Job j = Jenkins.getInstance().getItemByFullName(e.getKey(),Job.class);
             if(j==null) {// no such job any more. recycle the record
                 modified = true;
                 usages.remove(e.getKey());
+                if (index != null)
+                    index.remove(e.getKey(), getHashString());
                 continue;
             }
 
@@ -1091,6 +1057,8 @@ public class Fingerprint implements ModelObject, Saveable {
             if(firstBuild==null) {// no builds. recycle the whole record
                 modified = true;
                 usages.remove(e.getKey());
+                if (index != null)
+                    index.remove(e.getKey(), getHashString());
                 continue;
             }
 
@@ -1118,13 +1086,15 @@ public class Fingerprint implements ModelObject, Saveable {
 
             if (cur.isEmpty()) {
                 usages.remove(e.getKey());
+                if (index != null)
+                    index.remove(e.getKey(), getHashString());
                 modified = true;
             }
         }
 
         if (modified) {
             if (logger.isLoggable(Level.FINE)) {
-                logger.log(Level.FINE, "Saving trimmed {0}", getFingerprintFile(md5sum));
+                logger.log(Level.FINE, "Saving trimmed {0}", getHashString());
             }
             save();
         }
@@ -1229,7 +1199,8 @@ public class Fingerprint implements ModelObject, Saveable {
     }
 
     /**
-     * Save the settings to a file.
+     * Save the settings to the {@link FingerprintStorage}.
+     * {@link SaveableListener}s are notified whatever the storage, with a null file if it does not keep XML files.
      * @throws IOException Save error
      */
     public synchronized void save() throws IOException {
@@ -1239,57 +1210,34 @@ public class Fingerprint implements ModelObject, Saveable {
         if(logger.isLoggable(Level.FINE))
             start = System.currentTimeMillis();
 
-        File file = getFingerprintFile(md5sum);
-        save(file);
-        SaveableListener.fireOnChange(this, getConfigFile(file));
+        FingerprintStorage storage = FingerprintStorage.get();
+        storage.save(this);
+        fireSaved(storage);
 
         if(logger.isLoggable(Level.FINE))
-            logger.fine("Saving fingerprint "+file+" took "+(System.currentTimeMillis()-start)+"ms");
+            logger.fine("Saving fingerprint "+getHashString()+" took "+(System.currentTimeMillis()-start)+"ms");
     }
 
-    void save(File file) throws IOException {
+    /**
+     * Notifies {@link SaveableListener}s that this fingerprint was saved to the given storage, as {@link #save()} does.
+     */
+    @Restricted(NoExternalUse.class)
+    public void fireSaved(@Nonnull FingerprintStorage storage) {
+        SaveableListener.fireOnChange(this, storage instanceof FileFingerprintStorage
+                ? getConfigFile(FileFingerprintStorage.getFingerprintFile(getHashString())) : null);
+    }
+
+    /**
+     * Saves this fingerprint as XML in the given file.
+     */
+    @Restricted(NoExternalUse.class)
+    public synchronized void save(File file) throws IOException {
         if (facets.isEmpty()) {
             file.getParentFile().mkdirs();
             // JENKINS-16301: fast path for the common case.
             AtomicFileWriter afw = new AtomicFileWriter(file);
             try {
-                PrintWriter w = new PrintWriter(afw);
-                w.println("<?xml version='1.1' encoding='UTF-8'?>");
-                w.println("<fingerprint>");
-                w.print("  <timestamp>");
-                w.print(DATE_CONVERTER.toString(timestamp));
-                w.println("</timestamp>");
-                if (original != null) {
-                    w.println("  <original>");
-                    w.print("    <name>");
-                    w.print(Util.xmlEscape(original.name));
-                    w.println("</name>");
-                    w.print("    <number>");
-                    w.print(original.number);
-                    w.println("</number>");
-                    w.println("  </original>");
-                }
-                w.print("  <md5sum>");
-                w.print(Util.toHexString(md5sum));
-                w.println("</md5sum>");
-                w.print("  <fileName>");
-                w.print(Util.xmlEscape(fileName));
-                w.println("</fileName>");
-                w.println("  <usages>");
-                for (Map.Entry<String,RangeSet> e : usages.entrySet()) {
-                    w.println("    <entry>");
-                    w.print("      <string>");
-                    w.print(Util.xmlEscape(e.getKey()));
-                    w.println("</string>");
-                    w.print("      <ranges>");
-                    w.print(RangeSet.ConverterImpl.serialize(e.getValue()));
-                    w.println("</ranges>");
-                    w.println("    </entry>");
-                }
-                w.println("  </usages>");
-                w.println("  <facets/>");
-                w.print("</fingerprint>");
-                w.flush();
+                writeXml(afw);
                 afw.commit();
             } finally {
                 afw.abort();
@@ -1300,6 +1248,59 @@ public class Fingerprint implements ModelObject, Saveable {
         }
     }
 
+    /**
+     * Writes this fingerprint as XML, in the same form as {@link #save(File)}.
+     */
+    @Restricted(NoExternalUse.class)
+    public synchronized void writeXml(@Nonnull Writer out) throws IOException {
+        if (facets.isEmpty()) {
+            PrintWriter w = new PrintWriter(out);
+            w.println("<?xml version='1.1' encoding='UTF-8'?>");
+            w.println("<fingerprint>");
+            w.print("  <timestamp>");
+            w.print(DATE_CONVERTER.toString(timestamp));
+            w.println("</timestamp>");
+            if (original != null) {
+                w.println("  <original>");
+                w.print("    <name>");
+                w.print(Util.xmlEscape(original.name));
+                w.println("</name>");
+                w.print("    <number>");
+                w.print(original.number);
+                w.println("</number>");
+                w.println("  </original>");
+            }
+            w.print("  <md5sum>");
+            w.print(Util.toHexString(md5sum));
+            w.println("</md5sum>");
+            w.print("  <fileName>");
+            w.print(Util.xmlEscape(fileName));
+            w.println("</fileName>");
+            w.println("  <usages>");
+            for (Map.Entry<String,RangeSet> e : usages.entrySet()) {
+                w.println("    <entry>");
+                w.print("      <string>");
+                w.print(Util.xmlEscape(e.getKey()));
+                w.println("</string>");
+                w.print("      <ranges>");
+                w.print(RangeSet.ConverterImpl.serialize(e.getValue()));
+                w.println("</ranges>");
+                w.println("    </entry>");
+            }
+            w.println("  </usages>");
+            w.println("  <facets/>");
+            w.print("</fingerprint>");
+            w.flush();
+        } else {
+            out.write("<?xml version='1.1' encoding='UTF-8'?>\n");
+            try {
+                XSTREAM.toXML(this, out);
+            } catch (RuntimeException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
     /**
      * Update references to a renamed job in the fingerprint
      */
@@ -1338,12 +1339,16 @@ public class Fingerprint implements ModelObject, Saveable {
     }
 
     /**
-     * Determines the file name from md5sum.
+     * Loads a {@link Fingerprint} from the {@link FingerprintStorage}.
+     * @return Loaded {@link Fingerprint}. Null if the config file does not exist or
+     * malformed.
      */
-    private static @Nonnull File getFingerprintFile(@Nonnull byte[] md5sum) {
-        assert md5sum.length==16;
-        return new File( Jenkins.getInstance().getRootDir(),
-            "fingerprints/"+ Util.toHexString(md5sum,0,1)+'/'+Util.toHexString(md5sum,1,1)+'/'+Util.toHexString(md5sum,2,md5sum.length-2)+".xml");
+    /*package*/ static @CheckForNull Fingerprint load(@Nonnull byte[] md5sum) throws IOException {
+        String id = Util.toHexString(md5sum);
+        Fingerprint pending = FingerprintSaveQueue.getPending(id);
+        if (pending != null)
+            return pending;
+        return FingerprintStorage.get().load(id);
     }
 
     /**
@@ -1351,10 +1356,8 @@ public class Fingerprint implements ModelObject, Saveable {
      * @return Loaded {@link Fingerprint}. Null if the config file does not exist or
      * malformed.
      */
-    /*package*/ static @CheckForNull Fingerprint load(@Nonnull byte[] md5sum) throws IOException {
-        return load(getFingerprintFile(md5sum));
-    }
-    /*package*/ static @CheckForNull Fingerprint load(@Nonnull File file) throws IOException {
+    @Restricted(NoExternalUse.class)
+    public static @CheckForNull Fingerprint load(@Nonnull File file) throws IOException {
         XmlFile configFile = getConfigFile(file);
         if(!configFile.exists())
             return null;
@@ -1364,18 +1367,9 @@ public class Fingerprint implements ModelObject, Saveable {
             start = System.currentTimeMillis();
 
         try {
-            Object loaded = configFile.read();
-            if (!(loaded instanceof Fingerprint)) {
-                throw new IOException("Unexpected Fingerprint type. Expected " + Fingerprint.class + " or subclass but got "
-                        + (loaded != null ? loaded.getClass() : "null"));
-            }
-            Fingerprint f = (Fingerprint) loaded;
+            Fingerprint f = loaded(configFile.read());
             if(logger.isLoggable(Level.FINE))
                 logger.fine("Loading fingerprint "+file+" took "+(System.currentTimeMillis()-start)+"ms");
-            if (f.facets==null)
-                f.facets = new PersistedList<FingerprintFacet>(f);
-            for (FingerprintFacet facet : f.facets)
-                facet._setOwner(f);
             return f;
         } catch (IOException e) {
             if(file.exists() && file.length()==0) {
@@ -1399,6 +1393,32 @@ public class Fingerprint implements ModelObject, Saveable {
             throw e;
         }
     }
+
+    /**
+     * Reads a {@link Fingerprint} written by {@link #writeXml(Writer)}.
+     */
+    @Restricted(NoExternalUse.class)
+    public static @Nonnull Fingerprint readXml(@Nonnull InputStream in) throws IOException {
+        try {
+            return loaded(XSTREAM.fromXML(in));
+        } catch (RuntimeException | Error e) {
+            throw new IOException("Unable to read fingerprint", e);
+        }
+    }
+
+    private static @Nonnull Fingerprint loaded(Object loaded) throws IOException {
+        if (!(loaded instanceof Fingerprint)) {
+            throw new IOException("Unexpected Fingerprint type. Expected " + Fingerprint.class + " or subclass but got "
+                    + (loaded != null ? loaded.getClass() : "null"));
+        }
+        Fingerprint f = (Fingerprint) loaded;
+        if (f.facets==null)
+            f.facets = new PersistedList<FingerprintFacet>(f);
+        for (FingerprintFacet facet : f.facets)
+            facet._setOwner(f);
+        return f;
+    }
+
     private static String messageOfParseException(Throwable t) {
         if (t instanceof XmlPullParserException || t instanceof EOFException) {
             return t.getMessage();
@@ -26,13 +26,43 @@ package hudson.model;
 import hudson.Extension;
 import hudson.ExtensionList;
 import hudson.Functions;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.util.AtomicFileWriter;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.fingerprints.FingerprintJobIndex;
+import jenkins.fingerprints.FingerprintSaveQueue;
+import jenkins.fingerprints.FingerprintStorage;
+import jenkins.fingerprints.GlobalFingerprintConfiguration;
 import jenkins.model.Jenkins;
 import org.jenkinsci.Symbol;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 /**
@@ -43,6 +73,13 @@ import java.util.regex.Pattern;
  * A {@link Fingerprint} is removed when none of the builds that
  * it point to is available in the records.
  *
+ * <p>
+ * The {@code fingerprints/xx/yy} directories are examined in order, in parallel if so configured.
+ * When {@link GlobalFingerprintConfiguration#getCleanupSliceSize()} is set, each run stops after about that many records
+ * and the next run resumes from there, as recorded in {@value #STATE_FILE_NAME}.
+ * Records that only refer to jobs from which no build was deleted since the previous pass started are skipped,
+ * since they cannot have become obsolete.
+ *
  * @author Kohsuke Kawaguchi
  */
 @Extension @Symbol("fingerprintCleanup")
@@ -50,6 +87,7 @@ import java.util.regex.Pattern;
 public class FingerprintCleanupThread extends AsyncPeriodicWork {
 
     static final String FINGERPRINTS_DIR_NAME = "fingerprints";
+    static final String STATE_FILE_NAME = "fingerprintCleanup.properties";
     private static final Pattern FINGERPRINT_FILE_PATTERN = Pattern.compile("[0-9a-f]{28}\\.xml");
 
     public FingerprintCleanupThread() {
@@ -57,7 +95,7 @@ public class FingerprintCleanupThread extends AsyncPeriodicWork {
     }
 
     public long getRecurrencePeriod() {
-        return DAY;
+        return getSliceSize() > 0 ? HOUR : DAY;
     }
 
     public static void invoke() {
@@ -69,26 +107,96 @@ public class FingerprintCleanupThread extends AsyncPeriodicWork {
     }
 
     public void execute(TaskListener listener) {
-        int numFiles = 0;
+        AtomicInteger numFiles = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        State state = loadState();
+        long now = System.currentTimeMillis();
+        if (state.cursor == null)
+            state.sweepStarted = now;
+        // records examined during the previous pass were examined after it started
+        long since = state.lastSweepStarted >= TRACKING_SINCE ? state.lastSweepStarted : -1;
+
+        int sliceSize = getSliceSize();
+        int threads = Math.max(1, getThreads());
+        ExecutorService pool = threads == 1 ? null : Executors.newFixedThreadPool(threads,
+                new NamingThreadFactory(new DaemonThreadFactory(), "FingerprintCleanupThread"));
+        List<Future<?>> tasks = new ArrayList<>();
+        Set<File> visited = new LinkedHashSet<>();
+        String next = null; // where to resume, or null if we got to the end
+        int listed = 0;
 
         File root = new File(getRootDir(), FINGERPRINTS_DIR_NAME);
-        File[] files1 = root.listFiles(f -> f.isDirectory() && f.getName().length()==2);
-        if(files1!=null) {
+        try {
+            File[] files1 = sorted(root.listFiles(f -> f.isDirectory() && f.getName().length()==2));
+            outer:
             for (File file1 : files1) {
-                File[] files2 = file1.listFiles(f -> f.isDirectory() && f.getName().length()==2);
-                for(File file2 : files2) {
-                    File[] files3 = file2.listFiles(f -> f.isFile() && FINGERPRINT_FILE_PATTERN.matcher(f.getName()).matches());
-                    for(File file3 : files3) {
-                        if(check(file3, listener))
-                            numFiles++;
+                File[] files2 = sorted(file1.listFiles(f -> f.isDirectory() && f.getName().length()==2));
+                for (File file2 : files2) {
+                    String position = file1.getName() + '/' + file2.getName();
+                    if (state.cursor != null && position.compareTo(state.cursor) < 0)
+                        continue;
+                    if (sliceSize > 0 && listed >= sliceSize) {
+                        next = position;
+                        break outer;
                     }
-                    deleteIfEmpty(file2);
+                    File[] files3 = file2.listFiles(f -> f.isFile() && FINGERPRINT_FILE_PATTERN.matcher(f.getName()).matches());
+                    if (files3 == null)
+                        continue;
+                    listed += files3.length;
+                    visited.add(file1);
+                    Runnable task = () -> {
+                        for (File file3 : files3) {
+                            if (check(file3, since, skipped, listener))
+                                numFiles.incrementAndGet();
+                        }
+                        deleteIfEmpty(file2);
+                    };
+                    if (pool == null)
+                        task.run();
+                    else
+                        tasks.add(pool.submit(task));
+                }
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    Functions.printStackTrace(e.getCause(), listener.error("Failed to clean up fingerprints"));
                 }
-                deleteIfEmpty(file1);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            listener.error("Interrupted");
+            return;
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
         }
+        for (File file1 : visited)
+            deleteIfEmpty(file1);
+
+        if (next == null) {
+            // end of the pass, also go through the storage if fingerprints are kept elsewhere
+            FingerprintStorage storage = getStorage();
+            if (storage != null)
+                numFiles.addAndGet(storage.cleanUp(listener));
+            state.lastSweepStarted = state.sweepStarted;
+        }
+        state.cursor = next;
+        saveState(state);
 
         listener.getLogger().println("Cleaned up "+numFiles+" records");
+        if (skipped.get() > 0)
+            listener.getLogger().println("Skipped " + skipped + " records whose jobs did not delete builds since they were last examined");
+        if (next != null)
+            listener.getLogger().println("Will resume from " + next);
+    }
+
+    private static File[] sorted(@CheckForNull File[] files) {
+        if (files == null)
+            return new File[0];
+        Arrays.sort(files);
+        return files;
     }
 
     /**
@@ -103,13 +211,36 @@ public class FingerprintCleanupThread extends AsyncPeriodicWork {
 
     /**
      * Examines the file and returns true if a file was deleted.
+     *
+     * @param since
+     *      When the record was last examined at the latest, or -1 if unknown.
      */
-    private boolean check(File fingerprintFile, TaskListener listener) {
+    private boolean check(File fingerprintFile, long since, AtomicInteger skipped, TaskListener listener) {
+        if (since >= 0 && lastAnyDeletion < since) {
+            // nothing was deleted at all, no need to even load the record
+            skipped.incrementAndGet();
+            return false;
+        }
         try {
             Fingerprint fp = loadFingerprint(fingerprintFile);
+            if (fp != null && since >= 0 && !hasDeletionsSince(fp, since)) {
+                skipped.incrementAndGet();
+                return false;
+            }
+            if (fp != null) {
+                // judge by the latest usages, which may not have been saved yet
+                Fingerprint pending = FingerprintSaveQueue.getPending(fp.getHashString());
+                if (pending != null)
+                    fp = pending;
+            }
             if (fp == null || !fp.isAlive()) {
                 listener.getLogger().println("deleting obsolete " + fingerprintFile);
+                if (fp != null)
+                    FingerprintSaveQueue.cancel(fp.getHashString());
                 fingerprintFile.delete();
+                FingerprintJobIndex index = fp != null ? FingerprintJobIndex.get() : null;
+                if (index != null)
+                    index.remove(fp);
                 return true;
             } else {
                 // get the fingerprint in the official map so have the changes visible to Jenkins
@@ -123,6 +254,22 @@ public class FingerprintCleanupThread extends AsyncPeriodicWork {
         }
     }
 
+    /**
+     * Whether a build was deleted from any job the fingerprint refers to since the given time.
+     */
+    private static boolean hasDeletionsSince(Fingerprint fp, long since) {
+        List<String> jobs = new ArrayList<>(fp.getJobs());
+        Fingerprint.BuildPtr original = fp.getOriginal();
+        if (original != null)
+            jobs.add(original.getName());
+        for (String job : jobs) {
+            Long deleted = LAST_DELETION.get(job);
+            if (deleted != null && deleted >= since)
+                return true;
+        }
+        return false;
+    }
+
     protected Fingerprint loadFingerprint(File fingerprintFile) throws IOException {
         return Fingerprint.load(fingerprintFile);
     }
@@ -135,4 +282,121 @@ public class FingerprintCleanupThread extends AsyncPeriodicWork {
         return Jenkins.get().getRootDir();
     }
 
+    /**
+     * Storage that may keep fingerprints other than the XML files cleaned up here.
+     */
+    protected @CheckForNull FingerprintStorage getStorage() {
+        return Jenkins.getInstanceOrNull() != null ? FingerprintStorage.get() : null;
+    }
+
+    protected int getThreads() {
+        return Jenkins.getInstanceOrNull() != null ? GlobalFingerprintConfiguration.get().getCleanupThreads() : 1;
+    }
+
+    protected int getSliceSize() {
+        return Jenkins.getInstanceOrNull() != null ? GlobalFingerprintConfiguration.get().getCleanupSliceSize() : 0;
+    }
+
+    /**
+     * Progress through the fingerprint directories.
+     */
+    private static final class State {
+        /**
+         * {@code xx/yy} directory to resume from, or null to start a new pass.
+         */
+        @CheckForNull String cursor;
+        /**
+         * When the current pass started.
+         */
+        long sweepStarted;
+        /**
+         * When the last completed pass started.
+         */
+        long lastSweepStarted;
+    }
+
+    private File getStateFile() {
+        return new File(getRootDir(), STATE_FILE_NAME);
+    }
+
+    private @Nonnull State loadState() {
+        State state = new State();
+        File file = getStateFile();
+        if (!file.isFile())
+            return state;
+        Properties props = new Properties();
+        try (InputStream is = Files.newInputStream(file.toPath())) {
+            props.load(is);
+            state.cursor = props.getProperty("cursor");
+            state.sweepStarted = Long.parseLong(props.getProperty("sweepStarted", "0"));
+            state.lastSweepStarted = Long.parseLong(props.getProperty("lastSweepStarted", "0"));
+        } catch (IOException | InvalidPathException | NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Failed to read " + file + ", starting over", e);
+            return new State();
+        }
+        return state;
+    }
+
+    private void saveState(@Nonnull State state) {
+        File file = getStateFile();
+        try {
+            AtomicFileWriter w = new AtomicFileWriter(file.toPath(), StandardCharsets.ISO_8859_1);
+            try {
+                Properties props = new Properties();
+                if (state.cursor != null)
+                    props.setProperty("cursor", state.cursor);
+                props.setProperty("sweepStarted", Long.toString(state.sweepStarted));
+                props.setProperty("lastSweepStarted", Long.toString(state.lastSweepStarted));
+                props.store(w, null);
+                w.commit();
+            } finally {
+                w.abort();
+            }
+        } catch (IOException | InvalidPathException e) {
+            LOGGER.log(Level.WARNING, "Failed to write " + file, e);
+        }
+    }
+
+    /**
+     * Since when deletions have been tracked. Anything deleted before, including while Jenkins was down, is unknown.
+     */
+    private static final long TRACKING_SINCE = System.currentTimeMillis();
+    private static volatile long lastAnyDeletion = TRACKING_SINCE;
+    /**
+     * Job full name to the last time a build of it was deleted, or it was deleted or renamed.
+     */
+    private static final ConcurrentMap<String,Long> LAST_DELETION = new ConcurrentHashMap<>();
+
+    private static void deleted(String fullName) {
+        long now = System.currentTimeMillis();
+        LAST_DELETION.put(fullName, now);
+        lastAnyDeletion = now;
+    }
+
+    @Extension
+    public static final class RunDeletionListener extends RunListener<Run<?,?>> {
+        @Override
+        public void onDeleted(Run<?,?> r) {
+            deleted(r.getParent().getFullName());
+        }
+    }
+
+    @Extension
+    public static final class ItemDeletionListener extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof Job)
+                deleted(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            if (item instanceof Job) {
+                deleted(oldFullName);
+                deleted(newFullName);
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintCleanupThread.class.getName());
 }
@@ -26,15 +26,21 @@ package hudson.model;
 import hudson.Util;
 import hudson.XmlFile;
 import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
 import hudson.security.AccessControlled;
 import hudson.util.CopyOnWriteMap;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.Function1;
+import hudson.util.NamingThreadFactory;
 import hudson.util.Secret;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import jenkins.util.xml.XMLUtils;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
+import javax.annotation.CheckForNull;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.transform.Source;
@@ -47,12 +53,25 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import jenkins.security.NotReallyRoleSensitiveCallable;
 import org.acegisecurity.AccessDeniedException;
+import org.acegisecurity.Authentication;
 import org.xml.sax.SAXException;
 
 /**
@@ -96,40 +115,154 @@ public abstract class ItemGroupMixIn {
     /**
      * Loads all the child {@link Item}s.
      *
+     * <p>
+     * Children are loaded by several threads when {@link Jenkins#PARALLEL_LOAD} is set,
+     * and the returned map is built at once rather than by adding them one by one.
+     *
      * @param modulesDir
      *      Directory that contains sub-directories for each child item.
      */
-    public static <K,V extends Item> Map<K,V> loadChildren(ItemGroup parent, File modulesDir, Function1<? extends K,? super V> key) {
+    public static <K,V extends Item> Map<K,V> loadChildren(final ItemGroup parent, File modulesDir, Function1<? extends K,? super V> key) {
         modulesDir.mkdirs(); // make sure it exists
 
-        File[] subdirs = modulesDir.listFiles(new FileFilter() {
+        final File[] subdirs = modulesDir.listFiles(new FileFilter() {
             public boolean accept(File child) {
                 return child.isDirectory();
             }
         });
-        CopyOnWriteMap.Tree<K,V> configurations = new CopyOnWriteMap.Tree<K,V>();
-        for (File subdir : subdirs) {
+        final Item[] items = new Item[subdirs.length];
+        forEachInParallel(subdirs.length, i -> items[i] = loadChild(parent, subdirs[i]));
+
+        Map<K,V> loaded = new TreeMap<K,V>();
+        for (int i = 0; i < subdirs.length; i++) {
+            V item = (V) items[i];
+            if (item == null)
+                continue;
             try {
-                // Try to retain the identity of an existing child object if we can.
-                V item = (V) parent.getItem(subdir.getName());
-                if (item == null) {
-                    XmlFile xmlFile = Items.getConfigFile(subdir);
-                    if (xmlFile.exists()) {
-                        item = (V) Items.load(parent, subdir);
-                    } else {
-                        Logger.getLogger(ItemGroupMixIn.class.getName()).log(Level.WARNING, "could not find file " + xmlFile.getFile());
-                        continue;
-                    }
+                loaded.put(key.call(item), item);
+            } catch (Exception e) {
+                Logger.getLogger(ItemGroupMixIn.class.getName()).log(Level.WARNING, "could not load " + subdirs[i], e);
+            }
+        }
+
+        // one copy rather than one per child
+        return new CopyOnWriteMap.Tree<K,V>(loaded, null);
+    }
+
+    private static @CheckForNull Item loadChild(ItemGroup parent, File subdir) {
+        try {
+            // Try to retain the identity of an existing child object if we can.
+            Item item = parent.getItem(subdir.getName());
+            if (item == null) {
+                XmlFile xmlFile = Items.getConfigFile(subdir);
+                if (xmlFile.exists()) {
+                    item = Items.load(parent, subdir);
                 } else {
-                    item.onLoad(parent, subdir.getName());
+                    Logger.getLogger(ItemGroupMixIn.class.getName()).log(Level.WARNING, "could not find file " + xmlFile.getFile());
+                    return null;
                 }
-                configurations.put(key.call(item), item);
-            } catch (Exception e) {
-                Logger.getLogger(ItemGroupMixIn.class.getName()).log(Level.WARNING, "could not load " + subdir, e);
+            } else {
+                item.onLoad(parent, subdir.getName());
             }
+            return item;
+        } catch (Exception e) {
+            Logger.getLogger(ItemGroupMixIn.class.getName()).log(Level.WARNING, "could not load " + subdir, e);
+            return null;
         }
+    }
 
-        return configurations;
+    /**
+     * Runs a task for each index, on the calling thread and on up to {@link #LOAD_THREADS} others.
+     *
+     * <p>
+     * Items loading their own children call this again from within a task, so the calling thread never waits
+     * for a helper that did not start yet: it does the work itself, and helpers starting late find nothing left.
+     * Helpers run with the authentication and context class loader of the caller.
+     */
+    /*package*/ static void forEachInParallel(final int n, final IntConsumer task) {
+        if (!Jenkins.PARALLEL_LOAD || LOAD_THREADS <= 1 || n <= 1) {
+            for (int i = 0; i < n; i++)
+                task.accept(i);
+            return;
+        }
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Runnable work = () -> {
+            int i;
+            while (failure.get() == null && (i = next.getAndIncrement()) < n) {
+                try {
+                    task.accept(i);
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+
+        final Authentication auth = Jenkins.getAuthentication();
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        int helpers = Math.min(LOAD_THREADS, n) - 1;
+        List<AtomicBoolean> claims = new ArrayList<>(helpers);
+        List<CountDownLatch> finished = new ArrayList<>(helpers);
+        for (int h = 0; h < helpers; h++) {
+            final AtomicBoolean claimed = new AtomicBoolean();
+            final CountDownLatch done = new CountDownLatch(1);
+            claims.add(claimed);
+            finished.add(done);
+            LOADER.execute(() -> {
+                if (!claimed.compareAndSet(false, true))
+                    return; // the caller finished without us
+                Thread t = Thread.currentThread();
+                ClassLoader orig = t.getContextClassLoader();
+                t.setContextClassLoader(contextClassLoader);
+                try (ACLContext ctx = ACL.as(auth)) {
+                    work.run();
+                } finally {
+                    t.setContextClassLoader(orig);
+                    done.countDown();
+                }
+            });
+        }
+
+        work.run();
+
+        boolean interrupted = false;
+        for (int h = 0; h < helpers; h++) {
+            if (claims.get(h).compareAndSet(false, true))
+                continue; // never started, and now never will
+            while (true) {
+                try {
+                    finished.get(h).await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+    }
+
+    /**
+     * Number of threads loading the children of one {@link ItemGroup}, including the calling thread.
+     */
+    private static final int LOAD_THREADS = SystemProperties.getInteger(ItemGroupMixIn.class.getName() + ".loadThreads",
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Shared by all the {@link ItemGroup}s loading their children, with threads that go away when idle.
+     */
+    private static final ExecutorService LOADER;
+    static {
+        ThreadPoolExecutor loader = new ThreadPoolExecutor(LOAD_THREADS, LOAD_THREADS, 10L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamingThreadFactory(new DaemonThreadFactory(), "ItemGroupMixIn.loadChildren"));
+        loader.allowCoreThreadTimeOut(true);
+        LOADER = loader;
     }
 
     /**
@@ -94,6 +94,7 @@ import jenkins.model.lazy.LazyBuildMixIn;
 import jenkins.scm.RunWithSCM;
 import jenkins.security.HexStringConfidentialKey;
 import jenkins.triggers.SCMTriggerItem;
+import jenkins.util.io.WriteBehindQueue;
 import net.sf.json.JSONException;
 import net.sf.json.JSONObject;
 import org.apache.commons.io.FileUtils;
@@ -650,6 +651,7 @@ public abstract class Job<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
     @Override
     public void renameTo(String newName) throws IOException {
         File oldBuildDir = getBuildDir();
+        WriteBehindQueue.awaitUnder(oldBuildDir);
         super.renameTo(newName);
         File newBuildDir = getBuildDir();
         if (oldBuildDir.isDirectory() && !newBuildDir.isDirectory()) {
@@ -666,6 +668,7 @@ public abstract class Job<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
     public void movedTo(DirectlyModifiableTopLevelItemGroup destination, AbstractItem newItem, File destDir) throws IOException {
         Job newJob = (Job) newItem; // Missing covariant parameters type here.
         File oldBuildDir = getBuildDir();
+        WriteBehindQueue.awaitUnder(oldBuildDir);
         super.movedTo(destination, newItem, destDir);
         File newBuildDir = getBuildDir();
         if (oldBuildDir.isDirectory()) {
@@ -675,6 +678,7 @@ public abstract class Job<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
 
     @Override public void delete() throws IOException, InterruptedException {
         super.delete();
+        WriteBehindQueue.cancelUnder(getBuildDir());
         Util.deleteRecursive(getBuildDir());
     }
 
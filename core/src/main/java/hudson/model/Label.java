@@ -462,6 +462,14 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
         tiedJobsCount = -1;
     }
 
+    /**
+     * Whether the nodes last computed by {@link #getNodes()} include the given one.
+     */
+    /*package*/ boolean listsNode(Node n) {
+        Set<Node> nodes = this.nodes;
+        return nodes != null && nodes.contains(n);
+    }
+
     /**
      * Expose this object to the remote API.
      */
@@ -39,11 +39,14 @@ import hudson.Functions;
 import hudson.console.AnnotatedLargeText;
 import hudson.console.ConsoleLogFilter;
 import hudson.console.ConsoleNote;
+import hudson.console.ConsoleLogBroadcaster;
+import hudson.console.ConsoleNoteIndex;
 import hudson.console.ModelHyperlinkNote;
 import hudson.console.PlainTextConsoleOutputStream;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.StandardOpenOption;
+import jenkins.util.StringInterner;
 import jenkins.util.SystemProperties;
 import hudson.Util;
 import hudson.XmlFile;
@@ -60,6 +63,8 @@ import hudson.security.PermissionGroup;
 import hudson.security.PermissionScope;
 import hudson.tasks.BuildWrapper;
 import hudson.tasks.Fingerprinter.FingerprintAction;
+import hudson.slaves.BatchedLogTransportAction;
+import hudson.util.BatchedRemoteOutputStream;
 import hudson.util.FormApply;
 import hudson.util.LogTaskListener;
 import hudson.util.ProcessTree;
@@ -75,6 +80,8 @@ import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -94,6 +101,8 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import static java.util.logging.Level.*;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 
@@ -116,6 +125,7 @@ import jenkins.model.lazy.LazyBuildMixIn;
 import jenkins.security.MasterToSlaveCallable;
 import jenkins.util.VirtualFile;
 import jenkins.util.io.OnMaster;
+import jenkins.util.io.WriteBehindQueue;
 import net.sf.json.JSONObject;
 import org.acegisecurity.AccessDeniedException;
 import org.acegisecurity.Authentication;
@@ -1580,6 +1590,7 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
         } // for StandardArtifactManager, deleting the whole build dir suffices
 
         synchronized (this) { // avoid holding a lock while calling plugin impls of onDeleted
+        WriteBehindQueue.cancelUnder(rootDir);
         File tmp = new File(rootDir.getParentFile(),'.'+rootDir.getName());
         
         if (tmp.exists()) {
@@ -1870,6 +1881,12 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
                     }
                     listener.finished(result);
                     listener.closeQuietly();
+
+                    BatchedRemoteOutputStream.Statistics remote = listener.getRemoteStatistics();
+                    if (remote != null) {
+                        LOGGER.log(INFO, "{0} received {1} of output from agents", new Object[] {this, remote});
+                        addAction(new BatchedLogTransportAction(remote));
+                    }
                 }
 
                 try {
@@ -1900,11 +1917,34 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
         // don't do buffering so that what's written to the listener
         // gets reflected to the file immediately, which can then be
         // served to the browser immediately
+        File logFile = getLogFile();
+        OutputStream os;
         try {
-            return Files.newOutputStream(getLogFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            os = Files.newOutputStream(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
         } catch (InvalidPathException e) {
             throw new IOException(e);
         }
+        File index = getLogNoteIndexFile();
+        long offset = logFile.length();
+        if (offset == 0) {
+            try {
+                return ConsoleNoteIndex.record(os, offset, index);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to record console note positions of " + this, e);
+            }
+        } else {
+            // we do not know where the notes are in what was written before
+            Files.deleteIfExists(index.toPath());
+        }
+        return os;
+    }
+
+    /**
+     * File that records where the console notes are in {@link #getLogFile()}.
+     * @see ConsoleNoteIndex
+     */
+    private @Nonnull File getLogNoteIndexFile() {
+        return new File(getRootDir(), "log-notes.index");
     }
 
     private StreamBuildListener createBuildListener(@Nonnull RunExecution job, OutputStream logger, Charset charset) throws IOException, InterruptedException {
@@ -2233,6 +2273,16 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
      */
     public void doConsoleText(StaplerRequest req, StaplerResponse rsp) throws IOException {
         rsp.setContentType("text/plain;charset=UTF-8");
+        if (!isLogUpdated()) {
+            File logFile = getLogFile();
+            if (logFile.isFile() && !logFile.getName().endsWith(".gz")) {
+                ConsoleNoteIndex index = ConsoleNoteIndex.load(getLogNoteIndexFile(), logFile.length());
+                if (index != null) {
+                    serveConsoleText(req, rsp, logFile, index);
+                    return;
+                }
+            }
+        }
         try (InputStream input = getLogInputStream();
              OutputStream os = rsp.getCompressedOutputStream(req);
              PlainTextConsoleOutputStream out = new PlainTextConsoleOutputStream(os)) {
@@ -2240,6 +2290,79 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
         }
     }
 
+    /**
+     * Serves the plain text of a completed log straight from the file, skipping the notes by their recorded positions.
+     * A single byte range of the plain text can be requested; invalid ranges are ignored,
+     * while valid ones starting past the end get a 416 as per RFC 7233.
+     */
+    private void serveConsoleText(StaplerRequest req, StaplerResponse rsp, File logFile, ConsoleNoteIndex index) throws IOException {
+        long total = index.getPlainLength();
+        long from = 0, to = total;
+        boolean partial = false;
+
+        String range = req.getHeader("Range");
+        if (range != null && range.startsWith("bytes=") && range.indexOf(',') < 0) { // multiple ranges are not supported, send everything
+            Matcher m = BYTE_RANGE.matcher(range.substring("bytes=".length()).trim());
+            boolean satisfiable = false;
+            try {
+                if (m.matches() && m.group(1).isEmpty() && !m.group(2).isEmpty()) {
+                    long suffix = Long.parseLong(m.group(2));
+                    from = Math.max(0, total - suffix);
+                    partial = true;
+                    satisfiable = suffix > 0 && total > 0;
+                } else if (m.matches() && !m.group(1).isEmpty()) {
+                    long first = Long.parseLong(m.group(1));
+                    long last = m.group(2).isEmpty() ? Long.MAX_VALUE : Long.parseLong(m.group(2));
+                    if (last >= first) { // otherwise invalid, ignore as per RFC 7233
+                        from = first;
+                        to = last >= total ? total : last + 1;
+                        partial = true;
+                        satisfiable = first < total;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                // too large, ignore as malformed
+            }
+            if (partial && !satisfiable) {
+                rsp.setHeader("Content-Range", "bytes */" + total);
+                rsp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+        }
+
+        rsp.setHeader("Accept-Ranges", "bytes");
+        try (FileChannel log = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            if (partial) {
+                rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                rsp.setHeader("Content-Range", "bytes " + from + "-" + (to - 1) + "/" + total);
+                rsp.setContentLengthLong(to - from);
+                try (OutputStream os = rsp.getOutputStream()) {
+                    index.writePlainText(log, from, to, Channels.newChannel(os));
+                }
+            } else {
+                try (OutputStream os = rsp.getCompressedOutputStream(req)) {
+                    index.writePlainText(log, 0, total, Channels.newChannel(os));
+                }
+            }
+        }
+    }
+
+    /**
+     * A single byte range: {@code first-last}, {@code first-} or {@code -suffix}.
+     */
+    private static final Pattern BYTE_RANGE = Pattern.compile("(\\d*)-(\\d*)");
+
+    /**
+     * Pushes the annotated console output as server-sent events while the build is running.
+     *
+     * @see ConsoleLogBroadcaster
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public void doConsoleStream(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        ConsoleLogBroadcaster.subscribe(this, req, rsp);
+    }
+
     /**
      * Handles incremental log output.
      * @deprecated as of 1.352
@@ -2479,6 +2602,12 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
     static {
         XSTREAM.alias("build",FreeStyleBuild.class);
         XSTREAM.registerConverter(Result.conv);
+        // repeated in the records of most builds
+        StringInterner.register(XSTREAM, Run.class, "charset");
+        StringInterner.register(XSTREAM, AbstractBuild.class, "builtOn", "workspace", "hudsonVersion");
+        StringInterner.register(XSTREAM, ParameterValue.class, "name");
+        StringInterner.register(XSTREAM, Cause.UpstreamCause.class, "upstreamProject", "upstreamUrl");
+        StringInterner.register(XSTREAM, Cause.UserIdCause.class, "userId");
     }
 
     private static final Logger LOGGER = Logger.getLogger(Run.class.getName());
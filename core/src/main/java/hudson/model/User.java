@@ -25,11 +25,14 @@
 package hudson.model;
 
 import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.infradna.tool.bridge_method_injector.WithBridgeMethods;
 import hudson.BulkChange;
 import hudson.CopyOnWrite;
 import hudson.Extension;
 import hudson.ExtensionList;
+import hudson.ExtensionListListener;
 import hudson.ExtensionPoint;
 import hudson.FeedAdapter;
 import hudson.Util;
@@ -39,6 +42,7 @@ import hudson.init.Initializer;
 import hudson.model.Descriptor.FormException;
 import hudson.model.listeners.SaveableListener;
 import hudson.security.ACL;
+import hudson.security.ACLContext;
 import hudson.security.AccessControlled;
 import hudson.security.SecurityRealm;
 import hudson.security.UserMayOrMayNotExistException;
@@ -61,6 +65,8 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.CheckForNull;
@@ -161,6 +167,22 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
     @Restricted(NoExternalUse.class)
     public static boolean ALLOW_USER_CREATION_VIA_URL = SystemProperties.getBoolean(User.class.getName() + ".allowUserCreationViaUrl");
 
+    /**
+     * Whether users found at startup only load their configuration and properties when first needed,
+     * with their full names read from {@code users/userIndex.txt}, which is updated from the files that changed.
+     * Takes effect on the next reload.
+     */
+    @Restricted(NoExternalUse.class)
+    public static /* Script Console modifiable */ boolean LAZY_LOADING = SystemProperties.getBoolean(User.class.getName() + ".lazyLoading", true);
+
+    /**
+     * How long, in seconds, {@link #get(String, boolean, Map)} remembers what an id or full name resolved to
+     * without a context; 0 to always resolve.
+     */
+    private static final int RESOLVED_CACHE_SECONDS = SystemProperties.getInteger(User.class.getName() + ".resolvedCacheSeconds", 120);
+
+    private static final int RESOLVED_CACHE_SIZE = SystemProperties.getInteger(User.class.getName() + ".resolvedCacheSize", 10000);
+
     /**
      * The username of the 'unknown' user used to avoid null user references.
      */
@@ -181,14 +203,52 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
     @CopyOnWrite
     private volatile List<UserProperty> properties = new ArrayList<>();
 
+    /**
+     * Whether {@link #description} and {@link #properties} have been read from {@code config.xml}.
+     */
+    private transient volatile boolean loaded;
+    private transient boolean loading;
+
     static {
         XSTREAM.alias("user", User.class);
     }
 
     private User(String id, String fullName) {
+        this(id, fullName, true);
+    }
+
+    /**
+     * @param load false to only read the configuration when it is first needed, for a full name known from the index
+     */
+    private User(String id, String fullName, boolean load) {
         this.id = id;
         this.fullName = fullName;
-        load(id);
+        if (load) {
+            ensureLoaded();
+        }
+    }
+
+    /**
+     * Loads the configuration unless done already; users found by {@link AllUsers#scanAll} only do so when first needed.
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            // properties calling back into this user while it loads see what is there so far
+            if (loaded || loading) {
+                return;
+            }
+            loading = true;
+            // whoever happens to touch the user first, as the user would be loaded at startup otherwise
+            try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+                load(id);
+            } finally {
+                loading = false;
+                loaded = true;
+            }
+        }
     }
 
     private void load(String userId) {
@@ -300,6 +360,7 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
      * If the input parameter is empty, the user's ID will be set.
      */
     public void setFullName(String name) {
+        ensureLoaded();
         if (Util.fixEmptyAndTrim(name) == null) name = id;
         this.fullName = name;
     }
@@ -307,6 +368,7 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
     @Exported
     public @CheckForNull
     String getDescription() {
+        ensureLoaded();
         return description;
     }
 
@@ -316,6 +378,7 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
      * @since 1.609
      */
     public void setDescription(String description) {
+        ensureLoaded();
         this.description = description;
     }
 
@@ -323,6 +386,7 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
      * Gets the user properties configured for this user.
      */
     public Map<Descriptor<UserProperty>, UserProperty> getProperties() {
+        ensureLoaded();
         return Descriptor.toMap(properties);
     }
 
@@ -330,6 +394,7 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
      * Updates the user object by adding a property.
      */
     public synchronized void addProperty(@Nonnull UserProperty p) throws IOException {
+        ensureLoaded();
         UserProperty old = getProperty(p.getClass());
         List<UserProperty> ps = new ArrayList<>(properties);
         if (old != null)
@@ -345,6 +410,7 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
      */
     @Exported(name = "property", inline = true)
     public List<UserProperty> getAllProperties() {
+        ensureLoaded();
         if (hasPermission(Jenkins.ADMINISTER)) {
             return Collections.unmodifiableList(properties);
         }
@@ -356,6 +422,7 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
      * Gets the specific property, or null.
      */
     public <T extends UserProperty> T getProperty(Class<T> clazz) {
+        ensureLoaded();
         for (UserProperty p : properties) {
             if (clazz.isInstance(p))
                 return clazz.cast(p);
@@ -447,6 +514,7 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
     public void doSubmitDescription(StaplerRequest req, StaplerResponse rsp) throws IOException {
         checkPermission(Jenkins.ADMINISTER);
 
+        ensureLoaded();
         description = req.getParameter("description");
         save();
 
@@ -506,10 +574,25 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
             return user;
         }
 
-        String id = CanonicalIdResolver.resolve(idOrFullName, context);
+        String id = context.isEmpty() ? AllUsers.resolve(idOrFullName) : CanonicalIdResolver.resolve(idOrFullName, context);
         return getOrCreateById(id, idOrFullName, create);
     }
 
+    /**
+     * Gets the {@link User} whose configured e-mail address is the given one, ignoring case.
+     * <p>
+     * This looks the address up in an index of the users read at startup and kept up to date as they are saved,
+     * so unlike going through {@link #getAll()} and their properties, it does not load every user.
+     * The address is the one configured by the mailer plugin.
+     *
+     * @return null if no user has that address, or users are not indexed
+     * @since TODO
+     */
+    public static @CheckForNull User getByEmailAddress(@Nonnull String emailAddress) {
+        String id = AllUsers.findIdByEmailAddress(emailAddress);
+        return id == null ? null : getById(id, false);
+    }
+
     /**
      * Retrieve a user by its ID, and create a new one if requested.
      *
@@ -522,6 +605,7 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
         if (u == null && (create || UserIdMapper.getInstance().isMapped(id))) {
             u = new User(id, fullName);
             AllUsers.put(id, u);
+            AllUsers.invalidateResolved();
             if (!id.equals(fullName) && !UserIdMapper.getInstance().isMapped(id)) {
                 try {
                     u.save();
@@ -797,8 +881,10 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
         if (BulkChange.contains(this)) {
             return;
         }
+        ensureLoaded();
         XmlFile xmlFile = new XmlFile(XSTREAM, constructUserConfigFile());
         xmlFile.write(this);
+        AllUsers.saved(xmlFile.getFile().getParentFile());
         SaveableListener.fireOnChange(this, xmlFile);
     }
 
@@ -820,6 +906,9 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
         File existingUserFolder = getExistingUserFolder();
         UserIdMapper.getInstance().remove(id);
         AllUsers.remove(id);
+        if (existingUserFolder != null) {
+            AllUsers.deleted(existingUserFolder);
+        }
         deleteExistingUserFolder(existingUserFolder);
         UserDetailsCache.get().invalidate(idKey);
     }
@@ -845,6 +934,7 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
         checkPermission(Jenkins.ADMINISTER);
 
         JSONObject json = req.getSubmittedForm();
+        ensureLoaded();
         String oldFullName = this.fullName;
         fullName = json.getString("fullName");
         description = json.getString("description");
@@ -1066,12 +1156,50 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
 
         private final ConcurrentMap<String, User> byName = new ConcurrentHashMap<>();
 
+        /**
+         * What {@link User#get(String, boolean, Map)} resolved ids or full names to, as resolving a full name
+         * goes through all the users; forgotten whenever a user is created, saved or deleted,
+         * the security realm changes, or resolvers come or go.
+         * Resolvers answering differently for other reasons are only seen once an entry expires.
+         */
+        private final Cache<String, String> resolved = CacheBuilder.newBuilder()
+                .maximumSize(RESOLVED_CACHE_SIZE)
+                .expireAfterWrite(RESOLVED_CACHE_SECONDS, TimeUnit.SECONDS)
+                .build();
+
+        /**
+         * The security realm {@link #resolved} was filled with.
+         */
+        private volatile @CheckForNull SecurityRealm resolvedRealm;
+
+        private final AtomicBoolean listeningToResolvers = new AtomicBoolean();
+
+        private volatile @CheckForNull UserIndex index;
+
         @Initializer(after = InitMilestone.JOB_LOADED)
         public static void scanAll() {
-            for (String userId : UserIdMapper.getInstance().getConvertedUserIds()) {
-                User user = new User(userId, userId);
-                getInstance().byName.putIfAbsent(idStrategy().keyFor(userId), user);
+            AllUsers instance = getInstance();
+            UserIdMapper mapper = UserIdMapper.getInstance();
+            UserIndex index = LAZY_LOADING ? new UserIndex(getRootDir()) : null;
+            for (String userId : mapper.getConvertedUserIds()) {
+                User user = null;
+                if (index != null) {
+                    File directory = mapper.getDirectory(userId);
+                    UserIndex.Entry entry = directory == null ? null : index.get(directory);
+                    if (entry != null) {
+                        user = new User(userId, entry.fullName != null ? entry.fullName : userId, false);
+                    }
+                }
+                if (user == null) {
+                    user = new User(userId, userId);
+                }
+                instance.byName.putIfAbsent(idStrategy().keyFor(userId), user);
+            }
+            if (index != null) {
+                index.save();
             }
+            instance.index = index;
+            instance.resolved.invalidateAll();
         }
 
         /**
@@ -1092,10 +1220,12 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
 
         private static void clear() {
             getInstance().byName.clear();
+            invalidateResolved();
         }
 
         private static void remove(String id) {
             getInstance().byName.remove(idStrategy().keyFor(id));
+            invalidateResolved();
         }
 
         private static User get(String id) {
@@ -1109,6 +1239,63 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
         private static Collection<User> values() {
             return getInstance().byName.values();
         }
+
+        private static String resolve(String idOrFullName) {
+            AllUsers instance = getInstance();
+            instance.forgetStaleResolutions();
+            Cache<String, String> resolved = instance.resolved;
+            String id = resolved.getIfPresent(idOrFullName);
+            if (id == null) {
+                id = CanonicalIdResolver.resolve(idOrFullName, Collections.emptyMap());
+                if (id != null) {
+                    resolved.put(idOrFullName, id);
+                }
+            }
+            return id;
+        }
+
+        private static void invalidateResolved() {
+            getInstance().resolved.invalidateAll();
+        }
+
+        private void forgetStaleResolutions() {
+            if (listeningToResolvers.compareAndSet(false, true)) {
+                ExtensionList.lookup(CanonicalIdResolver.class).addListener(new ExtensionListListener() {
+                    @Override
+                    public void onChange() {
+                        resolved.invalidateAll();
+                    }
+                });
+                resolved.invalidateAll();
+            }
+            SecurityRealm realm = Jenkins.get().getSecurityRealm();
+            if (realm != resolvedRealm) {
+                resolved.invalidateAll();
+                resolvedRealm = realm;
+            }
+        }
+
+        private static void saved(File userDirectory) {
+            UserIndex index = getInstance().index;
+            if (index != null) {
+                index.update(userDirectory);
+                index.scheduleSave();
+            }
+            invalidateResolved();
+        }
+
+        private static void deleted(File userDirectory) {
+            UserIndex index = getInstance().index;
+            if (index != null) {
+                index.remove(userDirectory);
+                index.scheduleSave();
+            }
+        }
+
+        private static @CheckForNull String findIdByEmailAddress(String emailAddress) {
+            UserIndex index = getInstance().index;
+            return index == null ? null : index.findIdByEmailAddress(emailAddress);
+        }
     }
 
     /**
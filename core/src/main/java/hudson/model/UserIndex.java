@@ -0,0 +1,247 @@
+package hudson.model;
+
+import hudson.XmlFile;
+import hudson.util.AtomicFileWriter;
+import jenkins.util.Timer;
+import jenkins.util.xstream.XStreamDOM;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ids, full names and e-mail addresses of the users in {@link User#getRootDir()}, kept in {@value #INDEX_FILE}
+ * so that {@link User}s can be listed and looked up without loading their {@code config.xml} and properties.
+ *
+ * <p>
+ * Entries are keyed by user directory and remember the timestamp and size of {@code config.xml} when it was indexed,
+ * so a file changed behind our back, or by a save not yet indexed when Jenkins stopped, is indexed again.
+ * Indexing reads the file as a plain DOM, without loading any property class.
+ */
+final class UserIndex {
+
+    static final String INDEX_FILE = "userIndex.txt";
+
+    /**
+     * Where the mailer plugin keeps the e-mail address of a user.
+     */
+    private static final String MAILER_PROPERTY = "hudson.tasks.Mailer_-UserProperty";
+
+    static final class Entry {
+        final long lastModified;
+        final long length;
+        final @CheckForNull String id;
+        final @CheckForNull String fullName;
+        final @CheckForNull String emailAddress;
+
+        Entry(long lastModified, long length, @CheckForNull String id, @CheckForNull String fullName, @CheckForNull String emailAddress) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.id = id;
+            this.fullName = fullName;
+            this.emailAddress = emailAddress;
+        }
+    }
+
+    private final File file;
+
+    /**
+     * Keyed by user directory name.
+     */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile boolean dirty;
+
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+
+    UserIndex(@Nonnull File usersDirectory) {
+        this.file = new File(usersDirectory, INDEX_FILE);
+        load();
+    }
+
+    private void load() {
+        try (BufferedReader r = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 6) {
+                    LOGGER.log(Level.FINE, "Ignoring malformed line in {0}: {1}", new Object[] {file, line});
+                    continue;
+                }
+                try {
+                    entries.put(decode(fields[0]), new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                            decode(fields[3]), decode(fields[4]), decode(fields[5])));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.log(Level.FINE, "Ignoring malformed line in " + file + ": " + line, e);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // not written yet, everybody gets indexed
+        } catch (IOException | InvalidPathException e) {
+            LOGGER.log(Level.WARNING, "Failed to read " + file + ", indexing all users again", e);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Writes the index out shortly, so that users saved in the meantime are written together.
+     */
+    void scheduleSave() {
+        if (dirty && saveScheduled.compareAndSet(false, true)) {
+            Timer.get().schedule(() -> {
+                saveScheduled.set(false);
+                save();
+            }, SAVE_DELAY, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Writes the index out, if anything was indexed since it was read.
+     */
+    synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        try {
+            AtomicFileWriter w = new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8);
+            try {
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    w.write(encode(e.getKey()) + '\t' + entry.lastModified + '\t' + entry.length + '\t'
+                            + encode(entry.id) + '\t' + encode(entry.fullName) + '\t' + encode(entry.emailAddress) + '\n');
+                }
+                w.commit();
+            } finally {
+                w.abort();
+            }
+        } catch (IOException | InvalidPathException e) {
+            dirty = true;
+            LOGGER.log(Level.WARNING, "Failed to write " + file, e);
+        }
+    }
+
+    /**
+     * Gets what is known about the user in the given directory, indexing its {@code config.xml} if it changed.
+     *
+     * @return null if there is no readable {@code config.xml}
+     */
+    @CheckForNull Entry get(@Nonnull File userDirectory) {
+        File config = new File(userDirectory, User.CONFIG_XML);
+        long lastModified = config.lastModified();
+        long length = config.length();
+        Entry entry = entries.get(userDirectory.getName());
+        if (entry != null && lastModified != 0 && entry.lastModified == lastModified && entry.length == length) {
+            return entry;
+        }
+        return index(userDirectory, lastModified, length);
+    }
+
+    /**
+     * Indexes the user in the given directory again, after it was saved.
+     */
+    void update(@Nonnull File userDirectory) {
+        File config = new File(userDirectory, User.CONFIG_XML);
+        index(userDirectory, config.lastModified(), config.length());
+    }
+
+    void remove(@Nonnull File userDirectory) {
+        if (entries.remove(userDirectory.getName()) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Finds the id of the user with the given e-mail address, ignoring case.
+     */
+    @CheckForNull String findIdByEmailAddress(@Nonnull String emailAddress) {
+        for (Entry entry : entries.values()) {
+            if (entry.id != null && emailAddress.equalsIgnoreCase(entry.emailAddress)) {
+                return entry.id;
+            }
+        }
+        return null;
+    }
+
+    private @CheckForNull Entry index(File userDirectory, long lastModified, long length) {
+        String name = userDirectory.getName();
+        XmlFile config = new XmlFile(new File(userDirectory, User.CONFIG_XML));
+        Entry entry = null;
+        if (config.exists()) {
+            // the file as written, including a write still queued
+            try (Reader r = config.readRaw()) {
+                XStreamDOM dom = XStreamDOM.from(r);
+                XStreamDOM mailer = child(child(dom, "properties"), MAILER_PROPERTY);
+                entry = new Entry(lastModified, length, value(dom, "id"), value(dom, "fullName"), value(mailer, "emailAddress"));
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Failed to index " + config, e);
+            }
+        }
+        if (entry != null) {
+            entries.put(name, entry);
+            dirty = true;
+        } else {
+            remove(userDirectory);
+        }
+        return entry;
+    }
+
+    private static @CheckForNull XStreamDOM child(@CheckForNull XStreamDOM dom, String tagName) {
+        List<XStreamDOM> children = dom == null ? null : dom.getChildren();
+        if (children != null) {
+            for (XStreamDOM child : children) {
+                if (child.getTagName().equals(tagName)) {
+                    return child;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static @CheckForNull String value(@CheckForNull XStreamDOM dom, String tagName) {
+        XStreamDOM child = child(dom, tagName);
+        return child == null ? null : child.getValue();
+    }
+
+    /**
+     * Encodes a field so that it holds no tab or line break, keeping null apart from the empty string.
+     */
+    private static String encode(@CheckForNull String s) throws UnsupportedEncodingException {
+        return s == null ? "" : '=' + URLEncoder.encode(s, "UTF-8");
+    }
+
+    private static @CheckForNull String decode(String s) throws UnsupportedEncodingException {
+        if (s.isEmpty()) {
+            return null;
+        }
+        if (s.charAt(0) != '=') {
+            throw new IllegalArgumentException(s);
+        }
+        return URLDecoder.decode(s.substring(1), "UTF-8");
+    }
+
+    /**
+     * How long to wait for more changes before writing the index, in seconds.
+     */
+    private static final long SAVE_DELAY = 10;
+
+    private static final Logger LOGGER = Logger.getLogger(UserIndex.class.getName());
+}
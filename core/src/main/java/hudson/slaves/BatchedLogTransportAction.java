@@ -0,0 +1,53 @@
+package hudson.slaves;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+import hudson.util.BatchedRemoteOutputStream;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Action added to a {@link Run} that received output from agents through {@link BatchedRemoteOutputStream}s,
+ * to record how much of it there was and how fast it came in.
+ *
+ * @see BatchedLogTransportNodeProperty
+ * @since TODO
+ */
+@ExportedBean
+public class BatchedLogTransportAction extends InvisibleAction {
+    private final long bytes;
+    private final long batches;
+    private final long bytesPerSecond;
+
+    public BatchedLogTransportAction(@Nonnull BatchedRemoteOutputStream.Statistics statistics) {
+        this.bytes = statistics.getBytes();
+        this.batches = statistics.getBatches();
+        this.bytesPerSecond = statistics.getBytesPerSecond();
+    }
+
+    /**
+     * Number of bytes of output received from agents.
+     */
+    @Exported
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Number of chunks the output was received in.
+     */
+    @Exported
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * Average number of bytes received per second, from the time the first stream was sent to an agent.
+     */
+    @Exported
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+}
@@ -0,0 +1,86 @@
+package hudson.slaves;
+
+import hudson.Extension;
+import hudson.model.Node;
+import hudson.remoting.Channel;
+import hudson.util.BatchedRemoteOutputStream;
+import hudson.util.StreamTaskListener;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import javax.annotation.CheckForNull;
+import java.io.OutputStream;
+
+/**
+ * {@link NodeProperty} that makes build output written on this agent go back to the controller
+ * through {@link BatchedRemoteOutputStream}, rather than one remoting command per write.
+ *
+ * @see StreamTaskListener
+ * @since TODO
+ */
+public class BatchedLogTransportNodeProperty extends NodeProperty<Node> {
+
+    public static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL = 250;
+
+    /**
+     * Maximum number of bytes buffered on the agent before they are sent.
+     */
+    private final int batchSize;
+
+    /**
+     * Maximum number of milliseconds output is buffered on the agent before it is sent.
+     */
+    private final long flushInterval;
+
+    @DataBoundConstructor
+    public BatchedLogTransportNodeProperty(int batchSize, long flushInterval) {
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        this.flushInterval = flushInterval > 0 ? flushInterval : DEFAULT_FLUSH_INTERVAL;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Wraps the controller side of a stream that is about to be sent to the agent.
+     */
+    public BatchedRemoteOutputStream wrap(OutputStream remote) {
+        return new BatchedRemoteOutputStream(remote, batchSize, flushInterval);
+    }
+
+    /**
+     * Finds the property configured on the agent at the other end of the given channel.
+     *
+     * @return null if the channel does not belong to an agent of this controller, or if the agent isn't configured for batching.
+     */
+    @CheckForNull
+    public static BatchedLogTransportNodeProperty forChannel(@CheckForNull Channel channel) {
+        if (channel == null)
+            return null;
+        // set by SlaveComputer when the agent connects, and null on the agent side of the channel
+        Object computer = channel.getProperty(SlaveComputer.class);
+        if (!(computer instanceof SlaveComputer))
+            return null;
+        Node n = ((SlaveComputer) computer).getNode();
+        return n != null ? n.getNodeProperties().get(BatchedLogTransportNodeProperty.class) : null;
+    }
+
+    @Extension @Symbol("batchedLogTransport")
+    public static class DescriptorImpl extends NodePropertyDescriptor {
+        @Override
+        public String getDisplayName() {
+            return Messages.BatchedLogTransportNodeProperty_displayName();
+        }
+
+        @Override
+        public boolean isApplicableAsGlobal() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package hudson.tasks;
+
+import hudson.Util;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import javax.annotation.CheckForNull;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Computes the MD5 checksums of the files {@link Fingerprinter} records, on the machine holding the workspace.
+ *
+ * <p>
+ * Files are hashed by a few threads at once, and checksums are remembered in a cache file keyed by
+ * the path, size, modification time and file key (the inode, where the file system has one) of each file,
+ * so that artifacts left unchanged since the last build are not read again.
+ */
+final class FingerprintDigester {
+
+    /**
+     * Where checksums are remembered, or null not to remember them.
+     */
+    private final @CheckForNull File cacheFile;
+
+    private final int threads;
+
+    FingerprintDigester(@CheckForNull File cacheFile, int threads) {
+        this.cacheFile = cacheFile;
+        this.threads = threads;
+    }
+
+    /**
+     * Computes the checksums of the given files.
+     *
+     * @return the checksums in the order of the paths.
+     * @throws IOException if a file could not be read, with a message naming it.
+     */
+    String[] digest(final File baseDir, String[] paths) throws IOException, InterruptedException {
+        Map<String, Entry> cache = load();
+        final Entry[] entries = new Entry[paths.length];
+        List<Integer> todo = new ArrayList<>();
+        for (int i = 0; i < paths.length; i++) {
+            File file = new File(baseDir, paths[i]);
+            Entry current;
+            try {
+                current = Entry.of(file);
+            } catch (IOException e) {
+                throw new IOException(Messages.Fingerprinter_DigestFailed(file), e);
+            }
+            Entry cached = cache.get(paths[i]);
+            if (cached != null && cached.sameFile(current)) {
+                entries[i] = cached;
+            } else {
+                entries[i] = current;
+                todo.add(i);
+            }
+        }
+
+        if (threads <= 1 || todo.size() <= 1) {
+            for (int i : todo) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                hash(new File(baseDir, paths[i]), entries[i]);
+            }
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, todo.size()),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "FingerprintDigester"));
+            try {
+                List<Future<?>> futures = new ArrayList<>(todo.size());
+                for (final int i : todo) {
+                    final File file = new File(baseDir, paths[i]);
+                    futures.add(pool.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            hash(file, entries[i]);
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    try {
+                        f.get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof IOException)
+                            throw (IOException) cause;
+                        if (cause instanceof RuntimeException)
+                            throw (RuntimeException) cause;
+                        throw new IOException(cause);
+                    }
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        String[] digests = new String[paths.length];
+        for (int i = 0; i < paths.length; i++)
+            digests[i] = entries[i].md5;
+        if (!todo.isEmpty())
+            store(paths, entries, cache);
+        return digests;
+    }
+
+    private static void hash(File file, Entry entry) throws IOException {
+        try {
+            entry.md5 = Util.getDigestOf(file);
+        } catch (IOException e) {
+            throw new IOException(Messages.Fingerprinter_DigestFailed(file), e);
+        }
+    }
+
+    private Map<String, Entry> load() {
+        Map<String, Entry> cache = new HashMap<>();
+        if (cacheFile == null || !cacheFile.isFile())
+            return cache;
+        try (BufferedReader r = Files.newBufferedReader(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                String[] fields = line.split("\t", 5);
+                if (fields.length < 5)
+                    continue;
+                try {
+                    Entry e = new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]);
+                    e.md5 = fields[3];
+                    cache.put(fields[4], e);
+                } catch (NumberFormatException x) {
+                    // skip the damaged line
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to read " + cacheFile, e);
+        }
+        return cache;
+    }
+
+    /**
+     * Rewrites the cache with the files just digested, followed by as many older entries as fit.
+     */
+    private void store(String[] paths, Entry[] entries, Map<String, Entry> old) {
+        if (cacheFile == null)
+            return;
+        // a file modified this recently could change again without its size or timestamp changing
+        long recent = System.currentTimeMillis() - TIMESTAMP_GRANULARITY;
+        Map<String, Entry> cache = new LinkedHashMap<>();
+        for (int i = 0; i < paths.length; i++) {
+            if (entries[i].mtime < recent)
+                cache.put(paths[i], entries[i]);
+        }
+        for (Map.Entry<String, Entry> e : old.entrySet()) {
+            if (cache.size() >= MAX_ENTRIES)
+                break;
+            if (!cache.containsKey(e.getKey()))
+                cache.put(e.getKey(), e.getValue());
+        }
+
+        Path target = cacheFile.toPath();
+        Path tmp = null;
+        try {
+            Files.createDirectories(target.getParent());
+            tmp = Files.createTempFile(target.getParent(), cacheFile.getName(), ".tmp");
+            try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                int n = 0;
+                for (Map.Entry<String, Entry> e : cache.entrySet()) {
+                    if (n++ >= MAX_ENTRIES)
+                        break;
+                    Entry v = e.getValue();
+                    w.write(v.size + "\t" + v.mtime + "\t" + v.key + "\t" + v.md5 + "\t" + e.getKey());
+                    w.newLine();
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            tmp = null;
+        } catch (IOException e) {
+            // only an optimization
+            LOGGER.log(Level.FINE, "Failed to write " + cacheFile, e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to delete " + tmp, e);
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+        final long size;
+        final long mtime;
+        /**
+         * {@link BasicFileAttributes#fileKey()}, or {@code -} where the file system has none.
+         */
+        final String key;
+        volatile String md5;
+
+        Entry(long size, long mtime, String key) {
+            this.size = size;
+            this.mtime = mtime;
+            this.key = key;
+        }
+
+        static Entry of(File file) throws IOException {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            Object key = attrs.fileKey();
+            return new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(),
+                    key == null ? "-" : key.toString().replace('\t', ' '));
+        }
+
+        boolean sameFile(Entry that) {
+            return md5 != null && size == that.size && mtime == that.mtime && key.equals(that.key);
+        }
+    }
+
+    /**
+     * Number of files the cache remembers, so that it does not grow forever in workspaces producing new file names.
+     */
+    static final int MAX_ENTRIES = 10000;
+
+    /**
+     * Margin for file systems that only keep timestamps at a coarse precision, like the 2 seconds of VFAT.
+     */
+    private static final long TIMESTAMP_GRANULARITY = 2000;
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintDigester.class.getName());
+}
@@ -47,6 +47,7 @@ import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.remoting.VirtualChannel;
+import hudson.slaves.WorkspaceList;
 import hudson.util.FormValidation;
 import hudson.util.PackedMap;
 import hudson.util.RunList;
@@ -86,6 +87,16 @@ import jenkins.tasks.SimpleBuildStep;
  */
 public class Fingerprinter extends Recorder implements Serializable, DependencyDeclarer, SimpleBuildStep {
     public static boolean enableFingerprintsInDependencyGraph = SystemProperties.getBoolean(Fingerprinter.class.getName() + ".enableFingerprintsInDependencyGraph");
+
+    /**
+     * Whether checksums are remembered in the temporary directory of the workspace, so that unchanged files are not read again.
+     */
+    private static final boolean DIGEST_CACHE = SystemProperties.getBoolean(Fingerprinter.class.getName() + ".digestCache", true);
+
+    /**
+     * Number of files hashed at once on the machine holding the workspace, or 0 to decide from its processor count.
+     */
+    private static final int DIGEST_THREADS = SystemProperties.getInteger(Fingerprinter.class.getName() + ".digestThreads", 0);
     
     /**
      * Comma-separated list of files/directories to be fingerprinted.
@@ -214,10 +225,17 @@ public class Fingerprinter extends Recorder implements Serializable, DependencyD
 
         private final String targets;
         private final long buildTimestamp;
+        /**
+         * Path of the {@link FingerprintDigester} cache, or null not to use one.
+         */
+        private final String digestCache;
+        private final int digestThreads;
 
-        FindRecords(String targets, long buildTimestamp) {
+        FindRecords(String targets, long buildTimestamp, String digestCache, int digestThreads) {
             this.targets = targets;
             this.buildTimestamp = buildTimestamp;
+            this.digestCache = digestCache;
+            this.digestThreads = digestThreads;
         }
 
         @Override
@@ -227,7 +245,17 @@ public class Fingerprinter extends Recorder implements Serializable, DependencyD
             FileSet src = Util.createFileSet(baseDir,targets);
 
             DirectoryScanner ds = src.getDirectoryScanner();
-            for( String f : ds.getIncludedFiles() ) {
+            String[] files = ds.getIncludedFiles();
+            int threads = digestThreads > 0 ? digestThreads : Math.min(4, Runtime.getRuntime().availableProcessors());
+            String[] digests;
+            try {
+                digests = new FingerprintDigester(digestCache == null ? null : new File(digestCache), threads)
+                        .digest(baseDir, files);
+            } catch (InterruptedException e) {
+                throw new IOException(Messages.Fingerprinter_Aborted(),e);
+            }
+            for (int i = 0; i < files.length; i++) {
+                String f = files[i];
                 File file = new File(baseDir,f);
 
                 // consider the file to be produced by this build only if the timestamp
@@ -235,13 +263,7 @@ public class Fingerprinter extends Recorder implements Serializable, DependencyD
                 // 2000ms is an error margin since since VFAT only retains timestamp at 2sec precision
                 boolean produced = buildTimestamp <= file.lastModified()+2000;
 
-                try {
-                    results.add(new Record(produced,f,file.getName(),new FilePath(file).digest()));
-                } catch (IOException e) {
-                    throw new IOException(Messages.Fingerprinter_DigestFailed(file),e);
-                } catch (InterruptedException e) {
-                    throw new IOException(Messages.Fingerprinter_Aborted(),e);
-                }
+                results.add(new Record(produced,f,file.getName(),digests[i]));
             }
 
             return results;
@@ -250,7 +272,13 @@ public class Fingerprinter extends Recorder implements Serializable, DependencyD
     }
 
     private void record(Run<?,?> build, FilePath ws, TaskListener listener, Map<String,String> record, final String targets) throws IOException, InterruptedException {
-        for (Record r : ws.act(new FindRecords(targets, build.getTimeInMillis()))) {
+        String digestCache = null;
+        if (DIGEST_CACHE) {
+            FilePath tmp = WorkspaceList.tempDir(ws);
+            if (tmp != null)
+                digestCache = tmp.child("fingerprint-digests.txt").getRemote();
+        }
+        for (Record r : ws.act(new FindRecords(targets, build.getTimeInMillis(), digestCache, DIGEST_THREADS))) {
             Fingerprint fp = r.addRecord(build);
             if(fp==null) {
                 listener.error(Messages.Fingerprinter_FailedFor(r.relativePath));
@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.regex.Matcher;
 
 /**
@@ -39,14 +40,26 @@ import java.util.regex.Matcher;
 public class MavenConsoleAnnotator extends LineTransformationOutputStream {
     private final OutputStream out;
     private final Charset charset;
+    /**
+     * True if '[' encodes to the same single byte in {@link #charset},
+     * which lets us rule out lines at the byte level.
+     */
+    private final boolean asciiCompatible;
 
     public MavenConsoleAnnotator(OutputStream out, Charset charset) {
         this.out = out;
         this.charset = charset;
+        this.asciiCompatible = Arrays.equals("[".getBytes(charset), new byte[] {'['});
     }
 
     @Override
     protected void eol(byte[] b, int len) throws IOException {
+        // all the notes below only match lines that start with '[', so avoid decoding everything else
+        if (asciiCompatible && (len==0 || b[0]!='[')) {
+            out.write(b,0,len);
+            return;
+        }
+
         String line = charset.decode(ByteBuffer.wrap(b, 0, len)).toString();
 
         // trim off CR/LF from the end
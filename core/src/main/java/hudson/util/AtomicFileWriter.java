@@ -57,6 +57,14 @@ public class AtomicFileWriter extends Writer {
     private static /* final */ boolean DISABLE_FORCED_FLUSH = SystemProperties.getBoolean(
             AtomicFileWriter.class.getName() + ".DISABLE_FORCED_FLUSH");
 
+    /**
+     * Rather than forcing each file to disk on its own, wait for a shared thread to force the files
+     * committed by all threads at about the same time, along with their directories.
+     * See {@link GroupFsync}.
+     */
+    private static /* final */ boolean GROUP_COMMIT = SystemProperties.getBoolean(
+            AtomicFileWriter.class.getName() + ".GROUP_COMMIT");
+
     static {
         if (DISABLE_FORCED_FLUSH) {
             LOGGER.log(Level.WARNING, "DISABLE_FORCED_FLUSH flag used, this could result in dataloss if failures happen in your storage subsystem.");
@@ -66,6 +74,7 @@ public class AtomicFileWriter extends Writer {
     private final Writer core;
     private final Path tmpPath;
     private final Path destPath;
+    private final boolean groupCommit;
 
     /**
      * Writes with UTF-8 encoding.
@@ -149,6 +158,12 @@ public class AtomicFileWriter extends Writer {
             integrityOnClose = false;
         }
 
+        // forced from commit() instead
+        groupCommit = GROUP_COMMIT && integrityOnClose;
+        if (groupCommit) {
+            integrityOnClose = false;
+        }
+
         core = new FileChannelWriter(tmpPath, charset, integrityOnFlush, integrityOnClose, StandardOpenOption.WRITE);
     }
 
@@ -186,6 +201,9 @@ public class AtomicFileWriter extends Writer {
 
     public void commit() throws IOException {
         close();
+        if (groupCommit) {
+            GroupFsync.force(tmpPath);
+        }
         try {
             // Try to make an atomic move.
             Files.move(tmpPath, destPath, StandardCopyOption.ATOMIC_MOVE);
@@ -219,6 +237,10 @@ public class AtomicFileWriter extends Writer {
                 throw e1;
             }
         }
+        if (groupCommit) {
+            // so that the move itself survives a crash
+            GroupFsync.force(destPath.getParent());
+        }
     }
 
     @Override
@@ -0,0 +1,323 @@
+package hudson.util;
+
+import hudson.remoting.RemoteOutputStream;
+import hudson.slaves.BatchedLogTransportNodeProperty;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+
+/**
+ * {@link OutputStream} that batches writes to a {@link RemoteOutputStream}, so that chatty output
+ * on an agent is sent to the controller as a few large chunks instead of one remoting command per write.
+ *
+ * <p>
+ * Bytes are sent when {@link #flush()} is called, once {@code batchSize} bytes have accumulated, or
+ * {@code flushInterval} milliseconds after the first unsent byte was written, whichever comes first.
+ * {@link #flush()} returns once the bytes written before it have been sent, so output flushed before a
+ * callable returns reaches the controller before its result, as with a plain {@link RemoteOutputStream},
+ * and {@link StreamTaskListener} keeps flushing every line.
+ *
+ * <p>
+ * Batches are coalesced while the sink is busy: {@link RemoteOutputStream} blocks when the remoting pipe window
+ * is exhausted, which happens when the controller falls behind writing the log. Meanwhile writers keep adding to
+ * the buffer without waiting, up to {@code batchSize} bytes, and whichever flush comes next sends all of it at once.
+ * Writers are therefore throttled to the rate at which the controller can consume the output,
+ * with at most two batches buffered on the agent side.
+ *
+ * <p>
+ * This object is remotable, and is normally created by {@link StreamTaskListener} when it is sent to
+ * an agent that has {@link BatchedLogTransportNodeProperty}.
+ *
+ * @since TODO
+ */
+public final class BatchedRemoteOutputStream extends OutputStream implements Serializable {
+    private final OutputStream sink;
+    private final int batchSize;
+    private final long flushInterval;
+
+    /**
+     * Held while writing to the sink, so that batches go out in order. Taken before the lock of this stream.
+     */
+    private transient Object sendLock;
+    private transient byte[] buf;
+    /**
+     * The other buffer, filled while {@link #buf} is being sent.
+     */
+    private transient byte[] spare;
+    private transient int count;
+    /**
+     * Number of bytes added to the buffer so far, and number of those taken to be sent.
+     */
+    private transient long buffered, taken;
+    /**
+     * Number of bytes the sink has been flushed after, guarded by {@link #sendLock}.
+     */
+    private transient long flushed;
+    private transient ScheduledFuture<?> pendingFlush;
+    private transient boolean closed;
+
+    /**
+     * @param sink
+     *      Where the batches are sent to. Typically a {@link RemoteOutputStream}.
+     * @param batchSize
+     *      Maximum number of bytes buffered before they are sent.
+     * @param flushInterval
+     *      Maximum number of milliseconds bytes are buffered before they are sent.
+     */
+    public BatchedRemoteOutputStream(@Nonnull OutputStream sink, int batchSize, long flushInterval) {
+        if (batchSize <= 0 || flushInterval <= 0)
+            throw new IllegalArgumentException("Batch size and flush interval must be positive");
+        this.sink = sink;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        init();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        init();
+    }
+
+    private void init() {
+        sendLock = new Object();
+        buf = new byte[batchSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len >= batchSize) {
+            // no point in copying this into the buffer
+            synchronized (sendLock) {
+                ensureOpen();
+                send();
+                sink.write(b, off, len);
+            }
+            return;
+        }
+        while (!append(b, off, len)) {
+            synchronized (sendLock) {
+                send();
+            }
+        }
+    }
+
+    /**
+     * Adds to the buffer, unless there is no room left.
+     */
+    private synchronized boolean append(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len > buf.length - count)
+            return false;
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+        buffered += len;
+        scheduleFlush();
+        return true;
+    }
+
+    /**
+     * Sends the bytes written so far, unless another thread already did, and flushes the sink.
+     */
+    @Override
+    public void flush() throws IOException {
+        long target;
+        synchronized (this) {
+            if (closed)
+                return;
+            target = buffered;
+        }
+        synchronized (sendLock) {
+            // the thread which held the lock before us may have sent our bytes along with its own
+            if (flushed < target) {
+                send();
+                sink.flush();
+                flushed = taken;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (sendLock) {
+            synchronized (this) {
+                if (closed)
+                    return;
+                closed = true;
+                if (pendingFlush != null) {
+                    pendingFlush.cancel(false);
+                    pendingFlush = null;
+                }
+            }
+            try {
+                send();
+            } finally {
+                sink.close();
+            }
+        }
+    }
+
+    private synchronized void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream is closed");
+    }
+
+    /**
+     * Sends the buffered bytes, while other writers fill the spare buffer. Must be called while holding {@link #sendLock}.
+     *
+     * @return false if there was nothing to send
+     */
+    private boolean send() throws IOException {
+        byte[] chunk;
+        int n;
+        synchronized (this) {
+            n = count;
+            if (n == 0)
+                return false;
+            chunk = buf;
+            buf = spare != null ? spare : new byte[batchSize];
+            spare = null;
+            count = 0;
+            taken = buffered;
+        }
+        try {
+            sink.write(chunk, 0, n);
+        } finally {
+            synchronized (this) {
+                spare = chunk;
+            }
+        }
+        return true;
+    }
+
+    private void scheduleFlush() {
+        if (pendingFlush == null && count > 0)
+            pendingFlush = timer().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // sending may block for long, so do not hold up the timer, which serves all the streams
+                    SENDERS.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            timedFlush();
+                        }
+                    });
+                }
+            }, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private void timedFlush() {
+        synchronized (this) {
+            pendingFlush = null;
+            if (closed)
+                return;
+        }
+        try {
+            synchronized (sendLock) {
+                if (send()) {
+                    sink.flush();
+                    flushed = taken;
+                }
+            }
+        } catch (IOException e) {
+            // the next write or close will most likely fail the same way and report it to the writer
+            LOGGER.log(Level.FINE, "Failed to send buffered output", e);
+        }
+    }
+
+    private static ScheduledExecutorService timer;
+
+    /**
+     * Shared by all the streams in this JVM. On an agent, {@link jenkins.util.Timer} is not available.
+     * It only hands the timed flushes over to {@link #SENDERS}.
+     */
+    private static synchronized ScheduledExecutorService timer() {
+        if (timer == null)
+            timer = Executors.newSingleThreadScheduledExecutor(new NamingThreadFactory(new DaemonThreadFactory(), "BatchedRemoteOutputStream.timer"));
+        return timer;
+    }
+
+    /**
+     * Sends the batches of timed flushes, so that a stream blocked on a slow connection does not hold up the others.
+     */
+    private static final ExecutorService SENDERS = Executors.newCachedThreadPool(
+            new NamingThreadFactory(new DaemonThreadFactory(), "BatchedRemoteOutputStream.sender"));
+
+    /**
+     * Throughput of the output received on the controller through {@link BatchedRemoteOutputStream}s.
+     */
+    public static final class Statistics {
+        private final long start = System.nanoTime();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+
+        /**
+         * Total number of bytes received so far.
+         */
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        /**
+         * Number of chunks the bytes were received in.
+         */
+        public long getBatches() {
+            return batches.get();
+        }
+
+        /**
+         * Average number of bytes received per second since the first stream was sent to an agent.
+         */
+        public long getBytesPerSecond() {
+            long elapsed = System.nanoTime() - start;
+            return elapsed <= 0 ? 0 : (long) (bytes.get() * 1e9 / elapsed);
+        }
+
+        /**
+         * Wraps the controller side of a stream so that what comes in is counted.
+         */
+        OutputStream count(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    bytes.incrementAndGet();
+                    batches.incrementAndGet();
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    bytes.addAndGet(len);
+                    batches.incrementAndGet();
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return getBytes() + " bytes in " + getBatches() + " batches (" + getBytesPerSecond() / 1024 + " KiB/s)";
+        }
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(BatchedRemoteOutputStream.class.getName());
+}
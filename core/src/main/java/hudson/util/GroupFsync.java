@@ -0,0 +1,175 @@
+package hudson.util;
+
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Forces files and directories to disk on behalf of many threads at once, for {@link AtomicFileWriter} in group commit mode
+ * and for {@link jenkins.util.io.WriteBehindQueue}.
+ *
+ * <p>
+ * Threads hand their paths over to a single flusher thread and wait.
+ * The flusher takes everything handed over since its last round, forces each path once, and wakes the threads up.
+ * While it is busy, the next round builds up, so a busy controller gets many files to disk for one round of waiting,
+ * and a directory holding many of them is forced once.
+ */
+@Restricted(NoExternalUse.class)
+public final class GroupFsync {
+
+    private GroupFsync() {}
+
+    private static final class Round {
+        final Set<Path> paths = new LinkedHashSet<>();
+        final Map<Path, IOException> failures = new HashMap<>();
+        boolean done;
+    }
+
+    /**
+     * The round being built up.
+     */
+    private static Round next = new Round();
+
+    private static Thread flusher;
+
+    /**
+     * Waits until the given file or directory is forced to disk.
+     *
+     * @throws IOException if the file could not be forced; failures to force directories are ignored, as they are not supported everywhere
+     */
+    static void force(@Nonnull Path path) throws IOException {
+        IOException failure = forceAll(Collections.singleton(path)).get(path);
+        if (failure != null) {
+            throw new IOException("Failed to force " + path, failure);
+        }
+    }
+
+    /**
+     * Waits until all the given files and directories are forced to disk, in a single round.
+     *
+     * @return the failures to force files, by path; failures to force directories are ignored
+     */
+    public static @Nonnull Map<Path, IOException> forceAll(@Nonnull Collection<Path> paths) {
+        if (paths.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Round round;
+        synchronized (GroupFsync.class) {
+            round = next;
+            round.paths.addAll(paths);
+            if (flusher == null || !flusher.isAlive()) {
+                flusher = new NamingThreadFactory(new DaemonThreadFactory(), "AtomicFileWriter group commit").newThread(GroupFsync::run);
+                flusher.start();
+            }
+            GroupFsync.class.notifyAll();
+        }
+        try {
+            synchronized (round) {
+                while (!round.done) {
+                    round.wait();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // do not give up on durability
+            Map<Path, IOException> failures = new HashMap<>();
+            for (Path path : paths) {
+                try {
+                    forceNow(path);
+                } catch (IOException x) {
+                    failures.put(path, x);
+                }
+            }
+            return failures;
+        }
+        Map<Path, IOException> failures = new HashMap<>();
+        synchronized (round) {
+            for (Path path : paths) {
+                IOException failure = round.failures.get(path);
+                if (failure != null) {
+                    failures.put(path, failure);
+                }
+            }
+        }
+        return failures;
+    }
+
+    private static void run() {
+        while (true) {
+            Round round;
+            try {
+                synchronized (GroupFsync.class) {
+                    while (next.paths.isEmpty()) {
+                        GroupFsync.class.wait();
+                    }
+                }
+                if (DELAY > 0) {
+                    // let more paths join this round
+                    Thread.sleep(DELAY);
+                }
+            } catch (InterruptedException e) {
+                LOGGER.log(Level.FINE, "Ignoring interruption", e);
+            }
+            synchronized (GroupFsync.class) {
+                round = next;
+                next = new Round();
+            }
+            Map<Path, IOException> failures = new HashMap<>();
+            try {
+                for (Path path : round.paths) {
+                    try {
+                        forceNow(path);
+                    } catch (IOException | RuntimeException e) {
+                        failures.put(path, e instanceof IOException ? (IOException) e : new IOException(e));
+                    }
+                }
+                LOGGER.log(Level.FINER, "Forced {0} paths", round.paths.size());
+            } finally {
+                synchronized (round) {
+                    round.failures.putAll(failures);
+                    round.done = true;
+                    round.notifyAll();
+                }
+            }
+        }
+    }
+
+    private static void forceNow(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // not supported everywhere, Windows in particular
+                LOGGER.log(Level.FINE, "Failed to force " + path, e);
+            }
+        } else {
+            // write access, which Windows needs to flush
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+    }
+
+    /**
+     * How long the flusher waits for more paths to join a round, in milliseconds.
+     * By default it does not wait, as rounds build up while it is busy anyway.
+     */
+    private static final long DELAY = SystemProperties.getLong(GroupFsync.class.getName() + ".delay", 0L);
+
+    private static final Logger LOGGER = Logger.getLogger(GroupFsync.class.getName());
+}
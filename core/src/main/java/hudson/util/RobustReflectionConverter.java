@@ -41,7 +41,11 @@ import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import com.thoughtworks.xstream.mapper.Mapper;
 import hudson.diagnosis.OldDataMonitor;
 import hudson.model.Saveable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -51,13 +55,19 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import static java.util.logging.Level.FINE;
 import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.GuardedBy;
+import jenkins.util.SystemProperties;
 import jenkins.util.xstream.CriticalXStreamException;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 /**
  * Custom {@link ReflectionConverter} that handle errors more gracefully.
@@ -86,6 +96,11 @@ public class RobustReflectionConverter implements Converter {
     private final ReadWriteLock criticalFieldsLock = new ReentrantReadWriteLock();
     @GuardedBy("criticalFieldsLock")
     private final Map<String, Set<String>> criticalFields = new HashMap<String, Set<String>>();
+    /**
+     * What unmarshalling needs to know about each class, so that it is looked up once rather than for every object.
+     * Cleared along with changes to {@link #criticalFields}.
+     */
+    private final ConcurrentMap<Class<?>, ClassPlan> plans = new ConcurrentHashMap<>();
 
     public RobustReflectionConverter(Mapper mapper, ReflectionProvider reflectionProvider) {
         this(mapper, reflectionProvider, new XStream2().new PluginClassOwnership());
@@ -108,6 +123,7 @@ public class RobustReflectionConverter implements Converter {
                 criticalFields.put(field, new HashSet<String>());
             }
             criticalFields.get(field).add(clazz.getName());
+            plans.clear();
         }
         finally {
             // Unlock
@@ -268,11 +284,15 @@ public class RobustReflectionConverter implements Converter {
     public Object unmarshal(final HierarchicalStreamReader reader, final UnmarshallingContext context) {
         Object result = instantiateNewInstance(reader, context);
         result = doUnmarshal(result, reader, context);
+        if (CACHE_METADATA && result != null && !planFor(result.getClass()).hasReadResolve) {
+            return result;
+        }
         return serializationMethodInvoker.callReadResolve(result);
     }
 
     public Object doUnmarshal(final Object result, final HierarchicalStreamReader reader, final UnmarshallingContext context) {
         final SeenFields seenFields = new SeenFields();
+        final ClassPlan plan = CACHE_METADATA ? planFor(result.getClass()) : null;
         Iterator it = reader.getAttributeNames();
         // Remember outermost Saveable encountered, for reporting below
         if (result instanceof Saveable && context.get("Saveable") == null)
@@ -283,9 +303,8 @@ public class RobustReflectionConverter implements Converter {
             String attrAlias = (String) it.next();
             String attrName = mapper.attributeForAlias(attrAlias);
             Class classDefiningField = determineWhichClassDefinesField(reader);
-            boolean fieldExistsInClass = fieldDefinedInClass(result, attrName);
-            if (fieldExistsInClass) {
-                Field field = reflectionProvider.getField(result.getClass(), attrName);
+            Field field = fieldOrNull(plan, result, attrName);
+            if (field != null) {
                 SingleValueConverter converter = mapper.getConverterFromAttribute(field.getDeclaringClass(),attrName,field.getType());
                 Class type = field.getType();
                 if (converter == null) {
@@ -299,7 +318,7 @@ public class RobustReflectionConverter implements Converter {
                     if (value != null && !type.isAssignableFrom(value.getClass())) {
                         throw new ConversionException("Cannot convert type " + value.getClass().getName() + " to type " + type.getName());
                     }
-                    reflectionProvider.writeField(result, attrName, value, classDefiningField);
+                    writeField(plan, result, attrName, value, classDefiningField);
                     seenFields.add(classDefiningField, attrName);
                 }
             }
@@ -312,25 +331,19 @@ public class RobustReflectionConverter implements Converter {
             boolean critical = false;
             try {
                 String fieldName = mapper.realMember(result.getClass(), reader.getNodeName());
-                for (Class<?> concrete = result.getClass(); concrete != null; concrete = concrete.getSuperclass()) {
-                    // Not quite right since a subclass could shadow a field, but probably suffices:
-                    if (hasCriticalField(concrete, fieldName)) {
-                        critical = true;
-                        break;
-                    }
-                }
+                critical = plan != null ? plan.criticalFields.contains(fieldName) : isCritical(result.getClass(), fieldName);
                 boolean implicitCollectionHasSameName = mapper.getImplicitCollectionDefForFieldName(result.getClass(), reader.getNodeName()) != null;
 
                 Class classDefiningField = determineWhichClassDefinesField(reader);
-                boolean fieldExistsInClass = !implicitCollectionHasSameName && fieldDefinedInClass(result,fieldName);
+                Field field = implicitCollectionHasSameName ? null : fieldOrNull(plan, result, fieldName);
+                boolean fieldExistsInClass = field != null;
 
-                Class type = determineType(reader, fieldExistsInClass, result, fieldName, classDefiningField);
+                Class type = determineType(reader, field, result, fieldName, classDefiningField);
                 final Object value;
                 if (fieldExistsInClass) {
-                    Field field = reflectionProvider.getField(result.getClass(),fieldName);
                     value = unmarshalField(context, result, type, field);
                     // TODO the reflection provider should have returned the proper field in first place ....
-                    Class definedType = reflectionProvider.getFieldType(result, fieldName, classDefiningField);
+                    Class definedType = classDefiningField == null ? field.getType() : reflectionProvider.getFieldType(result, fieldName, classDefiningField);
                     if (!definedType.isPrimitive()) {
                         type = definedType;
                     }
@@ -343,7 +356,7 @@ public class RobustReflectionConverter implements Converter {
                     // behave as if we didn't see this element
                 } else {
                     if (fieldExistsInClass) {
-                        reflectionProvider.writeField(result, fieldName, value, classDefiningField);
+                        writeField(plan, result, fieldName, value, classDefiningField);
                         seenFields.add(classDefiningField, fieldName);
                     } else {
                         implicitCollectionsForCurrentObject = writeValueToImplicitCollection(context, value, implicitCollectionsForCurrentObject, result, fieldName);
@@ -382,10 +395,144 @@ public class RobustReflectionConverter implements Converter {
         list.add(e);
     }
 
-    private boolean fieldDefinedInClass(Object result, String attrName) {
+    private boolean isCritical(Class<?> clazz, String fieldName) {
+        for (Class<?> concrete = clazz; concrete != null; concrete = concrete.getSuperclass()) {
+            // Not quite right since a subclass could shadow a field, but probably suffices:
+            if (hasCriticalField(concrete, fieldName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private @CheckForNull Field fieldOrNull(@CheckForNull ClassPlan plan, Object result, String fieldName) {
+        if (plan != null) {
+            return fieldPlan(plan, fieldName).field;
+        }
         // during unmarshalling, unmarshal into transient fields like XStream 1.1.3
         //boolean fieldExistsInClass = reflectionProvider.fieldDefinedInClass(attrName, result.getClass());
-        return reflectionProvider.getFieldOrNull(result.getClass(),attrName)!=null;
+        return reflectionProvider.getFieldOrNull(result.getClass(), fieldName);
+    }
+
+    private void writeField(@CheckForNull ClassPlan plan, Object result, String fieldName, Object value, Class classDefiningField) {
+        FieldPlan f = plan != null && classDefiningField == null ? fieldPlan(plan, fieldName) : null;
+        if (f != null && f.setter != null && (value != null || !f.field.getType().isPrimitive())) {
+            f.set(result, value);
+        } else {
+            reflectionProvider.writeField(result, fieldName, value, classDefiningField);
+        }
+    }
+
+    private ClassPlan planFor(Class<?> type) {
+        ClassPlan plan = plans.get(type);
+        if (plan != null) {
+            return plan;
+        }
+        // consistent with criticalFields, which may change meanwhile
+        criticalFieldsLock.readLock().lock();
+        try {
+            Set<String> critical = new HashSet<String>();
+            for (String fieldName : criticalFields.keySet()) {
+                if (isCritical(type, fieldName)) {
+                    critical.add(fieldName);
+                }
+            }
+            plan = new ClassPlan(type, critical, hasReadResolve(type));
+            ClassPlan existing = plans.putIfAbsent(type, plan);
+            return existing != null ? existing : plan;
+        } finally {
+            criticalFieldsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether {@link SerializationMethodInvoker#callReadResolve} would find a method to call.
+     */
+    private static boolean hasReadResolve(Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("readResolve");
+                return true;
+            } catch (NoSuchMethodException e) {
+                // keep looking
+            } catch (LinkageError | SecurityException e) {
+                // let the invoker deal with it
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private FieldPlan fieldPlan(ClassPlan plan, String fieldName) {
+        FieldPlan f = plan.fields.get(fieldName);
+        if (f == null) {
+            f = newFieldPlan(plan.type, fieldName);
+            FieldPlan existing = plan.fields.putIfAbsent(fieldName, f);
+            if (existing != null) {
+                f = existing;
+            }
+        }
+        return f;
+    }
+
+    private FieldPlan newFieldPlan(Class<?> type, String fieldName) {
+        Field field = reflectionProvider.getFieldOrNull(type, fieldName);
+        if (field == null) {
+            return FieldPlan.NONE;
+        }
+        MethodHandle setter = null;
+        int modifiers = field.getModifiers();
+        // the providers of XStream write to the same field as this finds, other providers may do it differently
+        if (reflectionProvider instanceof PureJavaReflectionProvider && !Modifier.isFinal(modifiers) && !Modifier.isStatic(modifiers)) {
+            try {
+                field.setAccessible(true);
+                setter = MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+            } catch (IllegalAccessException | RuntimeException e) {
+                LOGGER.log(FINE, "Cannot write directly to " + field, e);
+            }
+        }
+        return new FieldPlan(field, setter);
+    }
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final class ClassPlan {
+        final Class<?> type;
+        /** Names of the critical fields of the class and its superclasses. */
+        final Set<String> criticalFields;
+        final boolean hasReadResolve;
+        /** Fields by name, as {@link ReflectionProvider#getFieldOrNull} finds them. */
+        final ConcurrentMap<String, FieldPlan> fields = new ConcurrentHashMap<>();
+
+        ClassPlan(Class<?> type, Set<String> criticalFields, boolean hasReadResolve) {
+            this.type = type;
+            this.criticalFields = criticalFields;
+            this.hasReadResolve = hasReadResolve;
+        }
+    }
+
+    private static final class FieldPlan {
+        static final FieldPlan NONE = new FieldPlan(null, null);
+
+        final @CheckForNull Field field;
+        /** Writes the field, if it can be done without the {@link ReflectionProvider}. */
+        final @CheckForNull MethodHandle setter;
+
+        FieldPlan(Field field, MethodHandle setter) {
+            this.field = field;
+            this.setter = setter;
+        }
+
+        void set(Object target, Object value) {
+            try {
+                setter.invokeExact(target, value);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                // like the ReflectionProvider, so that doUnmarshal reports it rather than failing the whole load
+                throw new ObjectAccessException("Could not set field " + field, t);
+            }
+        }
     }
 
     protected Object unmarshalField(final UnmarshallingContext context, final Object result, Class type, Field field) {
@@ -454,9 +601,11 @@ public class RobustReflectionConverter implements Converter {
 
     }
 
-    private Class determineType(HierarchicalStreamReader reader, boolean validField, Object result, String fieldName, Class definedInCls) {
+    private Class determineType(HierarchicalStreamReader reader, @CheckForNull Field field, Object result, String fieldName, Class definedInCls) {
+        boolean validField = field != null;
         String classAttribute = reader.getAttribute(mapper.aliasForAttribute("class"));
-        Class fieldType = reflectionProvider.getFieldType(result, fieldName, definedInCls);
+        // also reports fields missing from the class
+        Class fieldType = validField && definedInCls == null ? field.getType() : reflectionProvider.getFieldType(result, fieldName, definedInCls);
         if (classAttribute != null) {
             Class specifiedType = mapper.realClass(classAttribute);
             if(fieldType.isAssignableFrom(specifiedType))
@@ -488,5 +637,11 @@ public class RobustReflectionConverter implements Converter {
         }
     }
 
+    /**
+     * Whether to look up what unmarshalling needs to know about each class only once.
+     */
+    @Restricted(NoExternalUse.class)
+    public static /* Script Console modifiable */ boolean CACHE_METADATA = SystemProperties.getBoolean(RobustReflectionConverter.class.getName() + ".cacheMetadata", true);
+
     private static final Logger LOGGER = Logger.getLogger(RobustReflectionConverter.class.getName());
 }
@@ -25,7 +25,9 @@ package hudson.util;
 
 import hudson.CloseProofOutputStream;
 import hudson.model.TaskListener;
+import hudson.remoting.Channel;
 import hudson.remoting.RemoteOutputStream;
+import hudson.slaves.BatchedLogTransportNodeProperty;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
@@ -63,6 +65,12 @@ public class StreamTaskListener extends AbstractTaskListener implements TaskList
     private PrintStream out;
     @CheckForNull
     private Charset charset;
+    /**
+     * Counts the output received from agents through {@link BatchedRemoteOutputStream}s.
+     * Created when this listener is first sent to an agent that has {@link BatchedLogTransportNodeProperty}.
+     */
+    @CheckForNull
+    private transient volatile BatchedRemoteOutputStream.Statistics remoteStatistics;
 
     /**
      * @deprecated as of 1.349
@@ -163,8 +171,31 @@ public class StreamTaskListener extends AbstractTaskListener implements TaskList
         return charset != null ? charset : Charset.defaultCharset();
     }
 
+    /**
+     * Statistics of the output received from agents configured with {@link BatchedLogTransportNodeProperty}.
+     *
+     * @return null if this listener has not been sent to such an agent.
+     * @since TODO
+     */
+    @CheckForNull
+    public BatchedRemoteOutputStream.Statistics getRemoteStatistics() {
+        return remoteStatistics;
+    }
+
     private void writeObject(ObjectOutputStream out) throws IOException {
-        out.writeObject(new RemoteOutputStream(new CloseProofOutputStream(this.out)));
+        BatchedLogTransportNodeProperty batching = BatchedLogTransportNodeProperty.forChannel(Channel.current());
+        if (batching == null) {
+            out.writeObject(new RemoteOutputStream(new CloseProofOutputStream(this.out)));
+        } else {
+            BatchedRemoteOutputStream.Statistics stats;
+            synchronized (this) {
+                stats = remoteStatistics;
+                if (stats == null)
+                    remoteStatistics = stats = new BatchedRemoteOutputStream.Statistics();
+            }
+            // read back as an OutputStream by readObject, so the serial form stays compatible
+            out.writeObject(batching.wrap(new RemoteOutputStream(stats.count(new CloseProofOutputStream(this.out)))));
+        }
         out.writeObject(charset==null? null : charset.name());
     }
 
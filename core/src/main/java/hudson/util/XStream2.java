@@ -92,6 +92,7 @@ public class XStream2 extends XStream {
     private RobustReflectionConverter reflectionConverter;
     private final ThreadLocal<Boolean> oldData = new ThreadLocal<Boolean>();
     private final @CheckForNull ClassOwnership classOwnership;
+    private final HierarchicalStreamDriver driver;
     private final Map<String,Class<?>> compatibilityAliases = new ConcurrentHashMap<String, Class<?>>();
 
     /**
@@ -110,23 +111,32 @@ public class XStream2 extends XStream {
     }
 
     public XStream2() {
-        super(getDefaultDriver());
-        init();
-        classOwnership = null;
+        this(getDefaultDriver(), null);
     }
 
     public XStream2(HierarchicalStreamDriver hierarchicalStreamDriver) {
-        super(hierarchicalStreamDriver);
-        init();
-        classOwnership = null;
+        this(hierarchicalStreamDriver, null);
     }
 
     XStream2(ClassOwnership classOwnership) {
-        super(getDefaultDriver());
+        this(getDefaultDriver(), classOwnership);
+    }
+
+    private XStream2(HierarchicalStreamDriver hierarchicalStreamDriver, @CheckForNull ClassOwnership classOwnership) {
+        super(hierarchicalStreamDriver);
+        this.driver = hierarchicalStreamDriver;
         init();
         this.classOwnership = classOwnership;
     }
 
+    /**
+     * Gets the driver this instance reads and writes XML with.
+     * @since TODO
+     */
+    public HierarchicalStreamDriver getDriver() {
+        return driver;
+    }
+
     @Override
     public Object unmarshal(HierarchicalStreamReader reader, Object root, DataHolder dataHolder) {
         return unmarshal(reader, root, dataHolder, false);
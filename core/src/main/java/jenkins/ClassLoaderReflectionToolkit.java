@@ -82,6 +82,21 @@ public class ClassLoaderReflectionToolkit {
         }
     }
 
+    /**
+     * Calls {@link ClassLoader#findLoadedClass} and then, if the class is not loaded yet, {@link ClassLoader#findClass},
+     * holding {@link ClassLoader#getClassLoadingLock} throughout so that concurrent callers do not define it twice.
+     * @since TODO
+     */
+    public static @Nonnull Class<?> _findLoadedOrFindClass(ClassLoader cl, String name) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(cl, name)) {
+            Class<?> c = (Class) invoke(FIND_LOADED_CLASS, RuntimeException.class, cl, name);
+            if (c != null) {
+                return c;
+            }
+            return (Class) invoke(FIND_CLASS, ClassNotFoundException.class, cl, name);
+        }
+    }
+
     /**
      * Calls {@link ClassLoader#findResource}.
      * @since 1.553
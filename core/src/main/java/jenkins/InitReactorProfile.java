@@ -0,0 +1,292 @@
+package jenkins;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.jvnet.hudson.reactor.Milestone;
+import org.jvnet.hudson.reactor.ReactorListener;
+import org.jvnet.hudson.reactor.Task;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records when and on which thread each task of an {@link InitReactorRunner} ran,
+ * to tell which of them lengthen the boot.
+ *
+ * <p>
+ * Each task is linked to the task it waited for last: of those attaining the milestones it requires,
+ * the one that completed last. A task requiring none, such as one added to the reactor by another task,
+ * is linked to the last task to complete before it started. Following these links back from the task
+ * to complete last gives the critical path of the boot.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class InitReactorProfile implements ReactorListener {
+
+    /**
+     * What was recorded of one task.
+     */
+    public static final class TaskRecord {
+        private final String displayName;
+        private final String thread;
+        private final long start;
+        private long end = -1;
+        private boolean failed;
+        private @CheckForNull TaskRecord predecessor;
+
+        TaskRecord(String displayName, String thread, long start) {
+            this.displayName = displayName;
+            this.thread = thread;
+            this.start = start;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        /**
+         * When the task started, in milliseconds since the reactor started.
+         */
+        public long getStartMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(start);
+        }
+
+        public long getDurationMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(getDuration());
+        }
+
+        /**
+         * How long the task waited after the task it waited for last completed, in milliseconds,
+         * such as for a free thread.
+         */
+        public long getWaitMillis() {
+            TaskRecord p = predecessor;
+            return p == null || p.end < 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(Math.max(0, start - p.end));
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        public @CheckForNull TaskRecord getPredecessor() {
+            return predecessor;
+        }
+
+        long getDuration() {
+            return end < 0 ? 0 : end - start;
+        }
+    }
+
+    private static volatile InitReactorProfile boot;
+
+    /**
+     * The profile of the reactor which booted Jenkins, once it is done.
+     */
+    public static @CheckForNull InitReactorProfile getBoot() {
+        return boot;
+    }
+
+    /**
+     * Keeps the given profile as that of the boot. Reloads and plugins loaded later run reactors of their own,
+     * which must not replace it.
+     */
+    public static void setBoot(@Nonnull InitReactorProfile profile) {
+        boot = profile;
+    }
+
+    private final long origin = System.nanoTime();
+
+    private final List<TaskRecord> records = new ArrayList<>();
+
+    /**
+     * Tasks still running, dropped once they complete so as not to keep them.
+     */
+    private final Map<Task, TaskRecord> running = new IdentityHashMap<>();
+
+    /**
+     * The task to complete last among those attaining each milestone, while the reactor runs.
+     */
+    private final Map<Milestone, TaskRecord> lastAttainers = new HashMap<>();
+
+    private @CheckForNull TaskRecord lastCompleted;
+
+    private boolean finished;
+
+    InitReactorProfile() {
+    }
+
+    @Override
+    public synchronized void onTaskStarted(Task t) {
+        if (finished) {
+            return;
+        }
+        TaskRecord r = new TaskRecord(InitReactorRunner.getDisplayName(t), Thread.currentThread().getName(), System.nanoTime() - origin);
+        for (Milestone m : t.requires()) {
+            TaskRecord attainer = lastAttainers.get(m);
+            if (attainer != null && (r.predecessor == null || attainer.end > r.predecessor.end)) {
+                r.predecessor = attainer;
+            }
+        }
+        if (r.predecessor == null) {
+            r.predecessor = lastCompleted;
+        }
+        records.add(r);
+        running.put(t, r);
+    }
+
+    @Override
+    public synchronized void onTaskCompleted(Task t) {
+        completed(t, false);
+    }
+
+    @Override
+    public synchronized void onTaskFailed(Task t, Throwable err, boolean fatal) {
+        completed(t, true);
+    }
+
+    private void completed(Task t, boolean failed) {
+        TaskRecord r = running.remove(t);
+        if (r == null) {
+            return;
+        }
+        r.end = System.nanoTime() - origin;
+        r.failed = failed;
+        lastCompleted = r;
+        if (finished) {
+            return;
+        }
+        for (Milestone m : t.attains()) {
+            lastAttainers.put(m, r);
+        }
+        if (t instanceof Milestone) {
+            // a handle of TaskGraphBuilder, required by the tasks to follow it
+            lastAttainers.put((Milestone) t, r);
+        }
+    }
+
+    @Override
+    public void onAttained(Milestone milestone) {
+    }
+
+    /**
+     * Called once the reactor is done, to let go of its tasks and milestones.
+     */
+    synchronized void finish() {
+        finished = true;
+        running.clear();
+        lastAttainers.clear();
+    }
+
+    /**
+     * All the tasks, in the order they started.
+     */
+    public synchronized @Nonnull List<TaskRecord> getTasks() {
+        return new ArrayList<>(records);
+    }
+
+    /**
+     * The tasks that took longest.
+     */
+    public @Nonnull List<TaskRecord> getSlowestTasks(int count) {
+        List<TaskRecord> tasks = getTasks();
+        Collections.sort(tasks, new Comparator<TaskRecord>() {
+            @Override
+            public int compare(TaskRecord r1, TaskRecord r2) {
+                return Long.compare(r2.getDuration(), r1.getDuration());
+            }
+        });
+        return tasks.subList(0, Math.min(count, tasks.size()));
+    }
+
+    /**
+     * The chain of tasks which ended with the last to complete, each one waiting for the one before it.
+     */
+    public @Nonnull List<TaskRecord> getCriticalPath() {
+        TaskRecord end = null;
+        for (TaskRecord r : getTasks()) {
+            if (end == null || r.end > end.end) {
+                end = r;
+            }
+        }
+        List<TaskRecord> path = new ArrayList<>();
+        for (TaskRecord r = end; r != null; r = r.predecessor) {
+            path.add(r);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * How long the reactor ran, in milliseconds, until the end of its last task.
+     */
+    public long getTotalMillis() {
+        long end = 0;
+        for (TaskRecord r : getTasks()) {
+            end = Math.max(end, r.end);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(end);
+    }
+
+    /**
+     * Renders the tasks as a trace in the Chrome Trace Event format, for {@code chrome://tracing} and similar tools.
+     * Tasks on the critical path are in their own category.
+     */
+    public @Nonnull JSONObject toChromeTrace() {
+        List<TaskRecord> tasks = getTasks();
+        Map<TaskRecord, Boolean> critical = new IdentityHashMap<>();
+        for (TaskRecord r : getCriticalPath()) {
+            critical.put(r, Boolean.TRUE);
+        }
+        Map<String, Integer> threadIds = new HashMap<>();
+        JSONArray events = new JSONArray();
+        for (TaskRecord r : tasks) {
+            Integer tid = threadIds.get(r.thread);
+            if (tid == null) {
+                tid = threadIds.size() + 1;
+                threadIds.put(r.thread, tid);
+                JSONObject name = new JSONObject();
+                name.put("name", "thread_name");
+                name.put("ph", "M");
+                name.put("pid", 1);
+                name.put("tid", tid);
+                name.put("args", new JSONObject().element("name", r.thread));
+                events.add(name);
+            }
+            JSONObject event = new JSONObject();
+            event.put("name", r.displayName);
+            event.put("cat", critical.containsKey(r) ? "critical" : "task");
+            event.put("ph", "X");
+            event.put("ts", TimeUnit.NANOSECONDS.toMicros(r.start));
+            event.put("dur", TimeUnit.NANOSECONDS.toMicros(r.getDuration()));
+            event.put("pid", 1);
+            event.put("tid", tid);
+            JSONObject args = new JSONObject();
+            args.put("failed", r.failed);
+            args.put("waitMillis", r.getWaitMillis());
+            if (r.predecessor != null) {
+                args.put("predecessor", r.predecessor.displayName);
+            }
+            event.put("args", args);
+            events.add(event);
+        }
+        JSONObject trace = new JSONObject();
+        trace.put("traceEvents", events);
+        trace.put("displayTimeUnit", "ms");
+        return trace;
+    }
+}
@@ -29,12 +29,16 @@ import static java.util.logging.Level.SEVERE;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
+import javax.annotation.CheckForNull;
+
 /**
  * Executes the {@link Reactor} for the purpose of bootup.
  *
  * @author Kohsuke Kawaguchi
  */
 public class InitReactorRunner {
+    private InitReactorProfile profile;
+
     public void run(Reactor reactor) throws InterruptedException, ReactorException, IOException {
          reactor.addAll(InitMilestone.ordering().discoverTasks(reactor));
 
@@ -44,23 +48,37 @@ public class InitReactorRunner {
                 TWICE_CPU_NUM, TWICE_CPU_NUM, 5L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
         else
             es = Executors.newSingleThreadExecutor(new NamingThreadFactory(new DaemonThreadFactory(), "InitReactorRunner"));
+        InitReactorProfile profile = new InitReactorProfile();
+        this.profile = profile;
         try {
-            reactor.execute(es,buildReactorListener());
+            reactor.execute(es,buildReactorListener(profile));
         } finally {
             es.shutdownNow();   // upon a successful return the executor queue should be empty. Upon an exception, we want to cancel all pending tasks
+            profile.finish();
         }
 
     }
 
     /**
-     * Aggregates all the listeners into one and returns it.
+     * What was recorded of the tasks of the last {@link #run}, once it has started.
+     *
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public @CheckForNull InitReactorProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Aggregates all the listeners, including the one recording the given profile, into one and returns it.
      *
      * <p>
      * At this point plugins are not loaded yet, so we fall back to the META-INF/services look up to discover implementations.
      * As such there's no way for plugins to participate into this process.
      */
-    private ReactorListener buildReactorListener() throws IOException {
+    private ReactorListener buildReactorListener(InitReactorProfile profile) throws IOException {
         List<ReactorListener> r = Lists.newArrayList(ServiceLoader.load(InitReactorListener.class, Thread.currentThread().getContextClassLoader()));
+        r.add(profile);
         r.add(new ReactorListener() {
             final Level level = Level.parse( Configuration.getStringConfigParameter("initLogLevel", "FINE") );
             public void onTaskStarted(Task t) {
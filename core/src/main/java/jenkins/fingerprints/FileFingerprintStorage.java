@@ -0,0 +1,91 @@
+package jenkins.fingerprints;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Fingerprint;
+import jenkins.model.Jenkins;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Default {@link FingerprintStorage}, which keeps each fingerprint in its own XML file
+ * under {@code $JENKINS_HOME/fingerprints/}.
+ *
+ * @since TODO
+ */
+public class FileFingerprintStorage extends FingerprintStorage {
+
+    @DataBoundConstructor
+    public FileFingerprintStorage() {}
+
+    @Override
+    public void save(@Nonnull Fingerprint fp) throws IOException {
+        fp.save(getFingerprintFile(fp.getHashString()));
+    }
+
+    @Override
+    public @CheckForNull Fingerprint load(@Nonnull String id) throws IOException {
+        return Fingerprint.load(getFingerprintFile(id));
+    }
+
+    @Override
+    public void delete(@Nonnull String id) throws IOException {
+        File file = getFingerprintFile(id);
+        if (file.exists() && !file.delete())
+            LOGGER.log(Level.WARNING, "Failed to delete {0}", file);
+    }
+
+    @Override
+    public boolean isReady() {
+        return getRootDir().exists();
+    }
+
+    @Override
+    public boolean forEachId(@Nonnull Consumer<String> visitor) throws IOException {
+        for (File dir1 : list(getRootDir())) {
+            for (File dir2 : list(dir1)) {
+                for (File file : list(dir2)) {
+                    String name = file.getName();
+                    if (name.length() == 32 && name.endsWith(".xml"))
+                        visitor.accept(dir1.getName() + dir2.getName() + name.substring(0, 28));
+                }
+            }
+        }
+        return true;
+    }
+
+    private static @Nonnull File[] list(@Nonnull File dir) {
+        File[] files = dir.listFiles();
+        return files != null ? files : new File[0];
+    }
+
+    static @Nonnull File getRootDir() {
+        return new File(Jenkins.get().getRootDir(), "fingerprints");
+    }
+
+    /**
+     * Determines the file name from the MD5 checksum.
+     */
+    public static @Nonnull File getFingerprintFile(@Nonnull String id) {
+        assert id.length()==32;
+        return new File(getRootDir(), id.substring(0,2)+'/'+id.substring(2,4)+'/'+id.substring(4)+".xml");
+    }
+
+    @Extension(ordinal = 100) @Symbol("file")
+    public static class DescriptorImpl extends FingerprintStorageDescriptor {
+        @Override
+        public String getDisplayName() {
+            return Messages.FileFingerprintStorage_displayName();
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(FileFingerprintStorage.class.getName());
+}
@@ -0,0 +1,342 @@
+package jenkins.fingerprints;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.Fingerprint;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.listeners.ItemListener;
+import hudson.util.AtomicFileWriter;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of the fingerprints referring to each job, as their original or in their usages,
+ * so that renaming or deleting a job only loads those fingerprints.
+ *
+ * <p>
+ * The index is kept in memory and written to {@value #FILE_NAME} a few seconds after changes.
+ * That file is only trusted after a clean shutdown, since changes made right before a crash may be missing from it.
+ * Otherwise the index is first built from {@link FingerprintStorage#forEachId(java.util.function.Consumer)};
+ * until then, or if the storage cannot list its fingerprints, {@link #getFingerprints(String)} returns null
+ * and callers should fall back to going through builds.
+ * Fingerprints may remain listed after they stopped referring to a job, so callers must check each of them.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class FingerprintJobIndex {
+
+    static final String FILE_NAME = "fingerprintJobIndex.txt";
+
+    private static final String HEADER_COMPLETE = "complete";
+    private static final String HEADER_PARTIAL = "partial";
+
+    private final File file;
+
+    /**
+     * Job full name to fingerprint IDs.
+     */
+    private final ConcurrentMap<String, Set<String>> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Whether all the stored fingerprints were indexed.
+     */
+    private volatile boolean complete;
+
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+
+    FingerprintJobIndex(@Nonnull File file) {
+        this.file = file;
+    }
+
+    private static FingerprintJobIndex INSTANCE;
+
+    /**
+     * Gets the index of this Jenkins instance, or null if there is none, as in unit tests.
+     */
+    public static @CheckForNull FingerprintJobIndex get() {
+        Jenkins j = Jenkins.getInstanceOrNull();
+        if (j == null)
+            return null;
+        synchronized (FingerprintJobIndex.class) {
+            if (INSTANCE == null) {
+                FingerprintJobIndex index = new FingerprintJobIndex(new File(j.getRootDir(), FILE_NAME));
+                index.load();
+                INSTANCE = index;
+            }
+            return INSTANCE;
+        }
+    }
+
+    /**
+     * Records that a fingerprint refers to a job.
+     */
+    public void add(@Nonnull String job, @Nonnull String id) {
+        if (jobs.computeIfAbsent(job, k -> ConcurrentHashMap.newKeySet()).add(id))
+            changed();
+    }
+
+    /**
+     * Records that a fingerprint no longer refers to a job.
+     */
+    public void remove(@Nonnull String job, @Nonnull String id) {
+        Set<String> ids = jobs.get(job);
+        if (ids != null && ids.remove(id)) {
+            if (ids.isEmpty())
+                jobs.remove(job, ids);
+            changed();
+        }
+    }
+
+    /**
+     * Forgets about a fingerprint being deleted.
+     */
+    public void remove(@Nonnull Fingerprint fp) {
+        String id = fp.getHashString();
+        for (String job : fp.getJobs())
+            remove(job, id);
+        Fingerprint.BuildPtr original = fp.getOriginal();
+        if (original != null)
+            remove(original.getName(), id);
+    }
+
+    /**
+     * Moves the fingerprints of a job to its new name.
+     */
+    public void rename(@Nonnull String oldName, @Nonnull String newName) {
+        Set<String> ids = jobs.remove(oldName);
+        if (ids != null) {
+            for (String id : ids)
+                add(newName, id);
+            changed();
+        }
+    }
+
+    /**
+     * Forgets about a job and returns the fingerprints that referred to it.
+     */
+    public @Nonnull Set<String> removeJob(@Nonnull String job) {
+        Set<String> ids = jobs.remove(job);
+        if (ids == null)
+            return Collections.emptySet();
+        changed();
+        return ids;
+    }
+
+    /**
+     * Gets the IDs of the fingerprints which may refer to a job.
+     *
+     * @return null if the index is not complete yet.
+     */
+    public @CheckForNull Set<String> getFingerprints(@Nonnull String job) {
+        if (!complete)
+            return null;
+        Set<String> ids = jobs.get(job);
+        return ids == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(new HashSet<>(ids));
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Indexes all the fingerprints in the storage.
+     */
+    void build(@Nonnull FingerprintStorage storage) throws IOException {
+        long start = System.nanoTime();
+        AtomicInteger count = new AtomicInteger();
+        boolean listed = storage.forEachId(id -> {
+            try {
+                Fingerprint fp = storage.load(id);
+                if (fp == null)
+                    return;
+                for (String job : fp.getJobs())
+                    add(job, id);
+                Fingerprint.BuildPtr original = fp.getOriginal();
+                if (original != null)
+                    add(original.getName(), id);
+                count.incrementAndGet();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to index fingerprint " + id, e);
+            }
+        });
+        if (!listed) {
+            LOGGER.log(Level.FINE, "{0} cannot list its fingerprints, not indexing them", storage);
+            return;
+        }
+        complete = true;
+        changed();
+        LOGGER.log(Level.INFO, "Indexed {0} fingerprints by job in {1}ms",
+                new Object[] {count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+    }
+
+    private void changed() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            Timer.get().schedule(() -> {
+                saveScheduled.set(false);
+                save(false);
+            }, SAVE_DELAY, TimeUnit.SECONDS);
+        }
+    }
+
+    synchronized void load() {
+        jobs.clear();
+        complete = false;
+        if (!file.isFile())
+            return;
+        try (BufferedReader r = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String header = r.readLine();
+            String line;
+            while ((line = r.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0)
+                    continue;
+                Set<String> ids = ConcurrentHashMap.newKeySet();
+                for (String id : line.substring(tab + 1).split(" ")) {
+                    if (!id.isEmpty())
+                        ids.add(id);
+                }
+                jobs.put(URLDecoder.decode(line.substring(0, tab), "UTF-8"), ids);
+            }
+            complete = HEADER_COMPLETE.equals(header);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Failed to read " + file + ", fingerprints will be indexed again", e);
+            jobs.clear();
+            return;
+        }
+        if (complete) {
+            // not to be trusted again until the next clean shutdown
+            save(false);
+        }
+    }
+
+    /**
+     * @param clean
+     *      whether no more changes will happen, so that the file can be trusted when next loaded.
+     */
+    synchronized void save(boolean clean) {
+        try {
+            AtomicFileWriter w = new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8);
+            try {
+                w.write(complete && clean ? HEADER_COMPLETE : HEADER_PARTIAL);
+                w.write('\n');
+                for (Map.Entry<String, Set<String>> e : jobs.entrySet()) {
+                    w.write(encode(e.getKey()));
+                    w.write('\t');
+                    w.write(String.join(" ", e.getValue()));
+                    w.write('\n');
+                }
+                w.commit();
+            } finally {
+                w.abort();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write " + file, e);
+        }
+    }
+
+    private static String encode(String job) {
+        try {
+            return URLEncoder.encode(job, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void init() {
+        final FingerprintJobIndex index = get();
+        if (index == null || index.isComplete())
+            return;
+        Timer.get().submit(() -> {
+            try {
+                index.build(FingerprintStorage.get());
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to index fingerprints by job", e);
+            }
+        });
+    }
+
+    @Terminator(requires = FingerprintSaveQueue.FLUSHED)
+    public static void shutdown() {
+        FingerprintJobIndex index;
+        synchronized (FingerprintJobIndex.class) {
+            index = INSTANCE;
+        }
+        if (index != null)
+            index.save(true);
+    }
+
+    /**
+     * Cleans up the fingerprints of deleted jobs.
+     */
+    @Extension
+    public static final class DeletionListener extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            if (!(item instanceof Job))
+                return;
+            FingerprintJobIndex index = get();
+            if (index == null)
+                return;
+            final boolean wasComplete = index.isComplete();
+            final Set<String> ids = index.removeJob(item.getFullName());
+            if (!wasComplete || ids.isEmpty())
+                return;
+            // other fingerprints are left to FingerprintCleanupThread
+            Timer.get().submit(() -> {
+                FingerprintStorage storage = FingerprintStorage.get();
+                for (String id : ids) {
+                    try {
+                        Fingerprint fp = Jenkins.get()._getFingerprint(id);
+                        if (fp == null)
+                            continue;
+                        if (!fp.isAlive()) {
+                            index.remove(fp);
+                            FingerprintSaveQueue.cancel(id);
+                            storage.delete(id);
+                        } else {
+                            fp.trim();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Failed to clean up fingerprint " + id, e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * How long to wait for more changes before writing the index, in seconds.
+     */
+    private static final long SAVE_DELAY = 10;
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintJobIndex.class.getName());
+}
@@ -0,0 +1,515 @@
+package jenkins.fingerprints;
+
+import hudson.Util;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only key/value log of fingerprint records, keyed by MD5 checksum.
+ *
+ * <p>
+ * Records are appended to the newest of a series of segment files, and an in-memory hash index maps each
+ * checksum to the location of its latest record. Removals are appended as tombstones.
+ * Once a segment holds mostly superseded records, {@link #compact(double)} copies the records that are still live
+ * to the newest segment and deletes it.
+ *
+ * <p>
+ * A tombstone only matters while a segment older than the one it was first written to remains, since only such
+ * a segment can hold a record it hides. It carries the number of that segment, its horizon, so that compaction
+ * drops it once all those segments are gone. Until then, it counts as live when deciding what to compact.
+ *
+ * <p>
+ * Writes are not forced to disk individually; {@link #sync()} is expected to be called periodically.
+ * Every record carries a CRC32, so a segment torn by a crash is truncated to its last complete record when reopened.
+ *
+ * <p>
+ * Record layout: payload length (int), type (byte), checksum (16 bytes), payload, CRC32 of all but the length (int).
+ * The payload of a tombstone is its horizon (int), or empty in logs written before horizons were recorded.
+ */
+final class FingerprintLog implements Closeable {
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final int ID_LENGTH = 16;
+    private static final int HEADER = 4 + 1 + ID_LENGTH;
+    private static final int OVERHEAD = HEADER + 4;
+    /**
+     * Sanity limit on the payload length when scanning, to detect garbage.
+     */
+    private static final int MAX_PAYLOAD = 64 * 1024 * 1024;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{8})\\.log");
+
+    private final File dir;
+    private volatile long segmentSize;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Lower-case hex checksum to the location of its latest record.
+     */
+    private final Map<String,Location> index = new ConcurrentHashMap<>();
+    /**
+     * Segments by number. The last one is where records are appended.
+     * Guarded by {@link #lock}.
+     */
+    private final TreeMap<Integer,Segment> segments = new TreeMap<>();
+    private Segment active;
+    private volatile boolean dirty;
+    private boolean closed;
+
+    /**
+     * Opens the log in the given directory, creating it if needed and rebuilding the index from the segments.
+     *
+     * @param segmentSize
+     *      Size past which a new segment is started.
+     */
+    FingerprintLog(@Nonnull File dir, long segmentSize) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(dir.toPath());
+
+        File[] files = dir.listFiles();
+        if (files != null) {
+            TreeMap<Integer,File> found = new TreeMap<>();
+            for (File f : files) {
+                Matcher m = SEGMENT_NAME.matcher(f.getName());
+                if (m.matches())
+                    found.put(Integer.parseInt(m.group(1)), f);
+            }
+            for (Map.Entry<Integer,File> e : found.entrySet()) {
+                Segment s = open(e.getKey(), e.getValue());
+                segments.put(s.number, s);
+                recover(s, e.getKey().equals(found.lastKey()));
+            }
+        }
+        if (segments.isEmpty()) {
+            roll();
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+    }
+
+    void setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    private Segment open(int number, File file) throws IOException {
+        FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(number, file, ch);
+    }
+
+    /**
+     * Reads all the records of a segment into the index.
+     *
+     * @param last
+     *      Whether this is the newest segment, whose tail may have been torn by a crash.
+     */
+    private void recover(Segment s, boolean last) throws IOException {
+        long pos = 0;
+        long size = s.channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        while (pos < size) {
+            Record r = readRecord(s.channel, pos, header);
+            if (r == null) {
+                if (last) {
+                    LOGGER.log(Level.WARNING, "Truncating {0} at {1} after an incomplete record", new Object[] {s.file, pos});
+                    s.channel.truncate(pos);
+                } else {
+                    LOGGER.log(Level.WARNING, "Ignoring {0} past {1} after a corrupted record", new Object[] {s.file, pos});
+                }
+                break;
+            }
+            int recordSize = OVERHEAD + r.payload.length;
+            if (r.type == PUT) {
+                Location old = index.put(r.id, new Location(s, pos, recordSize));
+                if (old != null)
+                    old.segment.live -= old.size;
+                s.live += recordSize;
+            } else {
+                Location old = index.remove(r.id);
+                if (old != null)
+                    old.segment.live -= old.size;
+                s.addTombstone(recordSize, horizon(r, s));
+            }
+            pos += recordSize;
+        }
+        s.size = pos;
+    }
+
+    /**
+     * Reads and verifies a record.
+     *
+     * @return null if there is no valid record at this position.
+     */
+    private static @CheckForNull Record readRecord(FileChannel ch, long pos, ByteBuffer header) throws IOException {
+        header.clear();
+        if (!readFully(ch, header, pos))
+            return null;
+        header.flip();
+        int length = header.getInt();
+        byte type = header.get();
+        if (length < 0 || length > MAX_PAYLOAD || (type != PUT && type != REMOVE))
+            return null;
+        byte[] id = new byte[ID_LENGTH];
+        header.get(id);
+
+        ByteBuffer rest = ByteBuffer.allocate(length + 4);
+        if (!readFully(ch, rest, pos + HEADER))
+            return null;
+        rest.flip();
+        byte[] payload = new byte[length];
+        rest.get(payload);
+        int crc = rest.getInt();
+
+        CRC32 c = new CRC32();
+        c.update(type);
+        c.update(id);
+        c.update(payload);
+        if ((int) c.getValue() != crc)
+            return null;
+        return new Record(type, Util.toHexString(id), payload);
+    }
+
+    private static boolean readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos);
+            if (n < 0)
+                return false;
+            pos += n;
+        }
+        return true;
+    }
+
+    /**
+     * The number of the segment a tombstone was first written to.
+     */
+    private static int horizon(Record tombstone, Segment s) {
+        return tombstone.payload.length == 4 ? ByteBuffer.wrap(tombstone.payload).getInt() : s.number;
+    }
+
+    private static ByteBuffer encode(byte type, String id, byte[] payload) {
+        byte[] rawId = toBytes(id);
+        CRC32 c = new CRC32();
+        c.update(type);
+        c.update(rawId);
+        c.update(payload);
+        ByteBuffer buf = ByteBuffer.allocate(OVERHEAD + payload.length);
+        buf.putInt(payload.length).put(type).put(rawId).put(payload).putInt((int) c.getValue());
+        buf.flip();
+        return buf;
+    }
+
+    private static byte[] toBytes(String id) {
+        if (id.length() != ID_LENGTH * 2)
+            throw new IllegalArgumentException("Not an MD5 checksum: " + id);
+        byte[] b = new byte[ID_LENGTH];
+        for (int i = 0; i < ID_LENGTH; i++)
+            b[i] = (byte) Integer.parseInt(id.substring(i * 2, i * 2 + 2), 16);
+        return b;
+    }
+
+    /**
+     * Appends a record to the active segment. Called with the write lock held.
+     */
+    private Location append(ByteBuffer record) throws IOException {
+        if (closed)
+            throw new IOException(dir + " is closed");
+        Segment s = active;
+        long pos = s.size;
+        int size = record.remaining();
+        while (record.hasRemaining())
+            pos += s.channel.write(record, pos);
+        Location l = new Location(s, s.size, size);
+        s.size = pos;
+        dirty = true;
+        if (s.size >= segmentSize)
+            roll();
+        return l;
+    }
+
+    /**
+     * Starts a new active segment. Called with the write lock held, or from the constructor.
+     */
+    private void roll() throws IOException {
+        if (active != null)
+            active.channel.force(false);
+        int number = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Segment s = open(number, new File(dir, String.format("segment-%08d.log", number)));
+        segments.put(number, s);
+        active = s;
+    }
+
+    /**
+     * Gets the payload of the latest record for the given checksum.
+     *
+     * @return null if there is none.
+     */
+    @CheckForNull byte[] get(@Nonnull String id) throws IOException {
+        lock.readLock().lock();
+        try {
+            Location l = index.get(id);
+            if (l == null)
+                return null;
+            Record r = readRecord(l.segment.channel, l.offset, ByteBuffer.allocate(HEADER));
+            if (r == null || !r.id.equals(id))
+                throw new IOException("Corrupted record for " + id + " in " + l.segment.file + " at " + l.offset);
+            return r.payload;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void put(@Nonnull String id, @Nonnull byte[] payload) throws IOException {
+        ByteBuffer record = encode(PUT, id, payload);
+        lock.writeLock().lock();
+        try {
+            Location l = append(record);
+            Location old = index.put(id, l);
+            if (old != null)
+                old.segment.live -= old.size;
+            l.segment.live += l.size;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return whether there was a record for the checksum.
+     */
+    boolean remove(@Nonnull String id) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!index.containsKey(id))
+                return false;
+            int horizon = active.number;
+            Location l = append(encode(REMOVE, id, ByteBuffer.allocate(4).putInt(horizon).array()));
+            l.segment.addTombstone(l.size, horizon);
+            Location old = index.remove(id);
+            old.segment.live -= old.size;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean contains(@Nonnull String id) {
+        return index.containsKey(id);
+    }
+
+    /**
+     * Snapshot of the checksums with a live record.
+     */
+    @Nonnull Set<String> ids() {
+        return Collections.unmodifiableSet(new HashSet<>(index.keySet()));
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    /**
+     * Number of segment files.
+     */
+    int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forces written records to disk.
+     */
+    void sync() throws IOException {
+        if (!dirty)
+            return;
+        lock.writeLock().lock();
+        try {
+            if (closed)
+                return;
+            dirty = false;
+            active.channel.force(false);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the segments in which at least the given ratio of bytes are superseded, and deletes them.
+     *
+     * @return the number of segments deleted.
+     */
+    int compact(double garbageRatio) throws IOException {
+        List<Segment> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Segment s : segments.values()) {
+                if (s != active && s.size > 0 && garbage(s) >= garbageRatio * s.size)
+                    candidates.add(s);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        int compacted = 0;
+        for (Segment s : candidates) {
+            // sealed segments are never written again, so they can be read without the lock
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            long pos = 0;
+            while (pos < s.size) {
+                Record r = readRecord(s.channel, pos, header);
+                if (r == null)
+                    break;
+                int recordSize = OVERHEAD + r.payload.length;
+                lock.writeLock().lock();
+                try {
+                    if (closed)
+                        return compacted;
+                    if (r.type == PUT) {
+                        Location l = index.get(r.id);
+                        if (l != null && l.segment == s && l.offset == pos) {
+                            Location moved = append(encode(PUT, r.id, r.payload));
+                            index.put(r.id, moved);
+                            s.live -= l.size;
+                            moved.segment.live += moved.size;
+                        }
+                    } else {
+                        int horizon = horizon(r, s);
+                        if (!index.containsKey(r.id) && segments.firstKey() < horizon) {
+                            // an older segment may still hold a record that this tombstone hides
+                            Location moved = append(encode(REMOVE, r.id, ByteBuffer.allocate(4).putInt(horizon).array()));
+                            moved.segment.addTombstone(moved.size, horizon);
+                        }
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                pos += recordSize;
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (closed)
+                    return compacted;
+                // make the copies durable before dropping the originals
+                active.channel.force(false);
+                segments.remove(s.number);
+                s.channel.close();
+                Files.deleteIfExists(s.file.toPath());
+                compacted++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return compacted;
+    }
+
+    /**
+     * Bytes of a segment that compaction would not copy. Called with the lock held.
+     */
+    private long garbage(Segment s) {
+        long garbage = s.size - s.live;
+        if (segments.firstKey() < s.horizon)
+            garbage -= s.tombstones; // still needed
+        return garbage;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            if (active != null)
+                active.channel.force(false);
+            for (Segment s : segments.values())
+                s.channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static final class Segment {
+        final int number;
+        final File file;
+        final FileChannel channel;
+        /**
+         * Bytes written so far.
+         */
+        long size;
+        /**
+         * Bytes of the records still referenced from the index.
+         */
+        long live;
+        /**
+         * Bytes of the tombstones.
+         */
+        long tombstones;
+        /**
+         * Highest horizon of the tombstones, or 0 if there are none.
+         */
+        int horizon;
+
+        Segment(int number, File file, FileChannel channel) {
+            this.number = number;
+            this.file = file;
+            this.channel = channel;
+        }
+
+        void addTombstone(int size, int horizon) {
+            tombstones += size;
+            this.horizon = Math.max(this.horizon, horizon);
+        }
+    }
+
+    private static final class Location {
+        final Segment segment;
+        final long offset;
+        final int size;
+
+        Location(Segment segment, long offset, int size) {
+            this.segment = segment;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private static final class Record {
+        final byte type;
+        final String id;
+        final byte[] payload;
+
+        Record(byte type, String id, byte[] payload) {
+            this.type = type;
+            this.id = id;
+            this.payload = payload;
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintLog.class.getName());
+}
@@ -0,0 +1,329 @@
+package jenkins.fingerprints;
+
+import hudson.Extension;
+import hudson.init.Terminator;
+import hudson.model.AdministrativeMonitor;
+import hudson.model.Fingerprint;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import jenkins.util.io.WriteBehindQueue;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Saves fingerprints in the background, shortly after their usages were updated.
+ *
+ * <p>
+ * A build recording thousands of fingerprints would otherwise wait for as many writes.
+ * Updates made to a fingerprint while it waits are saved by a single write.
+ * With {@link FileFingerprintStorage} each batch is one group commit,
+ * its files being forced to disk together rather than one by one;
+ * with other storages each batch of writes is followed by one {@link FingerprintStorage#sync()}.
+ * Fingerprints waiting to be saved are still found by {@link hudson.model.FingerprintMap},
+ * and all of them are saved when Jenkins shuts down.
+ *
+ * <p>
+ * As updates made in the last {@code flushDelay} can be lost if Jenkins crashes,
+ * this is only enabled with {@code -Djenkins.fingerprints.FingerprintSaveQueue.enabled=true};
+ * otherwise fingerprints are saved right away.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class FingerprintSaveQueue {
+
+    private FingerprintSaveQueue() {}
+
+    /**
+     * Milestone attained once nothing is left to save, which storages shutting down must wait for.
+     */
+    public static final String FLUSHED = "FingerprintSaveQueue.FLUSHED";
+
+    /**
+     * Fingerprints waiting to be saved, by ID.
+     */
+    private static Map<String, Fingerprint> pending = new LinkedHashMap<>();
+
+    /**
+     * Fingerprints of the current {@link #flush()} not saved yet, still visible to {@link #getPending(String)}.
+     */
+    private static Map<String, Fingerprint> flushing = new LinkedHashMap<>();
+
+    /**
+     * Fingerprints {@link #flush()} is saving, by ID, which {@link #cancel(String)} waits for.
+     */
+    private static final Map<String, Fingerprint> saving = new LinkedHashMap<>();
+
+    private static boolean scheduled;
+
+    /**
+     * Only one batch is written at a time.
+     */
+    private static final Object FLUSH_LOCK = new Object();
+
+    /**
+     * Arranges for the fingerprint to be saved soon, or saves it right away if this queue is disabled.
+     *
+     * @throws IOException only if this queue is disabled; failures to save later are logged instead
+     */
+    public static void enqueue(@Nonnull Fingerprint fp) throws IOException {
+        if (!ENABLED) {
+            fp.save();
+            return;
+        }
+        boolean now;
+        synchronized (FingerprintSaveQueue.class) {
+            pending.put(fp.getHashString(), fp);
+            now = pending.size() >= MAX_BACKLOG;
+            if (scheduled && !now)
+                return;
+            scheduled = true;
+        }
+        // a full queue is written at once, without waiting here since the caller may hold the lock of a fingerprint
+        Timer.get().schedule(FingerprintSaveQueue::flushInBackground, now ? 0 : FLUSH_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets a fingerprint that has not been saved yet.
+     */
+    public static synchronized @CheckForNull Fingerprint getPending(@Nonnull String id) {
+        Fingerprint fp = pending.get(id);
+        if (fp == null)
+            fp = flushing.get(id);
+        if (fp == null)
+            fp = saving.get(id);
+        return fp;
+    }
+
+    /**
+     * Forgets about a fingerprint being deleted, waiting for it to be saved if {@link #flush()} already started to,
+     * so that it is not written back once deleted.
+     * Must not be called holding the lock of the fingerprint.
+     */
+    public static synchronized void cancel(@Nonnull String id) {
+        pending.remove(id);
+        flushing.remove(id);
+        boolean interrupted = false;
+        while (saving.containsKey(id)) {
+            try {
+                FingerprintSaveQueue.class.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Number of fingerprints waiting to be saved.
+     */
+    public static synchronized int getBacklog() {
+        return pending.size() + flushing.size();
+    }
+
+    /**
+     * Saves all the fingerprints enqueued so far, waiting for a batch being written by another thread.
+     */
+    public static void flush() {
+        synchronized (FLUSH_LOCK) {
+            List<Fingerprint> batch;
+            synchronized (FingerprintSaveQueue.class) {
+                if (pending.isEmpty())
+                    return;
+                flushing = pending;
+                pending = new LinkedHashMap<>();
+                batch = new ArrayList<>(flushing.values());
+            }
+            long start = System.nanoTime();
+            int saved = 0;
+            try {
+                FingerprintStorage storage = FingerprintStorage.get();
+                if (storage instanceof FileFingerprintStorage) {
+                    saved = writeTogether(storage, batch);
+                } else {
+                    saved = saveEach(storage, batch);
+                }
+            } finally {
+                synchronized (FingerprintSaveQueue.class) {
+                    flushing = new LinkedHashMap<>();
+                    saving.clear();
+                    FingerprintSaveQueue.class.notifyAll();
+                }
+            }
+            LOGGER.log(Level.FINE, "Saved {0} fingerprints in {1}ms",
+                    new Object[] {saved, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+        }
+    }
+
+    /**
+     * Saves the fingerprints one by one, then syncs the storage.
+     */
+    private static int saveEach(FingerprintStorage storage, List<Fingerprint> batch) {
+        int saved = 0;
+        for (Fingerprint fp : batch) {
+            if (!take(fp))
+                continue;
+            try {
+                fp.save();
+                saved++;
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to save fingerprint " + fp.getHashString(), e);
+            } finally {
+                done(fp);
+            }
+        }
+        try {
+            storage.sync();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to sync fingerprints", e);
+        }
+        return saved;
+    }
+
+    /**
+     * Writes the fingerprint files as one group commit, without forcing each of them to disk on its own.
+     */
+    private static int writeTogether(FingerprintStorage storage, List<Fingerprint> batch) {
+        List<Fingerprint> taken = new ArrayList<>(batch.size());
+        List<Map.Entry<Path, byte[]>> files = new ArrayList<>(batch.size());
+        for (Fingerprint fp : batch) {
+            if (!take(fp))
+                continue;
+            File file = FileFingerprintStorage.getFingerprintFile(fp.getHashString());
+            try {
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                Writer w = new OutputStreamWriter(buf, StandardCharsets.UTF_8);
+                fp.writeXml(w);
+                w.flush();
+                file.getParentFile().mkdirs();
+                files.add(new AbstractMap.SimpleImmutableEntry<>(file.toPath(), buf.toByteArray()));
+                taken.add(fp);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to save fingerprint " + fp.getHashString(), e);
+                done(fp);
+            }
+        }
+        Map<Path, IOException> failures = WriteBehindQueue.writeTogether(files);
+        int saved = 0;
+        for (int i = 0; i < taken.size(); i++) {
+            Fingerprint fp = taken.get(i);
+            Path file = files.get(i).getKey();
+            try {
+                if (failures.containsKey(file))
+                    continue;   // already logged
+                if (!Files.exists(file)) {
+                    // its directory was removed in the meantime
+                    fp.save();
+                } else {
+                    fp.fireSaved(storage);
+                }
+                saved++;
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to save fingerprint " + fp.getHashString(), e);
+            } finally {
+                done(fp);
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Marks a fingerprint of the batch as being saved.
+     *
+     * @return false if it was cancelled meanwhile
+     */
+    private static synchronized boolean take(Fingerprint fp) {
+        String id = fp.getHashString();
+        if (flushing.remove(id) == null)
+            return false;
+        saving.put(id, fp);
+        return true;
+    }
+
+    private static synchronized void done(Fingerprint fp) {
+        saving.remove(fp.getHashString());
+        FingerprintSaveQueue.class.notifyAll();
+    }
+
+    private static void flushInBackground() {
+        synchronized (FingerprintSaveQueue.class) {
+            scheduled = false;
+        }
+        flush();
+        boolean more;
+        synchronized (FingerprintSaveQueue.class) {
+            more = !pending.isEmpty() && !scheduled;
+            if (more)
+                scheduled = true;
+        }
+        if (more)
+            Timer.get().schedule(FingerprintSaveQueue::flushInBackground, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    @Terminator(attains = FLUSHED)
+    public static void shutdown() {
+        flush();
+    }
+
+    /**
+     * Tells administrators when fingerprints are saved more slowly than builds update them.
+     */
+    @Extension
+    public static final class BacklogMonitor extends AdministrativeMonitor {
+        @Override
+        public String getDisplayName() {
+            return Messages.FingerprintSaveQueue_BacklogMonitor_displayName();
+        }
+
+        @Override
+        public boolean isActivated() {
+            return getBacklog() >= WARN_BACKLOG;
+        }
+
+        public int getBacklog() {
+            return FingerprintSaveQueue.getBacklog();
+        }
+    }
+
+    /**
+     * Whether fingerprints are saved in the background rather than right away.
+     */
+    static /* non-final for tests */ boolean ENABLED = SystemProperties.getBoolean(FingerprintSaveQueue.class.getName() + ".enabled", false);
+
+    /**
+     * How long to wait for more updates before saving, in milliseconds.
+     */
+    private static final long FLUSH_DELAY = SystemProperties.getLong(FingerprintSaveQueue.class.getName() + ".flushDelay", 1000L);
+
+    /**
+     * Number of fingerprints waiting past which they are saved without further delay.
+     */
+    private static final int MAX_BACKLOG = SystemProperties.getInteger(FingerprintSaveQueue.class.getName() + ".maxBacklog", 1000);
+
+    /**
+     * Number of fingerprints waiting past which {@link BacklogMonitor} shows up.
+     */
+    private static final int WARN_BACKLOG = SystemProperties.getInteger(FingerprintSaveQueue.class.getName() + ".warnBacklog", 10000);
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintSaveQueue.class.getName());
+}
@@ -0,0 +1,110 @@
+package jenkins.fingerprints;
+
+import hudson.ExtensionPoint;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Fingerprint;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Pluggable storage of {@link Fingerprint}s, used by {@link hudson.model.FingerprintMap}.
+ * The descriptor should specify at least a display name, and optionally a {@code config} view.
+ * Since the user can configure this class, you must have a {@link DataBoundConstructor}.
+ *
+ * <p>
+ * Fingerprints are identified by the lower-case hexadecimal form of their MD5 checksum.
+ *
+ * @see GlobalFingerprintConfiguration
+ * @see FileFingerprintStorage
+ * @since TODO
+ */
+public abstract class FingerprintStorage extends AbstractDescribableImpl<FingerprintStorage> implements ExtensionPoint {
+
+    /**
+     * Gets the storage in use.
+     */
+    public static @Nonnull FingerprintStorage get() {
+        return GlobalFingerprintConfiguration.get().getStorage();
+    }
+
+    /**
+     * Saves the current state of a fingerprint, replacing what was stored for it.
+     */
+    public abstract void save(@Nonnull Fingerprint fp) throws IOException;
+
+    /**
+     * Forces the fingerprints saved so far to durable storage,
+     * for storages that do not do so on each {@link #save(Fingerprint)}.
+     * Called by {@link FingerprintSaveQueue} after each batch, except with {@link FileFingerprintStorage} whose batches are forced together.
+     */
+    public void sync() throws IOException {}
+
+    /**
+     * Loads a fingerprint.
+     *
+     * @return null if there is no such fingerprint.
+     */
+    public abstract @CheckForNull Fingerprint load(@Nonnull String id) throws IOException;
+
+    /**
+     * Deletes a fingerprint, if present.
+     */
+    public abstract void delete(@Nonnull String id) throws IOException;
+
+    /**
+     * Returns true if there's some data in this storage.
+     */
+    public abstract boolean isReady();
+
+    /**
+     * Passes the ID of each stored fingerprint to the given visitor,
+     * for maintenance tasks like building {@link FingerprintJobIndex} that need to see them all.
+     *
+     * @return false if this storage cannot list its fingerprints.
+     */
+    public boolean forEachId(@Nonnull Consumer<String> visitor) throws IOException {
+        return false;
+    }
+
+    /**
+     * Removes the fingerprints that no longer point to any existing build, and trims the others.
+     * {@link hudson.model.FingerprintCleanupThread} already cleans the XML files of {@link FileFingerprintStorage},
+     * so only storages that keep fingerprints elsewhere need to override this.
+     *
+     * @return the number of fingerprints deleted or trimmed.
+     */
+    public int cleanUp(@Nonnull TaskListener listener) {
+        return 0;
+    }
+
+    /**
+     * Deletes the given fingerprint if it is obsolete, or trims it otherwise.
+     *
+     * @return true if it was deleted or modified.
+     */
+    protected boolean cleanFingerprint(@Nonnull Fingerprint fp, @Nonnull TaskListener listener) throws IOException {
+        if (!fp.isAlive()) {
+            listener.getLogger().println("deleting obsolete " + fp.getHashString());
+            FingerprintSaveQueue.cancel(fp.getHashString());
+            FingerprintJobIndex index = FingerprintJobIndex.get();
+            if (index != null)
+                index.remove(fp);
+            delete(fp.getHashString());
+            return true;
+        }
+        // get the fingerprint in the official map so have the changes visible to Jenkins
+        // otherwise the mutation made in FingerprintMap can override our trimming.
+        Fingerprint official = Jenkins.get()._getFingerprint(fp.getHashString());
+        return official != null && official.trim();
+    }
+
+    @Override public FingerprintStorageDescriptor getDescriptor() {
+        return (FingerprintStorageDescriptor) super.getDescriptor();
+    }
+}
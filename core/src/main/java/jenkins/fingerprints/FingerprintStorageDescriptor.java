@@ -0,0 +1,18 @@
+package jenkins.fingerprints;
+
+import hudson.DescriptorExtensionList;
+import hudson.model.Descriptor;
+import jenkins.model.Jenkins;
+
+/**
+ * Definition of a kind of fingerprint storage.
+ * @see FingerprintStorage
+ * @since TODO
+ */
+public abstract class FingerprintStorageDescriptor extends Descriptor<FingerprintStorage> {
+
+    public static DescriptorExtensionList<FingerprintStorage,FingerprintStorageDescriptor> all() {
+        return Jenkins.get().getDescriptorList(FingerprintStorage.class);
+    }
+
+}
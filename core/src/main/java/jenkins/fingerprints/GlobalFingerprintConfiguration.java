@@ -0,0 +1,82 @@
+package jenkins.fingerprints;
+
+import hudson.DescriptorExtensionList;
+import hudson.Extension;
+import jenkins.model.GlobalConfiguration;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Selects the {@link FingerprintStorage} in use.
+ *
+ * @since TODO
+ */
+@Extension @Symbol("fingerprints")
+public class GlobalFingerprintConfiguration extends GlobalConfiguration {
+
+    private FingerprintStorage storage;
+
+    /**
+     * Number of threads {@link hudson.model.FingerprintCleanupThread} uses.
+     */
+    private int cleanupThreads = 1;
+
+    /**
+     * Number of fingerprints {@link hudson.model.FingerprintCleanupThread} examines per run, after which it resumes
+     * on the next run. 0 to examine them all every day.
+     */
+    private int cleanupSliceSize;
+
+    public GlobalFingerprintConfiguration() {
+        load();
+    }
+
+    public static @Nonnull GlobalFingerprintConfiguration get() {
+        return GlobalConfiguration.all().getInstance(GlobalFingerprintConfiguration.class);
+    }
+
+    public @Nonnull FingerprintStorage getStorage() {
+        FingerprintStorage s = storage;
+        return s != null ? s : DEFAULT;
+    }
+
+    @DataBoundSetter
+    public void setStorage(FingerprintStorage storage) {
+        this.storage = storage;
+        save();
+    }
+
+    public int getCleanupThreads() {
+        return cleanupThreads;
+    }
+
+    @DataBoundSetter
+    public void setCleanupThreads(int cleanupThreads) {
+        this.cleanupThreads = Math.max(1, cleanupThreads);
+        save();
+    }
+
+    public int getCleanupSliceSize() {
+        return cleanupSliceSize;
+    }
+
+    @DataBoundSetter
+    public void setCleanupSliceSize(int cleanupSliceSize) {
+        this.cleanupSliceSize = Math.max(0, cleanupSliceSize);
+        save();
+    }
+
+    public @Nonnull DescriptorExtensionList<FingerprintStorage,FingerprintStorageDescriptor> getStorageDescriptors() {
+        return FingerprintStorageDescriptor.all();
+    }
+
+    private Object readResolve() {
+        if (cleanupThreads < 1)
+            cleanupThreads = 1;
+        return this;
+    }
+
+    private static final FingerprintStorage DEFAULT = new FileFingerprintStorage();
+}
@@ -0,0 +1,240 @@
+package jenkins.fingerprints;
+
+import hudson.Extension;
+import hudson.init.Terminator;
+import hudson.model.Fingerprint;
+import hudson.model.TaskListener;
+import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link FingerprintStorage} that appends fingerprints to a few large segment files under
+ * {@code $JENKINS_HOME/fingerprints-log/} instead of rewriting one small XML file per fingerprint,
+ * and finds them through an index kept in memory.
+ *
+ * <p>
+ * Writes are forced to disk every few seconds rather than on each save, so a crash may lose the last updates.
+ * Segments that mostly hold superseded records are compacted in the background.
+ *
+ * <p>
+ * Fingerprints still in the XML layout of {@link FileFingerprintStorage} are read from there until they are next saved,
+ * so this storage can be switched to at any time. Switching back loses what was saved here.
+ *
+ * @see FingerprintLog
+ * @since TODO
+ */
+public class LogStructuredFingerprintStorage extends FingerprintStorage {
+
+    /**
+     * Size in MiB past which a new segment is started.
+     */
+    private int segmentSize = 64;
+
+    /**
+     * Ratio of superseded bytes past which a segment is compacted, in percent.
+     */
+    private int compactionThreshold = 50;
+
+    @DataBoundConstructor
+    public LogStructuredFingerprintStorage() {}
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    @DataBoundSetter
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = Math.max(1, segmentSize);
+    }
+
+    public int getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    @DataBoundSetter
+    public void setCompactionThreshold(int compactionThreshold) {
+        this.compactionThreshold = Math.min(100, Math.max(1, compactionThreshold));
+    }
+
+    private long getSegmentSizeBytes() {
+        return segmentSize * 1024L * 1024L;
+    }
+
+    @Override
+    public void save(@Nonnull Fingerprint fp) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (Writer w = new OutputStreamWriter(baos, StandardCharsets.UTF_8)) {
+            fp.writeXml(w);
+        }
+        String id = fp.getHashString();
+        log().put(id, baos.toByteArray());
+        // now superseded
+        new FileFingerprintStorage().delete(id);
+    }
+
+    @Override
+    public void sync() throws IOException {
+        log().sync();
+    }
+
+    @Override
+    public @CheckForNull Fingerprint load(@Nonnull String id) throws IOException {
+        byte[] data = log().get(id);
+        if (data == null)
+            return new FileFingerprintStorage().load(id);
+        return Fingerprint.readXml(new ByteArrayInputStream(data));
+    }
+
+    @Override
+    public void delete(@Nonnull String id) throws IOException {
+        log().remove(id);
+        new FileFingerprintStorage().delete(id);
+    }
+
+    @Override
+    public boolean isReady() {
+        try {
+            return log().size() > 0 || new FileFingerprintStorage().isReady();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to open the fingerprint log", e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean forEachId(@Nonnull Consumer<String> visitor) throws IOException {
+        FingerprintLog log = log();
+        for (String id : log.ids())
+            visitor.accept(id);
+        // fingerprints not saved since switching to this storage
+        return new FileFingerprintStorage().forEachId(id -> {
+            if (!log.contains(id))
+                visitor.accept(id);
+        });
+    }
+
+    @Override
+    public int cleanUp(@Nonnull TaskListener listener) {
+        int cleaned = 0;
+        FingerprintLog log;
+        try {
+            log = log();
+        } catch (IOException e) {
+            e.printStackTrace(listener.error("Failed to open the fingerprint log"));
+            return 0;
+        }
+        for (String id : log.ids()) {
+            try {
+                Fingerprint fp = load(id);
+                if (fp != null && cleanFingerprint(fp, listener))
+                    cleaned++;
+            } catch (IOException e) {
+                e.printStackTrace(listener.error("Failed to process " + id));
+            }
+        }
+        return cleaned;
+    }
+
+    /**
+     * The log is shared by all instances of this class, since a new one is created whenever the configuration is saved.
+     */
+    private static FingerprintLog LOG;
+    private static ScheduledFuture<?> maintenance;
+
+    private FingerprintLog log() throws IOException {
+        synchronized (LogStructuredFingerprintStorage.class) {
+            if (LOG == null) {
+                LOG = new FingerprintLog(new File(Jenkins.get().getRootDir(), "fingerprints-log"), getSegmentSizeBytes());
+                maintenance = Timer.get().scheduleWithFixedDelay(LogStructuredFingerprintStorage::maintain,
+                        SYNC_INTERVAL, SYNC_INTERVAL, TimeUnit.SECONDS);
+            } else {
+                LOG.setSegmentSize(getSegmentSizeBytes());
+            }
+            return LOG;
+        }
+    }
+
+    private static long lastCompaction = System.nanoTime();
+
+    /**
+     * Forces recent writes to disk, and now and then compacts the log.
+     */
+    private static void maintain() {
+        FingerprintLog log;
+        synchronized (LogStructuredFingerprintStorage.class) {
+            log = LOG;
+        }
+        if (log == null)
+            return;
+        try {
+            log.sync();
+            if (System.nanoTime() - lastCompaction > TimeUnit.MINUTES.toNanos(COMPACTION_INTERVAL)) {
+                lastCompaction = System.nanoTime();
+                FingerprintStorage storage = FingerprintStorage.get();
+                int threshold = storage instanceof LogStructuredFingerprintStorage
+                        ? ((LogStructuredFingerprintStorage) storage).compactionThreshold : 50;
+                int n = log.compact(threshold / 100.0);
+                if (n > 0)
+                    LOGGER.log(Level.FINE, "Compacted {0} fingerprint log segments", n);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to maintain the fingerprint log", e);
+        }
+    }
+
+    @Terminator(requires = FingerprintSaveQueue.FLUSHED)
+    public static void shutdown() throws IOException {
+        synchronized (LogStructuredFingerprintStorage.class) {
+            if (maintenance != null)
+                maintenance.cancel(false);
+            if (LOG != null)
+                LOG.close();
+            maintenance = null;
+            LOG = null;
+        }
+    }
+
+    /**
+     * How often writes are forced to disk, in seconds.
+     */
+    private static final long SYNC_INTERVAL = 5;
+
+    /**
+     * How often segments are considered for compaction, in minutes.
+     */
+    private static final long COMPACTION_INTERVAL = 10;
+
+    @Extension @Symbol("logStructured")
+    public static class DescriptorImpl extends FingerprintStorageDescriptor {
+        @Override
+        public String getDisplayName() {
+            return Messages.LogStructuredFingerprintStorage_displayName();
+        }
+
+        public FormValidation doCheckSegmentSize(@QueryParameter int value) {
+            return value >= 1 ? FormValidation.ok() : FormValidation.error(Messages.LogStructuredFingerprintStorage_positive());
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(LogStructuredFingerprintStorage.class.getName());
+}
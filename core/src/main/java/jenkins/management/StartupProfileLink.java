@@ -0,0 +1,75 @@
+package jenkins.management;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import hudson.security.Permission;
+import jenkins.InitReactorProfile;
+import jenkins.model.Jenkins;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.annotation.CheckForNull;
+import javax.servlet.ServletException;
+import java.io.IOException;
+
+/**
+ * Shows which tasks of the last boot took longest and which of them it waited for,
+ * and offers them for download as a trace.
+ *
+ * @since TODO
+ */
+@Extension(ordinal = Integer.MAX_VALUE - 750) @Symbol("startupProfile")
+@Restricted(NoExternalUse.class)
+public class StartupProfileLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "graph.png";
+    }
+
+    public String getDisplayName() {
+        return Messages.StartupProfileLink_DisplayName();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.StartupProfileLink_Description();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "startupProfile";
+    }
+
+    @Override
+    public Permission getRequiredPermission() {
+        return Jenkins.ADMINISTER;
+    }
+
+    public @CheckForNull InitReactorProfile getProfile() {
+        return InitReactorProfile.getBoot();
+    }
+
+    /**
+     * Serves the tasks in the Chrome Trace Event format.
+     */
+    public HttpResponse doTrace() {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        final InitReactorProfile profile = getProfile();
+        if (profile == null) {
+            return HttpResponses.notFound();
+        }
+        return new HttpResponse() {
+            public void generateResponse(StaplerRequest req, StaplerResponse rsp, Object node) throws IOException, ServletException {
+                rsp.setContentType("application/json; charset=UTF-8");
+                rsp.setHeader("Content-Disposition", "attachment; filename=startup-trace.json");
+                rsp.getWriter().print(profile.toChromeTrace().toString());
+            }
+        };
+    }
+}
@@ -0,0 +1,249 @@
+package jenkins.model;
+
+import hudson.Extension;
+import hudson.console.ConsoleLogFilter;
+import hudson.console.LimitedLogOutputStream;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.util.FormValidation;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import javax.annotation.Nonnull;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits how fast and how much a single build can write to its log,
+ * so that a runaway build cannot fill up {@code JENKINS_HOME} or starve the I/O of other builds.
+ *
+ * <p>
+ * The limits are enforced by {@link LimitedLogOutputStream}, and counters of what was throttled or dropped
+ * are kept per job so that offenders can be found.
+ *
+ * @since TODO
+ */
+@Extension @Symbol("buildLogLimits")
+public class BuildLogLimitsConfiguration extends GlobalConfiguration {
+
+    /**
+     * Maximum of {@link #tailSize}, as the tail of every running build that went over the size limit is kept in memory.
+     */
+    public static final int MAX_TAIL_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Maximum number of bytes per second a build may write to its log. 0 for unlimited.
+     */
+    private long maxBytesPerSecond;
+
+    /**
+     * Maximum number of bytes of a build log. 0 for unlimited.
+     */
+    private long maxSize;
+
+    /**
+     * If positive, keep this many bytes at the end of a log that exceeds {@link #maxSize},
+     * and drop the middle instead of everything past the limit.
+     */
+    private long tailSize;
+
+    private transient final ConcurrentMap<String,JobCounters> counters = new ConcurrentHashMap<>();
+
+    public BuildLogLimitsConfiguration() {
+        load();
+    }
+
+    public static @Nonnull BuildLogLimitsConfiguration get() {
+        return GlobalConfiguration.all().getInstance(BuildLogLimitsConfiguration.class);
+    }
+
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    @DataBoundSetter
+    public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        this.maxBytesPerSecond = Math.max(0, maxBytesPerSecond);
+        save();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @DataBoundSetter
+    public void setMaxSize(long maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+        save();
+    }
+
+    public long getTailSize() {
+        return tailSize;
+    }
+
+    @DataBoundSetter
+    public void setTailSize(long tailSize) {
+        this.tailSize = Math.min(Math.max(0, tailSize), MAX_TAIL_SIZE);
+        save();
+    }
+
+    @Restricted(NoExternalUse.class)
+    public FormValidation doCheckTailSize(@QueryParameter long value) {
+        if (value > MAX_TAIL_SIZE)
+            return FormValidation.error(Messages.BuildLogLimitsConfiguration_tailSizeTooLarge(MAX_TAIL_SIZE));
+        return FormValidation.ok();
+    }
+
+    /**
+     * Whether any limit is configured.
+     */
+    public boolean isEnabled() {
+        return maxBytesPerSecond > 0 || maxSize > 0;
+    }
+
+    /**
+     * Gets the counters of the given job, creating them if necessary.
+     */
+    public @Nonnull JobCounters getCounters(@Nonnull Job<?,?> job) {
+        String name = job.getFullName();
+        JobCounters c = counters.get(name);
+        if (c == null) {
+            JobCounters fresh = new JobCounters(name);
+            c = counters.putIfAbsent(name, fresh);
+            if (c == null)
+                c = fresh;
+        }
+        return c;
+    }
+
+    /**
+     * Forgets the counters of the given item and of those it contains.
+     */
+    private void forget(String fullName) {
+        counters.keySet().removeIf(name -> name.equals(fullName) || name.startsWith(fullName + '/'));
+    }
+
+    /**
+     * Jobs whose builds have been throttled or truncated since startup, worst first.
+     */
+    public List<JobCounters> getOffenders() {
+        List<JobCounters> r = new ArrayList<>();
+        for (JobCounters c : counters.values()) {
+            if (c.getBytesDropped() > 0 || c.getThrottledMillis() > 0)
+                r.add(c);
+        }
+        Collections.sort(r, new Comparator<JobCounters>() {
+            @Override
+            public int compare(JobCounters o1, JobCounters o2) {
+                int d = Long.compare(o2.getBytesDropped(), o1.getBytesDropped());
+                return d != 0 ? d : Long.compare(o2.getThrottledMillis(), o1.getThrottledMillis());
+            }
+        });
+        return r;
+    }
+
+    /**
+     * Creates the stream that enforces the current limits on the log of a build of the given job.
+     */
+    @Restricted(NoExternalUse.class)
+    public LimitedLogOutputStream limit(@Nonnull Job<?,?> job, @Nonnull OutputStream logger) {
+        return new LimitedLogOutputStream(logger, maxBytesPerSecond, maxSize, tailSize, getCounters(job));
+    }
+
+    /**
+     * Applies the limits to the log of each build.
+     * The high ordinal makes this the innermost decoration, closest to the log file.
+     */
+    @Restricted(NoExternalUse.class)
+    @Extension(ordinal = Double.MAX_VALUE)
+    public static final class LogFilter extends ConsoleLogFilter {
+        @Override
+        public OutputStream decorateLogger(Run build, OutputStream logger) {
+            BuildLogLimitsConfiguration config = get();
+            if (build == null || !config.isEnabled())
+                return logger;
+            return config.limit(build.getParent(), logger);
+        }
+    }
+
+    /**
+     * Drops the counters of deleted jobs, and of renamed or moved jobs under their former name.
+     */
+    @Restricted(NoExternalUse.class)
+    @Extension
+    public static final class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            get().forget(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().forget(oldFullName);
+        }
+    }
+
+    /**
+     * Build log statistics of one job, since startup.
+     */
+    public static final class JobCounters {
+        private final String fullName;
+        private final AtomicLong builds = new AtomicLong();
+        private final AtomicLong bytesWritten = new AtomicLong();
+        private final AtomicLong bytesDropped = new AtomicLong();
+        private final AtomicLong truncatedBuilds = new AtomicLong();
+        private final AtomicLong throttledMillis = new AtomicLong();
+
+        JobCounters(String fullName) {
+            this.fullName = fullName;
+        }
+
+        public String getFullName() {
+            return fullName;
+        }
+
+        public long getBuilds() {
+            return builds.get();
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten.get();
+        }
+
+        public long getBytesDropped() {
+            return bytesDropped.get();
+        }
+
+        public long getTruncatedBuilds() {
+            return truncatedBuilds.get();
+        }
+
+        public long getThrottledMillis() {
+            return throttledMillis.get();
+        }
+
+        /**
+         * Records the outcome of one build log.
+         */
+        public void record(long written, long dropped, long throttled) {
+            builds.incrementAndGet();
+            bytesWritten.addAndGet(written);
+            throttledMillis.addAndGet(throttled);
+            if (dropped > 0) {
+                bytesDropped.addAndGet(dropped);
+                truncatedBuilds.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package jenkins.model;
+
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import com.thoughtworks.xstream.io.copy.HierarchicalStreamCopier;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.Item;
+import hudson.model.Items;
+import hudson.security.ACL;
+import hudson.util.XStream2;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Speeds up startup by keeping the configuration files of all items in a pre-parsed binary form.
+ *
+ * <p>
+ * When enabled with {@code -Djenkins.model.ItemConfigSnapshot.enabled=true}, a clean shutdown writes
+ * {@value #FILE_NAME} with the XML of each item's {@code config.xml} recorded as the {@link BinaryStreamWriter} tokens XStream reads,
+ * along with the modification time and size of the file.
+ * While items load on the next startup, {@link XmlFile} unmarshals from those tokens instead of parsing XML
+ * whenever the file still has the same modification time and size.
+ * The XML files remain the source of truth: the snapshot holds nothing that is not in them,
+ * and is ignored altogether if its version or checksum do not match.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class ItemConfigSnapshot {
+
+    private ItemConfigSnapshot() {}
+
+    static final String FILE_NAME = "itemConfigSnapshot.bin";
+
+    private static final int MAGIC = 0x4A435353;
+    private static final int VERSION = 1;
+
+    /**
+     * Tokens of the snapshot by path relative to the root directory, until items are loaded.
+     */
+    private static Map<String, Entry> entries;
+    private static boolean released;
+    private static final AtomicInteger hits = new AtomicInteger();
+
+    static final class Entry {
+        final long mtime;
+        final long size;
+        final byte[] tokens;
+
+        Entry(long mtime, long size, byte[] tokens) {
+            this.mtime = mtime;
+            this.size = size;
+            this.tokens = tokens;
+        }
+
+        boolean matches(@Nonnull BasicFileAttributes attrs) {
+            return attrs.lastModifiedTime().toMillis() == mtime && attrs.size() == size;
+        }
+    }
+
+    /**
+     * Gets a reader over the snapshot of a file, if it is still up to date.
+     */
+    public static @CheckForNull HierarchicalStreamReader lookup(@Nonnull File file) {
+        if (!ENABLED)
+            return null;
+        Jenkins j = Jenkins.getInstanceOrNull();
+        if (j == null)
+            return null;
+        Map<String, Entry> snapshot;
+        synchronized (ItemConfigSnapshot.class) {
+            if (released)
+                return null;
+            if (entries == null)
+                entries = read(new File(j.getRootDir(), FILE_NAME));
+            snapshot = entries;
+        }
+        String path = relativize(j.getRootDir(), file);
+        Entry e = path != null ? snapshot.get(path) : null;
+        if (e == null)
+            return null;
+        try {
+            if (!e.matches(Files.readAttributes(file.toPath(), BasicFileAttributes.class)))
+                return null;
+        } catch (IOException x) {
+            return null;
+        }
+        hits.incrementAndGet();
+        return new BinaryStreamReader(new ByteArrayInputStream(e.tokens));
+    }
+
+    private static @CheckForNull String relativize(@Nonnull File root, @Nonnull File file) {
+        Path r = root.toPath().toAbsolutePath();
+        Path f = file.toPath().toAbsolutePath();
+        return f.startsWith(r) ? r.relativize(f).toString().replace(File.separatorChar, '/') : null;
+    }
+
+    /**
+     * Reads a snapshot, or returns an empty one if it is missing or damaged.
+     */
+    static @Nonnull Map<String, Entry> read(@Nonnull File file) {
+        Map<String, Entry> result = new HashMap<>();
+        if (!file.isFile())
+            return result;
+        try {
+            byte[] data = Files.readAllBytes(file.toPath());
+            if (data.length < 8)
+                throw new IOException("truncated");
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length - 8);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.log(Level.INFO, "Ignoring {0} written by another version", file);
+                return result;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long mtime = in.readLong();
+                long size = in.readLong();
+                byte[] tokens = new byte[in.readInt()];
+                in.readFully(tokens);
+                result.put(path, new Entry(mtime, size, tokens));
+            }
+            if (in.readLong() != crc.getValue())
+                throw new IOException("checksum mismatch");
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Ignoring damaged " + file, e);
+            result.clear();
+        }
+        return result;
+    }
+
+    /**
+     * Writes a snapshot of the given files, reusing the tokens of a previous snapshot for files that did not change.
+     *
+     * @return the number of files in the snapshot.
+     */
+    static int write(@Nonnull File root, @Nonnull Iterable<XmlFile> files, @Nonnull Map<String, Entry> previous, @Nonnull File target) throws IOException {
+        Path tmp = Files.createTempFile(target.getParentFile().toPath(), target.getName(), ".tmp");
+        int count = 0;
+        try {
+            Map<String, Entry> current = new HashMap<>();
+            for (XmlFile xml : files) {
+                File file = xml.getFile();
+                String path = relativize(root, file);
+                if (path == null || current.containsKey(path))
+                    continue;
+                try {
+                    BasicFileAttributes before = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                    Entry e = previous.get(path);
+                    if (e == null || !e.matches(before)) {
+                        byte[] tokens = tokenize(file);
+                        BasicFileAttributes after = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                        if (after.lastModifiedTime().toMillis() != before.lastModifiedTime().toMillis() || after.size() != before.size())
+                            continue; // being modified
+                        e = new Entry(before.lastModifiedTime().toMillis(), before.size(), tokens);
+                    }
+                    current.put(path, e);
+                } catch (IOException | RuntimeException x) {
+                    LOGGER.log(Level.FINE, "Leaving " + file + " out of the snapshot", x);
+                }
+            }
+
+            CRC32 crc = new CRC32();
+            try (OutputStream os = Files.newOutputStream(tmp);
+                 CheckedOutputStream cos = new CheckedOutputStream(new BufferedOutputStream(os), crc);
+                 DataOutputStream out = new DataOutputStream(cos)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(current.size());
+                for (Map.Entry<String, Entry> e : current.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().mtime);
+                    out.writeLong(e.getValue().size);
+                    out.writeInt(e.getValue().tokens.length);
+                    out.write(e.getValue().tokens);
+                }
+                out.flush();
+                // the checksum itself is not part of what it covers
+                long sum = crc.getValue();
+                new DataOutputStream(os).writeLong(sum);
+            }
+            count = current.size();
+            Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+        } finally {
+            if (tmp != null)
+                Files.deleteIfExists(tmp);
+        }
+        return count;
+    }
+
+    /**
+     * Parses an XML file into the tokens of {@link BinaryStreamWriter}.
+     */
+    static @Nonnull byte[] tokenize(@Nonnull File file) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            HierarchicalStreamReader reader = XStream2.getDefaultDriver().createReader(in);
+            BinaryStreamWriter writer = new BinaryStreamWriter(baos);
+            try {
+                new HierarchicalStreamCopier().copy(reader, writer);
+            } finally {
+                reader.close();
+            }
+            writer.flush();
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Frees the snapshot once items are loaded, since it only serves at startup.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void release() {
+        synchronized (ItemConfigSnapshot.class) {
+            released = true;
+            entries = null;
+        }
+        if (ENABLED)
+            LOGGER.log(Level.FINE, "Loaded {0} item configurations from the snapshot", hits.get());
+    }
+
+    @Terminator
+    public static void save() {
+        Jenkins j = Jenkins.getInstanceOrNull();
+        if (!ENABLED || j == null)
+            return;
+        long start = System.nanoTime();
+        File target = new File(j.getRootDir(), FILE_NAME);
+        List<XmlFile> files = new ArrayList<>();
+        for (Item item : Items.allItems(ACL.SYSTEM, j, Item.class))
+            files.add(Items.getConfigFile(item));
+        try {
+            int n = write(j.getRootDir(), files, read(target), target);
+            LOGGER.log(Level.INFO, "Wrote a snapshot of {0} item configurations in {1}ms",
+                    new Object[] {n, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to write " + target, e);
+        }
+    }
+
+    /**
+     * Whether the snapshot is written at shutdown and used at startup.
+     */
+    private static final boolean ENABLED = SystemProperties.getBoolean(ItemConfigSnapshot.class.getName() + ".enabled", false);
+
+    private static final Logger LOGGER = Logger.getLogger(ItemConfigSnapshot.class.getName());
+}
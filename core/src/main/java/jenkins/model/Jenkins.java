@@ -182,6 +182,7 @@ import java.util.TimerTask;
 import java.util.concurrent.CountDownLatch;
 import jenkins.ExtensionComponentSet;
 import jenkins.ExtensionRefreshException;
+import jenkins.InitReactorProfile;
 import jenkins.InitReactorRunner;
 import jenkins.install.InstallState;
 import jenkins.install.SetupWizard;
@@ -196,6 +197,7 @@ import jenkins.util.JenkinsJVM;
 import jenkins.util.Timer;
 import jenkins.util.io.FileBoolean;
 import jenkins.util.io.OnMaster;
+import jenkins.util.io.WriteBehindQueue;
 import jenkins.util.xml.XMLUtils;
 import net.jcip.annotations.GuardedBy;
 import net.sf.json.JSONObject;
@@ -1104,7 +1106,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
             }
         };
 
-        new InitReactorRunner() {
+        InitReactorRunner runner = new InitReactorRunner() {
             @Override
             protected void onInitMilestoneAttained(InitMilestone milestone) {
                 initLevel = milestone;
@@ -1114,7 +1116,16 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
                     ExtensionList.lookup(ExtensionFinder.class).getComponents();
                 }
             }
-        }.run(reactor);
+        };
+        try {
+            runner.run(reactor);
+        } finally {
+            InitReactorProfile profile = runner.getProfile();
+            if (is != null && profile != null) {
+                // only the boot has a strategy; a reload keeps showing the profile of the boot
+                InitReactorProfile.setBoot(profile);
+            }
+        }
     }
 
 
@@ -1566,6 +1577,14 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
         updateComputerList(AUTOMATIC_SLAVE_LAUNCH);
     }
 
+    /*package*/ void updateComputer(Node n) {
+        updateComputerFor(n, AUTOMATIC_SLAVE_LAUNCH);
+    }
+
+    /*package*/ void removeComputer(Node n) {
+        removeComputerFor(n);
+    }
+
     /** @deprecated Use {@link SCMListener#all} instead. */
     @Deprecated
     public CopyOnWriteList<SCMListener> getSCMListeners() {
@@ -2122,6 +2141,35 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
         }
     }
 
+    /**
+     * Resets the labels a change to the given nodes may affect, and removes those left invalid.
+     *
+     * Unlike {@link #trimLabels()}, labels the nodes have nothing to do with keep their cached nodes,
+     * so that adding or removing one node does not make every label go through all the nodes again.
+     * The affected labels are those matching a node, or listing it since they last went through the nodes.
+     */
+    /*package*/ void trimLabels(Node... nodes) {
+        List<Node> changed = new ArrayList<>(nodes.length);
+        List<Set<LabelAtom>> assigned = new ArrayList<>(nodes.length);
+        for (Node n : nodes) {
+            if (n != null) {
+                changed.add(n);
+                assigned.add(n.getAssignedLabels());
+            }
+        }
+        for (Iterator<Label> itr = labels.values().iterator(); itr.hasNext();) {
+            Label l = itr.next();
+            for (int i = 0; i < changed.size(); i++) {
+                if (l.matches(assigned.get(i)) || labelListsNode(l, changed.get(i))) {
+                    resetLabel(l);
+                    if(l.isEmpty())
+                        itr.remove();
+                    break;
+                }
+            }
+        }
+    }
+
     /**
      * Binds {@link AdministrativeMonitor}s to URL.
      */
@@ -3143,6 +3191,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
                         return;
                     }
                     TopLevelItem item = (TopLevelItem) Items.load(Jenkins.this, subdir);
+                    // published right away, for getItem during JOB_LOADED
                     items.put(item.getName(), item);
                     loadedNames.add(item.getName());
                 }
@@ -3299,6 +3348,8 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
 
             _cleanUpAwaitDisconnects(errors, pending);
 
+            _cleanUpFlushWriteBehindQueue(errors);
+
             _cleanUpPluginServletFilters(errors);
 
             _cleanUpReleaseAllLoggers(errors);
@@ -3598,6 +3649,21 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
         }
     }
 
+    private void _cleanUpFlushWriteBehindQueue(List<Throwable> errors) {
+        if (!WriteBehindQueue.isEnabled())
+            return;
+        LOGGER.log(FINE, "Writing {0} pending files", WriteBehindQueue.getQueueDepth());
+        try {
+            WriteBehindQueue.flush();
+        } catch (IOException e) {
+            LOGGER.log(SEVERE, "Failed to write pending files", e);
+            errors.add(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.log(WARNING, "Interrupted while writing pending files", e);
+        }
+    }
+
     private void _cleanUpShutdownThreadPoolForLoad(List<Throwable> errors) {
         LOGGER.log(FINE, "Shuting down Jenkins load thread pool");
         try {
@@ -129,14 +129,13 @@ public class Nodes implements Saveable {
     public void addNode(final @Nonnull Node node) throws IOException {
         Node oldNode = nodes.get(node.getNodeName());
         if (node != oldNode) {
-            // TODO we should not need to lock the queue for adding nodes but until we have a way to update the
-            // computer list for just the new node
+            // only the computer and labels of this node are touched, not those of all the others
             Queue.withLock(new Runnable() {
                 @Override
                 public void run() {
                     nodes.put(node.getNodeName(), node);
-                    jenkins.updateComputerList();
-                    jenkins.trimLabels();
+                    jenkins.updateComputer(node);
+                    jenkins.trimLabels(node, oldNode);
                 }
             });
             // TODO there is a theoretical race whereby the node instance is updated/removed after lock release
@@ -149,8 +148,12 @@ public class Nodes implements Saveable {
                     @Override
                     public void run() {
                         nodes.compute(node.getNodeName(), (ignoredNodeName, ignoredNode) -> oldNode);
-                        jenkins.updateComputerList();
-                        jenkins.trimLabels();
+                        if (oldNode != null) {
+                            jenkins.updateComputer(oldNode);
+                        } else {
+                            jenkins.removeComputer(node);
+                        }
+                        jenkins.trimLabels(node, oldNode);
                     }
                 });
                 throw e;
@@ -181,6 +184,8 @@ public class Nodes implements Saveable {
     /**
      * Updates an existing node on disk. If the node instance is not in the list of nodes, then this
      * will be a no-op, even if there is another instance with the same {@link Node#getNodeName()}.
+     * This is what {@link Node#save()} calls, so it does not fire {@link NodeListener#onUpdated}: the node
+     * would be both the old and the new one. Use {@link #replaceNode} to change a node with an event.
      *
      * @param node the node to be updated.
      * @return {@code true}, if the node was updated. {@code false}, if the node was not in the list of nodes.
@@ -194,7 +199,7 @@ public class Nodes implements Saveable {
                 @Override
                 public Boolean call() throws Exception {
                     if (node == nodes.get(node.getNodeName())) {
-                        jenkins.trimLabels();
+                        jenkins.trimLabels(node);
                         return true;
                     }
                     return false;
@@ -223,16 +228,21 @@ public class Nodes implements Saveable {
      */
     public boolean replaceNode(final Node oldOne, final @Nonnull Node newOne) throws IOException {
         if (oldOne == nodes.get(oldOne.getNodeName())) {
-            // use the queue lock until Nodes has a way of directly modifying a single node.
             Queue.withLock(new Runnable() {
                 public void run() {
                     Nodes.this.nodes.remove(oldOne.getNodeName());
                     Nodes.this.nodes.put(newOne.getNodeName(), newOne);
-                    jenkins.updateComputerList();
-                    jenkins.trimLabels();
+                    if (!oldOne.getNodeName().equals(newOne.getNodeName())) {
+                        jenkins.removeComputer(oldOne);
+                    }
+                    jenkins.updateComputer(newOne);
+                    jenkins.trimLabels(oldOne, newOne);
                 }
             });
-            updateNode(newOne);
+            if (newOne == nodes.get(newOne.getNodeName())) {
+                // TODO there is a theoretical race whereby the node instance is updated/removed after lock release
+                persistNode(newOne);
+            }
             NodeListener.fireOnUpdated(oldOne, newOne);
             return true;
         } else {
@@ -258,8 +268,8 @@ public class Nodes implements Saveable {
                         c.disconnect(OfflineCause.create(hudson.model.Messages._Hudson_NodeBeingRemoved()));
                     }
                     if (node == nodes.remove(node.getNodeName())) {
-                        jenkins.updateComputerList();
-                        jenkins.trimLabels();
+                        jenkins.removeComputer(node);
+                        jenkins.trimLabels(node);
                     }
                 }
             });
@@ -33,6 +33,7 @@ import org.apache.tools.ant.util.VectorSet;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
+import javax.annotation.CheckForNull;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -44,12 +45,16 @@ import java.net.URL;
 import java.security.CodeSource;
 import java.security.ProtectionDomain;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.Vector;
 import java.util.jar.Attributes;
@@ -225,6 +230,16 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
      */
     private Hashtable jarFiles = new Hashtable();
 
+    /**
+     * Cache of {@link #getPackageNames}, cleared when the path changes.
+     */
+    private volatile Set<String> packageNames;
+
+    /**
+     * Listing of the jar files in the path, once {@link #indexEntries} was called.
+     */
+    private volatile JarEntryIndex entryIndex;
+
     /** Static map of jar file/time to manifest class-path entries */
     private static Map/*<String,String>*/ pathMap = Collections.synchronizedMap(new HashMap());
 
@@ -362,6 +377,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
      */
     public void setClassPath(Path classpath) {
         pathComponents.removeAllElements();
+        packageNames = null;
         if (classpath != null) {
             Path actualClasspath = classpath.concatSystemClasspath("ignore");
             String[] pathElements = actualClasspath.list();
@@ -474,6 +490,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
             return;
         }
         pathComponents.addElement(file);
+        packageNames = null;
     }
 
     /**
@@ -489,6 +506,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
     protected void addPathFile(File pathComponent) throws IOException {
         if (!pathComponents.contains(pathComponent)) {
             pathComponents.addElement(pathComponent);
+            packageNames = null;
         }
         if (pathComponent.isDirectory()) {
             return;
@@ -560,6 +578,88 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
         return sb.toString();
     }
 
+    /**
+     * Lists the entries of the jar files now in the path, so that looking for a resource or class
+     * one of them does not have no longer opens it.
+     * Directories, and jar files added to the path later, are looked into as before.
+     *
+     * @param cache file where to keep the listings across restarts, or null
+     * @since TODO
+     */
+    public void indexEntries(@CheckForNull File cache) {
+        List<File> jars = new ArrayList<File>();
+        for (Object component : pathComponents.toArray()) {
+            File file = (File) component;
+            if (!file.isDirectory()) {
+                jars.add(file);
+            }
+        }
+        entryIndex = JarEntryIndex.create(jars, cache);
+        packageNames = null;
+    }
+
+    /**
+     * Whether the given path component surely does not have a resource, as told by {@link #indexEntries}.
+     */
+    private boolean isIndexedAsMissing(File file, String resourceName) {
+        JarEntryIndex index = entryIndex;
+        return index != null && !index.mayContain(file, resourceName);
+    }
+
+    /**
+     * Returns the names of the packages of the classes in the path components,
+     * taken from {@link #indexEntries} or read from the jar entries and directories
+     * the first time it is asked for, and kept until the path changes.
+     *
+     * @return the package names, or null if a path component could not be read
+     * @since TODO
+     */
+    public @CheckForNull Set<String> getPackageNames() {
+        Set<String> names = packageNames;
+        if (names == null) {
+            JarEntryIndex index = entryIndex;
+            names = new HashSet<String>();
+            try {
+                for (Object component : pathComponents.toArray()) {
+                    File file = (File) component;
+                    Set<String> indexed = index == null ? null : index.getPackageNames(file);
+                    if (indexed != null) {
+                        names.addAll(indexed);
+                    } else if (file.isDirectory()) {
+                        addPackageNames(file, "", names);
+                    } else if (file.isFile()) {
+                        try (JarFile jarFile = new JarFile(file, false)) {
+                            Enumeration<JarEntry> entries = jarFile.entries();
+                            while (entries.hasMoreElements()) {
+                                JarEntryIndex.addPackageName(entries.nextElement().getName(), names);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                log("Cannot list the packages in " + getClasspath() + ": " + e, Project.MSG_VERBOSE);
+                return null;
+            }
+            names = Collections.unmodifiableSet(names);
+            packageNames = names;
+        }
+        return names;
+    }
+
+    private static void addPackageNames(File dir, String prefix, Set<String> names) throws IOException {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            throw new IOException("Cannot list " + dir);
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                addPackageNames(child, prefix + child.getName() + '/', names);
+            } else {
+                JarEntryIndex.addPackageName(prefix + child.getName(), names);
+            }
+        }
+    }
+
     /**
      * Sets whether this classloader should run in isolated mode. In
      * isolated mode, classes not found on the given classpath will
@@ -786,6 +886,9 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
      *         the resource cannot be found in the given file.
      */
     private InputStream getResourceStream(File file, String resourceName) {
+        if (isIndexedAsMissing(file, resourceName)) {
+            return null;
+        }
         try {
             JarFile jarFile = (JarFile) jarFiles.get(file);
             if (jarFile == null && file.isDirectory()) {
@@ -1000,6 +1103,9 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
      *         resource cannot be found in the given file object.
      */
     protected URL getResourceURL(File file, String resourceName) {
+        if (isIndexedAsMissing(file, resourceName)) {
+            return null;
+        }
         try {
             JarFile jarFile = (JarFile) jarFiles.get(file);
             if (jarFile == null && file.isDirectory()) {
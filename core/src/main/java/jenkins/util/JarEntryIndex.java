@@ -0,0 +1,226 @@
+package jenkins.util;
+
+import hudson.util.AtomicFileWriter;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * What the jar files on the path of an {@link AntClassLoader} contain, so that looking for a resource or class
+ * one of them does not have needs no file access.
+ *
+ * <p>
+ * Entry names are kept as sorted hash codes, which is enough to tell an entry is missing;
+ * a matching hash code still means looking into the jar.
+ * Listings can be kept in a cache file, and are reused for the jars whose timestamp and size did not change.
+ */
+final class JarEntryIndex {
+
+    private static final class Listing {
+        final long lastModified;
+        final long length;
+        /**
+         * Hash codes of the entry names, sorted.
+         */
+        final int[] hashes;
+        final Set<String> packageNames;
+
+        Listing(long lastModified, long length, int[] hashes, Set<String> packageNames) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.hashes = hashes;
+            this.packageNames = packageNames;
+        }
+    }
+
+    private final Map<File, Listing> listings;
+
+    private JarEntryIndex(Map<File, Listing> listings) {
+        this.listings = listings;
+    }
+
+    /**
+     * Lists the given jar files, or takes their listings from the cache file, which is updated if needed.
+     * Jar files which cannot be read are left out.
+     */
+    static @Nonnull JarEntryIndex create(@Nonnull Collection<File> jars, @CheckForNull File cache) {
+        Map<String, Listing> cached = cache == null ? Collections.<String, Listing>emptyMap() : read(cache);
+        Map<File, Listing> listings = new HashMap<>();
+        boolean changed = false;
+        for (File jar : jars) {
+            long lastModified = jar.lastModified();
+            long length = jar.length();
+            Listing listing = cached.get(jar.getAbsolutePath());
+            if (listing == null || listing.lastModified != lastModified || listing.length != length) {
+                changed = true;
+                try {
+                    listing = list(jar, lastModified, length);
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Cannot list " + jar, e);
+                    continue;
+                }
+            }
+            listings.put(jar, listing);
+        }
+        if (cache != null && (changed || listings.size() != cached.size())) {
+            write(cache, listings);
+        }
+        return new JarEntryIndex(Collections.unmodifiableMap(listings));
+    }
+
+    /**
+     * Whether the given jar file may have an entry, which it surely does not if it was listed and has no entry
+     * of the same hash code.
+     */
+    boolean mayContain(@Nonnull File jar, @Nonnull String name) {
+        Listing listing = listings.get(jar);
+        return listing == null || Arrays.binarySearch(listing.hashes, name.hashCode()) >= 0;
+    }
+
+    /**
+     * The packages of the classes in the given jar file, or null if it was not listed.
+     */
+    @CheckForNull Set<String> getPackageNames(@Nonnull File jar) {
+        Listing listing = listings.get(jar);
+        return listing == null ? null : listing.packageNames;
+    }
+
+    private static Listing list(File jar, long lastModified, long length) throws IOException {
+        try (JarFile jarFile = new JarFile(jar, false)) {
+            int[] hashes = new int[jarFile.size() * 2];
+            int count = 0;
+            Set<String> packageNames = new HashSet<>();
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (count + 2 > hashes.length) {
+                    hashes = Arrays.copyOf(hashes, count * 2 + 2);
+                }
+                hashes[count++] = name.hashCode();
+                if (name.endsWith("/")) {
+                    // JarFile finds directories without the slash as well
+                    hashes[count++] = name.substring(0, name.length() - 1).hashCode();
+                }
+                addPackageName(name, packageNames);
+            }
+            hashes = Arrays.copyOf(hashes, count);
+            Arrays.sort(hashes);
+            return new Listing(lastModified, length, hashes, Collections.unmodifiableSet(packageNames));
+        }
+    }
+
+    /**
+     * Adds the package of a class file, given its path, leaving out names which could not be those of a package.
+     */
+    static void addPackageName(@Nonnull String path, @Nonnull Set<String> packageNames) {
+        if (!path.endsWith(".class")) {
+            return;
+        }
+        int slash = path.lastIndexOf('/');
+        if (slash < 0) {
+            packageNames.add("");
+            return;
+        }
+        for (int i = 0; i < slash; i++) {
+            if (Character.isWhitespace(path.charAt(i))) {
+                return;
+            }
+        }
+        packageNames.add(path.substring(0, slash).replace('/', '.'));
+    }
+
+    /**
+     * Reads listings written by {@link #write}, one jar file per line: its absolute path, timestamp and size,
+     * the packages of its classes separated by spaces, with {@code .} for the default package,
+     * and the base 64 encoded hash codes of its entries.
+     */
+    private static Map<String, Listing> read(File cache) {
+        Map<String, Listing> listings = new HashMap<>();
+        try (BufferedReader r = Files.newBufferedReader(cache.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 5) {
+                    LOGGER.log(Level.FINE, "Ignoring malformed line in {0}", cache);
+                    continue;
+                }
+                try {
+                    Set<String> packageNames = new HashSet<>();
+                    if (!fields[3].isEmpty()) {
+                        for (String packageName : fields[3].split(" ")) {
+                            packageNames.add(packageName.equals(".") ? "" : packageName);
+                        }
+                    }
+                    IntBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(fields[4])).asIntBuffer();
+                    int[] hashes = new int[buffer.remaining()];
+                    buffer.get(hashes);
+                    listings.put(fields[0], new Listing(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                            hashes, Collections.unmodifiableSet(packageNames)));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.log(Level.FINE, "Ignoring malformed line in " + cache, e);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // not written yet
+        } catch (IOException | InvalidPathException e) {
+            LOGGER.log(Level.FINE, "Failed to read " + cache, e);
+            listings.clear();
+        }
+        return listings;
+    }
+
+    private static void write(File cache, Map<File, Listing> listings) {
+        try {
+            AtomicFileWriter w = new AtomicFileWriter(cache.toPath(), StandardCharsets.UTF_8);
+            try {
+                for (Map.Entry<File, Listing> e : listings.entrySet()) {
+                    String path = e.getKey().getAbsolutePath();
+                    if (path.indexOf('\t') >= 0 || path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0) {
+                        continue;
+                    }
+                    Listing listing = e.getValue();
+                    ByteBuffer hashes = ByteBuffer.allocate(listing.hashes.length * 4);
+                    hashes.asIntBuffer().put(listing.hashes);
+                    StringBuilder packageNames = new StringBuilder();
+                    for (String packageName : listing.packageNames) {
+                        if (packageNames.length() > 0) {
+                            packageNames.append(' ');
+                        }
+                        packageNames.append(packageName.isEmpty() ? "." : packageName);
+                    }
+                    w.write(path + '\t' + listing.lastModified + '\t' + listing.length + '\t' + packageNames + '\t'
+                            + Base64.getEncoder().encodeToString(hashes.array()) + '\n');
+                }
+                w.commit();
+            } finally {
+                w.abort();
+            }
+        } catch (IOException | InvalidPathException e) {
+            LOGGER.log(Level.FINE, "Failed to write " + cache, e);
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(JarEntryIndex.class.getName());
+}
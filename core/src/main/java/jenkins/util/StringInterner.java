@@ -0,0 +1,135 @@
+package jenkins.util;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.converters.basic.AbstractSingleValueConverter;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shares equal strings across everything loaded by the controller, such as the node names, workspace paths
+ * and parameter names repeated in every build record.
+ *
+ * <p>
+ * Unlike {@link TreeString.ConverterImpl}, whose interning is scoped to one unmarshalling, strings are shared
+ * with all those loaded before that are still in use; the table only holds them weakly.
+ * Fields are opted in with {@link #register(XStream, Class, String...)}, as they keep their {@link String} type.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class StringInterner {
+
+    private StringInterner() {}
+
+    private static final Interner<String> INTERNER = Interners.newWeakInterner();
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong savedBytes = new AtomicLong();
+
+    /**
+     * Gets the shared instance of a string.
+     */
+    public static @CheckForNull String intern(@CheckForNull String s) {
+        if (s == null) {
+            return null;
+        }
+        String shared = INTERNER.intern(s);
+        if (shared != s) {
+            hits.incrementAndGet();
+            savedBytes.addAndGet(sizeOf(s));
+        }
+        return shared;
+    }
+
+    /**
+     * Whether strings of Latin-1 characters take one byte per character, as from Java 9 unless
+     * {@code -XX:-CompactStrings} is given, which cannot be told from here.
+     */
+    private static final boolean COMPACT_STRINGS = !System.getProperty("java.specification.version", "1.8").startsWith("1.");
+
+    /**
+     * Estimated size of a string on the heap.
+     */
+    static long sizeOf(@Nonnull String s) {
+        return sizeOf(s, COMPACT_STRINGS);
+    }
+
+    /**
+     * Estimated size of a string on the heap: the object, and its array of characters padded to 8 bytes,
+     * which takes one byte per character if strings are compact and all characters are Latin-1, two otherwise.
+     */
+    static long sizeOf(@Nonnull String s, boolean compact) {
+        long bytesPerChar = compact && isLatin1(s) ? 1 : 2;
+        return 24 + ((16 + bytesPerChar * s.length() + 7) & ~7);
+    }
+
+    private static boolean isLatin1(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of strings replaced by a shared instance so far.
+     */
+    public static long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Estimate of the heap the replaced strings would have taken, in bytes.
+     */
+    public static long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    /**
+     * Tells how much sharing the strings of the loaded jobs and builds saved.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void logSavings() {
+        LOGGER.log(Level.INFO, "Shared {0} strings while loading, saving about {1} KiB of heap",
+                new Object[] {getHits(), getSavedBytes() / 1024});
+    }
+
+    /**
+     * Makes the given fields intern what they read.
+     */
+    public static void register(@Nonnull XStream xs, @Nonnull Class<?> definedIn, @Nonnull String... fields) {
+        for (String field : fields) {
+            xs.registerLocalConverter(definedIn, field, CONVERTER);
+        }
+    }
+
+    private static final ConverterImpl CONVERTER = new ConverterImpl();
+
+    /**
+     * Reads strings as their shared instance.
+     */
+    public static final class ConverterImpl extends AbstractSingleValueConverter {
+        @Override
+        public boolean canConvert(Class type) {
+            return type == String.class;
+        }
+
+        @Override
+        public Object fromString(String str) {
+            return intern(str);
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(StringInterner.class.getName());
+}
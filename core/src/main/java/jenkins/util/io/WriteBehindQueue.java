@@ -0,0 +1,388 @@
+package jenkins.util.io;
+
+import hudson.util.AtomicFileWriter;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.GroupFsync;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes files in the background on behalf of {@link hudson.XmlFile#write(Object)}, when enabled with
+ * {@code -Djenkins.util.io.WriteBehindQueue.enabled=true}.
+ *
+ * <p>
+ * Objects are still serialized by the thread saving them, so what gets written is their state at that time,
+ * but the thread does not wait for the disk. Writes of a file waiting to be done are replaced by later ones.
+ * A single thread then writes all the files waiting, forces them to disk, moves them into place,
+ * and forces each of their directories, as one group commit.
+ * Until then, {@link hudson.XmlFile} reads the pending content rather than the file.
+ *
+ * <p>
+ * Like with {@link AtomicFileWriter}, a file is either in its previous or in its new state after a crash,
+ * but the last writes acknowledged before a crash may be lost. Callers that need them to be durable can wait
+ * with {@link #flush()}, as {@link hudson.BulkChange#commit()} does.
+ *
+ * <p>
+ * Directories are not created by the writer thread: {@link hudson.XmlFile} creates them before enqueuing,
+ * and a write whose directory was since deleted or moved away is dropped.
+ * Code deleting or moving a directory should still call {@link #cancelUnder(File)} or {@link #awaitUnder(File)} first.
+ *
+ * @since TODO
+ */
+public final class WriteBehindQueue {
+
+    private WriteBehindQueue() {}
+
+    /**
+     * Content waiting to be written, by destination.
+     */
+    private static Map<Path, byte[]> pending = new LinkedHashMap<>();
+
+    /**
+     * Content being written by the current group commit.
+     */
+    private static Map<Path, byte[]> writing = Collections.emptyMap();
+
+    /**
+     * Number of writes enqueued so far, and number of those written.
+     */
+    private static long enqueued, committed;
+
+    /**
+     * First failure since the last {@link #flush()}.
+     */
+    private static IOException failure;
+
+    private static Thread writer;
+
+    /**
+     * Held by the thread writing a batch, normally the writer thread, so that batches are written in order.
+     */
+    private static final Object COMMIT_LOCK = new Object();
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Arranges for a file to be written with the given UTF-8 content, such as the XML written by {@link hudson.XmlFile}.
+     */
+    public static void write(@Nonnull Path destination, @Nonnull byte[] content) {
+        synchronized (WriteBehindQueue.class) {
+            pending.put(destination, content);
+            enqueued++;
+            if (writer == null || !writer.isAlive()) {
+                if (writer == null)
+                    Runtime.getRuntime().addShutdownHook(new Thread(WriteBehindQueue::flushQuietly, "WriteBehindQueue shutdown"));
+                writer = new NamingThreadFactory(new DaemonThreadFactory(), "WriteBehindQueue").newThread(WriteBehindQueue::run);
+                writer.start();
+            }
+            WriteBehindQueue.class.notifyAll();
+        }
+    }
+
+    /**
+     * Gets the content a file will have once written, if a write is pending.
+     */
+    public static synchronized @CheckForNull byte[] getPending(@Nonnull Path destination) {
+        byte[] content = pending.get(destination);
+        return content != null ? content : writing.get(destination);
+    }
+
+    /**
+     * Forgets about a pending write of a file being deleted, waiting for it if it is being written already.
+     */
+    public static void cancel(@Nonnull Path destination) throws InterruptedException {
+        synchronized (WriteBehindQueue.class) {
+            pending.remove(destination);
+            while (writing.containsKey(destination))
+                WriteBehindQueue.class.wait();
+        }
+    }
+
+    /**
+     * Forgets about pending writes of files under a directory about to be deleted, waiting for those being written,
+     * so that they do not create it again. Does nothing unless enabled.
+     */
+    public static void cancelUnder(@Nonnull File dir) throws IOException {
+        if (ENABLED)
+            cancelUnder(toPath(dir));
+    }
+
+    static void cancelUnder(@Nonnull Path prefix) throws IOException {
+        synchronized (WriteBehindQueue.class) {
+            pending.keySet().removeIf(p -> p.startsWith(prefix));
+            try {
+                while (containsUnder(writing, prefix))
+                    WriteBehindQueue.class.wait();
+            } catch (InterruptedException e) {
+                throw (IOException) new InterruptedIOException("Interrupted while waiting for writes under " + prefix).initCause(e);
+            }
+        }
+    }
+
+    /**
+     * Waits for pending writes of files under a directory about to be moved, so that they are moved along with it.
+     * Failures are left for {@link #flush()} to report. Does nothing unless enabled.
+     */
+    public static void awaitUnder(@Nonnull File dir) throws IOException {
+        if (ENABLED)
+            awaitUnder(toPath(dir));
+    }
+
+    static void awaitUnder(@Nonnull Path prefix) throws IOException {
+        try {
+            while (true) {
+                synchronized (WriteBehindQueue.class) {
+                    if (!containsUnder(pending, prefix) && !containsUnder(writing, prefix))
+                        return;
+                    if (writer != null && writer.isAlive()) {
+                        WriteBehindQueue.class.wait();
+                        continue;
+                    }
+                }
+                commitPending();
+            }
+        } catch (InterruptedException e) {
+            throw (IOException) new InterruptedIOException("Interrupted while waiting for writes under " + prefix).initCause(e);
+        }
+    }
+
+    private static boolean containsUnder(Map<Path, byte[]> files, Path prefix) {
+        for (Path p : files.keySet()) {
+            if (p.startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+
+    private static Path toPath(File dir) throws IOException {
+        try {
+            return dir.toPath();
+        } catch (InvalidPathException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Number of files waiting to be written or being written.
+     */
+    public static synchronized int getQueueDepth() {
+        return pending.size() + writing.size();
+    }
+
+    /**
+     * Waits until everything enqueued so far is on disk, writing it on the calling thread if the writer thread is gone.
+     *
+     * @throws IOException if some write failed since the last call
+     */
+    public static void flush() throws IOException, InterruptedException {
+        long target;
+        synchronized (WriteBehindQueue.class) {
+            target = enqueued;
+        }
+        while (true) {
+            synchronized (WriteBehindQueue.class) {
+                if (committed >= target)
+                    break;
+                if (writer != null && writer.isAlive()) {
+                    WriteBehindQueue.class.wait();
+                    continue;
+                }
+            }
+            // say the writer thread was interrupted
+            commitPending();
+        }
+        synchronized (WriteBehindQueue.class) {
+            IOException e = failure;
+            failure = null;
+            if (e != null)
+                throw e;
+        }
+    }
+
+    private static void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write some files", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void run() {
+        while (true) {
+            try {
+                synchronized (WriteBehindQueue.class) {
+                    while (pending.isEmpty()) {
+                        if (writing.isEmpty()) {
+                            // anything enqueued and not written was cancelled
+                            committed = enqueued;
+                            WriteBehindQueue.class.notifyAll();
+                        }
+                        WriteBehindQueue.class.wait();
+                    }
+                }
+                // let more writes join this group commit
+                Thread.sleep(GROUP_COMMIT_DELAY);
+            } catch (InterruptedException e) {
+                // the next write starts another thread, and flush writes what is pending meanwhile
+                LOGGER.log(Level.WARNING, "Interrupted, pending writes are delayed", e);
+                return;
+            }
+            commitPending();
+        }
+    }
+
+    /**
+     * Writes all the pending files as one group commit, after any batch another thread is writing.
+     */
+    private static void commitPending() {
+        synchronized (COMMIT_LOCK) {
+            long upTo;
+            List<Map.Entry<Path, byte[]>> batch;
+            synchronized (WriteBehindQueue.class) {
+                if (pending.isEmpty()) {
+                    // nothing is being written either, so anything enqueued and not written was cancelled
+                    committed = enqueued;
+                    WriteBehindQueue.class.notifyAll();
+                    return;
+                }
+                writing = pending;
+                pending = new LinkedHashMap<>();
+                upTo = enqueued;
+                batch = new ArrayList<>(writing.entrySet());
+            }
+            IOException e = null;
+            try {
+                e = commit(batch);
+            } finally {
+                synchronized (WriteBehindQueue.class) {
+                    writing = Collections.emptyMap();
+                    committed = upTo;
+                    if (e != null && failure == null)
+                        failure = e;
+                    WriteBehindQueue.class.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of files as one group commit, like {@link #writeTogether(List)}.
+     *
+     * @return the first failure, if any
+     */
+    static @CheckForNull IOException commit(@Nonnull List<Map.Entry<Path, byte[]>> batch) {
+        Map<Path, IOException> failures = writeTogether(batch);
+        return failures.isEmpty() ? null : failures.values().iterator().next();
+    }
+
+    /**
+     * Writes a batch of files as one group commit, with {@link AtomicFileWriter}s whose temporary files
+     * and directories are forced by {@link GroupFsync} in one round each.
+     * A file whose directory does not exist is not written, and not reported as a failure either.
+     *
+     * @param batch
+     *      the UTF-8 content of each file
+     * @return the files that could not be written, with why, in the order they were given
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressWarnings("deprecation") // forced through GroupFsync rather than one by one
+    public static @Nonnull Map<Path, IOException> writeTogether(@Nonnull List<Map.Entry<Path, byte[]>> batch) {
+        Map<Path, IOException> failed = new LinkedHashMap<>();
+        List<AtomicFileWriter> writers = new ArrayList<>(batch.size());
+        List<Path> temps = new ArrayList<>(batch.size());
+        for (Map.Entry<Path, byte[]> e : batch) {
+            AtomicFileWriter w = null;
+            try {
+                if (!Files.isDirectory(e.getKey().getParent())) {
+                    // deleted or moved away since, so as not to bring it back
+                    LOGGER.log(Level.FINE, "Dropping the write of {0} as its directory is gone", e.getKey());
+                    writers.add(null);
+                    continue;
+                }
+                w = new AtomicFileWriter(e.getKey(), StandardCharsets.UTF_8, false, false);
+                w.write(new String(e.getValue(), StandardCharsets.UTF_8));
+                w.close();
+                temps.add(w.getTemporaryPath());
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "Failed to write " + e.getKey(), x);
+                failed.put(e.getKey(), x);
+                abortQuietly(w);
+                w = null;
+            }
+            writers.add(w);
+        }
+        // the disk sees the batch together
+        Map<Path, IOException> failures = DISABLE_FORCED_FLUSH ? Collections.<Path, IOException>emptyMap() : GroupFsync.forceAll(temps);
+        Set<Path> dirs = new LinkedHashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            AtomicFileWriter w = writers.get(i);
+            if (w == null)
+                continue;
+            Path dest = batch.get(i).getKey();
+            try {
+                IOException failure = failures.get(w.getTemporaryPath());
+                if (failure != null)
+                    throw new IOException("Failed to force " + w.getTemporaryPath(), failure);
+                w.commit();
+                dirs.add(dest.getParent());
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "Failed to write " + dest, x);
+                failed.put(dest, x);
+                abortQuietly(w);
+            }
+        }
+        if (!DISABLE_FORCED_FLUSH)
+            GroupFsync.forceAll(dirs);
+        LOGGER.log(Level.FINE, "Wrote {0} files in {1} directories", new Object[] {batch.size(), dirs.size()});
+        return failed;
+    }
+
+    private static void abortQuietly(@CheckForNull AtomicFileWriter w) {
+        if (w == null)
+            return;
+        try {
+            w.abort();
+        } catch (IOException x) {
+            LOGGER.log(Level.FINE, "Failed to delete " + w.getTemporaryPath(), x);
+        }
+    }
+
+    private static final boolean ENABLED = SystemProperties.getBoolean(WriteBehindQueue.class.getName() + ".enabled", false);
+
+    /**
+     * Same flag as {@link AtomicFileWriter} uses.
+     */
+    private static final boolean DISABLE_FORCED_FLUSH = SystemProperties.getBoolean(AtomicFileWriter.class.getName() + ".DISABLE_FORCED_FLUSH");
+
+    /**
+     * How long to wait for more writes after the first one of a group commit, in milliseconds.
+     */
+    private static final long GROUP_COMMIT_DELAY = SystemProperties.getLong(WriteBehindQueue.class.getName() + ".groupCommitDelay", 50L);
+
+    private static final Logger LOGGER = Logger.getLogger(WriteBehindQueue.class.getName());
+}
@@ -0,0 +1,164 @@
+package jenkins.util.xstream;
+
+import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.xml.KXml2Driver;
+import com.thoughtworks.xstream.io.xml.XppReader;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads XML files in a single buffered pass.
+ *
+ * <p>
+ * {@link KXml2Driver} finds the encoding of a stream by wrapping it in another reader looking at the XML declaration,
+ * and creates a new parser, with its buffers, for every file.
+ * Here the declaration is sniffed from the buffered bytes themselves, which then go straight to a pooled parser.
+ * Anything unusual, like a byte order mark or an encoding this JVM does not know, is left to the driver.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class XmlReaders {
+
+    private XmlReaders() {}
+
+    /**
+     * How far to look for the end of the XML declaration.
+     */
+    private static final int PROLOG = 256;
+
+    private static final Pattern ENCODING = Pattern.compile("\\sencoding\\s*=\\s*([\"'])([A-Za-z][A-Za-z0-9._-]*)\\1");
+
+    /**
+     * Number of idle parsers kept around. 0 disables pooling.
+     */
+    private static final int POOL_SIZE = SystemProperties.getInteger(XmlReaders.class.getName() + ".poolSize",
+            2 * Runtime.getRuntime().availableProcessors());
+
+    private static final BlockingQueue<KXmlParser> pool = new ArrayBlockingQueue<>(Math.max(1, POOL_SIZE));
+
+    /**
+     * Creates a reader like {@link HierarchicalStreamDriver#createReader(InputStream)} would.
+     * The reader must be closed to give its parser back.
+     */
+    public static @Nonnull HierarchicalStreamReader createReader(@Nonnull HierarchicalStreamDriver driver, @Nonnull InputStream in) throws IOException {
+        // other drivers, or subclasses configured differently, may not read like a bare KXmlParser
+        if (driver.getClass() != KXml2Driver.class)
+            return driver.createReader(in);
+        if (!in.markSupported())
+            in = new BufferedInputStream(in);
+        Charset charset = toCharset(sniffEncoding(in));
+        if (charset == null)
+            return driver.createReader(in);
+        KXmlParser parser = pool.poll();
+        return new PooledReader(new InputStreamReader(in, charset), parser != null ? parser : new KXmlParser());
+    }
+
+    /**
+     * Looks for the encoding declared at the beginning of a stream, leaving the stream where it was.
+     *
+     * @param in a stream supporting {@link InputStream#mark(int)}
+     * @return the declared encoding, {@code UTF-8} if there is no declaration, or null if this cannot be told from the bytes
+     */
+    public static @CheckForNull String sniffEncoding(@Nonnull InputStream in) throws IOException {
+        byte[] buf = new byte[PROLOG];
+        int len = 0;
+        in.mark(PROLOG);
+        try {
+            int n;
+            while (len < buf.length && (n = in.read(buf, len, buf.length - len)) != -1)
+                len += n;
+        } finally {
+            in.reset();
+        }
+        return sniffEncoding(buf, len);
+    }
+
+    static @CheckForNull String sniffEncoding(@Nonnull byte[] buf, int len) {
+        if (startsWith(buf, len, "<?xml") && len > 5 && isSpace(buf[5])) {
+            for (int i = 6; i + 1 < len; i++) {
+                if (buf[i] <= 0)
+                    return null; // not ASCII, such as UTF-16
+                if (buf[i] == '?' && buf[i + 1] == '>') {
+                    Matcher m = ENCODING.matcher(new String(buf, 5, i - 5, StandardCharsets.US_ASCII));
+                    return m.find() ? m.group(2) : "UTF-8";
+                }
+            }
+            return null; // unusually long declaration
+        }
+        int i = 0;
+        while (i < len && isSpace(buf[i]))
+            i++;
+        // no declaration
+        if (i + 1 < len && buf[i] == '<' && buf[i + 1] != '?' && buf[i + 1] != 0)
+            return "UTF-8";
+        return null;
+    }
+
+    private static boolean startsWith(byte[] buf, int len, String prefix) {
+        if (len < prefix.length())
+            return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buf[i] != prefix.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static @CheckForNull Charset toCharset(@CheckForNull String encoding) {
+        if (encoding == null)
+            return null;
+        try {
+            return Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static final class PooledReader extends XppReader {
+        private KXmlParser parser;
+
+        PooledReader(Reader reader, KXmlParser parser) {
+            super(reader, parser);
+            this.parser = parser;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            KXmlParser p = parser;
+            parser = null;
+            if (p == null || POOL_SIZE <= 0)
+                return;
+            try {
+                // do not hold on to the reader
+                p.setInput(null);
+            } catch (XmlPullParserException e) {
+                return;
+            }
+            pool.offer(p);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package hudson;
+
+import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import hudson.util.XStream2;
+import jenkins.util.xstream.XStreamDOM;
+import jenkins.util.xstream.XmlReaders;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures how fast {@link XmlFile} reads files like those of a controller:
+ * the {@code config.xml} of Jenkins itself and of a job, and the {@code build.xml} of a build.
+ * The files are read into an {@link XStreamDOM}, so that only the reading is measured, not the classes it creates.
+ *
+ * <p>
+ * Run with {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class XmlFileBenchmark {
+
+    @Param({"/hudson/config_1_1.xml", "/hudson/XmlFileBenchmark/config.xml", "/hudson/XmlFileBenchmark/build.xml"})
+    public String resource;
+
+    private File file;
+    private XmlFile xmlFile;
+    private HierarchicalStreamDriver driver;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("XmlFileBenchmark", ".xml");
+        try (InputStream in = XmlFileBenchmark.class.getResourceAsStream(resource)) {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        xmlFile = new XmlFile(file);
+        driver = XStream2.getDefaultDriver();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(file.toPath());
+    }
+
+    /**
+     * How files used to be read, with a new parser behind a reader looking for the encoding.
+     */
+    @Benchmark
+    public XStreamDOM readWithDriver() throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            return XStreamDOM.from(driver.createReader(in));
+        }
+    }
+
+    @Benchmark
+    public XStreamDOM readPooled() throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            HierarchicalStreamReader reader = XmlReaders.createReader(driver, in);
+            try {
+                return XStreamDOM.from(reader);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Benchmark
+    public String sniffEncoding() throws IOException {
+        return xmlFile.sniffEncoding();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(XmlFileBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build()).run();
+    }
+}
@@ -0,0 +1,41 @@
+package hudson.console;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import hudson.MarkupText;
+import org.junit.Test;
+
+public class ConsoleAnnotationOutputStreamTest {
+
+    private static String annotate(ConsoleAnnotator<Object> ann, String text) throws IOException {
+        StringWriter w = new StringWriter();
+        try (OutputStream os = new ConsoleAnnotationOutputStream<>(w, ann, null, StandardCharsets.UTF_8)) {
+            os.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return w.toString();
+    }
+
+    @Test
+    public void linesWithoutAnnotatorAreEscaped() throws IOException {
+        String text = "<a href='x'> & \u00e9\n\nplain\n";
+        assertEquals(new MarkupText(text).toString(true), annotate(null, text));
+        assertEquals("&lt;&lt;&amp;&gt;", annotate(null, "<<&>"));
+    }
+
+    @Test
+    public void annotatedLinesAreMarkedUp() throws IOException {
+        ConsoleAnnotator<Object> bold = new ConsoleAnnotator<Object>() {
+            @Override
+            public ConsoleAnnotator<Object> annotate(Object context, MarkupText text) {
+                text.wrapBy("<b>", "</b>");
+                return this;
+            }
+        };
+        assertEquals("<b>a &lt; b\n</b><b>c\n</b>", annotate(bold, "a < b\nc\n"));
+    }
+}
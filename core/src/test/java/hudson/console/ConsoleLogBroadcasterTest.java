@@ -0,0 +1,145 @@
+package hudson.console;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConsoleLogBroadcasterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static String event(String name, long id, String data) {
+        return new String(ConsoleLogBroadcaster.event(name, id, data), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void multilineData() {
+        assertEquals("id: 42\ndata: first\ndata: second\ndata: \n\n", event(null, 42, "first\nsecond\n"));
+    }
+
+    @Test
+    public void namedEvent() {
+        assertEquals("event: complete\ndata: \n\n", event("complete", -1, ""));
+    }
+
+    /**
+     * Collects the ids and the data of the rendered events.
+     */
+    private static final class Events implements ConsoleLogBroadcaster.EventSink {
+        final List<Long> ids = new ArrayList<>();
+        final List<String> data = new ArrayList<>();
+        long last = -1;
+
+        @Override
+        public void send(long from, long to, byte[] event) {
+            assertTrue("each event starts where the one before it ended", last < 0 || from == last);
+            last = to;
+            long id = -1;
+            StringBuilder sb = null;
+            for (String line : new String(event, StandardCharsets.UTF_8).split("\n")) {
+                if (line.startsWith("id: ")) {
+                    id = Long.parseLong(line.substring(4));
+                } else if (line.startsWith("data: ")) {
+                    if (sb == null) {
+                        sb = new StringBuilder();
+                    } else {
+                        sb.append('\n');
+                    }
+                    sb.append(line.substring(6));
+                }
+            }
+            assertEquals(to, id);
+            ids.add(id);
+            data.add(sb == null ? "" : sb.toString());
+        }
+
+        String text() {
+            StringBuilder sb = new StringBuilder();
+            for (String d : data) {
+                sb.append(d);
+            }
+            return sb.toString();
+        }
+    }
+
+    private File log(String text) throws IOException {
+        File log = tmp.newFile();
+        Files.write(log.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return log;
+    }
+
+    private static long render(File log, long start, long end, boolean all, ConsoleLogBroadcaster.Html html, Events events) throws IOException {
+        try (FileChannel ch = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            return ConsoleLogBroadcaster.render(ch, start, end, all, html, events);
+        }
+    }
+
+    private static ConsoleLogBroadcaster.Html html() {
+        return new ConsoleLogBroadcaster.Html(null, null, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void renderedInChunks() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("line ").append(i).append(" <x>\n");
+        }
+        String text = sb.toString();
+        File log = log(text);
+
+        Events events = new Events();
+        assertEquals(log.length(), render(log, 0, log.length(), false, html(), events));
+        assertTrue(events.ids.size() >= log.length() / ConsoleLogBroadcaster.CHUNK);
+        long last = 0;
+        for (int i = 0; i < events.ids.size(); i++) {
+            long id = events.ids.get(i);
+            assertTrue("each event covers at most one chunk", id > last && id - last <= ConsoleLogBroadcaster.CHUNK);
+            assertEquals("each event ends at a line end", '\n', text.charAt((int) id - 1));
+            last = id;
+        }
+        assertEquals(text.replace("<", "&lt;").replace(">", "&gt;"), events.text());
+    }
+
+    @Test
+    public void partialLineIsLeftForLater() throws IOException {
+        File log = log("first\nsec");
+        ConsoleLogBroadcaster.Html html = html();
+        Events events = new Events();
+        assertEquals(6, render(log, 0, log.length(), false, html, events));
+        assertEquals("first\n", events.text());
+
+        assertEquals(9, render(log, 6, log.length(), true, html, events));
+        assertEquals("first\nsec", events.text());
+    }
+
+    @Test
+    public void lineLongerThanChunk() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3 * ConsoleLogBroadcaster.CHUNK; i++) {
+            sb.append('x');
+        }
+        String line = sb.toString();
+        File log = log(line);
+        ConsoleLogBroadcaster.Html html = html();
+        Events events = new Events();
+        assertEquals("full chunks are annotated even without a line end", log.length(), render(log, 0, log.length(), false, html, events));
+        assertTrue(events.data.isEmpty());
+
+        Files.write(log.toPath(), "\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertEquals(log.length(), render(log, line.length(), log.length(), false, html, events));
+        assertEquals(line + "\n", events.text());
+    }
+}
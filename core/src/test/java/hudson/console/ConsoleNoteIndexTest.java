@@ -0,0 +1,91 @@
+package hudson.console;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConsoleNoteIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final String NOTE = HyperlinkNote.encodeTo("http://jenkins/", "");
+
+    private File log;
+    private File index;
+
+    private void record(String text) throws IOException {
+        log = tmp.newFile("log");
+        index = new File(tmp.getRoot(), "log-notes.index");
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        try (OutputStream os = ConsoleNoteIndex.record(Files.newOutputStream(log.toPath()), 0, index)) {
+            // split writes in the middle of notes
+            for (int i = 0; i < data.length; i += 3) {
+                os.write(data, i, Math.min(3, data.length - i));
+            }
+        }
+    }
+
+    private static String plain(String text) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (OutputStream os = new PlainTextConsoleOutputStream(baos)) {
+            os.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private String serve(ConsoleNoteIndex idx, long from, long to) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (FileChannel ch = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            idx.writePlainText(ch, from, to, Channels.newChannel(baos));
+        }
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void sameAsPlainTextConsoleOutputStream() throws IOException {
+        String text = NOTE + "Started\nline " + NOTE + "one\n" + "x\u001B[8mha:unterminated\n" + "no notes\n" + NOTE + NOTE + "\nend" + NOTE;
+        record(text);
+        ConsoleNoteIndex idx = ConsoleNoteIndex.load(index, log.length());
+        assertNotNull(idx);
+        assertEquals(5, idx.size());
+        String expected = plain(text);
+        assertEquals(expected.length(), idx.getPlainLength());
+        assertEquals(expected, serve(idx, 0, idx.getPlainLength()));
+    }
+
+    @Test
+    public void ranges() throws IOException {
+        String text = "abc" + NOTE + "def\n" + NOTE + "ghi";
+        record(text);
+        ConsoleNoteIndex idx = ConsoleNoteIndex.load(index, log.length());
+        assertNotNull(idx);
+        assertEquals("abcdef\nghi", serve(idx, 0, 10));
+        assertEquals("cde", serve(idx, 2, 5));
+        assertEquals("f\ng", serve(idx, 5, 8));
+        assertEquals("hi", serve(idx, 8, 10));
+    }
+
+    @Test
+    public void untrustedIndex() throws IOException {
+        record("abc" + NOTE + "\n");
+        assertNull("log length does not match", ConsoleNoteIndex.load(index, log.length() + 1));
+        Files.write(index.toPath(), new byte[] {1, 2, 3}, StandardOpenOption.APPEND);
+        assertNull("corrupted", ConsoleNoteIndex.load(index, log.length()));
+        assertNull("missing", ConsoleNoteIndex.load(new File(tmp.getRoot(), "nonexistent"), log.length()));
+    }
+}
@@ -0,0 +1,134 @@
+package hudson.console;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class LimitedLogOutputStreamTest {
+
+    private static String lines(int from, int to) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String write(OutputStream os, ByteArrayOutputStream baos, String text) throws IOException {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < data.length; i += 5) {
+            os.write(data, i, Math.min(5, data.length - i));
+        }
+        os.close();
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void unlimited() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        String text = lines(0, 100);
+        assertEquals(text, write(new LimitedLogOutputStream(baos, 0, 0, 0, null), baos, text));
+    }
+
+    @Test
+    public void truncate() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        String log = write(new LimitedLogOutputStream(baos, 0, 100, 0, null), baos, lines(0, 1000));
+        assertThat(log, startsWith(lines(0, 5)));
+        assertThat(log, not(containsString("line 999")));
+        assertTrue(log.length() < 300);
+    }
+
+    @Test
+    public void keepHeadAndTail() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        String log = write(new LimitedLogOutputStream(baos, 0, 200, 100, null), baos, lines(0, 1000));
+        assertThat(log, startsWith(lines(0, 5)));
+        assertThat(log, not(containsString("line 500\n")));
+        assertThat(log, endsWith(lines(990, 1000)));
+        // the tail starts at a line boundary
+        assertThat(log, containsString("]\nline "));
+    }
+
+    @Test
+    public void shortLogIsNotMarked() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        String text = lines(0, 20);
+        assertEquals(text, write(new LimitedLogOutputStream(baos, 0, 1000, 400, null), baos, text));
+    }
+
+    @Test
+    public void throttle() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        OutputStream os = new LimitedLogOutputStream(baos, 1000, 0, 0, null);
+        // one second worth of output goes through at once, the rest of it waits
+        os.write(new byte[1500]);
+        os.close();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue("took " + elapsedMillis + "ms", elapsedMillis >= 400);
+    }
+
+    @Test
+    public void quietBuildDoesNotSaveUpAllowance() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputStream os = new LimitedLogOutputStream(baos, 10000, 0, 0, null);
+        Thread.sleep(2000);
+        long start = System.nanoTime();
+        os.write(new byte[15000]);
+        os.close();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue("took " + elapsedMillis + "ms", elapsedMillis >= 400);
+    }
+
+    @Test
+    public void droppedOutputIsNotThrottled() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        OutputStream os = new LimitedLogOutputStream(baos, 1000, 100, 0, null);
+        os.write(new byte[5000]);
+        os.close();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 1000);
+    }
+
+    @Test
+    public void tailLargerThanInitialBuffer() throws IOException {
+        String text = lines(0, 100000);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        String log = write(new LimitedLogOutputStream(baos, 0, 200000, 50000, null), baos, text);
+        assertThat(log, startsWith(lines(0, 5)));
+        assertThat(log, endsWith(text.substring(text.length() - 40000)));
+        assertTrue(log.length() < 210000);
+
+        // over the head, but not by the whole tail
+        String shorter = lines(0, 19000);
+        baos = new ByteArrayOutputStream();
+        log = write(new LimitedLogOutputStream(baos, 0, 200000, 50000, null), baos, shorter);
+        assertEquals(shorter, log);
+    }
+
+    @Test
+    public void singleBytes() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputStream os = new LimitedLogOutputStream(baos, 0, 200, 100, null);
+        for (byte b : lines(0, 1000).getBytes(StandardCharsets.UTF_8)) {
+            os.write(b);
+        }
+        os.close();
+        String log = new String(baos.toByteArray(), StandardCharsets.UTF_8);
+        assertThat(log, startsWith(lines(0, 5)));
+        assertThat(log, endsWith(lines(990, 1000)));
+    }
+}
@@ -0,0 +1,117 @@
+package hudson.console;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link PlainTextConsoleOutputStream} with the previous byte-at-a-time implementation
+ * on a chatty build log written in 8KiB chunks.
+ *
+ * <p>
+ * Run with {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PlainTextConsoleOutputStreamBenchmark {
+
+    /**
+     * Percentage of lines carrying a console note.
+     */
+    @Param({"0", "10"})
+    public int notePercentage;
+
+    private byte[] log;
+
+    @Setup
+    public void setUp() throws IOException {
+        String note = new HyperlinkNote("http://jenkins/job/x/", 10).encode();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            if (i % 100 < notePercentage) {
+                sb.append(note);
+            }
+            sb.append("[INFO] Compiling ").append(i).append(" source files to /var/lib/jenkins/workspace/job/target/classes\n");
+        }
+        log = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void current() throws IOException {
+        write(new PlainTextConsoleOutputStream(NullOutputStream.NULL_OUTPUT_STREAM));
+    }
+
+    @Benchmark
+    public void legacy() throws IOException {
+        write(new LegacyPlainTextConsoleOutputStream(NullOutputStream.NULL_OUTPUT_STREAM));
+    }
+
+    private void write(OutputStream os) throws IOException {
+        for (int i = 0; i < log.length; i += 8192) {
+            os.write(log, i, Math.min(8192, log.length - i));
+        }
+        os.close();
+    }
+
+    /**
+     * The implementation prior to byte-level note skipping and bulk line splitting.
+     */
+    private static final class LegacyPlainTextConsoleOutputStream extends LineTransformationOutputStream {
+        private final OutputStream out;
+
+        LegacyPlainTextConsoleOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int end = off + len;
+            for (int i = off; i < end; i++)
+                write(b[i]);
+        }
+
+        @Override
+        protected void eol(byte[] in, int sz) throws IOException {
+            int next = ConsoleNote.findPreamble(in, 0, sz);
+            int written = 0;
+            while (next >= 0) {
+                if (next > written) {
+                    out.write(in, written, next - written);
+                    written = next;
+                }
+                int rest = sz - next;
+                ByteArrayInputStream b = new ByteArrayInputStream(in, next, rest);
+                ConsoleNote.skip(new DataInputStream(b));
+                written += rest - b.available();
+                next = ConsoleNote.findPreamble(in, written, sz - written);
+            }
+            out.write(in, written, sz - written);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PlainTextConsoleOutputStreamBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build()).run();
+    }
+}
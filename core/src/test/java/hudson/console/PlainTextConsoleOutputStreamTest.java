@@ -0,0 +1,66 @@
+package hudson.console;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PlainTextConsoleOutputStreamTest {
+
+    private static final String NOTE = HyperlinkNote.encodeTo("http://jenkins/", "");
+
+    @Test
+    public void linesAreSplitAcrossChunks() throws IOException {
+        final List<String> lines = new ArrayList<>();
+        LineTransformationOutputStream os = new LineTransformationOutputStream() {
+            @Override
+            protected void eol(byte[] b, int len) {
+                lines.add(new String(b, 0, len, StandardCharsets.US_ASCII));
+            }
+        };
+        byte[] data = "first\nsec".getBytes(StandardCharsets.US_ASCII);
+        os.write(data, 0, data.length);
+        data = "ond\n\nthird\nlast".getBytes(StandardCharsets.US_ASCII);
+        os.write(data, 0, data.length);
+        os.write('!');
+        os.close();
+
+        assertEquals(5, lines.size());
+        assertEquals("first\n", lines.get(0));
+        assertEquals("second\n", lines.get(1));
+        assertEquals("\n", lines.get(2));
+        assertEquals("third\n", lines.get(3));
+        assertEquals("last!", lines.get(4));
+    }
+
+    @Test
+    public void notesAreStripped() throws IOException {
+        assertEquals("plain line\n", strip("plain line\n"));
+        assertEquals("before after\n", strip("before " + NOTE + "after\n"));
+        assertEquals("a b c\n", strip(NOTE + "a " + NOTE + "b" + NOTE + " c" + NOTE + "\n"));
+    }
+
+    @Test
+    public void unterminatedNoteIsKept() throws IOException {
+        String truncated = "x" + ConsoleNote.PREAMBLE_STR + "AAAA";
+        assertEquals(truncated, strip(truncated));
+    }
+
+    private static String strip(String text) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (OutputStream os = new PlainTextConsoleOutputStream(baos)) {
+            byte[] data = text.getBytes(StandardCharsets.UTF_8);
+            // feed it in small chunks to exercise the line buffering
+            for (int i = 0; i < data.length; i += 7) {
+                os.write(data, i, Math.min(7, data.length - i));
+            }
+        }
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
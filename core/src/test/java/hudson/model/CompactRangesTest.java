@@ -0,0 +1,120 @@
+package hudson.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompactRangesTest {
+
+    private static int[] runs(BitSet bits) {
+        int[] r = new int[0];
+        for (int i = bits.nextSetBit(0); i >= 0; ) {
+            int end = bits.nextClearBit(i);
+            r = Arrays.copyOf(r, r.length + 2);
+            r[r.length - 2] = i;
+            r[r.length - 1] = end;
+            i = bits.nextSetBit(end);
+        }
+        return r;
+    }
+
+    private static BitSet random(Random r, int bound, int count) {
+        BitSet bits = new BitSet();
+        for (int i = 0; i < count; i++) {
+            int start = r.nextInt(bound);
+            bits.set(start, start + 1 + r.nextInt(r.nextBoolean() ? 3 : 300));
+        }
+        return bits;
+    }
+
+    @Test
+    public void addAndIncludes() {
+        Random r = new Random(1);
+        for (int round = 0; round < 20; round++) {
+            BitSet expected = new BitSet();
+            CompactRanges set = CompactRanges.EMPTY;
+            // sparse enough for some containers to turn into bitmaps
+            int bound = round % 2 == 0 ? 200000 : 20000;
+            for (int i = 0; i < 10000; i++) {
+                int n = r.nextInt(bound);
+                expected.set(n);
+                set = set.add(n);
+            }
+            assertArrayEquals(runs(expected), set.runs());
+            assertArrayEquals(runs(expected), CompactRanges.of(set.runs()).runs());
+            assertEquals(expected.nextSetBit(0), set.min());
+            assertEquals(expected.length(), set.end());
+            for (int i = 0; i < bound + 10; i++)
+                assertEquals(expected.get(i), set.includes(i));
+        }
+    }
+
+    @Test
+    public void setOperations() {
+        Random r = new Random(2);
+        for (int round = 0; round < 200; round++) {
+            BitSet a = random(r, 150000, r.nextInt(50));
+            BitSet b = random(r, 150000, r.nextInt(50));
+
+            BitSet union = (BitSet) a.clone();
+            union.or(b);
+            assertArrayEquals(runs(union), CompactRanges.union(runs(a), runs(b)));
+
+            BitSet intersection = (BitSet) a.clone();
+            intersection.and(b);
+            assertArrayEquals(runs(intersection), CompactRanges.intersect(runs(a), runs(b)));
+
+            BitSet difference = (BitSet) a.clone();
+            difference.andNot(b);
+            assertArrayEquals(runs(difference), CompactRanges.subtract(runs(a), runs(b)));
+        }
+    }
+
+    @Test
+    public void negativeAndAcrossContainers() {
+        CompactRanges set = CompactRanges.of(new int[] {-1, 3, 65530, 65540});
+        assertArrayEquals(new int[] {-1, 3, 65530, 65540}, set.runs());
+        assertEquals(true, set.includes(-1));
+        assertEquals(false, set.includes(-2));
+        assertEquals(true, set.includes(65535));
+        assertEquals(true, set.includes(65536));
+        assertEquals(false, set.includes(65540));
+    }
+
+    @Test
+    public void runsAndBounds() {
+        Random r = new Random(3);
+        for (int round = 0; round < 100; round++) {
+            BitSet bits = random(r, 300000, 1 + r.nextInt(50));
+            // runs spanning containers, some of which are bitmaps
+            CompactRanges set = CompactRanges.EMPTY;
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+                set = set.add(i);
+            int[] expected = runs(bits);
+            assertArrayEquals(expected, set.runs());
+            final StringBuilder visited = new StringBuilder();
+            set.forEachRun(new CompactRanges.RunVisitor() {
+                @Override
+                public void visit(int start, int end) {
+                    visited.append(start).append(',').append(end).append(';');
+                }
+            });
+            StringBuilder buf = new StringBuilder();
+            for (int i = 0; i < expected.length; i += 2)
+                buf.append(expected[i]).append(',').append(expected[i + 1]).append(';');
+            assertEquals(buf.toString(), visited.toString());
+            assertEquals(expected[0], set.min());
+            assertEquals(expected[expected.length - 1], set.end());
+        }
+    }
+
+    @Test
+    public void normalize() {
+        assertArrayEquals(new int[] {0, 3, 5, 6}, CompactRanges.normalize(new int[] {1, 2, 5, 6, 0, 1, 2, 3, 1, 2}));
+    }
+}
@@ -91,6 +91,43 @@ public class FingerprintCleanupThreadTest {
         assertTrue("Should have logged IOException.", logOutput.contains("ERROR: Failed to process"));
     }
 
+    @Test
+    public void testResumesWhereItStopped() throws IOException {
+        createTestDir();
+        Path fingerprintsPath = tempDirectory.resolve(FingerprintCleanupThread.FINGERPRINTS_DIR_NAME);
+        for (String dir : new String[] {"aa/bb", "aa/cc", "dd/ee"}) {
+            Path p = Files.createDirectories(fingerprintsPath.resolve(dir));
+            Files.createFile(p.resolve("0123456789012345678901234567.xml"));
+        }
+        FingerprintCleanupThread cleanupThread = new TestFingerprintCleanupThread(new TestFingerprint(false)) {
+            @Override
+            protected int getSliceSize() {
+                return 2;
+            }
+
+            @Override
+            protected int getThreads() {
+                return 2;
+            }
+        };
+        assertEquals("Wrong recurrence period.", PeriodicWork.HOUR, cleanupThread.getRecurrencePeriod());
+
+        TestTaskListener testTaskListener = new TestTaskListener();
+        cleanupThread.execute(testTaskListener);
+        String logOutput = testTaskListener.outputStream.toString();
+        assertTrue(logOutput, logOutput.startsWith("Cleaned up 2 records"));
+        assertTrue(logOutput, logOutput.contains("Will resume from dd/ee"));
+        assertFalse(Files.exists(fingerprintsPath.resolve("aa")));
+        assertTrue(Files.exists(fingerprintsPath.resolve("dd/ee")));
+
+        testTaskListener = new TestTaskListener();
+        cleanupThread.execute(testTaskListener);
+        logOutput = testTaskListener.outputStream.toString();
+        assertTrue(logOutput, logOutput.startsWith("Cleaned up 1 records"));
+        assertFalse(logOutput, logOutput.contains("Will resume"));
+        assertFalse(Files.exists(fingerprintsPath.resolve("dd")));
+    }
+
     private void createFolderStructure() throws IOException {
         createTestDir();
         Path fingerprintsPath = tempDirectory.resolve(FingerprintCleanupThread.FINGERPRINTS_DIR_NAME);
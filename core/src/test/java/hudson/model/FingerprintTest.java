@@ -169,6 +169,16 @@ public class FingerprintTest {
         assertTrue(x.isEmpty());
     }
 
+    @Test
+    public void retainAll4() {
+        // ranges kept in the order parsed are not changed by retaining what they already hold
+        RangeSet x = RangeSet.fromString("5-6,1-2", false);
+        RangeSet y = RangeSet.fromString("1-10", false);
+
+        assertFalse(x.retainAll(y));
+        assertEquals("[5,7),[1,3)",x.toString());
+    }
+
     @Test
     public void removeAll1() {
         RangeSet x = new RangeSet();
@@ -0,0 +1,234 @@
+package hudson.model;
+
+import hudson.model.Fingerprint.Range;
+import hudson.model.Fingerprint.RangeSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link RangeSet} with the previous list of {@link Range}s
+ * on the builds of a job using a fingerprint every few builds, among high build numbers.
+ *
+ * <p>
+ * Run with {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RangeSetBenchmark {
+
+    /**
+     * Number of builds using the fingerprint.
+     */
+    @Param({"100", "5000"})
+    public int builds;
+
+    private int[] numbers;
+    private int[] probes;
+    private RangeSet current;
+    private LegacyRangeSet legacy;
+    private RangeSet currentKept;
+    private LegacyRangeSet legacyKept;
+
+    @Setup
+    public void setUp() {
+        Random r = new Random(0);
+        numbers = new int[builds];
+        int n = 100000;
+        for (int i = 0; i < builds; i++) {
+            n += 1 + r.nextInt(4);
+            numbers[i] = n;
+        }
+        probes = new int[1000];
+        for (int i = 0; i < probes.length; i++)
+            probes[i] = 100000 + r.nextInt(n - 100000);
+
+        current = new RangeSet();
+        legacy = new LegacyRangeSet();
+        currentKept = new RangeSet();
+        legacyKept = new LegacyRangeSet();
+        for (int i = 0; i < builds; i++) {
+            current.add(numbers[i]);
+            legacy.add(numbers[i]);
+            // as if a build discarder kept every third build
+            if (i % 3 == 0) {
+                currentKept.add(numbers[i]);
+                legacyKept.add(numbers[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public RangeSet addCurrent() {
+        RangeSet rs = new RangeSet();
+        for (int n : numbers)
+            rs.add(n);
+        return rs;
+    }
+
+    @Benchmark
+    public LegacyRangeSet addLegacy() {
+        LegacyRangeSet rs = new LegacyRangeSet();
+        for (int n : numbers)
+            rs.add(n);
+        return rs;
+    }
+
+    @Benchmark
+    public void includesCurrent(Blackhole bh) {
+        for (int p : probes)
+            bh.consume(current.includes(p));
+    }
+
+    @Benchmark
+    public void includesLegacy(Blackhole bh) {
+        for (int p : probes)
+            bh.consume(legacy.includes(p));
+    }
+
+    /**
+     * What {@link Fingerprint#trim()} does for each job.
+     */
+    @Benchmark
+    public RangeSet trimCurrent() {
+        RangeSet rs = new RangeSet();
+        rs.add(current);
+        rs.retainAll(currentKept);
+        return rs;
+    }
+
+    @Benchmark
+    public LegacyRangeSet trimLegacy() {
+        LegacyRangeSet rs = new LegacyRangeSet();
+        rs.add(legacy);
+        rs.retainAll(legacyKept);
+        return rs;
+    }
+
+    /**
+     * The operations of {@link RangeSet} used here, as they were implemented before.
+     */
+    static final class LegacyRangeSet {
+        private final List<Range> ranges = new ArrayList<Range>();
+
+        synchronized void add(int n) {
+            for (int i = 0; i < ranges.size(); i++) {
+                Range r = ranges.get(i);
+                if (r.includes(n)) return;
+                if (r.end == n) {
+                    ranges.set(i, r.expandRight());
+                    checkCollapse(i);
+                    return;
+                }
+                if (r.start == n + 1) {
+                    ranges.set(i, r.expandLeft());
+                    checkCollapse(i - 1);
+                    return;
+                }
+                if (r.isBiggerThan(n)) {
+                    ranges.add(i, new Range(n, n + 1));
+                    return;
+                }
+            }
+            ranges.add(new Range(n, n + 1));
+        }
+
+        private void checkCollapse(int i) {
+            if (i < 0 || i == ranges.size() - 1) return;
+            Range lhs = ranges.get(i);
+            Range rhs = ranges.get(i + 1);
+            if (lhs.isAdjacentTo(rhs)) {
+                ranges.set(i, new Range(lhs.start, rhs.end));
+                ranges.remove(i + 1);
+            }
+        }
+
+        synchronized boolean includes(int i) {
+            for (Range r : ranges) {
+                if (r.includes(i))
+                    return true;
+            }
+            return false;
+        }
+
+        synchronized void add(LegacyRangeSet that) {
+            int lhs = 0, rhs = 0;
+            while (lhs < this.ranges.size() && rhs < that.ranges.size()) {
+                Range lr = this.ranges.get(lhs);
+                Range rr = that.ranges.get(rhs);
+                if (lr.end < rr.start) {
+                    lhs++;
+                    continue;
+                }
+                if (rr.end < lr.start) {
+                    ranges.add(lhs, rr);
+                    lhs++;
+                    rhs++;
+                    continue;
+                }
+                Range m = lr.combine(rr);
+                rhs++;
+                while (lhs + 1 < this.ranges.size() && !m.isIndependent(this.ranges.get(lhs + 1))) {
+                    m = m.combine(this.ranges.get(lhs + 1));
+                    this.ranges.remove(lhs + 1);
+                }
+                this.ranges.set(lhs, m);
+            }
+            this.ranges.addAll(that.ranges.subList(rhs, that.ranges.size()));
+        }
+
+        synchronized boolean retainAll(LegacyRangeSet that) {
+            List<Range> intersection = new ArrayList<Range>();
+            int lhs = 0, rhs = 0;
+            while (lhs < this.ranges.size() && rhs < that.ranges.size()) {
+                Range lr = this.ranges.get(lhs);
+                Range rr = that.ranges.get(rhs);
+                if (lr.end <= rr.start) {
+                    lhs++;
+                    continue;
+                }
+                if (rr.end <= lr.start) {
+                    rhs++;
+                    continue;
+                }
+                intersection.add(lr.intersect(rr));
+                if (lr.end < rr.end) {
+                    lhs++;
+                } else {
+                    rhs++;
+                }
+            }
+            boolean same = this.ranges.equals(intersection);
+            if (!same) {
+                this.ranges.clear();
+                this.ranges.addAll(intersection);
+            }
+            return !same;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RangeSetBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build()).run();
+    }
+}
@@ -0,0 +1,105 @@
+package hudson.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UserIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final String CONFIG = "<?xml version='1.1' encoding='UTF-8'?>\n"
+            + "<user>\n"
+            + "  <id>alice</id>\n"
+            + "  <fullName>Alice\tA+ Smith</fullName>\n"
+            + "  <properties>\n"
+            + "    <hudson.tasks.Mailer_-UserProperty>\n"
+            + "      <emailAddress>alice@example.com</emailAddress>\n"
+            + "    </hudson.tasks.Mailer_-UserProperty>\n"
+            + "  </properties>\n"
+            + "</user>\n";
+
+    private File writeUser(String directoryName, String config) throws Exception {
+        File directory = tmp.newFolder(directoryName);
+        Files.write(new File(directory, User.CONFIG_XML).toPath(), config.getBytes(StandardCharsets.UTF_8));
+        return directory;
+    }
+
+    @Test
+    public void indexes() throws Exception {
+        File directory = writeUser("alice_123", CONFIG);
+        UserIndex index = new UserIndex(tmp.getRoot());
+        UserIndex.Entry entry = index.get(directory);
+        assertNotNull(entry);
+        assertEquals("alice", entry.id);
+        assertEquals("Alice\tA+ Smith", entry.fullName);
+        assertEquals("alice@example.com", entry.emailAddress);
+        assertEquals("alice", index.findIdByEmailAddress("Alice@Example.com"));
+        assertNull(index.findIdByEmailAddress("bob@example.com"));
+        assertNull(index.get(tmp.newFolder("nobody")));
+    }
+
+    @Test
+    public void persistedAndRevalidated() throws Exception {
+        File directory = writeUser("alice_123", CONFIG);
+        new UserIndex(tmp.getRoot()).get(directory);
+        File config = new File(directory, User.CONFIG_XML);
+        long lastModified = config.lastModified();
+        // not written until saved
+        assertNull(new UserIndex(tmp.getRoot()).findIdByEmailAddress("alice@example.com"));
+        UserIndex index = new UserIndex(tmp.getRoot());
+        index.get(directory);
+        index.save();
+        assertTrue(new File(tmp.getRoot(), UserIndex.INDEX_FILE).isFile());
+
+        // an unchanged file is not read again
+        byte[] garbage = new byte[(int) config.length()];
+        Arrays.fill(garbage, (byte) 'x');
+        Files.write(config.toPath(), garbage);
+        assertTrue(config.setLastModified(lastModified));
+        index = new UserIndex(tmp.getRoot());
+        assertEquals("alice@example.com", index.get(directory).emailAddress);
+
+        // a changed one is
+        assertTrue(config.setLastModified(lastModified + 10000));
+        assertNull(index.get(directory));
+        assertNull(index.findIdByEmailAddress("alice@example.com"));
+    }
+
+    @Test
+    public void missingFields() throws Exception {
+        File directory = writeUser("bob_456", "<?xml version='1.1' encoding='UTF-8'?>\n<user><id>bob</id><fullName></fullName></user>");
+        UserIndex index = new UserIndex(tmp.getRoot());
+        index.get(directory);
+        index.save();
+        UserIndex.Entry entry = new UserIndex(tmp.getRoot()).get(directory);
+        assertEquals("bob", entry.id);
+        assertEquals("", entry.fullName);
+        assertNull(entry.emailAddress);
+    }
+
+    @Test
+    public void updateAndRemove() throws Exception {
+        File directory = writeUser("alice_123", CONFIG);
+        UserIndex index = new UserIndex(tmp.getRoot());
+        index.get(directory);
+        Files.write(new File(directory, User.CONFIG_XML).toPath(),
+                CONFIG.replace("alice@example.com", "alice@example.org").getBytes(StandardCharsets.UTF_8));
+        index.update(directory);
+        assertNull(index.findIdByEmailAddress("alice@example.com"));
+        assertEquals("alice", index.findIdByEmailAddress("alice@example.org"));
+        index.remove(directory);
+        assertNull(index.findIdByEmailAddress("alice@example.org"));
+    }
+}
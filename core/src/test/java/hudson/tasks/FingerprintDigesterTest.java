@@ -0,0 +1,74 @@
+package hudson.tasks;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import hudson.Util;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FingerprintDigesterTest {
+
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void digestsInParallel() throws Exception {
+        File ws = temp.newFolder("ws");
+        String[] paths = new String[20];
+        String[] expected = new String[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = "dir/file" + i;
+            File f = new File(ws, paths[i]);
+            f.getParentFile().mkdirs();
+            Files.write(f.toPath(), ("content " + i).getBytes(StandardCharsets.UTF_8));
+            expected[i] = Util.getDigestOf("content " + i);
+        }
+        assertArrayEquals(expected, new FingerprintDigester(null, 4).digest(ws, paths));
+        assertArrayEquals(expected, new FingerprintDigester(null, 1).digest(ws, paths));
+    }
+
+    @Test
+    public void cachedUntilChanged() throws Exception {
+        File ws = temp.newFolder("ws");
+        File cache = new File(temp.getRoot(), "ws@tmp/digests.txt");
+        File f = new File(ws, "a.jar");
+        Files.write(f.toPath(), "one".getBytes(StandardCharsets.UTF_8));
+        // old enough to be trusted
+        f.setLastModified(System.currentTimeMillis() - 60000);
+        String[] paths = {"a.jar"};
+
+        assertEquals(Util.getDigestOf("one"), new FingerprintDigester(cache, 2).digest(ws, paths)[0]);
+        assertThat(new String(Files.readAllBytes(cache.toPath()), StandardCharsets.UTF_8), containsString("a.jar"));
+
+        // the cache is used as long as the file looks the same
+        String cached = new String(Files.readAllBytes(cache.toPath()), StandardCharsets.UTF_8)
+                .replace(Util.getDigestOf("one"), "0123456789abcdef0123456789abcdef");
+        Files.write(cache.toPath(), cached.getBytes(StandardCharsets.UTF_8));
+        assertEquals("0123456789abcdef0123456789abcdef", new FingerprintDigester(cache, 2).digest(ws, paths)[0]);
+
+        // but not once it changed
+        Files.write(f.toPath(), "two".getBytes(StandardCharsets.UTF_8));
+        f.setLastModified(System.currentTimeMillis() - 30000);
+        assertEquals(Util.getDigestOf("two"), new FingerprintDigester(cache, 2).digest(ws, paths)[0]);
+        assertThat(new String(Files.readAllBytes(cache.toPath()), StandardCharsets.UTF_8),
+                not(containsString("0123456789abcdef0123456789abcdef")));
+    }
+
+    @Test
+    public void recentFilesNotCached() throws Exception {
+        File ws = temp.newFolder("ws");
+        File cache = new File(temp.getRoot(), "cache.txt");
+        Files.write(new File(ws, "fresh").toPath(), "x".getBytes(StandardCharsets.UTF_8));
+        new FingerprintDigester(cache, 1).digest(ws, new String[] {"fresh"});
+        assertThat(new String(Files.readAllBytes(cache.toPath()), StandardCharsets.UTF_8), not(containsString("fresh")));
+    }
+}
@@ -0,0 +1,194 @@
+package hudson.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class BatchedRemoteOutputStreamTest {
+
+    /**
+     * Records how many writes reached the sink.
+     */
+    private static final class Sink extends OutputStream {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int writes;
+        boolean closed;
+
+        @Override
+        public synchronized void write(int b) {
+            data.write(b);
+            writes++;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            data.write(b, off, len);
+            writes++;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        synchronized String text() {
+            return new String(data.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void batchesBySize() throws IOException {
+        Sink sink = new Sink();
+        BatchedRemoteOutputStream os = new BatchedRemoteOutputStream(sink, 16, 60000);
+        PrintStream ps = new PrintStream(os, false, "UTF-8");
+        for (int i = 0; i < 8; i++) {
+            ps.println("line"); // 5 bytes each
+        }
+        assertEquals("only full batches are sent", 2, sink.writes);
+        ps.close();
+        assertEquals(3, sink.writes);
+        assertTrue(sink.closed);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            expected.append("line").append(System.lineSeparator());
+        }
+        assertEquals(expected.toString(), sink.text());
+    }
+
+    @Test
+    public void largeWritesBypassBuffer() throws IOException {
+        Sink sink = new Sink();
+        BatchedRemoteOutputStream os = new BatchedRemoteOutputStream(sink, 4, 60000);
+        os.write('a');
+        os.write("bcdefgh".getBytes(StandardCharsets.UTF_8));
+        assertEquals(2, sink.writes);
+        assertEquals("abcdefgh", sink.text());
+    }
+
+    @Test
+    public void flushesAfterInterval() throws Exception {
+        Sink sink = new Sink();
+        BatchedRemoteOutputStream os = new BatchedRemoteOutputStream(sink, 1024, 50);
+        os.write("hello".getBytes(StandardCharsets.UTF_8));
+        assertEquals(0, sink.writes);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (sink.writes == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("hello", sink.text());
+        os.close();
+        assertEquals(1, sink.writes);
+    }
+
+    @Test
+    public void flushSendsPendingBytes() throws IOException {
+        Sink sink = new Sink();
+        BatchedRemoteOutputStream os = new BatchedRemoteOutputStream(sink, 1024, 60000);
+        os.write("hello".getBytes(StandardCharsets.UTF_8));
+        os.write("world".getBytes(StandardCharsets.UTF_8));
+        assertEquals(0, sink.writes);
+        os.flush();
+        assertEquals("hello and world are sent together", 1, sink.writes);
+        assertEquals("helloworld", sink.text());
+        os.flush();
+        assertEquals("nothing is left to send", 1, sink.writes);
+        os.close();
+        assertEquals(1, sink.writes);
+    }
+
+    /**
+     * A {@link Sink} whose writes block until it is released.
+     */
+    private static final class BlockingSink extends OutputStream {
+        final Sink sink = new Sink();
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            sink.write(b, off, len);
+        }
+    }
+
+    private static Thread flushInBackground(final OutputStream os) {
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    os.flush();
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+        t.start();
+        return t;
+    }
+
+    @Test(timeout = 10000)
+    public void writesCoalesceWhileSinkIsBusy() throws Exception {
+        BlockingSink blocking = new BlockingSink();
+        BatchedRemoteOutputStream os = new BatchedRemoteOutputStream(blocking, 1024, 60000);
+        os.write("a".getBytes(StandardCharsets.UTF_8));
+        Thread first = flushInBackground(os);
+        blocking.writing.await();
+        // the sink is busy, yet writing does not wait for it
+        os.write("b".getBytes(StandardCharsets.UTF_8));
+        os.write("c".getBytes(StandardCharsets.UTF_8));
+        Thread second = flushInBackground(os);
+        blocking.release.countDown();
+        first.join();
+        second.join();
+        assertEquals("b and c are sent together", 2, blocking.sink.writes);
+        assertEquals("abc", blocking.sink.text());
+    }
+
+    @Test(timeout = 10000)
+    public void timedFlushesDoNotWaitForEachOther() throws Exception {
+        BlockingSink blocking = new BlockingSink();
+        BatchedRemoteOutputStream slow = new BatchedRemoteOutputStream(blocking, 1024, 10);
+        slow.write("slow".getBytes(StandardCharsets.UTF_8));
+        blocking.writing.await();
+
+        Sink sink = new Sink();
+        BatchedRemoteOutputStream fast = new BatchedRemoteOutputStream(sink, 1024, 10);
+        fast.write("fast".getBytes(StandardCharsets.UTF_8));
+        while (sink.text().isEmpty()) {
+            Thread.sleep(10);
+        }
+        assertEquals("fast", sink.text());
+        blocking.release.countDown();
+        slow.close();
+        assertEquals("slow", blocking.sink.text());
+    }
+
+    @Test
+    public void statisticsCountReceivedBytes() throws IOException {
+        BatchedRemoteOutputStream.Statistics stats = new BatchedRemoteOutputStream.Statistics();
+        OutputStream os = new BatchedRemoteOutputStream(stats.count(new Sink()), 8, 60000);
+        os.write(new byte[20]);
+        os.write(new byte[3]);
+        os.close();
+        assertEquals(23, stats.getBytes());
+        assertEquals(2, stats.getBatches());
+    }
+}
@@ -0,0 +1,71 @@
+package hudson.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GroupFsyncTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void concurrentForces() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                final Path file = tmp.getRoot().toPath().resolve("file" + i);
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override public Void call() throws Exception {
+                        Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+                        GroupFsync.force(file);
+                        GroupFsync.force(file.getParent());
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : futures) {
+                f.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(100, tmp.getRoot().list().length);
+    }
+
+    @Test
+    public void forceAll() throws Exception {
+        Path file = tmp.newFile("file").toPath();
+        Path missing = tmp.getRoot().toPath().resolve("missing");
+        Map<Path, IOException> failures = GroupFsync.forceAll(Arrays.asList(file, missing, tmp.getRoot().toPath()));
+        assertEquals(Collections.singleton(missing), failures.keySet());
+    }
+
+    @Test
+    public void missingFile() throws Exception {
+        try {
+            GroupFsync.force(tmp.getRoot().toPath().resolve("missing"));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
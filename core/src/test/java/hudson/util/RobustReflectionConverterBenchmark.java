@@ -0,0 +1,158 @@
+package hudson.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures unmarshalling by {@link RobustReflectionConverter} of an object graph shaped like a job with its builds,
+ * with and without {@link RobustReflectionConverter#CACHE_METADATA}.
+ *
+ * <p>
+ * Run with {@code -t 4} to see how it fares when several items load at once, as they do at startup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RobustReflectionConverterBenchmark {
+
+    @Param({"true", "false"})
+    public boolean cacheMetadata;
+
+    private XStream2 xs;
+    private String jobXml;
+    private String buildXml;
+
+    public static abstract class Item {
+        String name;
+        String description;
+        boolean disabled;
+    }
+
+    public static class Job extends Item {
+        int nextBuildNumber;
+        List<Property> properties = new ArrayList<>();
+        List<Step> builders = new ArrayList<>();
+        List<Step> publishers = new ArrayList<>();
+        Trigger[] triggers;
+        private transient boolean loaded;
+
+        private Object readResolve() {
+            loaded = true;
+            return this;
+        }
+    }
+
+    public static class Property {
+        String key;
+        String value;
+    }
+
+    public static class Step {
+        String command;
+        String[] targets;
+        boolean onlyIfSuccessful;
+        long timeout;
+    }
+
+    public static class Trigger {
+        String spec;
+        boolean ignorePostCommitHooks;
+    }
+
+    public static class Build {
+        int number;
+        long timestamp;
+        long duration;
+        String result;
+        String builtOn;
+        List<Action> actions = new ArrayList<>();
+    }
+
+    public static class Action {
+        String name;
+        String url;
+        List<Property> values = new ArrayList<>();
+    }
+
+    @Setup
+    public void setUp() {
+        RobustReflectionConverter.CACHE_METADATA = cacheMetadata;
+        xs = new XStream2();
+        xs.alias("job", Job.class);
+        xs.alias("build", Build.class);
+
+        Job job = new Job();
+        job.name = "core";
+        job.description = "Builds and tests the core module";
+        job.nextBuildNumber = 1234;
+        for (int i = 0; i < 10; i++) {
+            Property p = new Property();
+            p.key = "PARAM_" + i;
+            p.value = "value " + i;
+            job.properties.add(p);
+        }
+        for (int i = 0; i < 10; i++) {
+            Step s = new Step();
+            s.command = "mvn -B -pl module-" + i + " install";
+            s.targets = new String[] {"target/module-" + i + ".jar", "target/module-" + i + ".pom"};
+            s.timeout = 3600;
+            (i % 2 == 0 ? job.builders : job.publishers).add(s);
+        }
+        Trigger t = new Trigger();
+        t.spec = "H/15 * * * *";
+        job.triggers = new Trigger[] {t};
+        jobXml = xs.toXML(job);
+
+        Build build = new Build();
+        build.number = 1233;
+        build.timestamp = 1538041234567L;
+        build.duration = 482113;
+        build.result = "SUCCESS";
+        build.builtOn = "linux-agent-3";
+        for (int i = 0; i < 20; i++) {
+            Action a = new Action();
+            a.name = "action" + i;
+            a.url = "job/core/1233/action" + i;
+            for (int j = 0; j < 5; j++) {
+                Property p = new Property();
+                p.key = "k" + j;
+                p.value = "v" + j;
+                a.values.add(p);
+            }
+            build.actions.add(a);
+        }
+        buildXml = xs.toXML(build);
+    }
+
+    @Benchmark
+    public Object job() {
+        return xs.fromXML(jobXml);
+    }
+
+    @Benchmark
+    public Object build() {
+        return xs.fromXML(buildXml);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RobustReflectionConverterBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build()).run();
+    }
+}
@@ -33,6 +33,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import jenkins.util.xstream.CriticalXStreamException;
 import org.junit.Test;
 
 /**
@@ -104,6 +105,40 @@ public class RobustReflectionConverterTest {
         assertEquals(Billy.class, s.lover.getClass());
     }
 
+    @Test
+    public void cachedMetadata() {
+        XStream2 xs = new XStream2();
+        String cls = Resolved.class.getName();
+        for (int i = 0; i < 3; i++) {
+            Resolved r = (Resolved) xs.fromXML("<" + cls + "><number>" + i + "</number><name>n</name><fixed>f</fixed><gone/></" + cls + ">");
+            assertEquals(i, r.number);
+            assertEquals("n", r.name);
+            assertEquals("f", r.fixed);
+            assertTrue(r.resolved);
+        }
+        // critical fields added later still count
+        xs.addCriticalField(Steppe.class, "number");
+        try {
+            xs.fromXML("<" + cls + "><number>x</number></" + cls + ">");
+            fail();
+        } catch (CriticalXStreamException e) {
+            // expected
+        }
+    }
+
+    public static class Resolved extends Steppe {
+        String name;
+        final String fixed;
+        transient boolean resolved;
+        Resolved() {
+            fixed = null;
+        }
+        private Object readResolve() {
+            resolved = true;
+            return this;
+        }
+    }
+
     @Retention(RetentionPolicy.RUNTIME) @interface Owner {String value();}
     public static class Projekt {
         Bild[] bildz;
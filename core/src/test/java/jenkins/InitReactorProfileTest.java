@@ -0,0 +1,78 @@
+package jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Test;
+import org.jvnet.hudson.reactor.Executable;
+import org.jvnet.hudson.reactor.Reactor;
+import org.jvnet.hudson.reactor.TaskGraphBuilder;
+
+public class InitReactorProfileTest {
+
+    private static Executable sleep(final long millis) {
+        return new Executable() {
+            @Override
+            public void run(Reactor reactor) throws Exception {
+                Thread.sleep(millis);
+            }
+        };
+    }
+
+    private static List<String> names(List<InitReactorProfile.TaskRecord> tasks) {
+        List<String> names = new ArrayList<>();
+        for (InitReactorProfile.TaskRecord task : tasks) {
+            names.add(task.getDisplayName());
+        }
+        return names;
+    }
+
+    @Test
+    public void criticalPath() throws Exception {
+        TaskGraphBuilder g = new TaskGraphBuilder();
+        TaskGraphBuilder.Handle a = g.add("a", sleep(100));
+        g.add("quick", sleep(0));
+        g.requires(a).add("b", sleep(300));
+        g.requires(a).add("c", sleep(10));
+
+        InitReactorProfile profile = new InitReactorProfile();
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        try {
+            new Reactor(g).execute(es, profile);
+        } finally {
+            es.shutdown();
+            profile.finish();
+        }
+
+        // only the boot sets the profile shown, not any reactor which runs
+        assertNotSame(profile, InitReactorProfile.getBoot());
+        assertEquals(4, profile.getTasks().size());
+        assertEquals(Arrays.asList("a", "b"), names(profile.getCriticalPath()));
+        assertEquals("b", profile.getSlowestTasks(1).get(0).getDisplayName());
+        assertTrue(profile.getTotalMillis() >= 400);
+
+        JSONArray events = profile.toChromeTrace().getJSONArray("traceEvents");
+        List<String> critical = new ArrayList<>();
+        int tasks = 0;
+        for (int i = 0; i < events.size(); i++) {
+            JSONObject event = events.getJSONObject(i);
+            if (event.getString("ph").equals("X")) {
+                tasks++;
+                if (event.getString("cat").equals("critical")) {
+                    critical.add(event.getString("name"));
+                }
+            }
+        }
+        assertEquals(4, tasks);
+        assertEquals(Arrays.asList("a", "b"), critical);
+    }
+}
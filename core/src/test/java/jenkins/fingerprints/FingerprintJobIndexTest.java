@@ -0,0 +1,83 @@
+package jenkins.fingerprints;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.Fingerprint;
+
+import java.io.File;
+import java.util.function.Consumer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FingerprintJobIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static String id(int i) {
+        return String.format("%032x", i);
+    }
+
+    /**
+     * Storage without any fingerprint, which can be listed.
+     */
+    private static final class EmptyStorage extends FingerprintStorage {
+        @Override public void save(Fingerprint fp) {}
+        @Override public Fingerprint load(String id) { return null; }
+        @Override public void delete(String id) {}
+        @Override public boolean isReady() { return false; }
+        @Override public boolean forEachId(Consumer<String> visitor) { return true; }
+    }
+
+    @Test
+    public void renameAndDelete() throws Exception {
+        FingerprintJobIndex index = new FingerprintJobIndex(new File(tmp.getRoot(), FingerprintJobIndex.FILE_NAME));
+        index.add("folder/a", id(1));
+        index.add("folder/a", id(2));
+        index.add("b", id(2));
+        assertNull("not complete yet", index.getFingerprints("folder/a"));
+
+        index.build(new EmptyStorage());
+        assertThat(index.getFingerprints("folder/a"), containsInAnyOrder(id(1), id(2)));
+
+        index.rename("folder/a", "folder/c");
+        assertThat(index.getFingerprints("folder/a"), empty());
+        assertThat(index.getFingerprints("folder/c"), containsInAnyOrder(id(1), id(2)));
+
+        index.remove("folder/c", id(1));
+        assertThat(index.getFingerprints("folder/c"), containsInAnyOrder(id(2)));
+        assertThat(index.removeJob("b"), containsInAnyOrder(id(2)));
+        assertThat(index.getFingerprints("b"), empty());
+    }
+
+    @Test
+    public void trustedOnlyAfterCleanShutdown() throws Exception {
+        File file = new File(tmp.getRoot(), FingerprintJobIndex.FILE_NAME);
+        FingerprintJobIndex index = new FingerprintJobIndex(file);
+        index.add("a b\tc", id(1));
+        index.build(new EmptyStorage());
+        index.save(false);
+
+        FingerprintJobIndex crashed = new FingerprintJobIndex(file);
+        crashed.load();
+        assertFalse(crashed.isComplete());
+
+        index.save(true);
+        FingerprintJobIndex restarted = new FingerprintJobIndex(file);
+        restarted.load();
+        assertTrue(restarted.isComplete());
+        assertThat(restarted.getFingerprints("a b\tc"), containsInAnyOrder(id(1)));
+
+        // and not again, unless it is shut down cleanly too
+        FingerprintJobIndex again = new FingerprintJobIndex(file);
+        again.load();
+        assertFalse(again.isComplete());
+    }
+}
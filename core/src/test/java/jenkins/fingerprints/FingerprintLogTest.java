@@ -0,0 +1,145 @@
+package jenkins.fingerprints;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FingerprintLogTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static String id(int i) {
+        return String.format("%032x", i);
+    }
+
+    private static byte[] data(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void putGetRemove() throws IOException {
+        try (FingerprintLog log = new FingerprintLog(tmp.getRoot(), 1024 * 1024)) {
+            log.put(id(1), data("one"));
+            log.put(id(2), data("two"));
+            log.put(id(1), data("uno"));
+            assertArrayEquals(data("uno"), log.get(id(1)));
+            assertArrayEquals(data("two"), log.get(id(2)));
+            assertTrue(log.remove(id(2)));
+            assertFalse(log.remove(id(2)));
+            assertNull(log.get(id(2)));
+            assertEquals(1, log.size());
+        }
+    }
+
+    @Test
+    public void reopen() throws IOException {
+        try (FingerprintLog log = new FingerprintLog(tmp.getRoot(), 100)) {
+            for (int i = 0; i < 50; i++)
+                log.put(id(i), data("value " + i));
+            for (int i = 0; i < 50; i += 2)
+                log.remove(id(i));
+            log.put(id(1), data("updated"));
+            assertTrue(log.getSegmentCount() > 1);
+        }
+        try (FingerprintLog log = new FingerprintLog(tmp.getRoot(), 100)) {
+            assertEquals(25, log.size());
+            assertNull(log.get(id(0)));
+            assertArrayEquals(data("updated"), log.get(id(1)));
+            assertArrayEquals(data("value 49"), log.get(id(49)));
+        }
+    }
+
+    @Test
+    public void tornTail() throws IOException {
+        try (FingerprintLog log = new FingerprintLog(tmp.getRoot(), 1024 * 1024)) {
+            log.put(id(1), data("one"));
+            log.put(id(2), data("two"));
+        }
+        File segment = new File(tmp.getRoot(), "segment-00000001.log");
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        try (FingerprintLog log = new FingerprintLog(tmp.getRoot(), 1024 * 1024)) {
+            assertArrayEquals(data("one"), log.get(id(1)));
+            assertNull(log.get(id(2)));
+            log.put(id(3), data("three"));
+        }
+        try (FingerprintLog log = new FingerprintLog(tmp.getRoot(), 1024 * 1024)) {
+            assertEquals(2, log.size());
+            assertArrayEquals(data("three"), log.get(id(3)));
+        }
+    }
+
+    @Test
+    public void compaction() throws IOException {
+        try (FingerprintLog log = new FingerprintLog(tmp.getRoot(), 200)) {
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < 10; i++)
+                    log.put(id(i), data("round " + round));
+            }
+            log.remove(id(9));
+            int before = log.getSegmentCount();
+            assertTrue(log.compact(0.5) > 0);
+            assertTrue(log.getSegmentCount() < before);
+            for (int i = 0; i < 9; i++)
+                assertArrayEquals(data("round 9"), log.get(id(i)));
+            assertNull(log.get(id(9)));
+        }
+        try (FingerprintLog log = new FingerprintLog(tmp.getRoot(), 200)) {
+            assertEquals(9, log.size());
+            assertArrayEquals(data("round 9"), log.get(id(0)));
+            assertNull(log.get(id(9)));
+        }
+    }
+
+    @Test
+    public void compactionSettles() throws IOException {
+        try (FingerprintLog log = new FingerprintLog(tmp.getRoot(), 200)) {
+            for (int i = 0; i < 5; i++)
+                log.put(id(i), data("live " + i));
+            for (int i = 100; i < 120; i++)
+                log.put(id(i), data("dead " + i));
+            for (int i = 100; i < 120; i++)
+                log.remove(id(i));
+            int rounds = 0;
+            while (log.compact(0.5) > 0)
+                assertTrue("tombstones are not copied over and over", ++rounds < 10);
+            assertEquals(0, log.compact(0.5));
+        }
+        try (FingerprintLog log = new FingerprintLog(tmp.getRoot(), 200)) {
+            assertEquals(5, log.size());
+            assertArrayEquals(data("live 4"), log.get(id(4)));
+            assertNull(log.get(id(100)));
+            assertNull(log.get(id(119)));
+        }
+    }
+
+    @Test
+    public void tombstonesAreDroppedOnceTheyHideNothing() throws IOException {
+        try (FingerprintLog log = new FingerprintLog(tmp.getRoot(), 200)) {
+            for (int i = 0; i < 20; i++)
+                log.put(id(i), data("value " + i));
+            for (int i = 0; i < 20; i++)
+                log.remove(id(i));
+            while (log.compact(0.5) > 0) {
+                // until only what is needed is left
+            }
+            assertEquals("only the active segment is left", 1, log.getSegmentCount());
+        }
+        try (FingerprintLog log = new FingerprintLog(tmp.getRoot(), 200)) {
+            assertEquals(0, log.size());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package jenkins.model;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import hudson.XmlFile;
+import hudson.model.Node;
+import hudson.util.XStream2;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ItemConfigSnapshotTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File config() throws Exception {
+        File dir = tmp.newFolder("jobs", "a");
+        File file = new File(dir, "config.xml");
+        Files.copy(getClass().getResourceAsStream("/hudson/config_1_1.xml"), file.toPath());
+        return file;
+    }
+
+    private static XStream2 xstream() {
+        XStream2 xs = new XStream2();
+        xs.alias("hudson", Jenkins.class);
+        return xs;
+    }
+
+    @Test
+    public void tokensUnmarshalLikeXml() throws Exception {
+        File file = config();
+        File target = new File(tmp.getRoot(), ItemConfigSnapshot.FILE_NAME);
+        XmlFile xml = new XmlFile(xstream(), file);
+        assertEquals(1, ItemConfigSnapshot.write(tmp.getRoot(), Collections.singletonList(xml),
+                Collections.<String, ItemConfigSnapshot.Entry>emptyMap(), target));
+
+        Map<String, ItemConfigSnapshot.Entry> snapshot = ItemConfigSnapshot.read(target);
+        ItemConfigSnapshot.Entry e = snapshot.get("jobs/a/config.xml");
+        assertNotNull(e);
+        assertTrue(e.matches(Files.readAttributes(file.toPath(), BasicFileAttributes.class)));
+
+        Node fromXml = (Node) xml.read();
+        Node fromTokens = (Node) xstream().unmarshal(new BinaryStreamReader(new ByteArrayInputStream(e.tokens)));
+        assertThat(fromTokens.getNumExecutors(), is(fromXml.getNumExecutors()));
+        assertThat(fromTokens.getMode(), is(fromXml.getMode()));
+
+        // unchanged files keep their tokens when written again
+        assertEquals(1, ItemConfigSnapshot.write(tmp.getRoot(), Collections.singletonList(xml), snapshot, target));
+        assertNotNull(ItemConfigSnapshot.read(target).get("jobs/a/config.xml"));
+    }
+
+    @Test
+    public void damagedSnapshotIgnored() throws Exception {
+        File file = config();
+        File target = new File(tmp.getRoot(), ItemConfigSnapshot.FILE_NAME);
+        ItemConfigSnapshot.write(tmp.getRoot(), Collections.singletonList(new XmlFile(xstream(), file)),
+                Collections.<String, ItemConfigSnapshot.Entry>emptyMap(), target);
+        try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            raf.seek(raf.length() / 2);
+            int b = raf.read();
+            raf.seek(raf.length() / 2);
+            raf.write(b ^ 0xFF);
+        }
+        assertTrue(ItemConfigSnapshot.read(target).isEmpty());
+    }
+}
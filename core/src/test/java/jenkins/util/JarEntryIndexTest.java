@@ -0,0 +1,92 @@
+package jenkins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JarEntryIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File jar(String name, String... entries) throws Exception {
+        File jar = new File(tmp.getRoot(), name);
+        try (OutputStream os = Files.newOutputStream(jar.toPath()); JarOutputStream jos = new JarOutputStream(os)) {
+            for (String entry : entries) {
+                jos.putNextEntry(new ZipEntry(entry));
+                if (!entry.endsWith("/")) {
+                    jos.write(entry.getBytes(StandardCharsets.UTF_8));
+                }
+                jos.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    @Test
+    public void lists() throws Exception {
+        File jar = jar("a.jar", "org/example/", "org/example/Main.class", "org/example/index.jelly", "Default.class");
+        File unlisted = new File(tmp.getRoot(), "unlisted.jar");
+        JarEntryIndex index = JarEntryIndex.create(Collections.singletonList(jar), null);
+        assertTrue(index.mayContain(jar, "org/example/Main.class"));
+        assertTrue(index.mayContain(jar, "org/example/index.jelly"));
+        assertTrue(index.mayContain(jar, "org/example"));
+        assertFalse(index.mayContain(jar, "org/example/config.jelly"));
+        assertTrue(index.mayContain(unlisted, "org/example/config.jelly"));
+        assertEquals(new HashSet<>(Arrays.asList("org.example", "")), index.getPackageNames(jar));
+        assertNull(index.getPackageNames(unlisted));
+    }
+
+    @Test
+    public void cached() throws Exception {
+        File jar = jar("a.jar", "org/example/Main.class");
+        File cache = new File(tmp.getRoot(), "entries.txt");
+        JarEntryIndex.create(Collections.singletonList(jar), cache);
+        assertTrue(cache.isFile());
+
+        // an unchanged jar is not read again
+        long lastModified = jar.lastModified();
+        long length = jar.length();
+        jar("b.jar", "org/example/Mian.class").renameTo(jar);
+        assertEquals(length, jar.length());
+        assertTrue(jar.setLastModified(lastModified));
+        JarEntryIndex index = JarEntryIndex.create(Collections.singletonList(jar), cache);
+        assertTrue(index.mayContain(jar, "org/example/Main.class"));
+        assertFalse(index.mayContain(jar, "org/example/Mian.class"));
+        assertEquals(Collections.singleton("org.example"), index.getPackageNames(jar));
+
+        // a changed one is
+        assertTrue(jar.setLastModified(lastModified + 10000));
+        index = JarEntryIndex.create(Collections.singletonList(jar), cache);
+        assertFalse(index.mayContain(jar, "org/example/Main.class"));
+        assertTrue(index.mayContain(jar, "org/example/Mian.class"));
+    }
+
+    @Test
+    public void classLoader() throws Exception {
+        File jar = jar("a.jar", "org/example/index.jelly");
+        AntClassLoader loader = new AntClassLoader(null, false);
+        loader.addPathComponent(jar);
+        loader.indexEntries(null);
+        assertTrue(loader.getResource("org/example/index.jelly") != null);
+        assertNull(loader.getResource("org/example/config.jelly"));
+        assertNull(loader.getResourceAsStream("org/example/config.jelly"));
+        assertEquals(Collections.<String>emptySet(), loader.getPackageNames());
+        loader.cleanup();
+    }
+}
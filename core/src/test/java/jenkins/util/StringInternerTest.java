@@ -0,0 +1,60 @@
+package jenkins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import hudson.util.XStream2;
+
+import org.junit.Test;
+
+public class StringInternerTest {
+
+    public static class Record {
+        String node;
+        String other;
+    }
+
+    @Test
+    public void intern() {
+        assertNull(StringInterner.intern(null));
+        String a = new String("linux-agent-3");
+        String b = new String("linux-agent-3");
+        long saved = StringInterner.getSavedBytes();
+        assertSame(StringInterner.intern(a), StringInterner.intern(b));
+        assertTrue(StringInterner.getSavedBytes() >= saved + StringInterner.sizeOf(b));
+    }
+
+    @Test
+    public void sizeOf() {
+        // 24 byte object, 16 byte array header and 2 bytes per character padded to 8
+        assertEquals(40, StringInterner.sizeOf("", false));
+        assertEquals(48, StringInterner.sizeOf("abcd", false));
+        assertEquals(56, StringInterner.sizeOf("abcde", false));
+    }
+
+    @Test
+    public void sizeOfCompact() {
+        // 1 byte per character while all are Latin-1
+        assertEquals(40, StringInterner.sizeOf("", true));
+        assertEquals(48, StringInterner.sizeOf("abcdefgh", true));
+        assertEquals(56, StringInterner.sizeOf("abcdefghi", true));
+        assertEquals(48, StringInterner.sizeOf("caf\u00e9", true));
+        assertEquals(56, StringInterner.sizeOf("abcd\u20ac", true));
+    }
+
+    @Test
+    public void registeredFields() {
+        XStream2 xs = new XStream2();
+        xs.alias("record", Record.class);
+        StringInterner.register(xs, Record.class, "node");
+        String xml = "<record><node>linux-agent-7</node><other>linux-agent-7</other></record>";
+        Record r1 = (Record) xs.fromXML(xml);
+        Record r2 = (Record) xs.fromXML(xml);
+        assertSame(r1.node, r2.node);
+        assertEquals(r1.other, r2.other);
+        assertTrue(r1.other != r2.other);
+        assertEquals(xml, xs.toXML(r1).replaceAll("\\s", ""));
+    }
+}
@@ -0,0 +1,93 @@
+package jenkins.util.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import hudson.Util;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WriteBehindQueueTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void coalescesAndFlushes() throws Exception {
+        Path a = tmp.getRoot().toPath().resolve("jobs/a/config.xml");
+        Path b = tmp.getRoot().toPath().resolve("jobs/b/config.xml");
+        Files.createDirectories(a.getParent());
+        Files.createDirectories(b.getParent());
+        WriteBehindQueue.write(a, bytes("one"));
+        WriteBehindQueue.write(a, bytes("two"));
+        WriteBehindQueue.write(b, bytes("three"));
+        // readers see the last content before it is written
+        byte[] pending = WriteBehindQueue.getPending(a);
+        if (pending != null)
+            assertArrayEquals(bytes("two"), pending);
+
+        WriteBehindQueue.flush();
+        assertArrayEquals(bytes("two"), Files.readAllBytes(a));
+        assertArrayEquals(bytes("three"), Files.readAllBytes(b));
+        assertNull(WriteBehindQueue.getPending(a));
+        assertEquals(0, WriteBehindQueue.getQueueDepth());
+        // no temporary file left behind
+        assertEquals(1, tmp.getRoot().toPath().resolve("jobs/a").toFile().list().length);
+    }
+
+    @Test
+    public void cancel() throws Exception {
+        Path a = tmp.getRoot().toPath().resolve("gone.xml");
+        WriteBehindQueue.write(a, bytes("x"));
+        WriteBehindQueue.cancel(a);
+        Files.deleteIfExists(a);
+        WriteBehindQueue.flush();
+        assertNull(WriteBehindQueue.getPending(a));
+        assertEquals(false, Files.exists(a));
+    }
+
+    @Test
+    public void missingDirectoryIsNotCreated() throws Exception {
+        Path a = tmp.getRoot().toPath().resolve("jobs/deleted/config.xml");
+        assertNull(WriteBehindQueue.commit(Collections.singletonList(new AbstractMap.SimpleEntry<>(a, bytes("x")))));
+        assertFalse(Files.exists(a.getParent()));
+    }
+
+    @Test
+    public void cancelUnder() throws Exception {
+        Path dir = tmp.newFolder("jobs", "deleted").toPath();
+        Path other = tmp.newFolder("jobs", "kept").toPath();
+        WriteBehindQueue.write(dir.resolve("config.xml"), bytes("x"));
+        WriteBehindQueue.write(other.resolve("config.xml"), bytes("y"));
+        WriteBehindQueue.cancelUnder(dir);
+        assertNull(WriteBehindQueue.getPending(dir.resolve("config.xml")));
+        Util.deleteRecursive(dir.toFile());
+        WriteBehindQueue.flush();
+        assertFalse(Files.exists(dir));
+        assertArrayEquals(bytes("y"), Files.readAllBytes(other.resolve("config.xml")));
+    }
+
+    @Test
+    public void awaitUnder() throws Exception {
+        Path dir = tmp.newFolder("jobs", "moved").toPath();
+        WriteBehindQueue.write(dir.resolve("builds/1/build.xml"), bytes("x"));
+        Files.createDirectories(dir.resolve("builds/1"));
+        WriteBehindQueue.write(dir.resolve("builds/1/build.xml"), bytes("y"));
+        WriteBehindQueue.awaitUnder(dir);
+        assertArrayEquals(bytes("y"), Files.readAllBytes(dir.resolve("builds/1/build.xml")));
+        assertNull(WriteBehindQueue.getPending(dir.resolve("builds/1/build.xml")));
+    }
+}
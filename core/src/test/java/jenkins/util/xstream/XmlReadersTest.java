@@ -0,0 +1,66 @@
+package jenkins.util.xstream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import hudson.util.XStream2;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class XmlReadersTest {
+
+    private static String sniff(String xml) throws Exception {
+        return XmlReaders.sniffEncoding(new ByteArrayInputStream(xml.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    public void sniffEncoding() throws Exception {
+        assertEquals("UTF-8", sniff("<?xml version='1.1' encoding='UTF-8'?>\n<hudson/>"));
+        assertEquals("ISO-8859-1", sniff("<?xml version=\"1.0\" encoding=\"ISO-8859-1\" ?><hudson/>"));
+        assertEquals("UTF-8", sniff("<?xml version='1.0'?><hudson/>"));
+        assertEquals("UTF-8", sniff("\n<hudson/>"));
+        // left to the parser
+        assertNull(sniff("\u00ef\u00bb\u00bf<hudson/>"));
+        assertNull(sniff("<\u0000?\u0000x\u0000m\u0000l\u0000"));
+        assertNull(sniff(""));
+    }
+
+    @Test
+    public void sniffingLeavesStreamUntouched() throws Exception {
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream("<?xml version='1.0'?><a/>".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("UTF-8", XmlReaders.sniffEncoding(in));
+        assertEquals('<', in.read());
+    }
+
+    private static String asString(XStreamDOM dom) {
+        StringWriter w = new StringWriter();
+        dom.writeTo(w);
+        return w.toString();
+    }
+
+    @Test
+    public void readsLikeTheDriver() throws Exception {
+        String xml = "<?xml version='1.0' encoding='ISO-8859-1'?>\n<a x='1'><b>caf\u00e9</b><c/></a>";
+        for (int i = 0; i < 3; i++) {
+            // parsers are reused after the first round
+            HierarchicalStreamReader reader = XmlReaders.createReader(XStream2.getDefaultDriver(),
+                    new ByteArrayInputStream(xml.getBytes(StandardCharsets.ISO_8859_1)));
+            XStreamDOM dom;
+            try {
+                dom = XStreamDOM.from(reader);
+            } finally {
+                reader.close();
+            }
+            XStreamDOM expected = XStreamDOM.from(new ByteArrayInputStream(xml.getBytes(StandardCharsets.ISO_8859_1)));
+            assertEquals(asString(expected), asString(dom));
+            assertEquals("caf\u00e9", dom.getChildren().get(0).getValue());
+        }
+    }
+}
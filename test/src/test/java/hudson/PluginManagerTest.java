@@ -215,6 +215,26 @@ public class PluginManagerTest {
         assertNotNull(r.jenkins.getDescriptorByType(c));
     }
 
+    @Test public void uberClassLoaderForgetsMissesOnDynamicLoad() throws Exception {
+        ClassLoader uber = r.jenkins.getPluginManager().uberClassLoader;
+        for (int i = 0; i < 2; i++) {
+            try {
+                uber.loadClass("htmlpublisher.HtmlPublisher");
+                fail();
+            } catch (ClassNotFoundException e) {
+                // not installed yet
+            }
+        }
+        URL res = getClass().getClassLoader().getResource("plugins/htmlpublisher.jpi");
+        File f = new File(r.jenkins.getRootDir(), "plugins/htmlpublisher.jpi");
+        FileUtils.copyURLToFile(res, f);
+        r.jenkins.pluginManager.dynamicLoad(f);
+
+        Class<?> c = uber.loadClass("htmlpublisher.HtmlPublisher");
+        assertSame(r.jenkins.getPluginManager().getPlugin("htmlpublisher").classLoader, c.getClassLoader());
+        assertSame(c, uber.loadClass("htmlpublisher.HtmlPublisher"));
+    }
+
     @Test public void prevalidateConfig() throws Exception {
         assumeFalse("TODO: Implement this test on Windows", Functions.isWindows());
         PersistedList<UpdateSite> sites = r.jenkins.getUpdateCenter().getSites();
@@ -435,6 +455,25 @@ public class PluginManagerTest {
         assertEquals("should not have tried to delete & unpack", lastMod, timestamp.lastModified());
     }
 
+    @WithPlugin("tasks.jpi")
+    @Test public void unchangedArchiveNotExplodedAgain() throws Exception {
+        File jpi = new File(r.jenkins.getRootDir(), "plugins/tasks.jpi");
+        File marker = new File(r.jenkins.getRootDir(), "plugins/tasks/marker");
+        FileUtils.touch(marker);
+        assertTrue(jpi.setLastModified(jpi.lastModified() + 10000));
+        r.jenkins.getPluginManager().getPluginStrategy().createPluginWrapper(jpi);
+        assertTrue("should not have deleted & unpacked", marker.isFile());
+        assertEquals(jpi.lastModified(), new File(r.jenkins.getRootDir(), "plugins/tasks/.timestamp2").lastModified());
+
+        FileUtils.writeStringToFile(jpi, "changed", "UTF-8", true);
+        try {
+            r.jenkins.getPluginManager().getPluginStrategy().createPluginWrapper(jpi);
+        } catch (IOException e) {
+            // the archive is no longer valid, but was expanded again
+        }
+        assertFalse(marker.exists());
+    }
+
     @WithPlugin("tasks.jpi")
     @Test public void pluginListJSONApi() throws IOException {
         JSONObject response = r.getJSON("pluginManager/plugins").getJSONObject();
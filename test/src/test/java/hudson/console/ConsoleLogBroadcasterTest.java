@@ -0,0 +1,93 @@
+package hudson.console;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+import hudson.util.OneShotEvent;
+import java.util.concurrent.TimeUnit;
+import jenkins.util.Timer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+
+public class ConsoleLogBroadcasterTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private String stream(Run<?,?> b, long start) throws Exception {
+        return j.createWebClient().goTo(b.getUrl() + "consoleStream?start=" + start, "text/event-stream").getWebResponse().getContentAsString();
+    }
+
+    /**
+     * Prints some lines, then waits for {@link #finish}.
+     */
+    private static final class Chatty extends TestBuilder {
+        final OneShotEvent started = new OneShotEvent();
+        final OneShotEvent finish = new OneShotEvent();
+
+        @Override
+        public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException {
+            for (int i = 0; i < 1000; i++) {
+                listener.getLogger().println("line " + i + " <>");
+            }
+            started.signal();
+            finish.block();
+            listener.getLogger().println("last line");
+            return true;
+        }
+    }
+
+    @Test
+    public void completedLogIsLeftToProgressiveHtml() throws Exception {
+        FreeStyleBuild b = j.buildAndAssertSuccess(j.createFreeStyleProject());
+        assertEquals("event: complete\ndata: \n\n", stream(b, 0));
+    }
+
+    @Test
+    public void runningLogIsStreamed() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        final Chatty chatty = new Chatty();
+        p.getBuildersList().add(chatty);
+        FreeStyleBuild b = p.scheduleBuild2(0).waitForStart();
+        chatty.started.block();
+        Timer.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                chatty.finish.signal();
+            }
+        }, 1, TimeUnit.SECONDS);
+        String events = stream(b, 0);
+        assertThat(events, containsString("data: line 999 &lt;&gt;\n"));
+        assertThat(events, containsString("data: last line\n"));
+        assertThat(events, endsWith("event: complete\ndata: \n\n"));
+        j.assertBuildStatusSuccess(j.waitForCompletion(b));
+    }
+
+    @Test
+    public void subscriberFarBehindIsLeftToProgressiveHtml() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        Chatty chatty = new Chatty();
+        p.getBuildersList().add(chatty);
+        FreeStyleBuild b = p.scheduleBuild2(0).waitForStart();
+        chatty.started.block();
+        long maxRead = ConsoleLogBroadcaster.MAX_READ;
+        ConsoleLogBroadcaster.MAX_READ = 1024;
+        try {
+            assertEquals("event: behind\ndata: \n\n", stream(b, 0));
+        } finally {
+            ConsoleLogBroadcaster.MAX_READ = maxRead;
+            chatty.finish.signal();
+        }
+        j.assertBuildStatusSuccess(j.waitForCompletion(b));
+    }
+}
@@ -32,15 +32,20 @@ import hudson.model.Saveable;
 import java.io.File;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import jenkins.model.lazy.BuildReference;
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
@@ -49,6 +54,7 @@ import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.MemoryAssert;
 import org.jvnet.hudson.test.recipes.LocalData;
 import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
 
 public class OldDataMonitorTest {
 
@@ -143,6 +149,42 @@ public class OldDataMonitorTest {
 
     }
 
+    @Test public void backgroundUpgrade() throws Exception {
+        OldDataMonitor odm = OldDataMonitor.get(r.jenkins);
+        final AtomicInteger saved = new AtomicInteger();
+        List<Saveable> saveables = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Saveable s = new Saveable() {
+                @Override
+                public void save() throws IOException {
+                    saved.incrementAndGet();
+                }
+            };
+            saveables.add(s);
+            OldDataMonitor.report(s, "1.0");
+        }
+        Saveable unreadable = new Saveable() {
+            @Override
+            public void save() throws IOException {
+                fail("only has unreadable data");
+            }
+        };
+        OldDataMonitor.report(unreadable, Collections.<Throwable>singleton(new IllegalStateException("broken")));
+
+        StaplerRequest req = mock(StaplerRequest.class);
+        when(req.getParameter("thruVer")).thenReturn("all");
+        odm.doUpgrade(req, null);
+        OldDataMonitor.Resave resave = odm.getResave();
+        assertNotNull(resave);
+        assertEquals(20, resave.getTotal());
+        while (!resave.isFinished()) {
+            Thread.sleep(10);
+        }
+        assertEquals(20, saved.get());
+        assertEquals(0, resave.getFailed());
+        assertEquals(Collections.singleton(unreadable), odm.getData().keySet());
+    }
+
     @Issue("JENKINS-26718")
     @Test public void unlocatableRun() throws Exception {
         OldDataMonitor odm = OldDataMonitor.get(r.jenkins);
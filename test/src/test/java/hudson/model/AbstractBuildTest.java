@@ -24,6 +24,7 @@
 package hudson.model;
 
 import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebResponse;
 import hudson.EnvVars;
 import hudson.Launcher;
@@ -32,6 +33,8 @@ import hudson.slaves.EnvironmentVariablesNodeProperty;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Builder;
 import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Set;
@@ -129,6 +132,41 @@ public class AbstractBuildTest {
         assertThat(rsp.getWebResponse().getContentAsString(), containsString(out));
     }
 
+    @Test
+    public void consoleTextRanges() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        JenkinsRule.WebClient wc = j.createWebClient();
+        wc.getOptions().setThrowExceptionOnFailingStatusCode(false);
+        WebResponse all = consoleText(wc, b, null);
+        assertEquals(200, all.getStatusCode());
+        String text = all.getContentAsString();
+        int length = text.getBytes(StandardCharsets.UTF_8).length;
+
+        WebResponse rsp = consoleText(wc, b, "bytes=0-4");
+        assertEquals(206, rsp.getStatusCode());
+        assertEquals("bytes 0-4/" + length, rsp.getResponseHeaderValue("Content-Range"));
+        assertEquals(text.substring(0, 5), rsp.getContentAsString());
+
+        // last before first is invalid, so ignored
+        rsp = consoleText(wc, b, "bytes=5-3");
+        assertEquals(200, rsp.getStatusCode());
+        assertEquals(text, rsp.getContentAsString());
+
+        // valid, but past the end
+        rsp = consoleText(wc, b, "bytes=" + length + "-");
+        assertEquals(416, rsp.getStatusCode());
+        assertEquals("bytes */" + length, rsp.getResponseHeaderValue("Content-Range"));
+    }
+
+    private static WebResponse consoleText(JenkinsRule.WebClient wc, Run<?, ?> b, String range) throws Exception {
+        WebRequest req = new WebRequest(new URL(wc.getContextPath() + b.getUrl() + "consoleText"));
+        if (range != null) {
+            req.setAdditionalHeader("Range", range);
+        }
+        return wc.getPage(req).getWebResponse();
+    }
+
     private void assertCulprits(AbstractBuild<?,?> b, String... expectedIds) throws IOException, SAXException {
         Set<String> actual = new TreeSet<>();
         for (User u : b.getCulprits()) {
@@ -25,6 +25,8 @@
 package hudson.model;
 
 import hudson.Extension;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.BuildTrigger;
@@ -33,6 +35,10 @@ import hudson.tasks.BuildWrapperDescriptor;
 import hudson.tasks.Builder;
 import hudson.tasks.Publisher;
 import hudson.triggers.Trigger;
+import jenkins.model.Jenkins;
+import org.acegisecurity.Authentication;
+import org.acegisecurity.GrantedAuthority;
+import org.acegisecurity.providers.UsernamePasswordAuthenticationToken;
 import org.apache.commons.io.FileUtils;
 
 import java.io.ByteArrayInputStream;
@@ -50,7 +56,11 @@ import org.jvnet.hudson.test.recipes.LocalData;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import static org.hamcrest.core.StringContains.containsString;
 
@@ -183,6 +193,65 @@ public class ItemGroupMixInTest {
     }
   }
 
+    @Test public void childrenLoadedInParallel() throws Exception {
+        MockFolder top = r.createFolder("top");
+        for (int i = 0; i < 5; i++) {
+            MockFolder sub = top.createProject(MockFolder.class, "sub" + i);
+            for (int j = 0; j < 5; j++) {
+                sub.createProject(FreeStyleProject.class, "job" + j);
+            }
+        }
+        // not an item, so skipped
+        assertTrue(new File(top.getRootDir(), "jobs/empty").mkdirs());
+
+        r.jenkins.reload();
+
+        top = r.jenkins.getItemByFullName("top", MockFolder.class);
+        assertNotNull(top);
+        assertEquals(5, top.getItems().size());
+        assertNull(top.getItem("empty"));
+        for (int i = 0; i < 5; i++) {
+            MockFolder sub = r.jenkins.getItemByFullName("top/sub" + i, MockFolder.class);
+            assertNotNull(sub);
+            assertEquals(5, sub.getItems().size());
+            for (int j = 0; j < 5; j++) {
+                assertNotNull(r.jenkins.getItemByFullName("top/sub" + i + "/job" + j, FreeStyleProject.class));
+            }
+        }
+    }
+
+    @Test public void forEachInParallel() throws Exception {
+        final int n = 100;
+        final AtomicIntegerArray runs = new AtomicIntegerArray(n);
+        final Authentication auth = new UsernamePasswordAuthenticationToken("alice", "alice", new GrantedAuthority[0]);
+        final Set<String> users = Collections.synchronizedSet(new HashSet<String>());
+        try (ACLContext ctx = ACL.as(auth)) {
+            ItemGroupMixIn.forEachInParallel(n, i -> {
+                runs.incrementAndGet(i);
+                users.add(Jenkins.getAuthentication().getName());
+                // nested more deeply than there are threads, as folders within folders are
+                ItemGroupMixIn.forEachInParallel(3, j -> ItemGroupMixIn.forEachInParallel(3, k -> {}));
+            });
+        }
+        for (int i = 0; i < n; i++) {
+            assertEquals(1, runs.get(i));
+        }
+        assertEquals(Collections.singleton("alice"), users);
+    }
+
+    @Test public void forEachInParallelFailure() {
+        try {
+            ItemGroupMixIn.forEachInParallel(10, i -> {
+                if (i == 5) {
+                    throw new IllegalStateException("oops");
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("oops", e.getMessage());
+        }
+    }
+
     @Test public void createProjectFromXMLShouldNoCreateEntities() throws IOException {
 
         final String xml = "<?xml version='1.0' encoding='UTF-8'?>\n" +
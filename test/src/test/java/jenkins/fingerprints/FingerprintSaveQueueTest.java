@@ -0,0 +1,185 @@
+package jenkins.fingerprints;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.Fingerprint;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+public class FingerprintSaveQueueTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private static final List<String> events = new ArrayList<>();
+    private static volatile String blocked;
+    private static volatile CountDownLatch entered, release;
+
+    @Before
+    public void setUp() {
+        synchronized (events) {
+            events.clear();
+        }
+        blocked = null;
+        entered = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        GlobalFingerprintConfiguration.get().setStorage(new RecordingStorage());
+        FingerprintSaveQueue.ENABLED = true;
+    }
+
+    @After
+    public void tearDown() {
+        FingerprintSaveQueue.ENABLED = false;
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void updatesAreCoalesced() throws Exception {
+        Fingerprint fp = fingerprint(1);
+        fp.add("a", 1);
+        fp.add("a", 2);
+        assertSame(fp, FingerprintSaveQueue.getPending(fp.getHashString()));
+        FingerprintSaveQueue.flush();
+        assertNull(FingerprintSaveQueue.getPending(fp.getHashString()));
+        assertEquals(Arrays.asList("save " + fp.getHashString(), "sync"), events());
+    }
+
+    @Test
+    public void cancelWaitsForSaveInProgress() throws Exception {
+        final Fingerprint a = fingerprint(1);
+        Fingerprint b = fingerprint(2);
+        blocked = a.getHashString();
+        Future<?> flush = executor.submit(FingerprintSaveQueue::flush);
+        entered.await();
+        // not saved yet, so dropped
+        FingerprintSaveQueue.cancel(b.getHashString());
+        Future<?> cancel = executor.submit(() -> FingerprintSaveQueue.cancel(a.getHashString()));
+        Thread.sleep(500);
+        assertFalse(cancel.isDone());
+        release.countDown();
+        cancel.get();
+        flush.get();
+        assertEquals(Arrays.asList("save " + a.getHashString(), "sync"), events());
+        assertNull(FingerprintSaveQueue.getPending(b.getHashString()));
+    }
+
+    @Test
+    public void flushWaitsForBatchInProgress() throws Exception {
+        Fingerprint a = fingerprint(1);
+        blocked = a.getHashString();
+        Future<?> first = executor.submit(FingerprintSaveQueue::flush);
+        entered.await();
+        Fingerprint b = fingerprint(2);
+        Future<?> second = executor.submit(FingerprintSaveQueue::flush);
+        Thread.sleep(500);
+        assertFalse(second.isDone());
+        release.countDown();
+        second.get();
+        first.get();
+        // the first batch is synced before the second is written
+        assertEquals(Arrays.asList("save " + a.getHashString(), "sync", "save " + b.getHashString(), "sync"), events());
+    }
+
+    @Test
+    public void savedRightAwayUnlessEnabled() throws Exception {
+        FingerprintSaveQueue.ENABLED = false;
+        Fingerprint fp = fingerprint(1);
+        assertNull(FingerprintSaveQueue.getPending(fp.getHashString()));
+        assertEquals(Arrays.asList("save " + fp.getHashString()), events());
+    }
+
+    @Test
+    public void fileStorageWritesBatchTogether() throws Exception {
+        FileFingerprintStorage storage = new FileFingerprintStorage();
+        GlobalFingerprintConfiguration.get().setStorage(storage);
+        Fingerprint a = fingerprint(1);
+        Fingerprint b = fingerprint(2);
+        b.add("b", 1);
+        assertFalse(FileFingerprintStorage.getFingerprintFile(a.getHashString()).exists());
+        FingerprintSaveQueue.flush();
+        assertNull(FingerprintSaveQueue.getPending(a.getHashString()));
+        assertTrue(FileFingerprintStorage.getFingerprintFile(a.getHashString()).exists());
+        Fingerprint loaded = storage.load(b.getHashString());
+        assertNotNull(loaded);
+        assertEquals("file2", loaded.getFileName());
+        assertTrue(loaded.getRangeSet("b").includes(1));
+    }
+
+    private static Fingerprint fingerprint(int n) throws IOException {
+        byte[] md5sum = new byte[16];
+        md5sum[15] = (byte) n;
+        return new Fingerprint(null, "file" + n, md5sum);
+    }
+
+    private static List<String> events() {
+        synchronized (events) {
+            return new ArrayList<>(events);
+        }
+    }
+
+    private static void event(String event) {
+        synchronized (events) {
+            events.add(event);
+        }
+    }
+
+    public static final class RecordingStorage extends FingerprintStorage {
+        @Override
+        public void save(@Nonnull Fingerprint fp) throws IOException {
+            if (fp.getHashString().equals(blocked)) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            event("save " + fp.getHashString());
+        }
+
+        @Override
+        public void sync() {
+            event("sync");
+        }
+
+        @Override
+        public @CheckForNull Fingerprint load(@Nonnull String id) {
+            return null;
+        }
+
+        @Override
+        public void delete(@Nonnull String id) {
+            event("delete " + id);
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @TestExtension
+        public static final class DescriptorImpl extends FingerprintStorageDescriptor {}
+    }
+}
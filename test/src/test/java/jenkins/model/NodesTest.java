@@ -24,21 +24,37 @@
 
 package jenkins.model;
 
+import hudson.ExtensionList;
+import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.Node;
 import hudson.model.Slave;
 import hudson.slaves.ComputerLauncher;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.JNLPLauncher;
+import java.io.File;
 import java.io.IOException;
+import java.util.Set;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
 
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.same;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 public class NodesTest {
 
@@ -88,6 +104,117 @@ public class NodesTest {
         assertThat(r.jenkins.getNode("foo"), sameInstance(newNode));
     }
 
+    @Test(timeout = 60000)
+    public void computersLabelsAndEventsFollowEachNode() throws Exception {
+        NodeListener listener = mock(NodeListener.class);
+        ExtensionList.lookup(NodeListener.class).add(listener);
+        Nodes nodes = r.jenkins.getNodesObject();
+
+        Node other = agent("other", "b");
+        r.jenkins.addNode(other);
+        Node foo = agent("foo", "a");
+        r.jenkins.addNode(foo);
+        Computer c = r.jenkins.getComputer("foo");
+        assertNotNull(c);
+        assertThat(c.getNode(), sameInstance(foo));
+        assertThat(nodesOf("a"), containsInAnyOrder(foo));
+        assertThat(nodesOf("a||b"), containsInAnyOrder(foo, other));
+        verify(listener).onCreated(same(other));
+        verify(listener).onCreated(same(foo));
+
+        // same name: the computer is kept, and labels cached above are reset
+        Node foo2 = agent("foo", "b");
+        assertTrue(nodes.replaceNode(foo, foo2));
+        assertThat(r.jenkins.getComputer("foo"), sameInstance(c));
+        assertThat(c.getNode(), sameInstance(foo2));
+        assertThat(nodesOf("a"), empty());
+        assertThat(nodesOf("b"), containsInAnyOrder(foo2, other));
+        assertThat(nodesOf("a||b"), containsInAnyOrder(foo2, other));
+        verify(listener).onUpdated(same(foo), same(foo2));
+
+        // renamed: the old computer goes away and the new name gets its own
+        Node bar = agent("bar", "a");
+        assertTrue(nodes.replaceNode(foo2, bar));
+        assertThat(r.jenkins.getNode("foo"), nullValue());
+        assertThat(c.getNode(), nullValue());
+        awaitComputerGone("foo");
+        Computer barComputer = r.jenkins.getComputer("bar");
+        assertNotNull(barComputer);
+        assertThat(barComputer, not(sameInstance(c)));
+        assertThat(barComputer.getNode(), sameInstance(bar));
+        assertThat(nodesOf("a"), containsInAnyOrder(bar));
+        assertThat(nodesOf("b"), containsInAnyOrder(other));
+        assertTrue(new File(r.jenkins.getRootDir(), "nodes/bar/config.xml").isFile());
+        verify(listener).onUpdated(same(foo2), same(bar));
+
+        r.jenkins.removeNode(bar);
+        assertThat(r.jenkins.getNode("bar"), nullValue());
+        awaitComputerGone("bar");
+        assertThat(nodesOf("a"), empty());
+        assertThat(nodesOf("a||b"), containsInAnyOrder(other));
+        assertFalse(new File(r.jenkins.getRootDir(), "nodes/bar").exists());
+        verify(listener).onDeleted(same(bar));
+
+        // saving a node updates its labels but is not a change of node to tell listeners about
+        ((Slave) other).setLabelString("a");
+        other.save();
+        assertThat(nodesOf("a"), containsInAnyOrder(other));
+        assertThat(nodesOf("b"), empty());
+        verifyNoMoreInteractions(listener);
+    }
+
+    @Test(timeout = 60000)
+    public void addNodeShouldRollBackComputerAndLabels() throws Exception {
+        NodeListener listener = mock(NodeListener.class);
+        Node oldNode = agent("foo", "old");
+        r.jenkins.addNode(oldNode);
+        ExtensionList.lookup(NodeListener.class).add(listener);
+        Computer c = r.jenkins.getComputer("foo");
+
+        InvalidNode newNode = new InvalidNode("foo", "temp", new JNLPLauncher(true));
+        newNode.setLabelString("new");
+        try {
+            r.jenkins.addNode(newNode);
+            fail("Adding the node should have thrown an exception during serialization");
+        } catch (IOException e) {
+            // expected
+        }
+        assertThat(r.jenkins.getComputer("foo"), sameInstance(c));
+        assertThat(c.getNode(), sameInstance(oldNode));
+        assertThat(nodesOf("old"), containsInAnyOrder(oldNode));
+        assertThat(nodesOf("new"), empty());
+
+        InvalidNode bar = new InvalidNode("bar", "temp", new JNLPLauncher(true));
+        bar.setLabelString("new");
+        try {
+            r.jenkins.addNode(bar);
+            fail("Adding the node should have thrown an exception during serialization");
+        } catch (IOException e) {
+            // expected
+        }
+        assertThat(r.jenkins.getNode("bar"), nullValue());
+        awaitComputerGone("bar");
+        assertThat(nodesOf("new"), empty());
+        verifyNoMoreInteractions(listener);
+    }
+
+    private Set<Node> nodesOf(String expression) {
+        return r.jenkins.getLabel(expression).getNodes();
+    }
+
+    private void awaitComputerGone(String name) throws InterruptedException {
+        // the computer is removed once its executors have exited
+        while (r.jenkins.getComputer(name) != null) {
+            Thread.sleep(100);
+        }
+    }
+
+    private static Node agent(String name, String labels) throws Exception {
+        DumbSlave agent = new DumbSlave(name, "/tmp", new JNLPLauncher(true));
+        agent.setLabelString(labels);
+        return agent;
+    }
+
     private static class InvalidNode extends Slave {
         // JEP-200 whitelist changes prevent this field (and thus instances of this class) from being serialized.
         private ClassLoader cl = InvalidNode.class.getClassLoader();